@@ -26,4 +26,6 @@ public class NoteBean {
     @NotBlank(message = "Note is required.")
     private String content;
 
+    private Long version;
+
 }
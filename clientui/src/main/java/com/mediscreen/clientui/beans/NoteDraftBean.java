@@ -0,0 +1,28 @@
+package com.mediscreen.clientui.beans;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class NoteDraftBean {
+
+    private String id;
+
+    private Integer patientId;
+
+    private String noteId;
+
+    private Long version;
+
+    private String content;
+
+    private LocalDateTime dateOfCreation;
+
+    private LocalDateTime dateOfModification;
+
+}
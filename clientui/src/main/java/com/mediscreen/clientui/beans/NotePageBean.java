@@ -0,0 +1,21 @@
+package com.mediscreen.clientui.beans;
+
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class NotePageBean {
+
+    private List<NoteBean> notes = new ArrayList<>();
+
+    private String nextCursor;
+
+    private boolean hasMore;
+
+}
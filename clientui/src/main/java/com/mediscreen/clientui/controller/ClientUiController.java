@@ -2,6 +2,8 @@ package com.mediscreen.clientui.controller;
 
 import com.mediscreen.clientui.beans.AssessmentBean;
 import com.mediscreen.clientui.beans.NoteBean;
+import com.mediscreen.clientui.beans.NoteDraftBean;
+import com.mediscreen.clientui.beans.NotePageBean;
 import com.mediscreen.clientui.beans.PatientBean;
 import com.mediscreen.clientui.services.AssessmentUiService;
 import com.mediscreen.clientui.services.NoteUiService;
@@ -11,22 +13,39 @@ import feign.Param;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
+import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.regex.Pattern;
 
 @Controller
 public class ClientUiController {
 
     private static final Logger logger = LoggerFactory.getLogger(ClientUiController.class);
 
+    // Identifies the browser the drafts are typed in, as practitioners aren't identified
+    private static final String DRAFT_OWNER_COOKIE = "draftOwner";
+    private static final Pattern DRAFT_OWNER_PATTERN = Pattern.compile("[0-9a-f-]{36}");
+    private static final Duration DRAFT_OWNER_MAX_AGE = Duration.ofDays(365);
+
     private final PatientUiService patientUiService;
     private final NoteUiService noteUiService;
     private final AssessmentUiService assessmentUiService;
@@ -81,12 +100,14 @@ public class ClientUiController {
 
         try {
             PatientBean patient = patientUiService.fetchPatient(id);
-            List<NoteBean> allNotesOfPatientList = noteUiService.fetchAllNotesOfPatient(id);
+            NotePageBean firstNotesPage = noteUiService.fetchNotesPageOfPatient(id, null);
             AssessmentBean assessment = assessmentUiService.retrieveAssessmentOfPatient(id);
 
             model.addAttribute("patient", patient);
             model.addAttribute("patientId", id);
-            model.addAttribute("notes", allNotesOfPatientList);
+            model.addAttribute("notes", firstNotesPage.getNotes());
+            model.addAttribute("nextCursor", firstNotesPage.getNextCursor());
+            model.addAttribute("hasMore", firstNotesPage.isHasMore());
             model.addAttribute("assessment", assessment);
 
             logger.info("### Patient, Notes list and Diabetes assessment returned successfully. Display patient details page");
@@ -104,6 +125,34 @@ public class ClientUiController {
         }
     }
 
+    // === MORE NOTES OF PATIENT DETAILS PAGE =================================
+    @GetMapping("/patients/{id}/notes/page")
+    public String displayMoreNotesOfPatient(@PathVariable("id") Integer id, @RequestParam(value = "cursor") String cursor, Model model) {
+        logger.debug("### Request called --> GET /patients/{}/notes/page?cursor={}", id, cursor);
+
+        try {
+            NotePageBean notesPage = noteUiService.fetchNotesPageOfPatient(id, cursor);
+
+            model.addAttribute("patientId", id);
+            model.addAttribute("notes", notesPage.getNotes());
+            model.addAttribute("nextCursor", notesPage.getNextCursor());
+            model.addAttribute("hasMore", notesPage.isHasMore());
+
+            logger.info("### Page of notes returned successfully. Display next notes of patient history");
+            return "fragments/patient-history :: notes";
+
+        } catch (FeignException.BadRequest e) {
+            logger.error("### Exception thrown --> {}", e.getMessage());
+            logger.info("### Display error 404 page");
+            return "404";
+
+        } catch (FeignException.InternalServerError e) {
+            logger.error("### An error occurred --> {}", e.getMessage());
+            logger.info("### Display error 500 page");
+            return "500";
+        }
+    }
+
     // === UPDATE PATIENT PAGE ================================================
     @GetMapping("/patients/update/{id}")
     public String displayUpdatePatientForm(@PathVariable("id") Integer id, Model model) {
@@ -230,27 +279,41 @@ public class ClientUiController {
 
     // === ADD NEW NOTE PAGE ==================================================
     @GetMapping("/patients/{id}/notes/new")
-    public String displayAddNewNoteForm(@PathVariable("id") Integer patientId, Model model) {
+    public String displayAddNewNoteForm(@PathVariable("id") Integer patientId,
+                                        @CookieValue(value = DRAFT_OWNER_COOKIE, required = false) String draftOwner,
+                                        HttpServletResponse response, Model model) {
         logger.debug("### Request called --> GET /patients/{}/notes/new", patientId);
 
         NoteBean noteBean = new NoteBean();
         noteBean.setPatientId(patientId);
+        // Resumes the note left unsaved in this browser, if any
+        NoteDraftBean draft = noteUiService.fetchDraft(NoteUiService.newNoteDraftId(patientId, draftOwner(draftOwner, response)));
+        if (draft != null) {
+            noteBean.setContent(draft.getContent());
+            model.addAttribute("draftRestored", true);
+        }
         model.addAttribute("noteBean", noteBean);
+        model.addAttribute("draftCreation", LocalDateTime.now());
 
         logger.info("### Display form to add new note");
         return "note-add-form";
     }
 
     @PostMapping("/notes/new/validate")
-    public String validateAddNewNoteForm(@Valid NoteBean noteToCreate, BindingResult result, RedirectAttributes redirectAttributes) {
+    public String validateAddNewNoteForm(@Valid NoteBean noteToCreate, BindingResult result,
+                                         @RequestParam(value = "draftCreation", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime draftCreation,
+                                         @CookieValue(value = DRAFT_OWNER_COOKIE, required = false) String draftOwner,
+                                         HttpServletResponse response, Model model, RedirectAttributes redirectAttributes) {
         logger.debug("### Request called--> POST /notes/new/validate");
 
         try {
             if (result.hasErrors()) {
+                model.addAttribute("draftCreation", draftCreation != null ? draftCreation : LocalDateTime.now());
                 logger.info("### Display form to add new note with {} error(s)", result.getErrorCount());
                 return "note-add-form";
             } else {
-                noteUiService.createNewNote(noteToCreate);
+                // The history service discards the draft with the note, so that a late autosave can't bring it back
+                noteUiService.createNewNote(noteToCreate, NoteUiService.newNoteDraftId(noteToCreate.getPatientId(), draftOwner(draftOwner, response)));
 
                 String message = "New note has been saved successfully";
                 redirectAttributes.addFlashAttribute("msgAlert", message);
@@ -267,13 +330,22 @@ public class ClientUiController {
 
     // === UPDATE NOTE PAGE ===================================================
     @GetMapping("/notes/update/{id}")
-    public String displayUpdateNoteForm(@PathVariable("id") String noteId, Model model) {
+    public String displayUpdateNoteForm(@PathVariable("id") String noteId,
+                                        @CookieValue(value = DRAFT_OWNER_COOKIE, required = false) String draftOwner,
+                                        HttpServletResponse response, Model model) {
         logger.debug("### Request called --> GET /notes/update/{}", noteId);
 
         try {
             NoteBean noteBean = noteUiService.fetchNoteById(noteId);
+            // Resumes the changes left unsaved in this browser, unless the note was updated since they were made
+            NoteDraftBean draft = noteUiService.fetchDraft(NoteUiService.noteDraftId(noteId, draftOwner(draftOwner, response)));
+            if (draft != null && Objects.equals(draft.getVersion(), noteBean.getVersion())) {
+                noteBean.setContent(draft.getContent());
+                model.addAttribute("draftRestored", true);
+            }
 
             model.addAttribute("noteBean", noteBean);
+            model.addAttribute("draftCreation", LocalDateTime.now());
 
             logger.info("### Data of note to update returned successfully. Display form to update note");
             return "note-update-form";
@@ -291,15 +363,20 @@ public class ClientUiController {
     }
 
     @PostMapping({"/notes/update/{id}"})
-    public String validateUpdateNoteForm(@PathVariable("id") String noteId, @Valid NoteBean noteBean, BindingResult result, RedirectAttributes redirectAttributes) {
+    public String validateUpdateNoteForm(@PathVariable("id") String noteId, @Valid NoteBean noteBean, BindingResult result,
+                                         @RequestParam(value = "draftCreation", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime draftCreation,
+                                         @CookieValue(value = DRAFT_OWNER_COOKIE, required = false) String draftOwner,
+                                         HttpServletResponse response, Model model, RedirectAttributes redirectAttributes) {
         logger.info("### Request called --> POST /notes/update/{id}");
 
         try {
+            model.addAttribute("draftCreation", draftCreation != null ? draftCreation : LocalDateTime.now());
             if (result.hasErrors()) {
                 logger.info("### Display form to update note with {} error(s)", result.getErrorCount());
                 return "note-update-form";
             } else {
                 noteUiService.updateNote(noteId, noteBean);
+                noteUiService.discardDraft(NoteUiService.noteDraftId(noteId, draftOwner(draftOwner, response)));
 
                 String message = "Note has been updated successfully";
                 redirectAttributes.addFlashAttribute("msgAlert", message);
@@ -307,6 +384,17 @@ public class ClientUiController {
                 logger.info("### Successful message returned --> {}", message);
                 return "redirect:/patients/details/" + noteBean.getPatientId();
             }
+        } catch (FeignException.Conflict e) {
+            logger.error("### Exception thrown --> {}", e.getMessage());
+
+            // Displays the latest version of the note, which the changes would otherwise silently overwrite
+            model.addAttribute("noteBean", noteUiService.fetchNoteById(noteId));
+            String message = "This note has been modified by someone else in the meantime, check its latest version before updating it again";
+            model.addAttribute("msgAlert", message);
+
+            logger.info("### Display form to update note with error message --> {}", message);
+            return "note-update-form";
+
         } catch (FeignException.NotFound e) {
             logger.error("### Exception thrown --> {}", e.getMessage());
             logger.info("### Display error 404 page");
@@ -319,6 +407,60 @@ public class ClientUiController {
         }
     }
 
+    // === AUTOSAVE NOTE DRAFTS ===============================================
+    @PostMapping("/patients/{id}/notes/draft")
+    public ResponseEntity<Void> autosaveNewNoteDraft(@PathVariable("id") Integer patientId, @RequestParam(value = "content") String content,
+                                                     @RequestParam(value = "draftCreation", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime draftCreation,
+                                                     @CookieValue(value = DRAFT_OWNER_COOKIE, required = false) String draftOwner,
+                                                     HttpServletResponse response) {
+        logger.debug("### Request called --> POST /patients/{}/notes/draft", patientId);
+
+        NoteDraftBean draft = new NoteDraftBean();
+        draft.setPatientId(patientId);
+        draft.setContent(content);
+        draft.setDateOfCreation(draftCreation);
+        return autosaveDraft(NoteUiService.newNoteDraftId(patientId, draftOwner(draftOwner, response)), draft);
+    }
+
+    @PostMapping("/notes/update/{id}/draft")
+    public ResponseEntity<Void> autosaveNoteDraft(@PathVariable("id") String noteId, @RequestParam(value = "patientId") Integer patientId,
+                                                  @RequestParam(value = "version", required = false) Long version,
+                                                  @RequestParam(value = "content") String content,
+                                                  @RequestParam(value = "draftCreation", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime draftCreation,
+                                                  @CookieValue(value = DRAFT_OWNER_COOKIE, required = false) String draftOwner,
+                                                  HttpServletResponse response) {
+        logger.debug("### Request called --> POST /notes/update/{}/draft", noteId);
+
+        return autosaveDraft(NoteUiService.noteDraftId(noteId, draftOwner(draftOwner, response)),
+                new NoteDraftBean(null, patientId, noteId, version, content, draftCreation, null));
+    }
+
+    private ResponseEntity<Void> autosaveDraft(String draftId, NoteDraftBean draft) {
+        try {
+            noteUiService.autosaveDraft(draftId, draft);
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+
+        } catch (FeignException e) {
+            // The page keeps the typed content and autosaves it again on the next change
+            logger.error("### Failed to autosave draft with id={} --> {}", draftId, e.getMessage());
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    // Returns the owner of the drafts typed in the browser, giving the browser one if it has none yet
+    private static String draftOwner(String draftOwner, HttpServletResponse response) {
+        if (draftOwner != null && DRAFT_OWNER_PATTERN.matcher(draftOwner).matches()) {
+            return draftOwner;
+        }
+        String newDraftOwner = UUID.randomUUID().toString();
+        Cookie cookie = new Cookie(DRAFT_OWNER_COOKIE, newDraftOwner);
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) DRAFT_OWNER_MAX_AGE.getSeconds());
+        response.addCookie(cookie);
+        return newDraftOwner;
+    }
+
     // === DELETE NOTE PAGE ===================================================
     @GetMapping("/notes/delete/{id}/{patientId}")
     public String deleteNote(@PathVariable("id") String noteId, @PathVariable("patientId") Integer patientId, RedirectAttributes redirectAttributes) {
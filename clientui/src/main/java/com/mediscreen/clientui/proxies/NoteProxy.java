@@ -1,6 +1,8 @@
 package com.mediscreen.clientui.proxies;
 
 import com.mediscreen.clientui.beans.NoteBean;
+import com.mediscreen.clientui.beans.NoteDraftBean;
+import com.mediscreen.clientui.beans.NotePageBean;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.*;
 
@@ -12,10 +14,16 @@ import java.util.List;
 public interface NoteProxy {
 
     @PostMapping({"/patHistories"})
-    NoteBean addNewNote(NoteBean noteBean);
+    NoteBean addNewNote(@RequestBody NoteBean noteBean, @RequestParam(value = "draftId", required = false) String draftId);
 
-    @GetMapping({"/patHistories"})
-    List<NoteBean> getAllNotesByPatientId(@RequestParam(value = "patientId", required = true) Integer patientId);
+    @GetMapping({"/patHistories/page"})
+    NotePageBean getNotesPageByPatientId(@RequestParam(value = "patientId", required = true) Integer patientId,
+                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "size", required = false) Integer size,
+                                         @RequestParam(value = "fullHistory") boolean fullHistory,
+                                         @RequestParam(value = "fields", required = false) List<String> fields,
+                                         @RequestParam(value = "preview", required = false) Integer preview,
+                                         @RequestParam(value = "secondaryOk") boolean secondaryOk);
 
     @GetMapping({"/patHistories/{id}"})
     NoteBean getNoteById(@PathVariable("id") String noteId);
@@ -29,4 +37,13 @@ public interface NoteProxy {
     @DeleteMapping({"/patHistories"})
     void deleteAllNotesByPatientId(@RequestParam(value = "patientId", required = true) Integer patientId);
 
+    @PutMapping({"/patHistories/drafts/{draftId}"})
+    NoteDraftBean saveDraft(@PathVariable("draftId") String draftId, @RequestBody NoteDraftBean draftBean);
+
+    @GetMapping({"/patHistories/drafts/{draftId}"})
+    NoteDraftBean getDraft(@PathVariable("draftId") String draftId);
+
+    @DeleteMapping({"/patHistories/drafts/{draftId}"})
+    void deleteDraft(@PathVariable("draftId") String draftId);
+
 }
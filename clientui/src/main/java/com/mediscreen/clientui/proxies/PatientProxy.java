@@ -14,6 +14,9 @@ public interface PatientProxy {
     @GetMapping({"/patients"})
     List<PatientBean> getAllPatients(@RequestParam(value = "lastName", required = false) String nameSearched);
 
+    @GetMapping({"/patients/summaries"})
+    List<PatientBean> getAllPatientSummaries(@RequestParam(value = "lastName", required = false) String nameSearched);
+
     @GetMapping({"/patients/{id}"})
     PatientBean getPatientById(@PathVariable("id") Integer id);
 
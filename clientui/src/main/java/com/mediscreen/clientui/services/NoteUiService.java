@@ -1,20 +1,29 @@
 package com.mediscreen.clientui.services;
 
 import com.mediscreen.clientui.beans.NoteBean;
+import com.mediscreen.clientui.beans.NoteDraftBean;
+import com.mediscreen.clientui.beans.NotePageBean;
 import com.mediscreen.clientui.proxies.NoteProxy;
+import feign.FeignException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.List;
 
+
 @Service
 public class NoteUiService {
 
     private static final Logger logger = LoggerFactory.getLogger(NoteUiService.class);
 
+    private static final int NOTES_PAGE_SIZE = 10;
+
+    // The history only shows the beginning of each note, the whole note being read when it is edited
+    private static final List<String> NOTES_PAGE_FIELDS = List.of("id", "dateOfCreation", "dateOfModification", "content");
+    private static final int NOTES_PREVIEW_LENGTH = 1000;
+
     private final NoteProxy noteProxy;
 
     @Autowired
@@ -24,28 +33,32 @@ public class NoteUiService {
 
 
     // === CREATE NEW NOTE ====================================================
-    public NoteBean createNewNote(NoteBean noteToCreate) {
+    // The draft of the note is discarded along with its creation
+    public NoteBean createNewNote(NoteBean noteToCreate, String draftId) {
         logger.debug("### Try to create new note --> {}", noteToCreate);
 
-        NoteBean createdNote = noteProxy.addNewNote(noteToCreate);
+        NoteBean createdNote = noteProxy.addNewNote(noteToCreate, draftId);
 
         logger.info("### Created new note --> {}", createdNote);
         return createdNote;
     }
 
-    // === FETCH ALL NOTES OF ONE PATIENT =====================================
-    public List<NoteBean> fetchAllNotesOfPatient(Integer patientId) {
-        logger.debug("### Try to fetch all notes of patientId={}", patientId);
+    // === FETCH ONE PAGE OF NOTES OF ONE PATIENT =============================
+    public NotePageBean fetchNotesPageOfPatient(Integer patientId, String cursor) {
+        logger.debug("### Try to fetch page of notes of patientId={} after cursor '{}'", patientId, cursor);
 
-        List<NoteBean> allNotesOfPatient = noteProxy.getAllNotesByPatientId(patientId);
+        // The history of the patient is shown whole, old notes being merged from the archive in the same order.
+        // The first page shows the note just saved, the next ones are loaded later and may be read from a secondary
+        NotePageBean notesPage = noteProxy.getNotesPageByPatientId(patientId, cursor, NOTES_PAGE_SIZE, true,
+                NOTES_PAGE_FIELDS, NOTES_PREVIEW_LENGTH, cursor != null);
 
-        if(allNotesOfPatient == null) {
+        if(notesPage == null) {
             logger.info("### Fetched no notes");
-            return new ArrayList<>();
+            return new NotePageBean();
         }
 
-        logger.info("### All fetched notes of patient --> {}", allNotesOfPatient);
-        return allNotesOfPatient;
+        logger.info("### Fetched page of {} notes of patient, more available={}", notesPage.getNotes().size(), notesPage.isHasMore());
+        return notesPage;
     }
 
     // === FETCH ONE NOTE =====================================================
@@ -76,4 +89,48 @@ public class NoteUiService {
 
         logger.info("### Note deleted");
     }
+
+    // === DRAFTS OF NOTES ====================================================
+    // One draft per note being written or edited in each browser, so that practitioners don't overwrite each other's
+    public static String newNoteDraftId(Integer patientId, String draftOwner) {
+        return "new-" + patientId + "-" + draftOwner;
+    }
+
+    public static String noteDraftId(String noteId, String draftOwner) {
+        return "note-" + noteId + "-" + draftOwner;
+    }
+
+    public void autosaveDraft(String draftId, NoteDraftBean draftToSave) {
+        logger.debug("### Try to autosave draft with id={}", draftId);
+
+        noteProxy.saveDraft(draftId, draftToSave);
+
+        logger.debug("### Autosaved draft with id={}", draftId);
+    }
+
+    public NoteDraftBean fetchDraft(String draftId) {
+        logger.debug("### Try to fetch draft with id={}", draftId);
+
+        // A missing or unavailable draft leaves the form as it is
+        try {
+            NoteDraftBean draft = noteProxy.getDraft(draftId);
+            logger.info("### Fetched draft with id={}", draftId);
+            return draft;
+        } catch (FeignException e) {
+            logger.info("### No draft fetched with id={} --> {}", draftId, e.status());
+            return null;
+        }
+    }
+
+    public void discardDraft(String draftId) {
+        logger.debug("### Try to discard draft with id={}", draftId);
+
+        // The note is already saved, a draft left behind expires on its own
+        try {
+            noteProxy.deleteDraft(draftId);
+            logger.info("### Discarded draft with id={}", draftId);
+        } catch (FeignException e) {
+            logger.error("### Failed to discard draft with id={} --> {}", draftId, e.getMessage());
+        }
+    }
 }
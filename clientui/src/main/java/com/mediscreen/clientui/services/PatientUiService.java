@@ -30,7 +30,8 @@ public class PatientUiService {
     public List<PatientBean> fetchAllPatients(String nameSearched) {
         logger.debug("### Try to fetch all patients");
 
-        List<PatientBean> allPatients = patientProxy.getAllPatients(nameSearched);
+        // Only the columns displayed in the patients list are needed
+        List<PatientBean> allPatients = patientProxy.getAllPatientSummaries(nameSearched);
 
         if(allPatients == null) {
             logger.info("### Fetched no patients");
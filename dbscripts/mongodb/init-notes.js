@@ -12,59 +12,64 @@ db.createUser(
 
 db.createCollection("notes");
 
+// Serves the notes of a patient from the latest one, also reconciled by the history service at startup
+db.notes.createIndex({patientId: 1, dateOfCreation: -1, _id: -1}, {name: "patientId_dateOfCreation_desc"});
+// Serves the full-text search of notes, content being stemmed in the language of each note
+db.notes.createIndex({content: "text"}, {name: "Note_TextIndex", default_language: "english", language_override: "language"});
+
 db.notes.insertMany([
     {
         patientId: 1,
-        dateOfCreation: "2023-07-01T08:00:00.000Z",
-        dateOfModification: "2023-07-01T08:00:00.000Z",
+        dateOfCreation: ISODate("2023-07-01T08:00:00.000Z"),
+        dateOfModification: ISODate("2023-07-01T08:00:00.000Z"),
         content: "Patient states that they are 'feeling terrific' Weight at or below recommended level"
     },
     {
         patientId: 2,
-        dateOfCreation: "2023-07-01T08:30:00.000Z",
-        dateOfModification: "2023-07-01T08:30:00.000Z",
+        dateOfCreation: ISODate("2023-07-01T08:30:00.000Z"),
+        dateOfModification: ISODate("2023-07-01T08:30:00.000Z"),
         content: "Patient states that they are feeling a great deal of stress at work Patient also complains that their hearing seems Abnormal as of late"
     },
     {
         patientId: 2,
-        dateOfCreation: "2023-07-08T08:30:00.000Z",
-        dateOfModification: "2023-07-08T08:30:00.000Z",
+        dateOfCreation: ISODate("2023-07-08T08:30:00.000Z"),
+        dateOfModification: ISODate("2023-07-08T08:30:00.000Z"),
         content: "Patient states that they have had a Reaction to medication within last 3 months Patient also complains that their hearing continues to be problematic"
     },
     {
         patientId: 3,
-        dateOfCreation: "2023-07-01T09:00:00.000Z",
-        dateOfModification: "2023-07-01T09:00:00.000Z",
+        dateOfCreation: ISODate("2023-07-01T09:00:00.000Z"),
+        dateOfModification: ISODate("2023-07-01T09:00:00.000Z"),
         content: "Patient states that they are short term Smoker "
     },
     {
         patientId: 3,
-        dateOfCreation: "2023-07-08T09:00:00.000Z",
-        dateOfModification: "2023-07-08T09:00:00.000Z",
+        dateOfCreation: ISODate("2023-07-08T09:00:00.000Z"),
+        dateOfModification: ISODate("2023-07-08T09:00:00.000Z"),
         content: "Patient states that they quit within last year Patient also complains that of Abnormal breathing spells Lab reports Cholesterol LDL high"
     },
     {
         patientId: 4,
-        dateOfCreation: "2023-07-01T09:30:00.000Z",
-        dateOfModification: "2023-07-01T09:30:00.000Z",
+        dateOfCreation: ISODate("2023-07-01T09:30:00.000Z"),
+        dateOfModification: ISODate("2023-07-01T09:30:00.000Z"),
         content: "Patient states that walking up stairs has become difficult Patient also complains that they are having shortness of breath Lab results indicate Antibodies present elevated Reaction to medication"
     },
     {
         patientId: 4,
-        dateOfCreation: "2023-07-08T09:30:00.000Z",
-        dateOfModification: "2023-07-08T09:30:00.000Z",
+        dateOfCreation: ISODate("2023-07-08T09:30:00.000Z"),
+        dateOfModification: ISODate("2023-07-08T09:30:00.000Z"),
         content: "Patient states that they are experiencing back pain when seated for a long time"
     },
     {
         patientId: 4,
-        dateOfCreation: "2023-07-15T09:30:00.000Z",
-        dateOfModification: "2023-07-15T09:30:00.000Z",
+        dateOfCreation: ISODate("2023-07-15T09:30:00.000Z"),
+        dateOfModification: ISODate("2023-07-15T09:30:00.000Z"),
         content: "Patient states that they are a short term Smoker Hemoglobin A1C above recommended level"
     },
     {
         patientId: 4,
-        dateOfCreation: "2023-07-22T09:30:00.000Z",
-        dateOfModification: "2023-07-22T09:30:00.000Z",
+        dateOfCreation: ISODate("2023-07-22T09:30:00.000Z"),
+        dateOfModification: ISODate("2023-07-22T09:30:00.000Z"),
         content: "Patient states that Body Height, Body Weight, Cholesterol, Dizziness and Reaction"
     }
 ]);
\ No newline at end of file
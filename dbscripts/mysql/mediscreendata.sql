@@ -6,7 +6,21 @@ CREATE TABLE patients (
   date_of_birth DATE NOT NULL,
   gender CHAR(1) NOT NULL,
   address VARCHAR(100) DEFAULT NULL,
-  phone_number VARCHAR(15) DEFAULT NULL
+  phone_number VARCHAR(15) DEFAULT NULL,
+  version BIGINT NOT NULL DEFAULT 1,
+  updated_at DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+  INDEX idx_patients_updated_at_id (updated_at, id),
+  INDEX idx_patients_gender_date_of_birth (gender, date_of_birth),
+  INDEX idx_patients_date_of_birth (date_of_birth),
+  INDEX idx_patients_last_name_first_name_date_of_birth (last_name, first_name, date_of_birth),
+  INDEX idx_patients_phone_number (phone_number)
+);
+
+CREATE TABLE patient_tombstones (
+  patient_id INT NOT NULL PRIMARY KEY,
+  version BIGINT NOT NULL,
+  deleted_at DATETIME(6) NOT NULL,
+  INDEX idx_patient_tombstones_deleted_at_patient_id (deleted_at, patient_id)
 );
 
 -- Insert data
@@ -0,0 +1,9 @@
+-- Upgrades a database created before the patient change feed.
+-- Hibernate adds the version and updated_at columns as nullable to the existing patients, which would never show up
+-- in the change feed. They are stamped as changed now, so that consumers get them once.
+UPDATE patients SET version = 1 WHERE version IS NULL OR version = 0;
+UPDATE patients SET updated_at = CURRENT_TIMESTAMP(6) WHERE updated_at IS NULL;
+ALTER TABLE patients
+  MODIFY version BIGINT NOT NULL DEFAULT 1,
+  MODIFY updated_at DATETIME(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6);
+COMMIT;
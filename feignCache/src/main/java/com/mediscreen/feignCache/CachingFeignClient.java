@@ -0,0 +1,300 @@
+package com.mediscreen.feignCache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import feign.Client;
+import feign.Request;
+import feign.RequestTemplate;
+import feign.Response;
+import feign.Util;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP client of all the Feign proxies of the services depending on this module, keeping the bodies of their GET
+ * responses in a bounded in-memory cache, enabled with the mediscreen.feign.cache.enabled property.
+ * <p>
+ * A response carrying an ETag or a Last-Modified header is cached by url. The next GET of the same url sends them back
+ * in If-None-Match and If-Modified-Since, and the cached body is served when the service answers 304 Not Modified, so
+ * that only changed bodies are downloaded again. The cache is limited to an estimated number of bytes, the least used
+ * responses being evicted first.
+ * <p>
+ * The hits and misses of each proxy are published as the feign.cache.requests metric, the bytes which didn't have to
+ * be downloaded as feign.cache.bytes.saved and the share of hits as feign.cache.hit.ratio, all tagged with the proxy.
+ */
+public class CachingFeignClient implements Client {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingFeignClient.class);
+
+    static final String CACHE_NAME = "feignResponses";
+
+    /**
+     * Estimated size of a cache entry apart from its url and body: headers, validators and object headers.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 500;
+
+    private final Client delegate;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final Cache<String, CachedResponse> responsesByUrl;
+    private final Map<String, ProxyCacheStats> statsByProxy = new ConcurrentHashMap<>();
+
+    /**
+     * Instantiates a new caching Feign client sending the requests over HttpURLConnection.
+     *
+     * @param meterRegistry  the registry the metrics of the cache are published to
+     * @param enabled        whether the responses have to be cached
+     * @param maxBytes       the estimated memory the cached responses may use, in bytes
+     */
+    @Autowired
+    public CachingFeignClient(MeterRegistry meterRegistry,
+                              @Value("${mediscreen.feign.cache.enabled:false}") boolean enabled,
+                              @Value("${mediscreen.feign.cache.max-bytes:16777216}") long maxBytes) {
+        this(new Client.Default(null, null), meterRegistry, enabled, maxBytes);
+    }
+
+    /**
+     * Instantiates a new caching Feign client sending the requests with the given client.
+     *
+     * @param delegate       the client sending the requests
+     * @param meterRegistry  the registry the metrics of the cache are published to
+     * @param enabled        whether the responses have to be cached
+     * @param maxBytes       the estimated memory the cached responses may use, in bytes
+     */
+    CachingFeignClient(Client delegate, MeterRegistry meterRegistry, boolean enabled, long maxBytes) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.responsesByUrl = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(CachingFeignClient::weigh)
+                .recordStats()
+                // Evicts on the calling thread rather than later in the common pool, so that the ceiling is kept at all times
+                .executor(Runnable::run)
+                .build();
+        if (enabled) {
+            CaffeineCacheMetrics.monitor(meterRegistry, responsesByUrl, CACHE_NAME);
+            logger.info("### Responses of Feign proxies cached up to {} bytes", maxBytes);
+        }
+    }
+
+
+    // === EXECUTE ============================================================
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        if (!enabled || request.httpMethod() != Request.HttpMethod.GET) {
+            return delegate.execute(request, options);
+        }
+        // The proxies always send the same headers for a given url, which is then enough to tell responses apart
+        String url = request.url();
+        ProxyCacheStats proxyStats = statsOf(proxyNameOf(request));
+        CachedResponse cachedResponse = responsesByUrl.getIfPresent(url);
+
+        Response response = delegate.execute(cachedResponse == null ? request : withValidators(request, cachedResponse), options);
+
+        if (cachedResponse != null && response.status() == HttpStatus.NOT_MODIFIED.value()) {
+            response.close();
+            proxyStats.hit(cachedResponse.body.length);
+            logger.debug("### GET {} not modified --> {} cached bytes served", url, cachedResponse.body.length);
+            return cachedResponse.toResponse(request);
+        }
+        proxyStats.miss();
+
+        String eTag = firstHeader(response, HttpHeaders.ETAG);
+        String lastModified = firstHeader(response, HttpHeaders.LAST_MODIFIED);
+        if (response.status() != HttpStatus.OK.value() || response.body() == null || (eTag == null && lastModified == null)) {
+            responsesByUrl.invalidate(url);
+            return response;
+        }
+
+        byte[] body;
+        try (Response downloadedResponse = response; InputStream bodyStream = downloadedResponse.body().asInputStream()) {
+            body = Util.toByteArray(bodyStream);
+        }
+        CachedResponse responseToCache = new CachedResponse(response.status(), response.reason(), cacheableHeaders(response), body, eTag, lastModified);
+        responsesByUrl.put(url, responseToCache);
+        logger.debug("### GET {} cached --> {} bytes, ETag {}, Last-Modified {}", url, body.length, eTag, lastModified);
+        return responseToCache.toResponse(request);
+    }
+
+    // === STATISTICS =========================================================
+
+    /**
+     * Returns the statistics of the cached responses of a proxy.
+     *
+     * @param proxyName  the simple name of the proxy interface, as NoteProxy
+     * @return           the statistics of the proxy, empty if it didn't send any GET yet
+     */
+    public ProxyCacheStats stats(String proxyName) {
+        return statsByProxy.getOrDefault(proxyName, new ProxyCacheStats());
+    }
+
+    /**
+     * Returns the estimated memory used by the cached responses.
+     *
+     * @return  the estimated size of the cached responses in bytes
+     */
+    public long weightedSize() {
+        return responsesByUrl.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    private ProxyCacheStats statsOf(String proxyName) {
+        return statsByProxy.computeIfAbsent(proxyName, name -> {
+            ProxyCacheStats stats = new ProxyCacheStats();
+            FunctionCounter.builder("feign.cache.requests", stats, proxyStats -> proxyStats.hits.sum())
+                    .tag("proxy", name).tag("result", "hit")
+                    .description("GET requests of the proxy answered from the cache after revalidation")
+                    .register(meterRegistry);
+            FunctionCounter.builder("feign.cache.requests", stats, proxyStats -> proxyStats.misses.sum())
+                    .tag("proxy", name).tag("result", "miss")
+                    .description("GET requests of the proxy whose body had to be downloaded")
+                    .register(meterRegistry);
+            FunctionCounter.builder("feign.cache.bytes.saved", stats, proxyStats -> proxyStats.bytesSaved.sum())
+                    .tag("proxy", name).baseUnit("bytes")
+                    .description("Bytes of bodies of the proxy served from the cache instead of being downloaded")
+                    .register(meterRegistry);
+            Gauge.builder("feign.cache.hit.ratio", stats, ProxyCacheStats::hitRatio)
+                    .tag("proxy", name)
+                    .description("Share of the GET requests of the proxy answered from the cache")
+                    .register(meterRegistry);
+            return stats;
+        });
+    }
+
+    // ========================================================================
+
+    private static String proxyNameOf(Request request) {
+        RequestTemplate requestTemplate = request.requestTemplate();
+        if (requestTemplate == null || requestTemplate.feignTarget() == null) {
+            return "unknown";
+        }
+        return requestTemplate.feignTarget().type().getSimpleName();
+    }
+
+    private static Request withValidators(Request request, CachedResponse cachedResponse) {
+        Map<String, Collection<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(request.headers());
+        if (cachedResponse.eTag != null) {
+            headers.put(HttpHeaders.IF_NONE_MATCH, List.of(cachedResponse.eTag));
+        }
+        if (cachedResponse.lastModified != null) {
+            headers.put(HttpHeaders.IF_MODIFIED_SINCE, List.of(cachedResponse.lastModified));
+        }
+        return Request.create(request.httpMethod(), request.url(), headers, request.body(), request.charset(), request.requestTemplate());
+    }
+
+    private static String firstHeader(Response response, String name) {
+        Collection<String> values = response.headers().get(name);
+        return values == null || values.isEmpty() ? null : values.iterator().next();
+    }
+
+    /**
+     * Returns the headers of a response, without those describing the body as it was sent, since the client already
+     * decompressed it.
+     */
+    private static Map<String, Collection<String>> cacheableHeaders(Response response) {
+        Map<String, Collection<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(response.headers());
+        headers.remove(HttpHeaders.CONTENT_ENCODING);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.remove(HttpHeaders.TRANSFER_ENCODING);
+        return headers;
+    }
+
+    private static int weigh(String url, CachedResponse cachedResponse) {
+        return ENTRY_OVERHEAD_BYTES + 2 * url.length() + cachedResponse.body.length;
+    }
+
+    /**
+     * Response kept in the cache, with the validators to send back to the service.
+     */
+    private static final class CachedResponse {
+
+        private final int status;
+        private final String reason;
+        private final Map<String, Collection<String>> headers;
+        private final byte[] body;
+        private final String eTag;
+        private final String lastModified;
+
+        private CachedResponse(int status, String reason, Map<String, Collection<String>> headers, byte[] body, String eTag, String lastModified) {
+            this.status = status;
+            this.reason = reason;
+            this.headers = headers;
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        private Response toResponse(Request request) {
+            return Response.builder()
+                    .status(status)
+                    .reason(reason)
+                    .headers(headers)
+                    .body(body)
+                    .request(request)
+                    .build();
+        }
+    }
+
+    /**
+     * Statistics of the cached responses of a proxy.
+     */
+    public static final class ProxyCacheStats {
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder bytesSaved = new LongAdder();
+
+        private void hit(long savedBytes) {
+            hits.increment();
+            bytesSaved.add(savedBytes);
+        }
+
+        private void miss() {
+            misses.increment();
+        }
+
+        public long hitCount() {
+            return hits.sum();
+        }
+
+        public long missCount() {
+            return misses.sum();
+        }
+
+        public long bytesSaved() {
+            return bytesSaved.sum();
+        }
+
+        /**
+         * Returns the share of the GET requests answered from the cache.
+         *
+         * @return  the ratio of hits to requests, 0 if no request was sent
+         */
+        public double hitRatio() {
+            long hitCount = hits.sum();
+            long requestCount = hitCount + misses.sum();
+            return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+        }
+    }
+
+}
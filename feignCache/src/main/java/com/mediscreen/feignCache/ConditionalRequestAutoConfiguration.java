@@ -0,0 +1,35 @@
+package com.mediscreen.feignCache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+
+/**
+ * Answers the conditional GETs sent by the Feign clients of the other services, in the services depending on this
+ * module which list the endpoints to answer in mediscreen.etag.url-patterns.
+ */
+@AutoConfiguration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(prefix = "mediscreen.etag", name = "url-patterns")
+public class ConditionalRequestAutoConfiguration {
+
+    /**
+     * Creates the filter adding to the GET responses of the given endpoints an ETag computed from their body, and answering
+     * 304 Not Modified without a body when it matches the If-None-Match header of the request. The response is still
+     * built, but only changed bodies are sent over the network.
+     *
+     * @param urlPatterns  the url patterns of the endpoints, from mediscreen.etag.url-patterns
+     * @return             the filter registration, limited to the given endpoints
+     */
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> shallowEtagHeaderFilter(@Value("${mediscreen.etag.url-patterns}") String[] urlPatterns) {
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration = new FilterRegistrationBean<>(new ShallowEtagHeaderFilter());
+        registration.addUrlPatterns(urlPatterns);
+        return registration;
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.mediscreen.feignCache;
+
+import feign.Client;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Registers the caching client of the Feign proxies in the services depending on this module, without them having
+ * to scan its package. Skipped by the services without Feign proxies, which only use this module to answer conditional GETs.
+ */
+@AutoConfiguration
+@ConditionalOnClass(Client.class)
+@Import(CachingFeignClient.class)
+public class FeignCacheAutoConfiguration {
+}
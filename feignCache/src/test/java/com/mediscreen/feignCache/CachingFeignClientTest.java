@@ -0,0 +1,158 @@
+package com.mediscreen.feignCache;
+
+import feign.Client;
+import feign.Request;
+import feign.RequestTemplate;
+import feign.Response;
+import feign.Target;
+import feign.Util;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that the responses of the Feign proxies are cached, revalidated and served again as expected.
+ */
+public class CachingFeignClientTest {
+
+    // Stand for the proxies of the services, by which the statistics are kept
+    interface NoteProxy {
+    }
+
+    interface PatientProxy {
+    }
+
+    private static final String NOTES_PAGE_URL = "http://history-ms:8082/patHistories/page?patientId=1&size=20";
+    private static final String NOTES_PAGE_BODY = "{\"notes\":[{\"id\":\"generatedId1\",\"content\":\"Smoker\"}],\"hasMore\":false}";
+
+    private final Client delegate = mock(Client.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CachingFeignClient clientUnderTest;
+
+    @BeforeEach
+    void setUp() {
+        clientUnderTest = new CachingFeignClient(delegate, meterRegistry, true, 1_000_000);
+    }
+
+    // === TEST EXECUTE =======================================================
+    @Test
+    void execute_shouldServeCachedBody_whenServiceAnswersNotModified() throws IOException {
+        when(delegate.execute(any(Request.class), any()))
+                .thenReturn(response(200, Map.of("ETag", List.of("\"1-abc\"")), NOTES_PAGE_BODY))
+                .thenReturn(response(304, Map.of("ETag", List.of("\"1-abc\"")), null));
+
+        Response firstResponse = clientUnderTest.execute(get(NoteProxy.class, NOTES_PAGE_URL), new Request.Options());
+        String firstBody = bodyOf(firstResponse);
+        Response secondResponse = clientUnderTest.execute(get(NoteProxy.class, NOTES_PAGE_URL), new Request.Options());
+        String secondBody = bodyOf(secondResponse);
+
+        ArgumentCaptor<Request> sentRequests = ArgumentCaptor.forClass(Request.class);
+        verify(delegate, times(2)).execute(sentRequests.capture(), any());
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(firstBody).as("First body").isEqualTo(NOTES_PAGE_BODY);
+            softly.assertThat(secondResponse.status()).as("Second status").isEqualTo(200);
+            softly.assertThat(secondBody).as("Second body").isEqualTo(NOTES_PAGE_BODY);
+            softly.assertThat(sentRequests.getAllValues().get(0).headers()).as("First request headers").doesNotContainKey("If-None-Match");
+            softly.assertThat(sentRequests.getAllValues().get(1).headers().get("If-None-Match")).as("Second request If-None-Match")
+                    .containsExactly("\"1-abc\"");
+            softly.assertThat(clientUnderTest.stats("NoteProxy").hitCount()).as("Hits").isEqualTo(1);
+            softly.assertThat(clientUnderTest.stats("NoteProxy").missCount()).as("Misses").isEqualTo(1);
+            softly.assertThat(clientUnderTest.stats("NoteProxy").bytesSaved()).as("Bytes saved").isEqualTo(NOTES_PAGE_BODY.length());
+            softly.assertThat(clientUnderTest.stats("NoteProxy").hitRatio()).as("Hit ratio").isEqualTo(0.5);
+            softly.assertThat(meterRegistry.get("feign.cache.bytes.saved").tag("proxy", "NoteProxy").functionCounter().count())
+                    .as("Bytes saved metric").isEqualTo(NOTES_PAGE_BODY.length());
+        });
+    }
+
+    @Test
+    void execute_shouldDownloadAndCacheNewBody_whenServiceAnswersModified() throws IOException {
+        String changedBody = "{\"notes\":[],\"hasMore\":false}";
+        when(delegate.execute(any(Request.class), any()))
+                .thenReturn(response(200, Map.of("Last-Modified", List.of("Sat, 31 Dec 2022 08:20:00 GMT")), NOTES_PAGE_BODY))
+                .thenReturn(response(200, Map.of("Last-Modified", List.of("Sun, 01 Jan 2023 08:20:00 GMT")), changedBody))
+                .thenReturn(response(304, Map.of(), null));
+
+        clientUnderTest.execute(get(NoteProxy.class, NOTES_PAGE_URL), new Request.Options());
+        String downloadedBody = bodyOf(clientUnderTest.execute(get(NoteProxy.class, NOTES_PAGE_URL), new Request.Options()));
+        String cachedBody = bodyOf(clientUnderTest.execute(get(NoteProxy.class, NOTES_PAGE_URL), new Request.Options()));
+
+        ArgumentCaptor<Request> sentRequests = ArgumentCaptor.forClass(Request.class);
+        verify(delegate, times(3)).execute(sentRequests.capture(), any());
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(downloadedBody).as("Changed body").isEqualTo(changedBody);
+            softly.assertThat(cachedBody).as("Cached body").isEqualTo(changedBody);
+            softly.assertThat(sentRequests.getAllValues().get(2).headers().get("If-Modified-Since")).as("Third request If-Modified-Since")
+                    .containsExactly("Sun, 01 Jan 2023 08:20:00 GMT");
+            softly.assertThat(clientUnderTest.stats("NoteProxy").missCount()).as("Misses").isEqualTo(2);
+        });
+    }
+
+    @Test
+    void execute_shouldNotCacheResponsesWithoutValidators_norOtherMethods() throws IOException {
+        when(delegate.execute(any(Request.class), any()))
+                .thenAnswer(invocation -> response(200, Map.of(), "[]"));
+        Request delete = Request.create(Request.HttpMethod.DELETE, "http://patient-ms:8081/patients/1", Map.of(), null, StandardCharsets.UTF_8,
+                template(PatientProxy.class));
+
+        clientUnderTest.execute(get(PatientProxy.class, "http://patient-ms:8081/patients"), new Request.Options());
+        clientUnderTest.execute(get(PatientProxy.class, "http://patient-ms:8081/patients"), new Request.Options());
+        clientUnderTest.execute(delete, new Request.Options());
+
+        ArgumentCaptor<Request> sentRequests = ArgumentCaptor.forClass(Request.class);
+        verify(delegate, times(3)).execute(sentRequests.capture(), any());
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(sentRequests.getAllValues().get(1).headers()).as("Second request headers")
+                    .doesNotContainKeys("If-None-Match", "If-Modified-Since");
+            softly.assertThat(clientUnderTest.stats("PatientProxy").missCount()).as("Misses").isEqualTo(2);
+            softly.assertThat(clientUnderTest.weightedSize()).as("Cached bytes").isZero();
+        });
+    }
+
+    @Test
+    void execute_shouldEvictLeastUsedResponses_whenCacheIsFull() throws IOException {
+        CachingFeignClient smallClient = new CachingFeignClient(delegate, meterRegistry, true, 3_000);
+        when(delegate.execute(any(Request.class), any()))
+                .thenAnswer(invocation -> response(200, Map.of("ETag", List.of("\"1\"")), "x".repeat(1_000)));
+
+        for (int patientId = 1; patientId <= 5; patientId++) {
+            smallClient.execute(get(NoteProxy.class, "http://history-ms:8082/patHistories/page?patientId=" + patientId), new Request.Options());
+        }
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(smallClient.weightedSize()).as("Cached bytes").isLessThanOrEqualTo(3_000));
+    }
+
+    // ========================================================================
+
+    private static Request get(Class<?> proxyType, String url) {
+        return Request.create(Request.HttpMethod.GET, url, Map.of("Accept", List.of("application/json")), null, StandardCharsets.UTF_8,
+                template(proxyType));
+    }
+
+    private static RequestTemplate template(Class<?> proxyType) {
+        return new RequestTemplate().feignTarget(new Target.HardCodedTarget<>(proxyType, "http://localhost"));
+    }
+
+    private static Response response(int status, Map<String, Collection<String>> headers, String body) {
+        Response.Builder builder = Response.builder()
+                .status(status)
+                .headers(headers)
+                .request(Request.create(Request.HttpMethod.GET, NOTES_PAGE_URL, Map.of(), null, StandardCharsets.UTF_8, null));
+        return body == null ? builder.build() : builder.body(body, StandardCharsets.UTF_8).build();
+    }
+
+    private static String bodyOf(Response response) throws IOException {
+        return Util.toString(response.body().asReader(StandardCharsets.UTF_8));
+    }
+
+}
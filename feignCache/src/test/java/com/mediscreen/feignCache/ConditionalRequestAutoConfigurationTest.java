@@ -0,0 +1,30 @@
+package com.mediscreen.feignCache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.WebApplicationContextRunner;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that the ETag filter is registered for the configured endpoints only.
+ */
+public class ConditionalRequestAutoConfigurationTest {
+
+    private final WebApplicationContextRunner contextRunner = new WebApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(ConditionalRequestAutoConfiguration.class));
+
+    @Test
+    void shallowEtagHeaderFilter_shouldBeRegisteredForConfiguredUrlPatterns() {
+        contextRunner.withPropertyValues("mediscreen.etag.url-patterns=/patients/*,/assess/*")
+                .run(context -> assertThat(context.getBean(FilterRegistrationBean.class).getUrlPatterns())
+                        .as("Url patterns").containsExactly("/patients/*", "/assess/*"));
+    }
+
+    @Test
+    void shallowEtagHeaderFilter_shouldNotBeRegistered_whenNoUrlPatternIsConfigured() {
+        contextRunner.run(context -> assertThat(context).as("Context").doesNotHaveBean(FilterRegistrationBean.class));
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.mediscreen.patientAssessment.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@AllArgsConstructor
+@Getter
+@ToString
+public class NotePageBean {
+
+    private List<NoteBean> notes;
+    private String nextCursor;
+    private boolean hasMore;
+
+}
@@ -0,0 +1,17 @@
+package com.mediscreen.patientAssessment.beans;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@AllArgsConstructor
+@Getter
+@ToString
+public class PatientTriggerTermsBean {
+
+    private Integer patientId;
+    private List<String> terms;
+
+}
@@ -1,6 +1,7 @@
 package com.mediscreen.patientAssessment.proxies;
 
-import com.mediscreen.patientAssessment.beans.NoteBean;
+import com.mediscreen.patientAssessment.beans.NotePageBean;
+import com.mediscreen.patientAssessment.beans.PatientTriggerTermsBean;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,7 +14,14 @@ import java.util.List;
 @Component
 public interface MicroserviceNoteProxy {
 
-    @GetMapping({"/patHistories"})
-    List<NoteBean> getAllNotesByPatientId(@RequestParam(value = "patientId") Integer patientId);
+    @GetMapping({"/patHistories/page"})
+    NotePageBean getNotesPageByPatientId(@RequestParam(value = "patientId") Integer patientId,
+                                         @RequestParam(value = "cursor", required = false) String cursor,
+                                         @RequestParam(value = "size") Integer size,
+                                         @RequestParam(value = "fullHistory") boolean fullHistory);
+
+    @GetMapping({"/patHistories/terms"})
+    List<PatientTriggerTermsBean> getTriggerTermsByPatientIds(@RequestParam(value = "patientIds") List<Integer> patientIds,
+                                                              @RequestParam(value = "terms") List<String> terms);
 
 }
@@ -2,7 +2,9 @@ package com.mediscreen.patientAssessment.services;
 
 import com.mediscreen.patientAssessment.beans.AssessmentDTO;
 import com.mediscreen.patientAssessment.beans.NoteBean;
+import com.mediscreen.patientAssessment.beans.NotePageBean;
 import com.mediscreen.patientAssessment.beans.PatientBean;
+import com.mediscreen.patientAssessment.beans.PatientTriggerTermsBean;
 import com.mediscreen.patientAssessment.constants.DiabetesTerminology;
 import com.mediscreen.patientAssessment.constants.RiskLevels;
 import com.mediscreen.patientAssessment.exceptions.PatientNotFoundException;
@@ -12,6 +14,7 @@ import feign.FeignException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -28,6 +31,11 @@ public class AssessmentService {
 
     private static final Logger logger = LoggerFactory.getLogger(AssessmentService.class);
 
+    /**
+     * Number of notes retrieved per call to the history service.
+     */
+    private static final int NOTES_PAGE_SIZE = 50;
+
     /**
      * Component that manages operations related to the retrieval of patient personal data.
      */
@@ -38,16 +46,24 @@ public class AssessmentService {
      */
     private final MicroserviceNoteProxy microserviceNoteProxy;
 
+    /**
+     * Whether trigger terms are looked for by the history service inside its database rather than in the notes it returns.
+     */
+    private final boolean findTermsInHistory;
+
     /**
      * Instantiates a new assessment service.
      *
      * @param microservicePatientProxy  the proxy linked to patient data
      * @param microserviceNoteProxy     the proxy linked to patient notes history
+     * @param findTermsInHistory        whether trigger terms are looked for by the history service rather than in the notes it returns
      */
     @Autowired
-    public AssessmentService(MicroservicePatientProxy microservicePatientProxy, MicroserviceNoteProxy microserviceNoteProxy) {
+    public AssessmentService(MicroservicePatientProxy microservicePatientProxy, MicroserviceNoteProxy microserviceNoteProxy,
+                             @Value("${mediscreen.assessment.find-terms-in-history:false}") boolean findTermsInHistory) {
         this.microservicePatientProxy = microservicePatientProxy;
         this.microserviceNoteProxy = microserviceNoteProxy;
+        this.findTermsInHistory = findTermsInHistory;
     }
 
 
@@ -65,8 +81,7 @@ public class AssessmentService {
 
         Integer patientAge = calculateAgeFromDateOfBirth(patientInfo.getDateOfBirth());
 
-        List<NoteBean> patientNotes = retrieveNotesByPatientId(patientId);
-        Integer patientTriggers = countTriggerTermsPresentInList(patientNotes);
+        Integer patientTriggers = countTriggerTermsOfPatient(patientId);
 
         String diabetesRiskLevel = determineDiabetesRiskLevel(patientInfo.getGender(), patientAge, patientTriggers);
 
@@ -88,14 +103,19 @@ public class AssessmentService {
         List<AssessmentDTO> assessmentDTOList = new ArrayList<>();
 
         List<PatientBean> patientsWithSameName = retrievePatientByLastName(lastName);
+        // Terms of all the patients are found by a single call when the history service looks for them
+        Map<Integer, Integer> triggersByPatient = findTermsInHistory && !patientsWithSameName.isEmpty()
+                ? countTriggerTermsOfPatients(patientsWithSameName.stream().map(PatientBean::getId).collect(Collectors.toList()))
+                : null;
 
         for (PatientBean patient : patientsWithSameName) {
             PatientBean patientInfo = retrievePatientById(patient.getId());
 
             Integer patientAge = calculateAgeFromDateOfBirth(patientInfo.getDateOfBirth());
 
-            List<NoteBean> patientNotes = retrieveNotesByPatientId(patient.getId());
-            Integer patientTriggers = countTriggerTermsPresentInList(patientNotes);
+            Integer patientTriggers = triggersByPatient != null
+                    ? triggersByPatient.getOrDefault(patient.getId(), 0)
+                    : countTriggerTermsOfPatient(patient.getId());
 
             String diabetesRiskLevel = determineDiabetesRiskLevel(patientInfo.getGender(), patientAge, patientTriggers);
 
@@ -172,25 +192,26 @@ public class AssessmentService {
         return age.getYears();
     }
 
-    // === RETRIEVE NOTES OF PATIENT BY PATIENT ID ============================
+    // === RETRIEVE PAGE OF NOTES OF PATIENT BY PATIENT ID ====================
 
     /**
-     * Retrieves all notes related to a given patient.
+     * Retrieves a page of the notes related to a given patient, archived ones included since the risk depends on all of them.
      *
      * @param patientId  the id of the patient whose notes we wish to retrieve
-     * @return           the list of all notes of the patient with the given id
+     * @param cursor     the cursor returned with the previous page, or null to get the first page
+     * @return           the page of notes of the patient with the given id
      */
-    public List<NoteBean> retrieveNotesByPatientId(final Integer patientId) {
-        logger.debug("### Try to retrieve notes of patient with id={}", patientId);
+    public NotePageBean retrieveNotesPageByPatientId(final Integer patientId, final String cursor) {
+        logger.debug("### Try to retrieve page of notes of patient with id={} after cursor '{}'", patientId, cursor);
 
-        List<NoteBean> patientNotes;
+        NotePageBean notesPage;
 
         try {
-            patientNotes = microserviceNoteProxy.getAllNotesByPatientId(patientId);
+            notesPage = microserviceNoteProxy.getNotesPageByPatientId(patientId, cursor, NOTES_PAGE_SIZE, true);
 
-            if(patientNotes == null) {
+            if(notesPage == null || notesPage.getNotes() == null) {
                 logger.info("### Fetched no notes");
-                return new ArrayList<>();
+                return new NotePageBean(new ArrayList<>(), null, false);
             }
 
         } catch (FeignException e) {
@@ -198,12 +219,70 @@ public class AssessmentService {
             throw new PatientNotFoundException("Patient not found with id=" + patientId);
         }
 
-        logger.info("### Notes returned --> {}", patientNotes);
-        return patientNotes;
+        logger.info("### Page of {} notes returned", notesPage.getNotes().size());
+        return notesPage;
     }
 
     // === COUNT TRIGGER TERMS ================================================
 
+    /**
+     * Counts the number of trigger terms found in all the notes of a patient.
+     * Notes are retrieved page by page, only the terms found so far are kept between pages, unless the history service
+     * is asked to look for the terms itself.
+     *
+     * @param patientId  the id of the patient whose notes are searched
+     * @return           the number of terms found
+     */
+    public int countTriggerTermsOfPatient(Integer patientId) {
+        if (findTermsInHistory) {
+            return countTriggerTermsOfPatients(List.of(patientId)).getOrDefault(patientId, 0);
+        }
+        logger.debug("### Try to count number of trigger terms present in notes of patient with id={}", patientId);
+
+        Set<String> allTerminology = allTerminology();
+        Set<String> triggerTermsFound = new TreeSet<>();
+        String cursor = null;
+
+        do {
+            NotePageBean notesPage = retrieveNotesPageByPatientId(patientId, cursor);
+            collectTriggerTermsPresentInList(notesPage.getNotes(), allTerminology, triggerTermsFound);
+            cursor = notesPage.isHasMore() ? notesPage.getNextCursor() : null;
+            // No need to read older notes once every term has been found
+        } while (cursor != null && triggerTermsFound.size() < allTerminology.size());
+
+        logger.info("### Trigger terms found --> {}", triggerTermsFound);
+        logger.info("### Number of trigger terms returned --> {}", triggerTermsFound.size());
+        return triggerTermsFound.size();
+    }
+
+    /**
+     * Counts the number of trigger terms found in all the notes of several patients by asking the history service to look
+     * for them inside its database, which returns the found terms only. Terms are matched whatever their case and
+     * accents, an english term and its french translation spelled the same way once accents are removed counting once.
+     *
+     * @param patientIds  the ids of the patients whose notes are searched
+     * @return            the number of terms found for each patient
+     */
+    public Map<Integer, Integer> countTriggerTermsOfPatients(List<Integer> patientIds) {
+        logger.debug("### Try to find trigger terms present in notes of patients with ids={}", patientIds);
+
+        List<PatientTriggerTermsBean> patientsTerms;
+        try {
+            patientsTerms = microserviceNoteProxy.getTriggerTermsByPatientIds(patientIds,
+                    Stream.of(DiabetesTerminology.values()).map(DiabetesTerminology::getTriggerTerm).collect(Collectors.toList()));
+        } catch (FeignException e) {
+            logger.error("### Failed to find trigger terms of patients with ids={}", patientIds);
+            throw new PatientNotFoundException("Patients not found with ids=" + patientIds);
+        }
+
+        Map<Integer, Integer> triggersByPatient = new HashMap<>();
+        for (PatientTriggerTermsBean patientTerms : patientsTerms) {
+            logger.info("### Trigger terms found for patient with id={} --> {}", patientTerms.getPatientId(), patientTerms.getTerms());
+            triggersByPatient.put(patientTerms.getPatientId(), patientTerms.getTerms().size());
+        }
+        return triggersByPatient;
+    }
+
     /**
      * Counts the number of trigger terms found in a list of notes.
      *
@@ -213,13 +292,25 @@ public class AssessmentService {
     public int countTriggerTermsPresentInList(List<NoteBean> allNotesOfPatient) {
         logger.debug("### Try to count number of trigger terms present in list of notes {}", allNotesOfPatient);
 
-        Set<String> allTerminology = Stream.of(DiabetesTerminology.values())
+        Set<String> triggerTermsFound = new TreeSet<>();
+        collectTriggerTermsPresentInList(allNotesOfPatient, allTerminology(), triggerTermsFound);
+
+        //logger.info("### Terminology --> {}", allTerminology);
+        //logger.info("### Terminology size --> {}", allTerminology.size());
+        logger.info("### Trigger terms found --> {}", triggerTermsFound);
+        logger.info("### Number of trigger terms returned --> {}", triggerTermsFound.size());
+        return triggerTermsFound.size();
+    }
+
+    private Set<String> allTerminology() {
+        return Stream.of(DiabetesTerminology.values())
                 .map(DiabetesTerminology::getTriggerTerm)
                 .collect(Collectors.toSet());
-        Set<String> triggerTermsFound = new TreeSet<>();
+    }
 
-        // For each note among all the notes of the patient ...
-        for (NoteBean noteOfPatient : allNotesOfPatient) {
+    private void collectTriggerTermsPresentInList(List<NoteBean> notes, Set<String> allTerminology, Set<String> triggerTermsFound) {
+        // For each note among the given notes of the patient ...
+        for (NoteBean noteOfPatient : notes) {
             String contentOfTheNote = noteOfPatient.getContent().toLowerCase();
             for(String triggerTerm : allTerminology) {
                 // ... we check whether a trigger term among all the terms of the terminology is present ...
@@ -229,11 +320,6 @@ public class AssessmentService {
                 }
             }
         }
-        //logger.info("### Terminology --> {}", allTerminology);
-        //logger.info("### Terminology size --> {}", allTerminology.size());
-        logger.info("### Trigger terms found --> {}", triggerTermsFound);
-        logger.info("### Number of trigger terms returned --> {}", triggerTermsFound.size());
-        return triggerTermsFound.size();
     }
 
     // === DETERMINE DIABETES RISK LEVEL ======================================
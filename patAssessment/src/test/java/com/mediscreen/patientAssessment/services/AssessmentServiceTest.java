@@ -2,18 +2,20 @@ package com.mediscreen.patientAssessment.services;
 
 import com.mediscreen.patientAssessment.beans.AssessmentDTO;
 import com.mediscreen.patientAssessment.beans.NoteBean;
+import com.mediscreen.patientAssessment.beans.NotePageBean;
 import com.mediscreen.patientAssessment.beans.PatientBean;
+import com.mediscreen.patientAssessment.beans.PatientTriggerTermsBean;
 import com.mediscreen.patientAssessment.constants.RiskLevels;
 import com.mediscreen.patientAssessment.exceptions.PatientNotFoundException;
 import com.mediscreen.patientAssessment.proxies.MicroserviceNoteProxy;
 import com.mediscreen.patientAssessment.proxies.MicroservicePatientProxy;
 import feign.FeignException;
 import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -22,22 +24,29 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.catchThrowable;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 public class AssessmentServiceTest {
 
-    @InjectMocks
     AssessmentService serviceUnderTest;
     @Mock
     MicroservicePatientProxy patientProxy;
     @Mock
     MicroserviceNoteProxy noteProxy;
 
+    @BeforeEach
+    void setUp() {
+        serviceUnderTest = new AssessmentService(patientProxy, noteProxy, false);
+    }
+
 
     // ========================================================================
 
@@ -109,43 +118,98 @@ public class AssessmentServiceTest {
     // ========================================================================
 
     @Test
-    void retrieveNotesByPatientId_shouldReturnListOfNotesOfPatientWithTheGivenIdSuccessfully() {
+    void retrieveNotesPageByPatientId_shouldReturnPageOfNotesOfPatientWithTheGivenIdSuccessfully() {
         int patientId = 1;
         NoteBean note1 = new NoteBean("IdOfTheNote1", 1, LocalDateTime.now(), LocalDateTime.now(), "Content of the note A");
         NoteBean note2 = new NoteBean("IdOfTheNote2", 1, LocalDateTime.now(), LocalDateTime.now(), "Content of the note B");
-        List<NoteBean> expectedNotes = Arrays.asList(note1, note2);
-        when(noteProxy.getAllNotesByPatientId(any(Integer.class))).thenReturn(expectedNotes);
+        NotePageBean expectedPage = new NotePageBean(Arrays.asList(note1, note2), "nextCursor", true);
+        when(noteProxy.getNotesPageByPatientId(any(Integer.class), any(), any(Integer.class), anyBoolean())).thenReturn(expectedPage);
 
-        List<NoteBean> actualResult = serviceUnderTest.retrieveNotesByPatientId(patientId);
+        NotePageBean actualResult = serviceUnderTest.retrieveNotesPageByPatientId(patientId, "previousCursor");
 
         SoftAssertions.assertSoftly(softly -> {
-            softly.assertThat(actualResult).as("Retrieved Notes list")
+            softly.assertThat(actualResult.getNotes()).as("Retrieved Notes list")
                     .isNotNull()
-                    .hasSize(expectedNotes.size())
-                    .contains(note1, note2);
-            softly.assertThat(actualResult.get(0).getContent()).as("Content of note1")
-                    .contains("note A");
-            softly.assertThat(actualResult.get(1).getContent()).as("Content of note2")
-                    .contains("note B");
+                    .containsExactly(note1, note2);
+            softly.assertThat(actualResult.getNextCursor()).as("Next cursor")
+                    .isEqualTo("nextCursor");
         });
-        verify(noteProxy).getAllNotesByPatientId(1);
+        verify(noteProxy).getNotesPageByPatientId(1, "previousCursor", 50, true);
     }
 
     @Test
-    void retrieveNotesByPatientId_shouldThrowAnException_whenGivenIdIsUnknown() {
+    void retrieveNotesPageByPatientId_shouldThrowAnException_whenGivenIdIsUnknown() {
         int unknownPatientId = 123;
-        when(noteProxy.getAllNotesByPatientId(any(Integer.class))).thenThrow(FeignException.class);
+        when(noteProxy.getNotesPageByPatientId(any(Integer.class), any(), any(Integer.class), anyBoolean())).thenThrow(FeignException.class);
 
-        Throwable actualResult = catchThrowable(() -> serviceUnderTest.retrieveNotesByPatientId(unknownPatientId));
+        Throwable actualResult = catchThrowable(() -> serviceUnderTest.retrieveNotesPageByPatientId(unknownPatientId, null));
 
         SoftAssertions.assertSoftly(softly -> softly.assertThat(actualResult).as("Thrown exception")
                 .isInstanceOf(PatientNotFoundException.class)
                 .hasMessageContaining("Patient not found"));
-        verify(noteProxy).getAllNotesByPatientId(123);
+        verify(noteProxy).getNotesPageByPatientId(123, null, 50, true);
     }
 
     // ========================================================================
 
+    @Test
+    void countTriggerTermsOfPatient_shouldCountTermsOfAllPages_whenNotesSpanSeveralPages() {
+        int patientId = 2;
+        NoteBean noteA = new NoteBean("IdOfTheNote2", 2, LocalDateTime.now(), LocalDateTime.now(), "Patient states that they are a Smoker");
+        NoteBean noteB = new NoteBean("IdOfTheNote3", 2, LocalDateTime.now(), LocalDateTime.now(), "Patient states that they have had a Reaction to medication, Smoker");
+        when(noteProxy.getNotesPageByPatientId(any(Integer.class), any(), any(Integer.class), anyBoolean()))
+                .thenReturn(new NotePageBean(List.of(noteA), "cursorAfterNoteA", true))
+                .thenReturn(new NotePageBean(List.of(noteB), null, false));
+
+        int actualResult = serviceUnderTest.countTriggerTermsOfPatient(patientId);
+
+        assertThat(actualResult).as("Number of trigger terms found").isEqualTo(2);
+        verify(noteProxy).getNotesPageByPatientId(2, null, 50, true);
+        verify(noteProxy).getNotesPageByPatientId(2, "cursorAfterNoteA", 50, true);
+    }
+
+    @Test
+    void countTriggerTermsOfPatient_shouldAskHistoryServiceForTermsWithoutReadingNotes_whenTermsAreFoundInHistory() {
+        AssessmentService historyTermsService = new AssessmentService(patientProxy, noteProxy, true);
+        when(noteProxy.getTriggerTermsByPatientIds(anyList(), anyList()))
+                .thenReturn(List.of(new PatientTriggerTermsBean(2, List.of("Smoker", "Reaction", "Anticorps"))));
+
+        int actualResult = historyTermsService.countTriggerTermsOfPatient(2);
+
+        assertThat(actualResult).isEqualTo(3);
+        verify(noteProxy).getTriggerTermsByPatientIds(eq(List.of(2)), argThat(terms -> terms.contains("Hémoglobine A1C") && terms.contains("Smoker")));
+        verify(noteProxy, never()).getNotesPageByPatientId(any(Integer.class), any(), any(Integer.class), anyBoolean());
+    }
+
+    @Test
+    void countTriggerTermsOfPatients_shouldThrowAnException_whenHistoryServiceFails() {
+        AssessmentService historyTermsService = new AssessmentService(patientProxy, noteProxy, true);
+        when(noteProxy.getTriggerTermsByPatientIds(anyList(), anyList())).thenThrow(FeignException.class);
+
+        Throwable actualResult = catchThrowable(() -> historyTermsService.countTriggerTermsOfPatients(List.of(1, 2)));
+
+        assertThat(actualResult).isInstanceOf(PatientNotFoundException.class);
+    }
+
+    @Test
+    void assessDiabetesRiskLevelByLastName_shouldFindTermsOfAllPatientsInOneCall_whenTermsAreFoundInHistory() {
+        AssessmentService historyTermsService = new AssessmentService(patientProxy, noteProxy, true);
+        PatientBean patient1 = new PatientBean(1, "TestNone", "Test", LocalDate.now().minusYears(52), "F", "1 Brookside St", "100-222-3333");
+        PatientBean patient2 = new PatientBean(2, "TestBorderline", "Test", LocalDate.now().minusYears(73), "M", "2 High St", "200-333-4444");
+        when(patientProxy.getAllPatients("Test")).thenReturn(List.of(patient1, patient2));
+        when(patientProxy.getPatientById(1)).thenReturn(patient1);
+        when(patientProxy.getPatientById(2)).thenReturn(patient2);
+        when(noteProxy.getTriggerTermsByPatientIds(anyList(), anyList()))
+                .thenReturn(List.of(new PatientTriggerTermsBean(1, List.of()), new PatientTriggerTermsBean(2, List.of("Smoker", "Abnormal"))));
+
+        List<AssessmentDTO> actualResult = historyTermsService.assessDiabetesRiskLevelByLastName("Test");
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(actualResult).as("Risk levels")
+                .extracting(AssessmentDTO::getDiabetesRiskLevelAssessment)
+                .containsExactly(RiskLevels.NONE.getRiskLevel(), RiskLevels.BORDERLINE.getRiskLevel()));
+        verify(noteProxy, times(1)).getTriggerTermsByPatientIds(eq(List.of(1, 2)), anyList());
+    }
+
     @Test
     void countTriggerTermsPresentInList_shouldReturnNumberOfTriggerTermsPresent() {
         NoteBean note1 = new NoteBean("idOfTheNote1", 123, LocalDateTime.now(), LocalDateTime.now(), "Le patient s'est plaint de son POIDS. Taux CHOLESTÉROL normal");
@@ -235,7 +299,7 @@ public class AssessmentServiceTest {
         NoteBean note = new NoteBean("IdOfTheNote1", 1, LocalDateTime.now(), LocalDateTime.now(), "Patient states that they are 'feeling terrific' Weight at or below recommended level");
         List<NoteBean> notesOfPatientNone = List.of(note);
         when(patientProxy.getPatientById(any(Integer.class))).thenReturn(patientNone);
-        when(noteProxy.getAllNotesByPatientId(any(Integer.class))).thenReturn(notesOfPatientNone);
+        when(noteProxy.getNotesPageByPatientId(any(Integer.class), any(), any(Integer.class), anyBoolean())).thenReturn(new NotePageBean(notesOfPatientNone, null, false));
 
         AssessmentDTO actualResult = serviceUnderTest.assessDiabetesRiskLevelByPatientId(patientId);
 
@@ -249,7 +313,7 @@ public class AssessmentServiceTest {
                     .isEqualTo(RiskLevels.NONE.getRiskLevel());
         });
         verify(patientProxy).getPatientById(1);
-        verify(noteProxy).getAllNotesByPatientId(1);
+        verify(noteProxy).getNotesPageByPatientId(1, null, 50, true);
     }
 
     @Test
@@ -261,7 +325,7 @@ public class AssessmentServiceTest {
         NoteBean noteB = new NoteBean("IdOfTheNote3", 2, LocalDateTime.now(), LocalDateTime.now(), "Patient states that they have had a Reaction to medication within last 3 months Patient also complains that their hearing continues to be problematic");
         List<NoteBean> notesOfPatientBorderLine = List.of(noteA, noteB);
         when(patientProxy.getPatientById(any(Integer.class))).thenReturn(patientBorderline);
-        when(noteProxy.getAllNotesByPatientId(any(Integer.class))).thenReturn(notesOfPatientBorderLine);
+        when(noteProxy.getNotesPageByPatientId(any(Integer.class), any(), any(Integer.class), anyBoolean())).thenReturn(new NotePageBean(notesOfPatientBorderLine, null, false));
 
         AssessmentDTO actualResult = serviceUnderTest.assessDiabetesRiskLevelByPatientId(patientId);
 
@@ -275,7 +339,7 @@ public class AssessmentServiceTest {
                     .isEqualTo(RiskLevels.BORDERLINE.getRiskLevel());
         });
         verify(patientProxy).getPatientById(2);
-        verify(noteProxy).getAllNotesByPatientId(2);
+        verify(noteProxy).getNotesPageByPatientId(2, null, 50, true);
     }
 
     @Test
@@ -287,7 +351,7 @@ public class AssessmentServiceTest {
         NoteBean noteB = new NoteBean("IdOfTheNote5", 3, LocalDateTime.now(), LocalDateTime.now(), "Patient states that they quit within last year Patient also complains that of Abnormal breathing spells Lab reports Cholesterol LDL high");
         List<NoteBean> notesOfPatientInDanger = List.of(noteA, noteB);
         when(patientProxy.getPatientById(any(Integer.class))).thenReturn(patientInDanger);
-        when(noteProxy.getAllNotesByPatientId(any(Integer.class))).thenReturn(notesOfPatientInDanger);
+        when(noteProxy.getNotesPageByPatientId(any(Integer.class), any(), any(Integer.class), anyBoolean())).thenReturn(new NotePageBean(notesOfPatientInDanger, null, false));
 
         AssessmentDTO actualResult = serviceUnderTest.assessDiabetesRiskLevelByPatientId(patientId);
 
@@ -301,7 +365,7 @@ public class AssessmentServiceTest {
                     .isEqualTo(RiskLevels.IN_DANGER.getRiskLevel());
         });
         verify(patientProxy).getPatientById(3);
-        verify(noteProxy).getAllNotesByPatientId(3);
+        verify(noteProxy).getNotesPageByPatientId(3, null, 50, true);
     }
 
     @Test
@@ -315,7 +379,7 @@ public class AssessmentServiceTest {
         NoteBean noteD = new NoteBean("IdOfTheNote9", 4, LocalDateTime.now(), LocalDateTime.now(), "Patient states that Body Height, Body Weight, Cholesterol, Dizziness and Reaction");
         List<NoteBean> notesOfPatientEarlyOnset = List.of(noteA, noteB, noteC, noteD);
         when(patientProxy.getPatientById(any(Integer.class))).thenReturn(patientEarlyOnset);
-        when(noteProxy.getAllNotesByPatientId(any(Integer.class))).thenReturn(notesOfPatientEarlyOnset);
+        when(noteProxy.getNotesPageByPatientId(any(Integer.class), any(), any(Integer.class), anyBoolean())).thenReturn(new NotePageBean(notesOfPatientEarlyOnset, null, false));
 
         AssessmentDTO actualResult = serviceUnderTest.assessDiabetesRiskLevelByPatientId(patientId);
 
@@ -329,6 +393,6 @@ public class AssessmentServiceTest {
                     .isEqualTo(RiskLevels.EARLY_ONSET.getRiskLevel());
         });
         verify(patientProxy).getPatientById(4);
-        verify(noteProxy).getAllNotesByPatientId(4);
+        verify(noteProxy).getNotesPageByPatientId(4, null, 50, true);
     }
 }
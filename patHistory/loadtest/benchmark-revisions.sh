@@ -0,0 +1,58 @@
+#!/usr/bin/env bash
+# Measures the storage taken by the revisions of a long note edited many times, compared with full copies of each
+# version, and the time taken to rebuild versions at growing distances from the latest one.
+#
+# Requires a MongoDB (docker-compose up -d mongodb), the packaged jar (mvn clean package), curl and jq.
+#
+# Usage: loadtest/benchmark-revisions.sh [edits] [snapshot-interval]
+#   e.g. loadtest/benchmark-revisions.sh 200 10
+
+set -euo pipefail
+
+EDITS=${1:-200}
+SNAPSHOT_INTERVAL=${2:-10}
+PORT=18082
+PATIENT_ID=${PATIENT_ID:-99}
+JAR=$(dirname "$0")/../target/patHistory-0.0.1-SNAPSHOT.jar
+URL="http://localhost:${PORT}/patHistories"
+
+java -jar "${JAR}" --spring.data.mongodb.host=localhost --server.port="${PORT}" \
+     --mediscreen.notes.revisions.enabled=true \
+     --mediscreen.notes.revisions.snapshot-interval="${SNAPSHOT_INTERVAL}" > loadtest-revisions.log 2>&1 &
+PID=$!
+trap 'kill "${PID}"; wait "${PID}" 2> /dev/null || true' EXIT
+until curl -s -o /dev/null "${URL}?patientId=${PATIENT_ID}"; do sleep 1; done
+
+# A note of about 4 KB, each edit inserting a sentence somewhere in it
+CONTENT=$(printf 'Patient states that they are feeling terrific. Hemoglobin A1C above recommended level. %.0s' $(seq 1 45))
+NOTE_ID=$(curl -s -H 'Content-Type: application/json' \
+  -d "$(jq -n --argjson patientId "${PATIENT_ID}" --arg content "${CONTENT}" '{patientId: $patientId, content: $content}')" \
+  "${URL}" | jq -r .id)
+
+echo "=== ${EDITS} edits of note ${NOTE_ID}, a snapshot every ${SNAPSHOT_INTERVAL} versions ==="
+FULL_COPIES=0
+for version in $(seq 0 $((EDITS - 1))); do
+  FULL_COPIES=$((FULL_COPIES + ${#CONTENT}))
+  POSITION=$(( (version * 37) % ${#CONTENT} ))
+  CONTENT="${CONTENT:0:${POSITION}}Dose adjusted on visit ${version}. ${CONTENT:${POSITION}}"
+  curl -s -o /dev/null -X PUT -H 'Content-Type: application/json' \
+    -d "$(jq -n --argjson patientId "${PATIENT_ID}" --arg content "${CONTENT}" --argjson version "${version}" \
+          '{patientId: $patientId, content: $content, version: $version}')" \
+    "${URL}/${NOTE_ID}"
+done
+
+STORED=$(curl -s "${URL}/${NOTE_ID}/revisions" | jq '[.[].storedLength] | add')
+echo "Stored chars: ${STORED}, full copies: ${FULL_COPIES} ($((100 * STORED / FULL_COPIES))%)"
+docker exec mongodb mongosh --quiet mediscreendb \
+  --eval 'const s = db.note_revisions.stats(); print(`note_revisions: ${s.count} documents, ${s.size} bytes, ${s.storageSize} bytes on disk`)'
+
+echo "=== Rebuild time by distance from the latest version ==="
+for distance in 1 $((SNAPSHOT_INTERVAL / 2)) $((SNAPSHOT_INTERVAL - 1)) $((EDITS - 1)); do
+  version=$((EDITS - distance))
+  # Warms up, then keeps the best of 20 requests
+  curl -s -o /dev/null "${URL}/${NOTE_ID}/revisions/${version}"
+  BEST=$(for _ in $(seq 1 20); do curl -s -o /dev/null -w '%{time_total}\n' "${URL}/${NOTE_ID}/revisions/${version}"; done | sort -n | head -1)
+  echo "Version ${version} (${distance} behind): ${BEST}s"
+done
+
+curl -s -o /dev/null -X DELETE "${URL}/${NOTE_ID}"
@@ -0,0 +1,79 @@
+#!/usr/bin/env bash
+# Compares the throughput of note page reads served by the primary and by the secondaries of a three-member replica set
+# running on this host, and counts the queries each member served.
+#
+# Requires Docker on Linux (the members share the host network), the packaged jar (mvn clean package), curl
+# and hey (https://github.com/rakyll/hey).
+#
+# Usage: loadtest/compare-read-preferences.sh [notes] [concurrency] [duration]
+#   e.g. loadtest/compare-read-preferences.sh 500 100 30s
+
+set -euo pipefail
+
+NOTES=${1:-500}
+CONCURRENCY=${2:-100}
+DURATION=${3:-30s}
+PORT=18082
+PATIENT_ID=1
+MEMBER_PORTS=(27117 27118 27119)
+JAR=$(dirname "$0")/../target/patHistory-0.0.1-SNAPSHOT.jar
+URL="http://localhost:${PORT}/patHistories/page?patientId=${PATIENT_ID}&size=20&fullHistory=true&preview=300"
+
+mongosh_on() {
+  local port=$1
+  shift
+  docker exec mediscreen-rs-"${MEMBER_PORTS[0]}" mongosh --quiet --port "${port}" --eval "$@"
+}
+
+cleanup() {
+  [[ -n ${PID:-} ]] && { kill "${PID}"; wait "${PID}" 2> /dev/null || true; }
+  for member_port in "${MEMBER_PORTS[@]}"; do docker rm -f mediscreen-rs-"${member_port}" > /dev/null 2>&1 || true; done
+}
+trap cleanup EXIT
+
+# Starts the members and makes the first one primary
+for member_port in "${MEMBER_PORTS[@]}"; do
+  docker run -d --name mediscreen-rs-"${member_port}" --network host mongo:6.0 \
+    mongod --replSet rs0 --port "${member_port}" --bind_ip localhost > /dev/null
+done
+until mongosh_on "${MEMBER_PORTS[0]}" "db.adminCommand('ping')" > /dev/null 2>&1; do sleep 1; done
+mongosh_on "${MEMBER_PORTS[0]}" "rs.initiate({_id: 'rs0', members: [
+  {_id: 0, host: 'localhost:${MEMBER_PORTS[0]}', priority: 2},
+  {_id: 1, host: 'localhost:${MEMBER_PORTS[1]}'},
+  {_id: 2, host: 'localhost:${MEMBER_PORTS[2]}'}]})" > /dev/null
+until [[ $(mongosh_on "${MEMBER_PORTS[0]}" "db.hello().isWritablePrimary") == true ]]; do sleep 1; done
+
+# Seeds the notes of one patient, waiting for the secondaries to have them
+mongosh_on "${MEMBER_PORTS[0]}" "db.getSiblingDB('mediscreendb').notes.insertMany(Array.from({length: ${NOTES}}, (_, i) => ({
+  patientId: ${PATIENT_ID}, dateOfCreation: new Date(Date.now() - i * 3600000), dateOfModification: new Date(),
+  content: 'Patient reports weight gain and dizziness. '.repeat(20), language: 'english', version: NumberLong(1)})),
+  {writeConcern: {w: 3}})" > /dev/null
+
+java -jar "${JAR}" --server.port="${PORT}" \
+     --spring.data.mongodb.uri="mongodb://localhost:${MEMBER_PORTS[0]},localhost:${MEMBER_PORTS[1]},localhost:${MEMBER_PORTS[2]}/mediscreendb?replicaSet=rs0" \
+     --mediscreen.mongodb.secondary-reads.enabled=true > loadtest-read-preferences.log 2>&1 &
+PID=$!
+until curl -s -o /dev/null "${URL}"; do sleep 1; done
+
+# Prints the number of queries each member served so far
+member_queries() {
+  for member_port in "${MEMBER_PORTS[@]}"; do
+    mongosh_on "${member_port}" "db.serverStatus().opcounters.query"
+  done
+}
+
+run_reads() {
+  local secondary_ok=$1 before after index
+  echo "=== secondaryOk=${secondary_ok}, ${CONCURRENCY} concurrent clients for ${DURATION} ==="
+  # Warms up the JIT and the connection pools before measuring
+  hey -z 5s -c 20 "${URL}&secondaryOk=${secondary_ok}" > /dev/null
+  mapfile -t before < <(member_queries)
+  hey -z "${DURATION}" -c "${CONCURRENCY}" "${URL}&secondaryOk=${secondary_ok}" | grep -E "Requests/sec|Average|9[59]%|\[[0-9]{3}\]"
+  mapfile -t after < <(member_queries)
+  for index in "${!MEMBER_PORTS[@]}"; do
+    echo "Queries served by localhost:${MEMBER_PORTS[index]} ($([[ ${index} == 0 ]] && echo primary || echo secondary)): $((after[index] - before[index]))"
+  done
+}
+
+run_reads false
+run_reads true
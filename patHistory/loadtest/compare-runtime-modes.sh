@@ -0,0 +1,48 @@
+#!/usr/bin/env bash
+# Compares the servlet and reactive runtime modes of patHistory under the same burst of the reads the assessment service
+# makes, pages of the full history of a patient and trigger terms of a batch of patients, each mode running alone with
+# the same heap size.
+#
+# Requires a MongoDB holding notes (docker-compose up -d mongodb), the packaged jar (mvn clean package)
+# and hey (https://github.com/rakyll/hey).
+#
+# Usage: loadtest/compare-runtime-modes.sh [heap] [concurrency] [duration]
+#   e.g. loadtest/compare-runtime-modes.sh 256m 400 60s
+
+set -euo pipefail
+
+HEAP=${1:-256m}
+CONCURRENCY=${2:-400}
+DURATION=${3:-60s}
+PORT=18082
+PATIENT_ID=${PATIENT_ID:-2}
+PATIENT_IDS=${PATIENT_IDS:-1,2,3,4}
+# The trigger terms of the diabetes terminology, as the assessment service sends them
+TERMS="Hemoglobin%20A1C,Microalbumin,Height,Weight,Smoker,Abnormal,Cholesterol,Dizziness,Relapse,Reaction,Antibodies"
+TERMS="${TERMS},H%C3%A9moglobine%20A1C,Taille,Poids,Fume,Anorma,Cholest%C3%A9rol,Vertige,Rechute,R%C3%A9action,Anticorps"
+JAR=$(dirname "$0")/../target/patHistory-0.0.1-SNAPSHOT.jar
+PAGE_URL="http://localhost:${PORT}/patHistories/page?patientId=${PATIENT_ID}&size=50&fullHistory=true"
+TERMS_URL="http://localhost:${PORT}/patHistories/terms?patientIds=${PATIENT_IDS}&terms=${TERMS}"
+
+run_mode() {
+  local profile=$1
+  echo "=== ${profile} mode, -Xmx${HEAP}, ${CONCURRENCY} concurrent clients for ${DURATION} ==="
+  java -Xms"${HEAP}" -Xmx"${HEAP}" -jar "${JAR}" --spring.profiles.active="${profile}" \
+       --spring.data.mongodb.host=localhost --server.port="${PORT}" > "loadtest-${profile}.log" 2>&1 &
+  local pid=$!
+  until curl -s -o /dev/null "${PAGE_URL}"; do sleep 1; done
+
+  for url in "${PAGE_URL}" "${TERMS_URL}"; do
+    echo "--- ${url%%\?*}"
+    # Warms up the JIT and the connection pools before measuring
+    hey -z 10s -c 50 "${url}" > /dev/null
+    hey -z "${DURATION}" -c "${CONCURRENCY}" "${url}" | grep -E "Requests/sec|Average|Slowest|9[59]%|\[[0-9]{3}\]"
+  done
+  echo "Live threads: $(ls /proc/${pid}/task | wc -l), resident memory: $(ps -o rss= -p ${pid}) KB"
+
+  kill "${pid}"
+  wait "${pid}" 2> /dev/null || true
+}
+
+run_mode default
+run_mode reactive
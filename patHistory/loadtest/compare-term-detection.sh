@@ -0,0 +1,48 @@
+#!/usr/bin/env bash
+# Compares the bytes transferred and the time taken to find the trigger terms of a patient by reading all the pages of
+# their notes, as the assessment service formerly did, and by asking the history service to look for them.
+#
+# Requires a MongoDB holding notes (docker-compose up -d mongodb), the packaged jar (mvn clean package) and curl.
+#
+# Usage: loadtest/compare-term-detection.sh [patient-id] [runs]
+#   e.g. loadtest/compare-term-detection.sh 4 20
+
+set -euo pipefail
+
+PATIENT_ID=${1:-4}
+RUNS=${2:-20}
+PORT=18082
+JAR=$(dirname "$0")/../target/patHistory-0.0.1-SNAPSHOT.jar
+URL="http://localhost:${PORT}/patHistories"
+
+java -jar "${JAR}" --spring.data.mongodb.host=localhost --server.port="${PORT}" > loadtest-terms.log 2>&1 &
+PID=$!
+trap 'kill "${PID}"; wait "${PID}" 2> /dev/null || true' EXIT
+until curl -s -o /dev/null "${URL}?patientId=${PATIENT_ID}"; do sleep 1; done
+
+# Prints the bytes and seconds taken to read every page of the notes of the patient
+read_all_pages() {
+  local bytes=0 cursor="" start end page
+  start=$(date +%s.%N)
+  while :; do
+    page=$(curl -s --get --data-urlencode "cursor=${cursor}" \
+      "${URL}/page?patientId=${PATIENT_ID}&size=50&fullHistory=true")
+    bytes=$((bytes + ${#page}))
+    [[ ${page} == *'"hasMore":true'* ]] || break
+    cursor=$(sed -E 's/.*"nextCursor":"([^"]*)".*/\1/' <<< "${page}")
+  done
+  end=$(date +%s.%N)
+  echo "${bytes} $(echo "${end} - ${start}" | bc)"
+}
+
+# Prints the bytes and seconds taken to ask for the terms found in the notes of the patient
+find_terms() {
+  curl -s -o /dev/null -w '%{size_download} %{time_total}\n' "${URL}/terms?patientIds=${PATIENT_ID}"
+}
+
+# Warms up, then keeps the best of the runs
+read_all_pages > /dev/null
+find_terms > /dev/null
+echo "=== Trigger terms of patient ${PATIENT_ID}, best of ${RUNS} runs ==="
+echo "Reading all pages: $(for _ in $(seq 1 "${RUNS}"); do read_all_pages; done | sort -k2 -n | head -1 | awk '{print $1 " bytes, " $2 "s"}')"
+echo "Finding in history: $(for _ in $(seq 1 "${RUNS}"); do find_terms; done | sort -k2 -n | head -1 | awk '{print $1 " bytes, " $2 "s"}')"
@@ -0,0 +1,225 @@
+package com.mediscreen.patientHistory.config;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Makes the indexes of the database match the ones declared on the documents of the application, once it is started.
+ * <p>
+ * Missing indexes are created. An index whose keys or options (uniqueness, sparseness, partial filter, expiry,
+ * collation, text weights and languages) differ from its declaration is dropped and created again, as well as an index
+ * covering the same keys under another name, which would prevent the creation.
+ * Other indexes are left in place and only reported.
+ */
+@Component
+public class MongoIndexReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexReconciler.class);
+
+    private static final String ID_INDEX_NAME = "_id_";
+    private static final String TEXT = "text";
+    private static final String TEXT_KEY = "_fts";
+    private static final String TEXT_POSITIONS_KEY = "_ftsx";
+    private static final String DEFAULT_LANGUAGE = "english";
+    private static final String DEFAULT_LANGUAGE_OVERRIDE = "language";
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+    private final boolean enabled;
+
+    /**
+     * Instantiates a new index reconciler.
+     *
+     * @param mongoTemplate   the template used to read and change the indexes
+     * @param mappingContext  the mapping context holding the documents and their index declarations
+     * @param enabled         whether the indexes have to be reconciled at startup
+     */
+    @Autowired
+    public MongoIndexReconciler(MongoTemplate mongoTemplate, MongoMappingContext mappingContext,
+                                @Value("${mediscreen.mongodb.reconcile-indexes:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Reconciles the indexes of every collection mapped by the application.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileAll() {
+        if (!enabled) {
+            return;
+        }
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class)) {
+                reconcile(entity.getType());
+            }
+        }
+    }
+
+    /**
+     * Reconciles the indexes of the collection of the given document.
+     *
+     * @param documentType  the class of the document
+     */
+    public void reconcile(Class<?> documentType) {
+        String collection = mongoTemplate.getCollectionName(documentType);
+        logger.debug("### Try to reconcile indexes of collection {}", collection);
+
+        IndexResolver indexResolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        IndexOperations indexOperations = mongoTemplate.indexOps(documentType);
+        // Read as stored by the server, as IndexInfo leaves out the weights of text indexes
+        List<Document> existingIndexes = mongoTemplate.getCollection(collection).listIndexes().into(new ArrayList<>());
+        Set<String> declaredNames = new HashSet<>();
+
+        for (IndexDefinition declaredIndex : indexResolver.resolveIndexFor(documentType)) {
+            String name = declaredIndex.getIndexOptions().getString("name");
+            declaredNames.add(name);
+
+            Document sameName = existingIndexes.stream().filter(index -> index.getString("name").equals(name)).findFirst().orElse(null);
+            if (sameName != null && matches(sameName, declaredIndex)) {
+                logger.debug("### Index {} of collection {} is up to date", name, collection);
+                continue;
+            }
+            // Drops the outdated version of the index and any index with the same keys, which would conflict
+            for (Document existingIndex : new ArrayList<>(existingIndexes)) {
+                if (!ID_INDEX_NAME.equals(existingIndex.getString("name"))
+                        && (existingIndex == sameName || conflicts(existingIndex, declaredIndex))) {
+                    logger.warn("### Drop index {} of collection {} conflicting with declared index {}", existingIndex.getString("name"), collection, name);
+                    indexOperations.dropIndex(existingIndex.getString("name"));
+                    existingIndexes.remove(existingIndex);
+                }
+            }
+            indexOperations.ensureIndex(declaredIndex);
+            logger.info("### Created index {} of collection {} --> {}", name, collection, declaredIndex.getIndexKeys());
+        }
+
+        for (Document existingIndex : existingIndexes) {
+            String name = existingIndex.getString("name");
+            if (!ID_INDEX_NAME.equals(name) && !declaredNames.contains(name)) {
+                logger.warn("### Index {} of collection {} is not declared by the application", name, collection);
+            }
+        }
+        logger.info("### Indexes of collection {} reconciled", collection);
+    }
+
+    // ========================================================================
+
+    private static boolean matches(Document existingIndex, IndexDefinition declaredIndex) {
+        Document options = declaredIndex.getIndexOptions();
+        return sameKeys(existingIndex, declaredIndex.getIndexKeys())
+                && existingIndex.getBoolean("unique", false) == options.getBoolean("unique", false)
+                && existingIndex.getBoolean("sparse", false) == options.getBoolean("sparse", false)
+                && Objects.equals(existingIndex.get("partialFilterExpression"), options.get("partialFilterExpression"))
+                && Objects.equals(longValue(existingIndex.get("expireAfterSeconds")), longValue(options.get("expireAfterSeconds")))
+                && sameCollation(existingIndex.get("collation", Document.class), options.get("collation", Document.class))
+                && sameTextOptions(existingIndex, declaredIndex);
+    }
+
+    private static boolean conflicts(Document existingIndex, IndexDefinition declaredIndex) {
+        // A collection has a single text index, whatever its fields
+        return sameKeys(existingIndex, declaredIndex.getIndexKeys())
+                || (isText(existingIndex.get("key", Document.class)) && isText(declaredIndex.getIndexKeys()));
+    }
+
+    private static boolean sameKeys(Document existingIndex, Document declaredKeys) {
+        List<Map.Entry<String, Object>> existingKeys = new ArrayList<>(comparableKeys(existingIndex.get("key", Document.class)).entrySet());
+        List<Map.Entry<String, Object>> declared = new ArrayList<>(comparableKeys(declaredKeys).entrySet());
+        if (existingKeys.size() != declared.size()) {
+            return false;
+        }
+        for (int position = 0; position < declared.size(); position++) {
+            Map.Entry<String, Object> existingKey = existingKeys.get(position);
+            Map.Entry<String, Object> declaredKey = declared.get(position);
+            if (!existingKey.getKey().equals(declaredKey.getKey()) || !sameType(existingKey.getValue(), declaredKey.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, Object> comparableKeys(Document keys) {
+        // Text fields, stored by the server as the _fts and _ftsx keys, are compared by the weights of the index
+        Map<String, Object> comparableKeys = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> key : keys.entrySet()) {
+            if (TEXT_KEY.equals(key.getKey()) || TEXT.equals(key.getValue())) {
+                comparableKeys.putIfAbsent(TEXT_KEY, TEXT);
+            } else if (!TEXT_POSITIONS_KEY.equals(key.getKey())) {
+                comparableKeys.put(key.getKey(), key.getValue());
+            }
+        }
+        return comparableKeys;
+    }
+
+    private static boolean sameType(Object existingValue, Object declaredValue) {
+        if (existingValue instanceof Number && declaredValue instanceof Number) {
+            return Math.signum(((Number) existingValue).doubleValue()) == Math.signum(((Number) declaredValue).doubleValue());
+        }
+        // Special index types (text, geo, hashed) are named
+        return Objects.equals(existingValue, declaredValue);
+    }
+
+    private static boolean sameCollation(Document existingCollation, Document declaredCollation) {
+        if (declaredCollation == null) {
+            return existingCollation == null;
+        }
+        // The server stores every option of a collation, the declaration only the ones differing from the locale
+        return existingCollation != null && declaredCollation.entrySet().stream()
+                .allMatch(option -> Objects.equals(existingCollation.get(option.getKey()), option.getValue()));
+    }
+
+    private static boolean sameTextOptions(Document existingIndex, IndexDefinition declaredIndex) {
+        Document declaredKeys = declaredIndex.getIndexKeys();
+        if (!isText(declaredKeys)) {
+            return true;
+        }
+        Document options = declaredIndex.getIndexOptions();
+        // Fields are weighted 1 unless declared otherwise
+        Map<String, Double> declaredWeights = new HashMap<>();
+        declaredKeys.forEach((field, type) -> {
+            if (TEXT.equals(type)) {
+                declaredWeights.put(field, 1.0);
+            }
+        });
+        Document weights = options.get("weights", new Document());
+        weights.forEach((field, weight) -> declaredWeights.put(field, ((Number) weight).doubleValue()));
+
+        Map<String, Double> existingWeights = new HashMap<>();
+        existingIndex.get("weights", new Document()).forEach((field, weight) -> existingWeights.put(field, ((Number) weight).doubleValue()));
+
+        return existingWeights.equals(declaredWeights)
+                && Objects.equals(existingIndex.getString("default_language"), options.get("default_language", DEFAULT_LANGUAGE))
+                && Objects.equals(existingIndex.getString("language_override"), options.get("language_override", DEFAULT_LANGUAGE_OVERRIDE));
+    }
+
+    private static boolean isText(Document keys) {
+        return keys.containsKey(TEXT_KEY) || keys.containsValue(TEXT);
+    }
+
+    private static Long longValue(Object number) {
+        return number == null ? null : ((Number) number).longValue();
+    }
+
+}
@@ -0,0 +1,255 @@
+package com.mediscreen.patientHistory.config;
+
+import com.mediscreen.patientHistory.model.Note;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores the content of long notes compressed, enabled with the mediscreen.notes.compression.enabled property.
+ * <p>
+ * When a note is saved, a content of at least the configured number of characters is deflated into the contentDeflated
+ * binary field in place of the content field, provided it gets smaller. When a note is read, a deflated content is
+ * inflated back before the note is mapped, whether compression is enabled or not, so that notes stay readable once it
+ * is disabled. The content field being absent from compressed notes, they are left out of the full-text search, so
+ * compression is refused at startup unless mediscreen.notes.compression.accept-unsearchable is set too. The trigger
+ * terms of compressed notes are still found, the service matching their inflated content.
+ * <p>
+ * Existing notes are compressed once the application is started when mediscreen.notes.compression.migrate is set,
+ * reporting the size of the collection and the cache hit ratio of the database before and after.
+ */
+@Component
+public class NoteContentCompressor extends AbstractMongoEventListener<Note> {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteContentCompressor.class);
+
+    public static final String CONTENT_FIELD = "content";
+    public static final String DEFLATED_CONTENT_FIELD = "contentDeflated";
+
+    /**
+     * Number of notes compressed by each bulk write of the migration.
+     */
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+    private final int minLength;
+    private final boolean migrate;
+
+    /**
+     * Instantiates a new note content compressor.
+     *
+     * @param mongoTemplate       the template used to migrate existing notes
+     * @param enabled             whether the content of long notes has to be compressed when saved
+     * @param minLength           the minimum number of characters of a content to be compressed
+     * @param migrate             whether existing notes have to be compressed at startup
+     * @param acceptUnsearchable  whether compressed notes may be left out of the full-text search
+     * @throws IllegalStateException  if compression is enabled without accepting that compressed notes are not searched
+     */
+    @Autowired
+    public NoteContentCompressor(MongoTemplate mongoTemplate,
+                                 @Value("${mediscreen.notes.compression.enabled:false}") boolean enabled,
+                                 @Value("${mediscreen.notes.compression.min-length:2048}") int minLength,
+                                 @Value("${mediscreen.notes.compression.migrate:false}") boolean migrate,
+                                 @Value("${mediscreen.notes.compression.accept-unsearchable:false}") boolean acceptUnsearchable) {
+        if (enabled && !acceptUnsearchable) {
+            throw new IllegalStateException("Compressed notes are left out of the full-text search, set "
+                    + "mediscreen.notes.compression.accept-unsearchable=true to enable mediscreen.notes.compression.enabled");
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+        this.minLength = minLength;
+        this.migrate = migrate;
+    }
+
+
+    // === SAVE AND LOAD ======================================================
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Note> event) {
+        Document document = event.getDocument();
+        if (enabled && document != null) {
+            compress(document);
+        }
+    }
+
+    @Override
+    public void onAfterLoad(AfterLoadEvent<Note> event) {
+        Document document = event.getDocument();
+        Binary deflatedContent = document.get(DEFLATED_CONTENT_FIELD, Binary.class);
+        if (deflatedContent != null) {
+            document.put(CONTENT_FIELD, inflate(deflatedContent.getData()));
+            document.remove(DEFLATED_CONTENT_FIELD);
+        }
+    }
+
+    /**
+     * Adds to the given update the setting of a new content, compressed as it would be when saving the note.
+     * Updates bypass the save events, so the content has to be prepared here.
+     *
+     * @param update   the update of a note
+     * @param content  the new content of the note
+     * @return         the given update
+     */
+    public Update setContent(Update update, String content) {
+        Document document = new Document(CONTENT_FIELD, content);
+        if (enabled && compress(document)) {
+            return update.set(DEFLATED_CONTENT_FIELD, document.get(DEFLATED_CONTENT_FIELD)).unset(CONTENT_FIELD);
+        }
+        return update.set(CONTENT_FIELD, content).unset(DEFLATED_CONTENT_FIELD);
+    }
+
+    /**
+     * Replaces the content of the given note document by its deflated version, if it is long enough and gets smaller.
+     *
+     * @param document  the note document to compress
+     * @return          true if the content was compressed
+     */
+    boolean compress(Document document) {
+        String content = document.getString(CONTENT_FIELD);
+        if (content == null || content.length() < minLength) {
+            return false;
+        }
+        byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+        byte[] deflatedContent = deflate(contentBytes);
+        if (deflatedContent.length >= contentBytes.length) {
+            return false;
+        }
+        document.remove(CONTENT_FIELD);
+        document.put(DEFLATED_CONTENT_FIELD, new Binary(deflatedContent));
+        return true;
+    }
+
+    // === MIGRATION ==========================================================
+
+    /**
+     * Compresses the content of the existing notes which are long enough, if the migration is enabled.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateExistingNotes() {
+        if (!enabled || !migrate) {
+            return;
+        }
+        logger.debug("### Try to compress the content of existing notes of at least {} characters", minLength);
+        logStorage("before compression");
+        long start = System.nanoTime();
+
+        MongoCollection<Document> notes = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Note.class));
+        Bson longContent = Filters.and(Filters.type(CONTENT_FIELD, "string"),
+                Filters.expr(new Document("$gte", List.of(new Document("$strLenCP", "$" + CONTENT_FIELD), minLength))));
+        long compressedNotes = 0;
+        List<WriteModel<Document>> updates = new ArrayList<>();
+        try (MongoCursor<Document> cursor = notes.find(longContent).batchSize(MIGRATION_BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                Document note = cursor.next();
+                String content = note.getString(CONTENT_FIELD);
+                if (!compress(note)) {
+                    continue;
+                }
+                // Skips the note if its content was changed since it was read
+                updates.add(new UpdateOneModel<>(
+                        Filters.and(Filters.eq("_id", note.get("_id")), Filters.eq(CONTENT_FIELD, content)),
+                        Updates.combine(Updates.set(DEFLATED_CONTENT_FIELD, note.get(DEFLATED_CONTENT_FIELD)), Updates.unset(CONTENT_FIELD))));
+                if (updates.size() == MIGRATION_BATCH_SIZE) {
+                    compressedNotes += notes.bulkWrite(updates, new BulkWriteOptions().ordered(false)).getModifiedCount();
+                    updates.clear();
+                }
+            }
+        }
+        if (!updates.isEmpty()) {
+            compressedNotes += notes.bulkWrite(updates, new BulkWriteOptions().ordered(false)).getModifiedCount();
+        }
+
+        logger.info("### Compressed content of {} existing notes in {} ms", compressedNotes, (System.nanoTime() - start) / 1_000_000);
+        logStorage("after compression");
+    }
+
+    private void logStorage(String moment) {
+        try {
+            logStorageStats(moment);
+        } catch (MongoException e) {
+            // Statistics need monitoring privileges the application user may lack
+            logger.warn("### Storage statistics of notes {} unavailable --> {}", moment, e.getMessage());
+        }
+    }
+
+    private void logStorageStats(String moment) {
+        Document collectionStats = mongoTemplate.getDb().runCommand(new Document("collStats", mongoTemplate.getCollectionName(Note.class)));
+        Document cacheStats = mongoTemplate.getDb().runCommand(new Document("serverStatus", 1))
+                .get("wiredTiger", new Document()).get("cache", new Document());
+        Number requestedPages = cacheStats.get("pages requested from the cache", Number.class);
+        Number readPages = cacheStats.get("pages read into cache", Number.class);
+        String cacheHitRatio = requestedPages == null || readPages == null || requestedPages.longValue() == 0 ? "unknown"
+                : String.format("%.4f", 1 - readPages.doubleValue() / requestedPages.doubleValue());
+        logger.info("### Notes {} --> {} documents, {} bytes of data, {} bytes of storage, cache hit ratio since startup {}",
+                moment, collectionStats.get("count"), collectionStats.get("size"), collectionStats.get("storageSize"), cacheHitRatio);
+    }
+
+    // ========================================================================
+
+    static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String inflate(byte[] bytes) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int inflatedBytes = inflater.inflate(buffer);
+                if (inflatedBytes == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed note content");
+                }
+                output.write(buffer, 0, inflatedBytes);
+            }
+            return output.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted compressed note content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.mediscreen.patientHistory.config;
+
+import com.mediscreen.patientHistory.model.Note;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Converts the dates of notes stored as ISO strings, as seeded by former scripts, to native dates once the application
+ * is started.
+ * <p>
+ * The database orders all strings before all dates, so that notes with mixed types are listed in the wrong order and
+ * missed by range queries on dates. The conversion runs in the database, one update per collection and field, and
+ * only matches the notes whose date is still a string, which makes it cheap once done.
+ */
+@Component
+public class NoteDateMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteDateMigrator.class);
+
+    private static final List<String> DATE_FIELDS = List.of("dateOfCreation", "dateOfModification");
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+
+    /**
+     * Instantiates a new note date migrator.
+     *
+     * @param mongoTemplate  the template used to convert the dates
+     * @param enabled        whether the dates have to be converted at startup
+     */
+    @Autowired
+    public NoteDateMigrator(MongoTemplate mongoTemplate,
+                            @Value("${mediscreen.mongodb.migrate-dates:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Converts the string dates of the hot and archived notes.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateAll() {
+        if (!enabled) {
+            return;
+        }
+        migrate(mongoTemplate.getCollectionName(Note.class));
+        migrate(Note.ARCHIVE_COLLECTION);
+    }
+
+    /**
+     * Converts the string dates of the notes of the given collection.
+     *
+     * @param collectionName  the name of the collection
+     * @return                the number of converted dates
+     */
+    public long migrate(String collectionName) {
+        if (!mongoTemplate.collectionExists(collectionName)) {
+            return 0;
+        }
+        logger.debug("### Try to convert string dates of collection {}", collectionName);
+
+        MongoCollection<Document> collection = mongoTemplate.getCollection(collectionName);
+        long convertedDates = 0;
+        for (String field : DATE_FIELDS) {
+            // Strings with an offset are read as instants, those without one as UTC
+            convertedDates += collection.updateMany(Filters.type(field, BsonType.STRING),
+                    List.of(new Document("$set", new Document(field, new Document("$toDate", "$" + field)))))
+                    .getModifiedCount();
+        }
+
+        if (convertedDates > 0) {
+            logger.info("### Converted {} string dates of collection {} to native dates", convertedDates, collectionName);
+        }
+        return convertedDates;
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.mediscreen.patientHistory.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Runs the reactive mode on Netty, enabled with the reactive profile.
+ * <p>
+ * Tomcat staying on the classpath for the servlet mode, Spring Boot would otherwise serve WebFlux through its servlet
+ * adapter, which still dedicates a Tomcat thread to each blocking read of a request body.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveServerConfig {
+
+    /**
+     * Declares the Netty server factory, which takes precedence over the auto-configured Tomcat one.
+     *
+     * @return  the factory of the Netty server
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+}
@@ -1,6 +1,18 @@
 package com.mediscreen.patientHistory.controller;
 
+import com.mediscreen.patientHistory.exception.InvalidRequestParameterException;
 import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteBulkReport;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.model.NoteSearchCriteria;
+import com.mediscreen.patientHistory.model.NoteSearchPage;
+import com.mediscreen.patientHistory.model.PatientCohort;
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
 import com.mediscreen.patientHistory.service.NoteService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -11,22 +23,74 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springdoc.api.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 /**
- * Manages endpoints of the Note API.
+ * Manages endpoints of the Note API, served by Spring MVC unless the reactive profile is active.
  */
 @RestController
+@Profile("!reactive")
 public class NoteController {
 
     private static final Logger logger = LoggerFactory.getLogger(NoteController.class);
 
+    /**
+     * Maximum number of notes returned in one page.
+     */
+    static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * Maximum number of notes added by one batch.
+     */
+    private static final int MAX_BATCH_SIZE = 10000;
+
+    /**
+     * Maximum number of matching notes skipped to reach a page of search results.
+     */
+    private static final int MAX_SEARCH_OFFSET = 10000;
+
+    /**
+     * Maximum number of patient ids returned for a cohort.
+     */
+    private static final int MAX_COHORT_IDS = 100000;
+
+    /**
+     * Maximum number of patients whose summaries are returned at once.
+     */
+    private static final int MAX_SUMMARY_PATIENTS = 1000;
+
+    /**
+     * Maximum number of patients whose notes are searched for terms at once.
+     */
+    static final int MAX_TERM_PATIENTS = 1000;
+
+    /**
+     * Media type of newline delimited JSON, one note per line.
+     */
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    /**
+     * Description of the parameter letting lists of notes be read from a secondary member of the replica set.
+     */
+    static final String SECONDARY_OK_DESCRIPTION = "Whether the notes may be read from a secondary member of the replica set, "
+            + "up to the configured max staleness behind the primary, false by default. Such notes are returned without ETag, "
+            + "so not to be used right after writing notes.";
+
     /**
      * Component that handles business logic operations for notes related to patients.
      */
@@ -49,55 +113,449 @@ public class NoteController {
      * Adds note related to a patient to database.
      *
      * @param noteToAdd  the note related to a patient to add to database
+     * @param draftId    the key of the draft the note was typed in, discarded once the note is saved
      * @return           the newly created note and status of the request
      */
     @Operation(
             summary = "Create a new note",
             description = "Create and save a new Note object. The response is a Note object with an automatically generated id, patient identifier, date of creation, date of modification, content of the note."
     )
+    @Parameters({
+            @Parameter(name = "draftId", description = "Key of the draft the note was typed in, discarded along with the note being saved")
+    })
     @ApiResponses({
             @ApiResponse(responseCode = "201"),
             @ApiResponse(responseCode = "400", description = "Bad request - The query failed due to a validation error on an input.", content = {@Content(schema = @Schema())})
     })
     @PostMapping("/patHistories")
-    public ResponseEntity<Note> addNewNote(@Valid @RequestBody Note noteToAdd) {
+    public ResponseEntity<Note> addNewNote(@Valid @RequestBody Note noteToAdd,
+                                           @RequestParam(value = "draftId", required = false) String draftId) {
         logger.debug("### Request called --> POST /patHistories");
 
-        Note addedNote = noteService.createNote(noteToAdd);
+        Note addedNote = draftId == null ? noteService.createNote(noteToAdd) : noteService.createNote(noteToAdd, draftId);
 
         logger.info("### New note successfully added");
         return new ResponseEntity<>(addedNote, HttpStatus.CREATED);
     }
 
+    // === ADD BATCH OF NOTES =================================================
+
+    /**
+     * Adds a batch of notes related to patients to database, typically imported from another system.
+     *
+     * @param notesToAdd  the notes to add to database
+     * @return            the result of each note of the batch and status of the request
+     */
+    @Operation(
+            summary = "Create a batch of notes",
+            description = "Create and save up to " + MAX_BATCH_SIZE + " notes at once. Given dates of creation and modification are kept. Each note is validated and saved on its own: the response gives, for each note in the order of the batch, its generated id or the reason why it was rejected."
+    )
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad request - The batch is empty or too large.", content = {@Content(schema = @Schema())})
+    })
+    @PostMapping("/patHistories/bulk")
+    public ResponseEntity<NoteBulkReport> addNewNotes(@RequestBody List<Note> notesToAdd) {
+        logger.debug("### Request called --> POST /patHistories/bulk");
+
+        if (notesToAdd.isEmpty() || notesToAdd.size() > MAX_BATCH_SIZE) {
+            throw new InvalidRequestParameterException("Batch must contain from 1 to " + MAX_BATCH_SIZE + " notes");
+        }
+        NoteBulkReport report = noteService.createNotes(notesToAdd);
+
+        logger.info("### Batch of notes processed");
+        return new ResponseEntity<>(report, HttpStatus.OK);
+    }
+
     // === GET ALL NOTES OF ONE PATIENT BY HIS ID =============================
 
     /**
      * Lists all notes related to a given patient.
      *
-     * @param patientId  the id of the patient to retrieve the notes from database
-     * @return           the list of all notes of the patient with the given id and status of the request
+     * @param patientId    the id of the patient to retrieve the notes from database
+     * @param fullHistory  whether the archived notes of the patient have to be listed as well
+     * @param fields       the fields of the notes to return, all of them when none is given
+     * @param preview      the maximum number of characters of the returned contents, the whole contents when not given
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @param webRequest   the request, holding the ETag of the notes the client already has if any
+     * @return             the list of all notes of the patient with the given id and status of the request
      */
-    @Operation(summary = "Retrieve all notes related to a specific patient")
+    @Operation(summary = "Retrieve all notes related to a specific patient",
+            description = "Notes not modified for a while are archived and only returned with fullHistory. The fields and preview parameters make the database return only some fields of the notes and the beginning of their content. The response carries an ETag which changes with any write to the notes of the patient. Sent back in If-None-Match, it makes the notes be returned only if they changed since.")
     @Parameters({
-            @Parameter(name = "patientId")
+            @Parameter(name = "patientId"),
+            @Parameter(name = "fullHistory", description = "Whether the archived notes have to be returned as well, false by default"),
+            @Parameter(name = "fields", description = "The fields of the notes to return, among id, patientId, dateOfCreation, dateOfModification, content, language and version, all of them by default"),
+            @Parameter(name = "preview", description = "The maximum number of characters of the returned contents, the whole contents by default"),
+            @Parameter(name = "secondaryOk", description = SECONDARY_OK_DESCRIPTION)
     })
     @ApiResponses({
             @ApiResponse(responseCode = "200"),
-            @ApiResponse(responseCode = "204")
+            @ApiResponse(responseCode = "204"),
+            @ApiResponse(responseCode = "304", description = "Not modified - The notes of the patient didn't change since the given ETag", content = {@Content(schema = @Schema())})
     })
     @GetMapping("/patHistories")
-    public ResponseEntity<List<Note>> getAllNotesByPatientId(@RequestParam(value = "patientId", required = true) Integer patientId) {
-        logger.debug("### Request called --> GET /patHistories?patientId={}", patientId);
+    public ResponseEntity<List<Note>> getAllNotesByPatientId(@RequestParam(value = "patientId", required = true) Integer patientId,
+                                                             @RequestParam(value = "fullHistory", defaultValue = "false") boolean fullHistory,
+                                                             @RequestParam(value = "fields", required = false) List<String> fields,
+                                                             @RequestParam(value = "preview", required = false) Integer preview,
+                                                             @RequestParam(value = "secondaryOk", defaultValue = "false") boolean secondaryOk,
+                                                             WebRequest webRequest) {
+        logger.debug("### Request called --> GET /patHistories?patientId={}&fullHistory={}&fields={}&preview={}&secondaryOk={}",
+                patientId, fullHistory, fields, preview, secondaryOk);
 
-        List<Note> patientNotes = noteService.readAllNotesByPatientId(patientId);
+        // Read before the notes, so that a write made meanwhile makes the ETag older than the notes, never newer
+        String notesETag = secondaryOk ? null : noteService.readNotesETagByPatientId(patientId);
+        if (notesETag != null && webRequest.checkNotModified(notesETag)) {
+            logger.info("### Notes not modified since ETag {}", notesETag);
+            return null;
+        }
+        List<Note> patientNotes = noteService.readNotesByPatientId(patientId, new NoteProjection(fields, preview), fullHistory, secondaryOk);
 
         if(patientNotes.isEmpty()) {
             logger.info("### Empty list of notes returned");
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            return withETag(ResponseEntity.status(HttpStatus.NO_CONTENT), notesETag).build();
         }
 
         logger.info("### Retrieved list of notes successfully");
-        return new ResponseEntity<>(patientNotes, HttpStatus.OK);
+        return withETag(ResponseEntity.ok(), notesETag).body(patientNotes);
+    }
+
+    // === GET ONE PAGE OF NOTES OF ONE PATIENT BY HIS ID =====================
+
+    /**
+     * Lists a page of the notes related to a given patient, from the latest to the oldest one.
+     *
+     * @param patientId    the id of the patient to retrieve the notes from database
+     * @param cursor       the cursor returned with the previous page, or none to get the first page
+     * @param size         the maximum number of notes of the page
+     * @param fullHistory  whether the archived notes of the patient have to be listed as well
+     * @param fields       the fields of the notes to return, all of them when none is given
+     * @param preview      the maximum number of characters of the returned contents, the whole contents when not given
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @param webRequest   the request, holding the ETag of the notes the client already has if any
+     * @return             the page of notes of the patient with the given id and status of the request
+     */
+    @Operation(summary = "Retrieve a page of the notes related to a specific patient",
+            description = "Get the notes of a patient from the latest to the oldest one. The response contains the cursor to send back to get the following page. Its ETag changes with any write to the notes of the patient.")
+    @Parameters({
+            @Parameter(name = "patientId", required = true),
+            @Parameter(name = "cursor", description = "The cursor returned with the previous page, omitted to get the first page"),
+            @Parameter(name = "size", description = "The maximum number of notes of the page, capped to " + MAX_PAGE_SIZE),
+            @Parameter(name = "fullHistory", description = "Whether the archived notes have to be returned as well, false by default"),
+            @Parameter(name = "fields", description = "The fields of the notes to return, among id, patientId, dateOfCreation, dateOfModification, content, language and version, all of them by default"),
+            @Parameter(name = "preview", description = "The maximum number of characters of the returned contents, the whole contents by default"),
+            @Parameter(name = "secondaryOk", description = SECONDARY_OK_DESCRIPTION)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "304", description = "Not modified - The notes of the patient didn't change since the given ETag", content = {@Content(schema = @Schema())}),
+            @ApiResponse(responseCode = "400")
+    })
+    @GetMapping("/patHistories/page")
+    public ResponseEntity<NotePage> getNotesPageByPatientId(@RequestParam(value = "patientId") Integer patientId,
+                                                            @RequestParam(value = "cursor", required = false) String cursor,
+                                                            @RequestParam(value = "size", defaultValue = "20") Integer size,
+                                                            @RequestParam(value = "fullHistory", defaultValue = "false") boolean fullHistory,
+                                                            @RequestParam(value = "fields", required = false) List<String> fields,
+                                                            @RequestParam(value = "preview", required = false) Integer preview,
+                                                            @RequestParam(value = "secondaryOk", defaultValue = "false") boolean secondaryOk,
+                                                            WebRequest webRequest) {
+        logger.debug("### Request called --> GET /patHistories/page?patientId={}&cursor={}&size={}&fullHistory={}&fields={}&preview={}&secondaryOk={}",
+                patientId, cursor, size, fullHistory, fields, preview, secondaryOk);
+
+        if (size < 1) {
+            throw new InvalidRequestParameterException("Size must be a positive number");
+        }
+        // A page only depends on the notes of the patient and on the parameters, which are part of the URL
+        String notesETag = secondaryOk ? null : noteService.readNotesETagByPatientId(patientId);
+        if (notesETag != null && webRequest.checkNotModified(notesETag)) {
+            logger.info("### Page of notes not modified since ETag {}", notesETag);
+            return null;
+        }
+        NotePage notePage = noteService.readNotesPageByPatientId(patientId, cursor, Math.min(size, MAX_PAGE_SIZE), fullHistory,
+                new NoteProjection(fields, preview), secondaryOk);
+
+        logger.info("### Retrieved page of notes successfully");
+        return withETag(ResponseEntity.ok(), notesETag).body(notePage);
+    }
+
+    // === GET NOTES OF ONE PATIENT WITHIN A DATE RANGE =======================
+
+    /**
+     * Lists the notes related to a given patient created within a range of days, from the latest to the oldest one.
+     *
+     * @param patientId    the id of the patient to retrieve the notes from database
+     * @param from         the first day of creation of the notes, inclusive
+     * @param to           the last day of creation of the notes, inclusive
+     * @param fullHistory  whether the archived notes of the patient have to be listed as well
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @param webRequest   the request, holding the ETag of the notes the client already has if any
+     * @return             the notes of the patient created within the range and status of the request
+     */
+    @Operation(summary = "Retrieve the notes related to a specific patient created within a date range",
+            description = "Get the notes of a patient created from one day to another, both inclusive and each one optional, from the latest to the oldest one. Only the notes of the range are read from database. Its ETag changes with any write to the notes of the patient.")
+    @Parameters({
+            @Parameter(name = "patientId", required = true),
+            @Parameter(name = "from", description = "The first day of creation of the notes, as yyyy-MM-dd, omitted for no lower bound"),
+            @Parameter(name = "to", description = "The last day of creation of the notes, as yyyy-MM-dd, omitted for no upper bound"),
+            @Parameter(name = "fullHistory", description = "Whether the archived notes have to be returned as well, false by default"),
+            @Parameter(name = "secondaryOk", description = SECONDARY_OK_DESCRIPTION)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "304", description = "Not modified - The notes of the patient didn't change since the given ETag", content = {@Content(schema = @Schema())}),
+            @ApiResponse(responseCode = "400")
+    })
+    @GetMapping("/patHistories/range")
+    public ResponseEntity<List<Note>> getNotesByPatientIdAndDateRange(@RequestParam(value = "patientId") Integer patientId,
+                                                                      @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                      @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                      @RequestParam(value = "fullHistory", defaultValue = "false") boolean fullHistory,
+                                                                      @RequestParam(value = "secondaryOk", defaultValue = "false") boolean secondaryOk,
+                                                                      WebRequest webRequest) {
+        logger.debug("### Request called --> GET /patHistories/range?patientId={}&from={}&to={}&fullHistory={}&secondaryOk={}",
+                patientId, from, to, fullHistory, secondaryOk);
+
+        // The notes of a range only depend on the notes of the patient and on the parameters, which are part of the URL
+        String notesETag = secondaryOk ? null : noteService.readNotesETagByPatientId(patientId);
+        if (notesETag != null && webRequest.checkNotModified(notesETag)) {
+            logger.info("### Notes of date range not modified since ETag {}", notesETag);
+            return null;
+        }
+        List<Note> notes = noteService.readNotesByPatientIdAndDateRange(patientId, from, to, fullHistory, secondaryOk);
+
+        logger.info("### Retrieved notes of date range successfully");
+        return withETag(ResponseEntity.ok(), notesETag).body(notes);
+    }
+
+    // === SEARCH NOTES =======================================================
+
+    /**
+     * Lists a page of the notes containing the given words and matching the other given criteria.
+     *
+     * @param criteria  the searched words, their language, and the optional patient and date range
+     * @param page      the number of the page to return, starting from 0
+     * @param size      the maximum number of notes of the page
+     * @return          the page of matching notes and status of the request
+     */
+    @Operation(summary = "Search notes by words",
+            description = "Get the notes containing any of the given words, stemmed in english or french, optionally of a specific patient and created within a date range. Notes are ordered from the most to the least relevant one.")
+    @Parameters({
+            @Parameter(name = "page", description = "The number of the page to return, starting from 0"),
+            @Parameter(name = "size", description = "The maximum number of notes of the page, capped to " + MAX_PAGE_SIZE)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad request - Missing words, invalid criteria or paging supplied", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/search")
+    public ResponseEntity<NoteSearchPage> searchNotes(@ParameterObject NoteSearchCriteria criteria,
+                                                      @RequestParam(value = "page", defaultValue = "0") Integer page,
+                                                      @RequestParam(value = "size", defaultValue = "20") Integer size) {
+        logger.debug("### Request called --> GET /patHistories/search {} page={} size={}", criteria, page, size);
+
+        if (page < 0 || size < 1) {
+            throw new InvalidRequestParameterException("Page must not be negative and size must be a positive number");
+        }
+        int pageSize = Math.min(size, MAX_PAGE_SIZE);
+        if ((long) page * pageSize > MAX_SEARCH_OFFSET) {
+            throw new InvalidRequestParameterException("Page is too deep, refine the search criteria");
+        }
+        NoteSearchPage matchingNotes = noteService.searchNotes(criteria, page, pageSize);
+
+        logger.info("### Retrieved page of notes matching the search successfully");
+        return new ResponseEntity<>(matchingNotes, HttpStatus.OK);
+    }
+
+    // === GET COHORT OF PATIENTS BY TRIGGER TERMS ============================
+
+    /**
+     * Lists the patients whose notes mention a combination of trigger terms.
+     *
+     * @param allOf  the trigger terms all mentioned by the patients
+     * @param anyOf  the trigger terms among which at least one is mentioned by the patients
+     * @param limit  the maximum number of patient ids to return
+     * @return       the number and ids of the matching patients and status of the request
+     */
+    @Operation(summary = "Retrieve the patients whose notes mention a combination of trigger terms",
+            description = "Get the patients mentioning all the allOf terms and at least one of the anyOf terms in their notes. Terms are given by name, as SMOKER, or by trigger term, as Smoker. The response contains the number of patients and their ids in ascending order.")
+    @Parameters({
+            @Parameter(name = "allOf", description = "The trigger terms all mentioned by the patients"),
+            @Parameter(name = "anyOf", description = "The trigger terms among which at least one is mentioned by the patients"),
+            @Parameter(name = "limit", description = "The maximum number of patient ids to return, capped to " + MAX_COHORT_IDS)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad request - No term, unknown term or invalid limit supplied", content = {@Content(schema = @Schema())}),
+            @ApiResponse(responseCode = "503", description = "Service unavailable - The term index is still loading", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/cohort")
+    public ResponseEntity<PatientCohort> getCohortByTriggerTerms(@RequestParam(value = "allOf", defaultValue = "") List<String> allOf,
+                                                                 @RequestParam(value = "anyOf", defaultValue = "") List<String> anyOf,
+                                                                 @RequestParam(value = "limit", defaultValue = "1000") Integer limit) {
+        logger.debug("### Request called --> GET /patHistories/cohort?allOf={}&anyOf={}&limit={}", allOf, anyOf, limit);
+
+        checkCohortTerms(allOf, anyOf);
+        if (limit < 0) {
+            throw new InvalidRequestParameterException("Limit must not be negative");
+        }
+        PatientCohort cohort = noteService.readCohortByTriggerTerms(allOf, anyOf, Math.min(limit, MAX_COHORT_IDS));
+
+        logger.info("### Retrieved cohort of patients successfully");
+        return new ResponseEntity<>(cohort, HttpStatus.OK);
+    }
+
+    /**
+     * Counts the patients whose notes mention a combination of trigger terms.
+     *
+     * @param allOf  the trigger terms all mentioned by the patients
+     * @param anyOf  the trigger terms among which at least one is mentioned by the patients
+     * @return       the number of matching patients and status of the request
+     */
+    @Operation(summary = "Count the patients whose notes mention a combination of trigger terms")
+    @Parameters({
+            @Parameter(name = "allOf", description = "The trigger terms all mentioned by the patients"),
+            @Parameter(name = "anyOf", description = "The trigger terms among which at least one is mentioned by the patients")
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad request - No term or unknown term supplied", content = {@Content(schema = @Schema())}),
+            @ApiResponse(responseCode = "503", description = "Service unavailable - The term index is still loading", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/cohort/count")
+    public ResponseEntity<Long> countCohortByTriggerTerms(@RequestParam(value = "allOf", defaultValue = "") List<String> allOf,
+                                                          @RequestParam(value = "anyOf", defaultValue = "") List<String> anyOf) {
+        logger.debug("### Request called --> GET /patHistories/cohort/count?allOf={}&anyOf={}", allOf, anyOf);
+
+        checkCohortTerms(allOf, anyOf);
+        long patientCount = noteService.countCohortByTriggerTerms(allOf, anyOf);
+
+        logger.info("### Counted cohort of patients successfully");
+        return new ResponseEntity<>(patientCount, HttpStatus.OK);
+    }
+
+    private static void checkCohortTerms(List<String> allOf, List<String> anyOf) {
+        if (allOf.isEmpty() && anyOf.isEmpty()) {
+            throw new InvalidRequestParameterException("At least one trigger term is required");
+        }
+    }
+
+    // === GET SUMMARY OF NOTES OF ONE OR SEVERAL PATIENTS ====================
+
+    /**
+     * Sums up the notes of a given patient without returning them.
+     *
+     * @param patientId  the id of the patient
+     * @return           the number, last modification and content hash of the notes of the patient and status of the request
+     */
+    @Operation(summary = "Retrieve the summary of the notes of a specific patient",
+            description = "Get the number of notes of the patient, their last modification and a hash of their contents, which changes with any note write. A patient without notes has a summary with no notes.")
+    @Parameters({
+            @Parameter(name = "patientId", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200")
+    })
+    @GetMapping("/patHistories/summary")
+    public ResponseEntity<PatientNoteSummary> getSummaryByPatientId(@RequestParam(value = "patientId", required = true) Integer patientId) {
+        logger.debug("### Request called --> GET /patHistories/summary?patientId={}", patientId);
+
+        PatientNoteSummary summary = noteService.readSummariesByPatientIds(List.of(patientId)).get(0);
+
+        logger.info("### Retrieved summary of notes successfully");
+        return new ResponseEntity<>(summary, HttpStatus.OK);
+    }
+
+    /**
+     * Sums up the notes of several patients without returning them.
+     *
+     * @param patientIds  the ids of the patients
+     * @return            the summary of the notes of each distinct patient, in the given order, and status of the request
+     */
+    @Operation(summary = "Retrieve the summaries of the notes of several patients")
+    @Parameters({
+            @Parameter(name = "patientIds", description = "The ids of the patients, up to " + MAX_SUMMARY_PATIENTS, required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad request - No or too many patient ids supplied", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/summaries")
+    public ResponseEntity<List<PatientNoteSummary>> getSummariesByPatientIds(@RequestParam(value = "patientIds", required = true) List<Integer> patientIds) {
+        logger.debug("### Request called --> GET /patHistories/summaries?patientIds={}", patientIds);
+
+        List<Integer> distinctPatientIds = patientIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (distinctPatientIds.isEmpty() || distinctPatientIds.size() > MAX_SUMMARY_PATIENTS) {
+            throw new InvalidRequestParameterException("From 1 to " + MAX_SUMMARY_PATIENTS + " patient ids must be given");
+        }
+        List<PatientNoteSummary> summaries = noteService.readSummariesByPatientIds(distinctPatientIds);
+
+        logger.info("### Retrieved {} summaries of notes successfully", summaries.size());
+        return new ResponseEntity<>(summaries, HttpStatus.OK);
+    }
+
+    // === GET TRIGGER TERMS OF PATIENTS =======================================
+
+    /**
+     * Finds the terms of a catalogue mentioned in the notes of one or several patients without returning the notes.
+     *
+     * @param patientIds  the ids of the patients
+     * @param terms       the catalogue of terms, or none to look for the trigger terms of the diabetes terminology
+     * @return            the terms found in the notes of each distinct patient, in the given order, and status of the request
+     */
+    @Operation(summary = "Find the terms mentioned in the notes of one or several patients",
+            description = "Look for the terms inside the database, in all the notes of the patients archived ones included, whatever their case and accents, and return only the terms found. Terms equal once their case and accents are folded are returned once, under the first of them.")
+    @Parameters({
+            @Parameter(name = "patientIds", description = "The ids of the patients, up to " + MAX_TERM_PATIENTS, required = true),
+            @Parameter(name = "terms", description = "The comma separated catalogue of terms, omitted to look for the trigger terms of the diabetes terminology")
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad request - No or too many patient ids, or invalid terms supplied", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/terms")
+    public ResponseEntity<List<PatientTriggerTerms>> getTriggerTermsByPatientIds(@RequestParam(value = "patientIds", required = true) List<Integer> patientIds,
+                                                                                 @RequestParam(value = "terms", required = false) List<String> terms) {
+        logger.debug("### Request called --> GET /patHistories/terms?patientIds={}&terms={}", patientIds, terms);
+
+        List<Integer> distinctPatientIds = patientIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (distinctPatientIds.isEmpty() || distinctPatientIds.size() > MAX_TERM_PATIENTS) {
+            throw new InvalidRequestParameterException("From 1 to " + MAX_TERM_PATIENTS + " patient ids must be given");
+        }
+        List<PatientTriggerTerms> patientTerms = noteService.readTriggerTermsByPatientIds(distinctPatientIds, terms);
+
+        logger.info("### Found terms of {} patients successfully", patientTerms.size());
+        return new ResponseEntity<>(patientTerms, HttpStatus.OK);
+    }
+
+    // === EXPORT NOTES OF ONE OR ALL PATIENTS ================================
+
+    /**
+     * Streams the notes related to a given patient, or to all patients, as newline delimited JSON.
+     *
+     * @param patientId    the id of the patient to export the notes from database, or none to export the notes of all patients
+     * @param fullHistory  whether the archived notes have to be exported as well
+     * @return             the notes written one per line as they are read from database, and status of the request
+     */
+    @Operation(summary = "Export the notes related to a specific patient or to all patients",
+            description = "Stream the notes as newline delimited JSON, one note per line, as they are read from the database. Notes of a patient are ordered from the latest to the oldest one.")
+    @Parameters({
+            @Parameter(name = "patientId", description = "The id of the patient, omitted to export the notes of all patients"),
+            @Parameter(name = "fullHistory", description = "Whether the archived notes have to be returned as well, false by default")
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = {@Content(mediaType = "application/x-ndjson", schema = @Schema(implementation = Note.class))})
+    })
+    @GetMapping("/patHistories/export")
+    public ResponseEntity<StreamingResponseBody> exportNotes(@RequestParam(value = "patientId", required = false) Integer patientId,
+                                                             @RequestParam(value = "fullHistory", defaultValue = "false") boolean fullHistory) {
+        logger.debug("### Request called --> GET /patHistories/export?patientId={}&fullHistory={}", patientId, fullHistory);
+
+        StreamingResponseBody notesExport = outputStream -> noteService.exportNotesByPatientId(patientId, fullHistory, outputStream);
+
+        logger.info("### Export of notes started");
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(notesExport);
     }
 
     // === GET NOTE BY ID =====================================================
@@ -126,6 +584,60 @@ public class NoteController {
         return new ResponseEntity<>(retrievedNote, HttpStatus.OK);
     }
 
+    // === GET REVISIONS OF NOTE BY ID ========================================
+
+    /**
+     * Lists the former versions kept for the note with the given id.
+     *
+     * @param noteId  the id of the note
+     * @return        the revisions of the note, from the latest to the oldest one, and status of the request
+     */
+    @Operation(summary = "Retrieve the former versions of a note by id",
+            description = "Get the version, patient, language and date of modification of each former version of the note, from the latest to the oldest one. Each version is stored either whole, as a snapshot, or as a delta from the next one.")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "404")
+    })
+    @GetMapping("/patHistories/{id}/revisions")
+    public ResponseEntity<List<NoteRevision>> getRevisionsByNoteId(@PathVariable("id") String noteId) {
+        logger.debug("### Request called --> GET /patHistories/{}/revisions", noteId);
+
+        List<NoteRevision> revisions = noteService.readRevisionsByNoteId(noteId);
+
+        logger.info("### Revisions of note returned successfully");
+        return new ResponseEntity<>(revisions, HttpStatus.OK);
+    }
+
+    /**
+     * Gets the note with the given id as it was at the given version.
+     *
+     * @param noteId   the id of the note
+     * @param version  the version of the note to rebuild
+     * @return         the note as it was at the given version and status of the request
+     */
+    @Operation(summary = "Retrieve a former version of a note by id",
+            description = "Rebuild the note as it was at the given version, from the latest snapshot following it and the deltas in between.")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true),
+            @Parameter(name = "version", description = "Version of the note, the current one included", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "404", description = "Not found - The note doesn't exist or this version of it isn't kept", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/{id}/revisions/{version}")
+    public ResponseEntity<Note> getNoteRevision(@PathVariable("id") String noteId, @PathVariable("version") Long version) {
+        logger.debug("### Request called --> GET /patHistories/{}/revisions/{}", noteId, version);
+
+        Note rebuiltNote = noteService.readNoteRevision(noteId, version);
+
+        logger.info("### Revision of note returned successfully");
+        return new ResponseEntity<>(rebuiltNote, HttpStatus.OK);
+    }
+
     // === UPDATE NOTE ========================================================
 
     /**
@@ -142,7 +654,8 @@ public class NoteController {
     @ApiResponses({
             @ApiResponse(responseCode = "200"),
             @ApiResponse(responseCode = "400"),
-            @ApiResponse(responseCode = "404")
+            @ApiResponse(responseCode = "404"),
+            @ApiResponse(responseCode = "409", description = "Note is no longer at the given version")
     })
     @PutMapping("/patHistories/{id}")
     public ResponseEntity<Note> updateNoteById(@PathVariable("id") String noteId, @Valid @RequestBody Note note) {
@@ -154,6 +667,38 @@ public class NoteController {
         return new ResponseEntity<>(noteUpdated, HttpStatus.OK);
     }
 
+    // === PATCH NOTE =========================================================
+
+    /**
+     * Updates only the given fields of the note with the given id.
+     *
+     * @param noteId     the id of the note to patch
+     * @param notePatch  the fields to update, with the version of the note they are based on
+     * @return           the note with the given id patched and status of the request
+     */
+    @Operation(summary = "Save partial modifications of an existing note by id")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400"),
+            @ApiResponse(responseCode = "404"),
+            @ApiResponse(responseCode = "409", description = "Note is no longer at the given version")
+    })
+    @PatchMapping("/patHistories/{id}")
+    public ResponseEntity<Note> patchNoteById(@PathVariable("id") String noteId, @Valid @RequestBody NotePatch notePatch) {
+        logger.debug("### Request called --> PATCH /patHistories/{}", noteId);
+
+        if (notePatch.getContent() == null && notePatch.getLanguage() == null) {
+            throw new InvalidRequestParameterException("Content or language must be given");
+        }
+        Note notePatched = noteService.patchNote(noteId, notePatch);
+
+        logger.info("### Note patched successfully");
+        return new ResponseEntity<>(notePatched, HttpStatus.OK);
+    }
+
     // === DELETE NOTE ========================================================
 
     /**
@@ -190,4 +735,93 @@ public class NoteController {
         logger.info("### Notes deleted successfully");
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
+
+    // === AUTOSAVE DRAFT =====================================================
+
+    /**
+     * Autosaves the draft of a note being written or edited, replacing its previous autosave.
+     * The draft is written to the database a few seconds later, along with the other drafts saved meanwhile.
+     *
+     * @param draftId  the key of the draft chosen by the client
+     * @param draft    the draft to save
+     * @return         the saved draft and status of the request
+     */
+    @Operation(summary = "Autosave the draft of a note being written or edited")
+    @Parameters({
+            @Parameter(name = "draftId", description = "Key of the draft chosen by the client, as one per note being written or edited", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Draft kept, to be written with the next batch of drafts"),
+            @ApiResponse(responseCode = "400", description = "Bad request - Invalid draft key or missing patient id", content = {@Content(schema = @Schema())})
+    })
+    @PutMapping("/patHistories/drafts/{draftId}")
+    public ResponseEntity<NoteDraft> saveDraft(@PathVariable("draftId") String draftId, @Valid @RequestBody NoteDraft draft) {
+        logger.debug("### Request called --> PUT /patHistories/drafts/{}", draftId);
+
+        NoteDraft savedDraft = noteService.saveDraft(draftId, draft);
+
+        logger.debug("### Draft autosaved successfully");
+        return new ResponseEntity<>(savedDraft, HttpStatus.ACCEPTED);
+    }
+
+    // === GET DRAFT ==========================================================
+
+    /**
+     * Gets the latest autosave of a draft, to resume a note left unsaved.
+     *
+     * @param draftId  the key of the draft
+     * @return         the draft and status of the request
+     */
+    @Operation(summary = "Get the latest autosave of a draft")
+    @Parameters({
+            @Parameter(name = "draftId", description = "Key of the draft chosen by the client", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "404", description = "Not found - The draft doesn't exist, was discarded or has expired", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/drafts/{draftId}")
+    public ResponseEntity<NoteDraft> getDraft(@PathVariable("draftId") String draftId) {
+        logger.debug("### Request called --> GET /patHistories/drafts/{}", draftId);
+
+        NoteDraft draft = noteService.readDraft(draftId);
+
+        logger.info("### Draft retrieved successfully");
+        return new ResponseEntity<>(draft, HttpStatus.OK);
+    }
+
+    // === DISCARD DRAFT ======================================================
+
+    /**
+     * Discards a draft, once its note is saved or abandoned.
+     *
+     * @param draftId  the key of the draft
+     * @return         the status of the request
+     */
+    @Operation(summary = "Discard a draft once its note is saved or abandoned")
+    @Parameters({
+            @Parameter(name = "draftId", description = "Key of the draft chosen by the client", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "204")
+    })
+    @DeleteMapping("/patHistories/drafts/{draftId}")
+    public ResponseEntity<NoteDraft> deleteDraft(@PathVariable("draftId") String draftId) {
+        logger.debug("### Request called --> DELETE /patHistories/drafts/{}", draftId);
+
+        noteService.deleteDraft(draftId);
+
+        logger.info("### Draft discarded successfully");
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    // ========================================================================
+
+    /**
+     * Adds the ETag of the notes of a patient to a response, unless the notes may have been read from a secondary:
+     * older than the ETag, which is read from the primary, they would then be kept by clients until the next write.
+     */
+    private static <B extends ResponseEntity.HeadersBuilder<B>> B withETag(B response, String notesETag) {
+        return notesETag == null ? response : response.eTag(notesETag);
+    }
 }
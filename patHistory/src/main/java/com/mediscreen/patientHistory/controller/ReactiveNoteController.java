@@ -0,0 +1,527 @@
+package com.mediscreen.patientHistory.controller;
+
+import com.mediscreen.patientHistory.exception.InvalidRequestParameterException;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
+import com.mediscreen.patientHistory.service.ReactiveNoteService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.Parameters;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.mediscreen.patientHistory.controller.NoteController.MAX_PAGE_SIZE;
+import static com.mediscreen.patientHistory.controller.NoteController.MAX_TERM_PATIENTS;
+import static com.mediscreen.patientHistory.controller.NoteController.SECONDARY_OK_DESCRIPTION;
+
+/**
+ * Manages the main endpoints of the Note API with WebFlux, when the reactive profile is active.
+ * <p>
+ * Lists of notes are streamed as they are read from the database, as a JSON array or as newline delimited JSON, the
+ * demand of the client driving the reading of the database cursor. Unlike in the servlet mode, an empty list of notes
+ * is returned with the 200 status, its emptiness being unknown when the response starts.
+ * <p>
+ * The pages, date ranges and trigger terms the other services read, the revisions and the drafts are served as in the
+ * servlet mode, with the same ETags, their blocking reads running on the bounded elastic scheduler.
+ */
+@RestController
+@Profile("reactive")
+public class ReactiveNoteController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveNoteController.class);
+
+    /**
+     * Component that manages the note operations without blocking.
+     */
+    private final ReactiveNoteService reactiveNoteService;
+
+    /**
+     * Instantiates a new reactive note controller.
+     *
+     * @param reactiveNoteService  the reactive service of notes
+     */
+    @Autowired
+    public ReactiveNoteController(ReactiveNoteService reactiveNoteService) {
+        this.reactiveNoteService = reactiveNoteService;
+    }
+
+
+    // === ADD NEW NOTE =======================================================
+
+    /**
+     * Adds a new note related to a patient to database.
+     *
+     * @param noteToAdd  the note to add to database
+     * @param draftId    the key of the draft the note was typed in, discarded once the note is saved
+     * @return           the note added
+     */
+    @Operation(summary = "Add a new note")
+    @Parameters({
+            @Parameter(name = "draftId", description = "Key of the draft the note was typed in, discarded along with the note being saved")
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "201"),
+            @ApiResponse(responseCode = "400")
+    })
+    @PostMapping("/patHistories")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<Note> addNewNote(@Valid @RequestBody Note noteToAdd,
+                                 @RequestParam(value = "draftId", required = false) String draftId) {
+        logger.debug("### Request called --> POST /patHistories");
+
+        return draftId == null ? reactiveNoteService.createNote(noteToAdd) : reactiveNoteService.createNote(noteToAdd, draftId);
+    }
+
+    // === GET ALL NOTES OF ONE PATIENT BY HIS ID =============================
+
+    /**
+     * Streams all notes related to a given patient.
+     *
+     * @param patientId    the id of the patient to retrieve the notes from database
+     * @param fullHistory  whether the archived notes of the patient have to be streamed as well
+     * @param exchange     the exchange, holding the ETag of the notes the client already has if any
+     * @return             the notes of the patient, from the latest to the oldest one, with their ETag
+     */
+    @Operation(summary = "Retrieve all notes related to a specific patient",
+            description = "Stream the notes of the patient as a JSON array, or as newline delimited JSON when asked with Accept: application/x-ndjson. Its ETag changes with any write to the notes of the patient.")
+    @Parameters({
+            @Parameter(name = "patientId"),
+            @Parameter(name = "fullHistory", description = "Whether the archived notes have to be returned as well, false by default")
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "304", description = "Not modified - The notes of the patient didn't change since the given ETag", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping(value = "/patHistories", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<Note>>> getAllNotesByPatientId(@RequestParam(value = "patientId", required = true) Integer patientId,
+                                                                   @RequestParam(value = "fullHistory", defaultValue = "false") boolean fullHistory,
+                                                                   ServerWebExchange exchange) {
+        logger.debug("### Request called --> GET /patHistories?patientId={}&fullHistory={}", patientId, fullHistory);
+
+        return withNotesETag(patientId, false, exchange,
+                () -> Mono.just(reactiveNoteService.readNotesByPatientId(patientId, fullHistory)));
+    }
+
+    // === GET PAGE OF NOTES OF ONE PATIENT ===================================
+
+    /**
+     * Lists a page of the notes related to a given patient, from the latest to the oldest one.
+     *
+     * @param patientId    the id of the patient to retrieve the notes from database
+     * @param cursor       the cursor returned with the previous page, or none to get the first page
+     * @param size         the maximum number of notes of the page
+     * @param fullHistory  whether the archived notes of the patient have to be listed as well
+     * @param fields       the fields of the notes to return, all of them when none is given
+     * @param preview      the maximum number of characters of the returned contents, the whole contents when not given
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @param exchange     the exchange, holding the ETag of the notes the client already has if any
+     * @return             the page of notes of the patient with the given id, with their ETag
+     */
+    @Operation(summary = "Retrieve a page of the notes related to a specific patient",
+            description = "Get the notes of a patient from the latest to the oldest one. The response contains the cursor to send back to get the following page. Its ETag changes with any write to the notes of the patient.")
+    @Parameters({
+            @Parameter(name = "patientId", required = true),
+            @Parameter(name = "cursor", description = "The cursor returned with the previous page, omitted to get the first page"),
+            @Parameter(name = "size", description = "The maximum number of notes of the page, capped to " + MAX_PAGE_SIZE),
+            @Parameter(name = "fullHistory", description = "Whether the archived notes have to be returned as well, false by default"),
+            @Parameter(name = "fields", description = "The fields of the notes to return, among id, patientId, dateOfCreation, dateOfModification, content, language and version, all of them by default"),
+            @Parameter(name = "preview", description = "The maximum number of characters of the returned contents, the whole contents by default"),
+            @Parameter(name = "secondaryOk", description = SECONDARY_OK_DESCRIPTION)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "304", description = "Not modified - The notes of the patient didn't change since the given ETag", content = {@Content(schema = @Schema())}),
+            @ApiResponse(responseCode = "400")
+    })
+    @GetMapping("/patHistories/page")
+    public Mono<ResponseEntity<NotePage>> getNotesPageByPatientId(@RequestParam(value = "patientId") Integer patientId,
+                                                                  @RequestParam(value = "cursor", required = false) String cursor,
+                                                                  @RequestParam(value = "size", defaultValue = "20") Integer size,
+                                                                  @RequestParam(value = "fullHistory", defaultValue = "false") boolean fullHistory,
+                                                                  @RequestParam(value = "fields", required = false) List<String> fields,
+                                                                  @RequestParam(value = "preview", required = false) Integer preview,
+                                                                  @RequestParam(value = "secondaryOk", defaultValue = "false") boolean secondaryOk,
+                                                                  ServerWebExchange exchange) {
+        logger.debug("### Request called --> GET /patHistories/page?patientId={}&cursor={}&size={}&fullHistory={}&fields={}&preview={}&secondaryOk={}",
+                patientId, cursor, size, fullHistory, fields, preview, secondaryOk);
+
+        if (size < 1) {
+            return Mono.error(new InvalidRequestParameterException("Size must be a positive number"));
+        }
+        return withNotesETag(patientId, secondaryOk, exchange,
+                () -> reactiveNoteService.readNotesPageByPatientId(patientId, cursor, Math.min(size, MAX_PAGE_SIZE), fullHistory,
+                        new NoteProjection(fields, preview), secondaryOk));
+    }
+
+    // === GET NOTES OF ONE PATIENT WITHIN A DATE RANGE =======================
+
+    /**
+     * Lists the notes related to a given patient created within a range of days, from the latest to the oldest one.
+     *
+     * @param patientId    the id of the patient to retrieve the notes from database
+     * @param from         the first day of creation of the notes, inclusive
+     * @param to           the last day of creation of the notes, inclusive
+     * @param fullHistory  whether the archived notes of the patient have to be listed as well
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @param exchange     the exchange, holding the ETag of the notes the client already has if any
+     * @return             the notes of the patient created within the range, with their ETag
+     */
+    @Operation(summary = "Retrieve the notes related to a specific patient created within a date range",
+            description = "Get the notes of a patient created from one day to another, both inclusive and each one optional, from the latest to the oldest one. Its ETag changes with any write to the notes of the patient.")
+    @Parameters({
+            @Parameter(name = "patientId", required = true),
+            @Parameter(name = "from", description = "The first day of creation of the notes, as yyyy-MM-dd, omitted for no lower bound"),
+            @Parameter(name = "to", description = "The last day of creation of the notes, as yyyy-MM-dd, omitted for no upper bound"),
+            @Parameter(name = "fullHistory", description = "Whether the archived notes have to be returned as well, false by default"),
+            @Parameter(name = "secondaryOk", description = SECONDARY_OK_DESCRIPTION)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "304", description = "Not modified - The notes of the patient didn't change since the given ETag", content = {@Content(schema = @Schema())}),
+            @ApiResponse(responseCode = "400")
+    })
+    @GetMapping("/patHistories/range")
+    public Mono<ResponseEntity<List<Note>>> getNotesByPatientIdAndDateRange(@RequestParam(value = "patientId") Integer patientId,
+                                                                            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                            @RequestParam(value = "fullHistory", defaultValue = "false") boolean fullHistory,
+                                                                            @RequestParam(value = "secondaryOk", defaultValue = "false") boolean secondaryOk,
+                                                                            ServerWebExchange exchange) {
+        logger.debug("### Request called --> GET /patHistories/range?patientId={}&from={}&to={}&fullHistory={}&secondaryOk={}",
+                patientId, from, to, fullHistory, secondaryOk);
+
+        return withNotesETag(patientId, secondaryOk, exchange,
+                () -> reactiveNoteService.readNotesByPatientIdAndDateRange(patientId, from, to, fullHistory, secondaryOk));
+    }
+
+    // === GET TRIGGER TERMS OF PATIENTS =======================================
+
+    /**
+     * Finds the terms of a catalogue mentioned in the notes of one or several patients without returning the notes.
+     *
+     * @param patientIds  the ids of the patients
+     * @param terms       the catalogue of terms, or none to look for the trigger terms of the diabetes terminology
+     * @return            the terms found in the notes of each distinct patient, in the given order
+     */
+    @Operation(summary = "Find the terms mentioned in the notes of one or several patients",
+            description = "Look for the terms inside the database, in all the notes of the patients archived ones included, whatever their case and accents, and return only the terms found.")
+    @Parameters({
+            @Parameter(name = "patientIds", description = "The ids of the patients, up to " + MAX_TERM_PATIENTS, required = true),
+            @Parameter(name = "terms", description = "The comma separated catalogue of terms, omitted to look for the trigger terms of the diabetes terminology")
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad request - No or too many patient ids, or invalid terms supplied", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/terms")
+    public Mono<List<PatientTriggerTerms>> getTriggerTermsByPatientIds(@RequestParam(value = "patientIds", required = true) List<Integer> patientIds,
+                                                                       @RequestParam(value = "terms", required = false) List<String> terms) {
+        logger.debug("### Request called --> GET /patHistories/terms?patientIds={}&terms={}", patientIds, terms);
+
+        List<Integer> distinctPatientIds = patientIds.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (distinctPatientIds.isEmpty() || distinctPatientIds.size() > MAX_TERM_PATIENTS) {
+            return Mono.error(new InvalidRequestParameterException("From 1 to " + MAX_TERM_PATIENTS + " patient ids must be given"));
+        }
+        return reactiveNoteService.readTriggerTermsByPatientIds(distinctPatientIds, terms);
+    }
+
+    // === EXPORT NOTES OF ONE OR ALL PATIENTS ================================
+
+    /**
+     * Streams the notes related to a given patient, or to all patients, as newline delimited JSON.
+     *
+     * @param patientId    the id of the patient to export the notes from database, or none to export the notes of all patients
+     * @param fullHistory  whether the archived notes have to be exported as well
+     * @return             the notes written one per line as they are read from database
+     */
+    @Operation(summary = "Export the notes related to a specific patient or to all patients")
+    @Parameters({
+            @Parameter(name = "patientId", description = "The id of the patient, omitted to export the notes of all patients"),
+            @Parameter(name = "fullHistory", description = "Whether the archived notes have to be returned as well, false by default")
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200")
+    })
+    @GetMapping(value = "/patHistories/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Note> exportNotes(@RequestParam(value = "patientId", required = false) Integer patientId,
+                                  @RequestParam(value = "fullHistory", defaultValue = "false") boolean fullHistory) {
+        logger.debug("### Request called --> GET /patHistories/export?patientId={}&fullHistory={}", patientId, fullHistory);
+
+        return reactiveNoteService.readNotesByPatientId(patientId, fullHistory);
+    }
+
+    // === GET NOTE BY ID =====================================================
+
+    /**
+     * Gets note with the given id which related to a patient.
+     *
+     * @param noteId  the id of the note to retrieve from database
+     * @return        the note with the given id
+     */
+    @Operation(summary = "Retrieve a note by id")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "404")
+    })
+    @GetMapping("/patHistories/{id}")
+    public Mono<Note> getNoteById(@PathVariable("id") String noteId) {
+        logger.debug("### Request called --> GET patHistories/{}", noteId);
+
+        return reactiveNoteService.readNoteById(noteId);
+    }
+
+    // === GET REVISIONS OF NOTE BY ID ========================================
+
+    /**
+     * Lists the former versions kept for the note with the given id.
+     *
+     * @param noteId  the id of the note
+     * @return        the revisions of the note, from the latest to the oldest one
+     */
+    @Operation(summary = "Retrieve the former versions of a note by id")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "404")
+    })
+    @GetMapping("/patHistories/{id}/revisions")
+    public Mono<List<NoteRevision>> getRevisionsByNoteId(@PathVariable("id") String noteId) {
+        logger.debug("### Request called --> GET /patHistories/{}/revisions", noteId);
+
+        return reactiveNoteService.readRevisionsByNoteId(noteId);
+    }
+
+    /**
+     * Gets the note with the given id as it was at the given version.
+     *
+     * @param noteId   the id of the note
+     * @param version  the version of the note to rebuild
+     * @return         the note as it was at the given version
+     */
+    @Operation(summary = "Retrieve a former version of a note by id")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true),
+            @Parameter(name = "version", description = "Version of the note, the current one included", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "404", description = "Not found - The note doesn't exist or this version of it isn't kept", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/{id}/revisions/{version}")
+    public Mono<Note> getNoteRevision(@PathVariable("id") String noteId, @PathVariable("version") Long version) {
+        logger.debug("### Request called --> GET /patHistories/{}/revisions/{}", noteId, version);
+
+        return reactiveNoteService.readNoteRevision(noteId, version);
+    }
+
+    // === UPDATE NOTE ========================================================
+
+    /**
+     * Updates the note with the given id.
+     *
+     * @param noteId  the id of the note to update
+     * @param note    the note which content have to be updated in database
+     * @return        the note with the given id updated
+     */
+    @Operation(summary = "Update an existing note by id")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400"),
+            @ApiResponse(responseCode = "404"),
+            @ApiResponse(responseCode = "409", description = "Note is no longer at the given version")
+    })
+    @PutMapping("/patHistories/{id}")
+    public Mono<Note> updateNoteById(@PathVariable("id") String noteId, @Valid @RequestBody Note note) {
+        logger.debug("### Request called --> PUT /patHistories/{}", noteId);
+
+        return reactiveNoteService.updateNote(noteId, note);
+    }
+
+    // === PATCH NOTE =========================================================
+
+    /**
+     * Updates only the given fields of the note with the given id.
+     *
+     * @param noteId     the id of the note to patch
+     * @param notePatch  the fields to update, with the version of the note they are based on
+     * @return           the note with the given id patched
+     */
+    @Operation(summary = "Save partial modifications of an existing note by id")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400"),
+            @ApiResponse(responseCode = "404"),
+            @ApiResponse(responseCode = "409", description = "Note is no longer at the given version")
+    })
+    @PatchMapping("/patHistories/{id}")
+    public Mono<Note> patchNoteById(@PathVariable("id") String noteId, @Valid @RequestBody NotePatch notePatch) {
+        logger.debug("### Request called --> PATCH /patHistories/{}", noteId);
+
+        if (notePatch.getContent() == null && notePatch.getLanguage() == null) {
+            return Mono.error(new InvalidRequestParameterException("Content or language must be given"));
+        }
+        return reactiveNoteService.patchNote(noteId, notePatch);
+    }
+
+    // === DELETE NOTE ========================================================
+
+    /**
+     * Delete note with the given id.
+     *
+     * @param noteId  the id of the note which data is to be deleted from database
+     * @return        the completion of the deletion
+     */
+    @Operation(summary = "Delete an existing note by id")
+    @Parameters({
+            @Parameter(name = "id", description = "Id of a specific note", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "204"),
+            @ApiResponse(responseCode = "404")
+    })
+    @DeleteMapping("/patHistories/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deleteNoteById(@PathVariable("id") String noteId) {
+        logger.info("### Request called --> DELETE /patHistories/{}", noteId);
+
+        return reactiveNoteService.deleteNote(noteId);
+    }
+
+    // === DELETE ALL NOTES OF ONE PATIENT BY HIS ID ==========================
+    @DeleteMapping("/patHistories")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deleteAllNotesByPatientId(@RequestParam(value = "patientId", required = true) Integer patientId) {
+        logger.debug("### Request called --> DELETE /patHistories?patientId={}", patientId);
+
+        return reactiveNoteService.deleteNotesByPatientId(patientId);
+    }
+
+    // === AUTOSAVE DRAFT =====================================================
+
+    /**
+     * Autosaves the draft of a note being written or edited, replacing its previous autosave.
+     *
+     * @param draftId  the key of the draft chosen by the client
+     * @param draft    the draft to save
+     * @return         the saved draft
+     */
+    @Operation(summary = "Autosave the draft of a note being written or edited")
+    @Parameters({
+            @Parameter(name = "draftId", description = "Key of the draft chosen by the client, as one per note being written or edited", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", description = "Draft kept, to be written with the next batch of drafts"),
+            @ApiResponse(responseCode = "400", description = "Bad request - Invalid draft key or missing patient id", content = {@Content(schema = @Schema())})
+    })
+    @PutMapping("/patHistories/drafts/{draftId}")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public Mono<NoteDraft> saveDraft(@PathVariable("draftId") String draftId, @Valid @RequestBody NoteDraft draft) {
+        logger.debug("### Request called --> PUT /patHistories/drafts/{}", draftId);
+
+        return reactiveNoteService.saveDraft(draftId, draft);
+    }
+
+    // === GET DRAFT ==========================================================
+
+    /**
+     * Gets the latest autosave of a draft, to resume a note left unsaved.
+     *
+     * @param draftId  the key of the draft
+     * @return         the draft
+     */
+    @Operation(summary = "Get the latest autosave of a draft")
+    @Parameters({
+            @Parameter(name = "draftId", description = "Key of the draft chosen by the client", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "404", description = "Not found - The draft doesn't exist, was discarded or has expired", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping("/patHistories/drafts/{draftId}")
+    public Mono<NoteDraft> getDraft(@PathVariable("draftId") String draftId) {
+        logger.debug("### Request called --> GET /patHistories/drafts/{}", draftId);
+
+        return reactiveNoteService.readDraft(draftId);
+    }
+
+    // === DISCARD DRAFT ======================================================
+
+    /**
+     * Discards a draft, once its note is saved or abandoned.
+     *
+     * @param draftId  the key of the draft
+     * @return         the completion of the discard
+     */
+    @Operation(summary = "Discard a draft once its note is saved or abandoned")
+    @Parameters({
+            @Parameter(name = "draftId", description = "Key of the draft chosen by the client", required = true)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "204")
+    })
+    @DeleteMapping("/patHistories/drafts/{draftId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deleteDraft(@PathVariable("draftId") String draftId) {
+        logger.debug("### Request called --> DELETE /patHistories/drafts/{}", draftId);
+
+        return reactiveNoteService.deleteDraft(draftId);
+    }
+
+    // ========================================================================
+
+    /**
+     * Answers with the notes of a patient and their ETag, or with the 304 status when the client already has them, as
+     * the servlet mode does. The ETag is read before the notes, so that a write in between changes it for the next
+     * request, and it is left out when the notes may come from a secondary.
+     */
+    private <B> Mono<ResponseEntity<B>> withNotesETag(Integer patientId, boolean secondaryOk, ServerWebExchange exchange,
+                                                      Supplier<Mono<B>> notes) {
+        if (secondaryOk) {
+            return notes.get().map(ResponseEntity::ok);
+        }
+        return reactiveNoteService.readNotesETagByPatientId(patientId).flatMap(notesETag -> {
+            if (exchange.checkNotModified(notesETag)) {
+                logger.info("### Notes of patientId={} not modified since ETag {}", patientId, notesETag);
+                return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(notesETag).<B>build());
+            }
+            return notes.get().map(body -> ResponseEntity.ok().eTag(notesETag).body(body));
+        });
+    }
+}
@@ -0,0 +1,18 @@
+package com.mediscreen.patientHistory.exception;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidRequestParameterException extends RuntimeException {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvalidRequestParameterException.class);
+
+    public InvalidRequestParameterException(String message) {
+        super(message);
+        logger.error("### " + message);
+    }
+
+}
@@ -1,11 +1,18 @@
 package com.mediscreen.patientHistory.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Language;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 import java.time.LocalDateTime;
 
 /**
@@ -16,9 +23,16 @@ import java.time.LocalDateTime;
 @Getter
 @Setter
 @ToString
-@Document(collection = "notes") // Maps entity class object to JSON formatted documents
+@Document(collection = "notes", language = "english") // Maps entity class object to JSON formatted documents, stemming content in english by default
+@CompoundIndex(name = "patientId_dateOfCreation_desc", def = "{'patientId': 1, 'dateOfCreation': -1, '_id': -1}") // Serves notes of a patient from latest
+@JsonInclude(JsonInclude.Include.NON_NULL) // Leaves out the fields not asked for by a projection
 public class Note {
 
+    /**
+     * Collection the notes not modified for a while are moved to, with the same documents and page index.
+     */
+    public static final String ARCHIVE_COLLECTION = "notes_archive";
+
     @Id
     private String id;
 
@@ -27,13 +41,35 @@ public class Note {
 
     private LocalDateTime dateOfCreation;
 
+    @Indexed(name = "dateOfModification") // Finds the notes to archive
     private LocalDateTime dateOfModification;
 
     @NotBlank(message = "Content is mandatory.")
+    @TextIndexed // Searched by words, stemmed in the language of the note
     private String content;
 
+    @Language
+    @Pattern(regexp = "english|french", message = "Language must be english or french.")
+    private String language;
+
+    @Version // Incremented by each update, an update based on another version being rejected
+    private Long version;
 
-    // === Other constructor ==================================================
+
+    // === Other constructors =================================================
+
+    /**
+     * Instantiates a note written in the default language.
+     *
+     * @param id                  the id of the note
+     * @param patientId           the patient id with which the note is associated
+     * @param dateOfCreation      the date the note was created
+     * @param dateOfModification  the date the change was made to the note
+     * @param content             the content of the note provided by the practitioner
+     */
+    public Note(String id, Integer patientId, LocalDateTime dateOfCreation, LocalDateTime dateOfModification, String content) {
+        this(id, patientId, dateOfCreation, dateOfModification, content, null, null);
+    }
 
     /**
      * Instantiates a note.
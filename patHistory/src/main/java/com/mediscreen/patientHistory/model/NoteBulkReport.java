@@ -0,0 +1,32 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Report of the insertion of a batch of notes.
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class NoteBulkReport {
+
+    /**
+     * Number of inserted notes.
+     */
+    private int insertedCount;
+
+    /**
+     * Number of notes rejected by validation or by the database.
+     */
+    private int rejectedCount;
+
+    /**
+     * Result of each note, in the order of the submitted batch.
+     */
+    private List<NoteBulkResult> results;
+
+}
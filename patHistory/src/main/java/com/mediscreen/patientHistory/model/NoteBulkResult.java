@@ -0,0 +1,35 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Result of the insertion of one note of a batch.
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class NoteBulkResult {
+
+    /**
+     * Position of the note in the submitted batch.
+     */
+    private int index;
+
+    /**
+     * Id of the inserted note, null when the note was rejected.
+     */
+    private String id;
+
+    /**
+     * Whether the note was inserted.
+     */
+    private boolean inserted;
+
+    /**
+     * Reason why the note was rejected, null when the note was inserted.
+     */
+    private String error;
+
+}
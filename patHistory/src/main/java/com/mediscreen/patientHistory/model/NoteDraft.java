@@ -0,0 +1,60 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+
+/**
+ * Entity linked to the note drafts table of the database, keeping the content a practitioner is typing before the note
+ * is saved.
+ * <p>
+ * Drafts are autosaved often and only need to survive a closed tab or a lost session, so they are written lazily and
+ * with a relaxed durability. A draft is discarded once its note is saved, and expires when abandoned.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@Document(collection = "note_drafts")
+public class NoteDraft {
+
+    /**
+     * Key of the draft chosen by the client, as one per note being written or edited.
+     */
+    @Id
+    private String id;
+
+    @NotNull(message = "Patient Id is mandatory.")
+    private Integer patientId;
+
+    /**
+     * Id of the note being edited, null for a new note.
+     */
+    private String noteId;
+
+    /**
+     * Version of the note being edited the draft is based on, null for a new note.
+     */
+    private Long version;
+
+    private String content;
+
+    /**
+     * Date the form the draft is typed in was opened, set by the client. Autosaves of a form opened before the draft
+     * was discarded are ignored, so that a late autosave can't bring back the draft of a note already saved.
+     */
+    private LocalDateTime dateOfCreation;
+
+    @Indexed(name = "dateOfModification_ttl", expireAfter = "7d") // Drops the drafts abandoned for a week
+    private LocalDateTime dateOfModification;
+
+}
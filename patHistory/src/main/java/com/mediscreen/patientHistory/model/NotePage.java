@@ -0,0 +1,32 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Page of the notes of a patient, ordered from the latest to the oldest one.
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class NotePage {
+
+    /**
+     * Notes of the page.
+     */
+    private List<Note> notes;
+
+    /**
+     * Opaque cursor to send back to get the following page, null when there is no following page.
+     */
+    private String nextCursor;
+
+    /**
+     * Whether more notes are available after this page.
+     */
+    private boolean hasMore;
+
+}
@@ -0,0 +1,33 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.validation.constraints.Pattern;
+
+/**
+ * Partial modification of a note, fields left null being kept unchanged.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class NotePatch {
+
+    @Pattern(regexp = "(?s).*\\S.*", message = "Content must not be blank.")
+    private String content;
+
+    @Pattern(regexp = "english|french", message = "Language must be english or french.")
+    private String language;
+
+    /**
+     * Version of the note the modification is based on, the modification being rejected if the note has changed since.
+     * Not checked when null.
+     */
+    private Long version;
+
+}
@@ -0,0 +1,122 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fields of the notes a client asks for when listing notes, and the maximum number of characters of their content.
+ * <p>
+ * The database applies it as a projection, so that left out fields and the end of long contents are neither decoded
+ * nor sent. Compressed contents can only be truncated once inflated, which {@link #apply(Note)} does along with
+ * clearing the fields read for sorting only.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class NoteProjection {
+
+    public static final String CONTENT_FIELD = "content";
+
+    /**
+     * Fields of a note which can be asked for, as named in the JSON of a note.
+     */
+    public static final List<String> FIELDS = List.of("id", "patientId", "dateOfCreation", "dateOfModification",
+            CONTENT_FIELD, "language", "version");
+
+    /**
+     * Projection of whole notes, with all their fields and their whole content.
+     */
+    public static final NoteProjection WHOLE = new NoteProjection(null, null);
+
+    /**
+     * Fields asked for, all of them when none is given.
+     */
+    private final Set<String> fields;
+
+    /**
+     * Maximum number of characters of the content, the whole content when not given.
+     */
+    private final Integer preview;
+
+    /**
+     * Instantiates a projection of notes.
+     *
+     * @param fields   the fields asked for, or null or none for all of them
+     * @param preview  the maximum number of characters of the content, or null for the whole content
+     */
+    public NoteProjection(Collection<String> fields, Integer preview) {
+        this.fields = fields == null || fields.isEmpty() ? Set.copyOf(FIELDS) : Set.copyOf(fields);
+        this.preview = preview;
+    }
+
+    /**
+     * Tells whether notes are read whole, in which case no projection is needed.
+     *
+     * @return  true if all fields and the whole content are asked for
+     */
+    public boolean isWhole() {
+        return preview == null && fields.containsAll(FIELDS);
+    }
+
+    /**
+     * Tells whether the given field is asked for.
+     *
+     * @param field  the name of the field
+     * @return       true if the field is asked for
+     */
+    public boolean includes(String field) {
+        return fields.contains(field);
+    }
+
+    /**
+     * Clears the fields of a read note which weren't asked for and truncates its content to the preview length.
+     *
+     * @param note  the read note
+     * @return      the given note
+     */
+    public Note apply(Note note) {
+        if (isWhole()) {
+            return note;
+        }
+        if (!includes("id")) {
+            note.setId(null);
+        }
+        if (!includes("patientId")) {
+            note.setPatientId(null);
+        }
+        if (!includes("dateOfCreation")) {
+            note.setDateOfCreation(null);
+        }
+        if (!includes("dateOfModification")) {
+            note.setDateOfModification(null);
+        }
+        if (!includes(CONTENT_FIELD)) {
+            note.setContent(null);
+        } else if (preview != null && note.getContent() != null) {
+            note.setContent(truncate(note.getContent(), preview));
+        }
+        if (!includes("language")) {
+            note.setLanguage(null);
+        }
+        if (!includes("version")) {
+            note.setVersion(null);
+        }
+        return note;
+    }
+
+    // ========================================================================
+
+    private static String truncate(String content, int length) {
+        // Counted in code points, as the database does, so that a surrogate pair is never split
+        if (content.length() <= length || content.codePointCount(0, content.length()) <= length) {
+            return content;
+        }
+        return content.substring(0, content.offsetByCodePoints(0, length));
+    }
+
+}
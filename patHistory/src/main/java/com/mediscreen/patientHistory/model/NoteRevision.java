@@ -0,0 +1,83 @@
+package com.mediscreen.patientHistory.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity linked to the note revisions table of the database, keeping a former version of a note replaced by an update.
+ * <p>
+ * The content of a revision is either stored whole, as a snapshot, or as the delta turning the content of the next
+ * version of the note into it, so that a revision is rebuilt from the closest later snapshot or from the note itself.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@Document(collection = "note_revisions")
+@CompoundIndex(name = "noteId_version", def = "{'noteId': 1, 'version': 1}", unique = true) // Serves the revisions of a note in order
+@CompoundIndex(name = "patientId", def = "{'patientId': 1}") // Deletes the revisions of a patient
+public class NoteRevision {
+
+    @Id
+    private String id;
+
+    private String noteId;
+
+    /**
+     * Patient the note related to at this version.
+     */
+    private Integer patientId;
+
+    /**
+     * Version of the note this revision keeps, 0 for a note saved before versions were kept.
+     */
+    private long version;
+
+    private LocalDateTime dateOfModification;
+
+    private String language;
+
+    /**
+     * Whole content of the note at this version, only kept by snapshots.
+     */
+    @JsonIgnore
+    private String content;
+
+    /**
+     * Delta turning the content of the next version of the note into the content at this version, null for snapshots.
+     */
+    @JsonIgnore
+    private String delta;
+
+    /**
+     * Tells whether the content of this version is stored whole.
+     *
+     * @return  true if this revision is a snapshot, false if it is a delta
+     */
+    @JsonProperty("snapshot")
+    public boolean isSnapshot() {
+        return delta == null;
+    }
+
+    /**
+     * Returns the number of chars stored for the content of this version.
+     *
+     * @return  the length of the snapshot or of the delta
+     */
+    @JsonProperty("storedLength")
+    public int getStoredLength() {
+        return isSnapshot() ? (content == null ? 0 : content.length()) : delta.length();
+    }
+
+}
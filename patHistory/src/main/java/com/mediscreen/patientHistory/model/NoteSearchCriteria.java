@@ -0,0 +1,47 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Criteria of a full-text search of notes. Only the searched words are mandatory.
+ */
+@NoArgsConstructor
+@Getter
+@Setter
+@ToString
+public class NoteSearchCriteria {
+
+    /**
+     * Searched words, a note matching any of them. Quoted phrases must be present as is and words prefixed by a minus sign must be absent.
+     */
+    private String text;
+
+    /**
+     * Language used to stem the searched words, english or french. English when not given.
+     */
+    private String language;
+
+    /**
+     * Id of the patient whose notes are searched, all patients when not given.
+     */
+    private Integer patientId;
+
+    /**
+     * First day of creation of the searched notes, inclusive.
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate from;
+
+    /**
+     * Last day of creation of the searched notes, inclusive.
+     */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate to;
+
+}
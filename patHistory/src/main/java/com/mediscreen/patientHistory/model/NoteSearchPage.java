@@ -0,0 +1,37 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Page of the notes matching a full-text search, ordered from the most to the least relevant one.
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class NoteSearchPage {
+
+    /**
+     * Notes of the page.
+     */
+    private List<Note> notes;
+
+    /**
+     * Number of the page, starting from 0.
+     */
+    private int page;
+
+    /**
+     * Maximum number of notes of the page.
+     */
+    private int size;
+
+    /**
+     * Whether more notes are available after this page.
+     */
+    private boolean hasMore;
+
+}
@@ -0,0 +1,32 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Patients whose notes mention a combination of trigger terms.
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class PatientCohort {
+
+    /**
+     * Number of patients of the cohort.
+     */
+    private long count;
+
+    /**
+     * Ids of the patients of the cohort in ascending order, up to the requested limit.
+     */
+    private List<Integer> patientIds;
+
+    /**
+     * Whether ids of patients were left out because of the limit.
+     */
+    private boolean truncated;
+
+}
@@ -0,0 +1,64 @@
+package com.mediscreen.patientHistory.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entity linked to the note summaries table of the database, summing up the notes of a patient without reading them.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@Document(collection = "note_summaries")
+public class PatientNoteSummary {
+
+    @Id
+    private Integer patientId;
+
+    /**
+     * Number of notes of the patient.
+     */
+    private long noteCount;
+
+    /**
+     * Latest date of modification of the notes of the patient, or date of the deletion of one of them if later.
+     */
+    private LocalDateTime lastModification;
+
+    /**
+     * Hash of the ids and contents of all the notes of the patient, whatever their order, changed by any note write.
+     */
+    @JsonFormat(shape = JsonFormat.Shape.STRING) // Kept exact by JavaScript clients
+    private long contentHash;
+
+    /**
+     * Number of notes of the patient moved to the archive, among all their notes.
+     */
+    private long archivedNoteCount;
+
+
+    // === Other constructors =================================================
+
+    /**
+     * Instantiates a summary of notes which are not archived.
+     *
+     * @param patientId         the id of the patient
+     * @param noteCount         the number of notes of the patient
+     * @param lastModification  the latest date of modification of the notes of the patient
+     * @param contentHash       the hash of the ids and contents of the notes of the patient
+     */
+    public PatientNoteSummary(Integer patientId, long noteCount, LocalDateTime lastModification, long contentHash) {
+        this(patientId, noteCount, lastModification, contentHash, 0);
+    }
+
+}
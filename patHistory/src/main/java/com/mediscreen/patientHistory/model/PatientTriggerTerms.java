@@ -0,0 +1,27 @@
+package com.mediscreen.patientHistory.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Terms of a catalogue mentioned in the notes of a patient.
+ */
+@AllArgsConstructor
+@Getter
+@ToString
+public class PatientTriggerTerms {
+
+    /**
+     * Id of the patient.
+     */
+    private Integer patientId;
+
+    /**
+     * Terms found in at least one note of the patient, in the order of the catalogue, empty if none is found.
+     */
+    private List<String> terms;
+
+}
@@ -0,0 +1,12 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.NoteDraft;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Allows interaction with the note drafts table of the NoSQL database.
+ */
+@Repository
+public interface NoteDraftRepository extends MongoRepository<NoteDraft, String>, NoteDraftRepositoryCustom {
+}
@@ -0,0 +1,21 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.NoteDraft;
+
+import java.util.Collection;
+
+/**
+ * Note draft writes which can't be derived from method names.
+ */
+public interface NoteDraftRepositoryCustom {
+
+    /**
+     * Creates or replaces the given drafts in a single unordered bulk write, only acknowledged by the primary without
+     * waiting for its journal. Drafts written just before a crash of the database may be lost, which autosaved drafts
+     * can afford.
+     *
+     * @param drafts  the drafts to write, each one with a distinct id
+     */
+    void upsertAllRelaxed(Collection<NoteDraft> drafts);
+
+}
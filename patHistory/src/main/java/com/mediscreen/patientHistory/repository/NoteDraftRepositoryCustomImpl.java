@@ -0,0 +1,57 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Implements the note draft writes declared by {@link NoteDraftRepositoryCustom}.
+ */
+public class NoteDraftRepositoryCustomImpl implements NoteDraftRepositoryCustom {
+
+    /**
+     * Acknowledged by the primary once applied in memory, without waiting for its journal nor for the other members.
+     */
+    private static final WriteConcern RELAXED_WRITE_CONCERN = WriteConcern.W1.withJournal(false);
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Instantiates the custom part of the note draft repository.
+     *
+     * @param mongoTemplate  the template used to run the writes
+     */
+    @Autowired
+    public NoteDraftRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void upsertAllRelaxed(Collection<NoteDraft> drafts) {
+        if (drafts.isEmpty()) {
+            return;
+        }
+        List<WriteModel<Document>> replacements = new ArrayList<>(drafts.size());
+        for (NoteDraft draft : drafts) {
+            Document document = new Document();
+            mongoTemplate.getConverter().write(draft, document);
+            replacements.add(new ReplaceOneModel<>(Filters.eq("_id", draft.getId()), document, new ReplaceOptions().upsert(true)));
+        }
+        // Drafts are distinct, so their order doesn't matter
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(NoteDraft.class))
+                .withWriteConcern(RELAXED_WRITE_CONCERN)
+                .bulkWrite(replacements, new BulkWriteOptions().ordered(false));
+    }
+
+}
@@ -10,7 +10,7 @@ import java.util.List;
  * Allows interaction with the note table of the NoSQL database and provides functions of CRUD operations among other things.
  */
 @Repository
-public interface NoteRepository extends MongoRepository<Note, String> {
+public interface NoteRepository extends MongoRepository<Note, String>, NoteRepositoryCustom {
 
     /**
      * Returns all instances of the given type which have the same identifier of patient ordered by latest date.
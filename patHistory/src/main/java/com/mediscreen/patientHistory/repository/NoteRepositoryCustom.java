@@ -0,0 +1,226 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteSearchCriteria;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Note queries which can't be derived from method names.
+ */
+public interface NoteRepositoryCustom {
+
+    /**
+     * Returns the same queries, reading from a secondary member of the replica set when secondary reads are enabled.
+     * The member read from may be up to the configured max staleness behind the primary, so the writes just made may be
+     * missing from what is read. Writes made through the returned queries still go to the primary.
+     *
+     * @return  the queries reading from secondaries, or these queries when secondary reads are disabled
+     */
+    NoteRepositoryCustom fromSecondaries();
+
+    /**
+     * Returns the notes of a patient created before the given position, ordered by latest date of creation then id.
+     * The position is the date of creation and id of the last note already read, or null to start from the latest note.
+     *
+     * @param patientId       the id of the patient to be searched on
+     * @param dateOfCreation  the date of creation of the last note already read, or null
+     * @param noteId          the id of the last note already read, or null
+     * @param limit           the maximum number of notes to return
+     * @param projection      the fields and content length to read, the date of creation and id being always read
+     * @return                the notes following the given position
+     */
+    List<Note> findPageByPatientId(Integer patientId, LocalDateTime dateOfCreation, String noteId, int limit, NoteProjection projection);
+
+    /**
+     * Returns the notes of a patient, ordered by latest date of creation then id, reading only the projected fields.
+     *
+     * @param patientId   the id of the patient to be searched on
+     * @param projection  the fields and content length to read, the date of creation and id being always read
+     * @return            the notes of the patient
+     */
+    List<Note> findProjectedByPatientId(Integer patientId, NoteProjection projection);
+
+    /**
+     * Returns the notes of a patient created within the given range, ordered by latest date of creation then id.
+     * Served by the same index as the full list of notes of the patient, which bounds the read to the range.
+     *
+     * @param patientId  the id of the patient to be searched on
+     * @param from       the first date of creation of the returned notes, inclusive, or null for no lower bound
+     * @param to         the date of creation the returned notes precede, exclusive, or null for no upper bound
+     * @return           the notes of the patient created within the range
+     */
+    List<Note> findByPatientIdAndDateOfCreationRange(Integer patientId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Streams the notes of a patient, or of all patients, from a database cursor fetching them by batches.
+     * Notes of a patient are ordered by latest date of creation then id, notes of all patients by id.
+     * The returned stream holds the cursor open and must be closed once read.
+     *
+     * @param patientId  the id of the patient to be searched on, or null to stream the notes of all patients
+     * @return           the stream of notes
+     */
+    Stream<Note> streamByPatientId(Integer patientId);
+
+    /**
+     * Inserts the given notes with unordered bulk writes, by chunks. A note failing to be inserted doesn't prevent the
+     * following ones from being inserted. Notes must have their id already set.
+     *
+     * @param notes  the notes to insert
+     * @return       the reason of failure of each note which couldn't be inserted, by position in the given list
+     */
+    Map<Integer, String> bulkInsert(List<Note> notes);
+
+    /**
+     * Returns the notes matching the given words and criteria, from the most to the least relevant one.
+     * Words are matched through the text index, after being stemmed in the language of the criteria.
+     *
+     * @param criteria  the searched words and criteria, with the searched words set
+     * @param skip      the number of matching notes to skip
+     * @param limit     the maximum number of notes to return
+     * @return          the matching notes
+     */
+    List<Note> searchByText(NoteSearchCriteria criteria, long skip, int limit);
+
+    /**
+     * Finds the terms mentioned in the hot and archived notes of the given patients, with an aggregation run by the
+     * database, so that only the found terms are read. Notes whose content is compressed are left out.
+     *
+     * @param patientIds    the ids of the patients
+     * @param regexByTerm   the regular expression finding each term in a content
+     * @return              the terms found in the notes of each patient, patients without any term being left out
+     */
+    Map<Integer, Set<String>> findTermsByPatientIds(Collection<Integer> patientIds, Map<String, String> regexByTerm);
+
+    /**
+     * Returns the hot and archived notes of the given patients whose content is compressed, in no particular order.
+     *
+     * @param patientIds  the ids of the patients
+     * @return            the notes with a compressed content, inflated
+     */
+    List<Note> findCompressedByPatientIds(Collection<Integer> patientIds);
+
+    /**
+     * Atomically sets the given fields of a note, its date of modification, and increments its version, in a single
+     * round trip. Fields given as null are left unchanged.
+     *
+     * @param noteId              the id of the note to update
+     * @param expectedVersion     the version the note must have to be updated, or null to update it whatever its version
+     * @param patientId           the new patient id, or null
+     * @param content             the new content, or null
+     * @param language            the new language, or null
+     * @param dateOfModification  the date of the modification
+     * @return                    the note as it was before the update, or null if no note has the given id and version
+     */
+    Note updateFields(String noteId, Long expectedVersion, Integer patientId, String content, String language, LocalDateTime dateOfModification);
+
+    // === ARCHIVE ============================================================
+
+    /**
+     * Creates the archive collection if it doesn't exist yet, its blocks compressed with the given compressor, and the
+     * index serving the notes of a patient from the latest.
+     *
+     * @param blockCompressor  the WiredTiger block compressor of the archive collection, as zstd, zlib or snappy
+     */
+    void prepareArchive(String blockCompressor);
+
+    /**
+     * Returns the archived notes of a patient, ordered by latest date of creation then id.
+     *
+     * @param patientId  the id of the patient to be searched on
+     * @return           the archived notes of the patient
+     */
+    List<Note> findArchivedByPatientId(Integer patientId);
+
+    /**
+     * Returns the archived notes of a patient, ordered like {@link #findProjectedByPatientId(Integer, NoteProjection)}.
+     *
+     * @param patientId   the id of the patient to be searched on
+     * @param projection  the fields and content length to read, the date of creation and id being always read
+     * @return            the archived notes of the patient
+     */
+    List<Note> findArchivedProjectedByPatientId(Integer patientId, NoteProjection projection);
+
+    /**
+     * Returns the archived notes of a patient created within the given range, ordered like
+     * {@link #findByPatientIdAndDateOfCreationRange(Integer, LocalDateTime, LocalDateTime)}.
+     *
+     * @param patientId  the id of the patient to be searched on
+     * @param from       the first date of creation of the returned notes, inclusive, or null for no lower bound
+     * @param to         the date of creation the returned notes precede, exclusive, or null for no upper bound
+     * @return           the archived notes of the patient created within the range
+     */
+    List<Note> findArchivedByPatientIdAndDateOfCreationRange(Integer patientId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Returns the archived notes of a patient created before the given position, ordered like
+     * {@link #findPageByPatientId(Integer, LocalDateTime, String, int, NoteProjection)}.
+     *
+     * @param patientId       the id of the patient to be searched on
+     * @param dateOfCreation  the date of creation of the last note already read, or null
+     * @param noteId          the id of the last note already read, or null
+     * @param limit           the maximum number of notes to return
+     * @param projection      the fields and content length to read, the date of creation and id being always read
+     * @return                the archived notes following the given position
+     */
+    List<Note> findArchivedPageByPatientId(Integer patientId, LocalDateTime dateOfCreation, String noteId, int limit, NoteProjection projection);
+
+    /**
+     * Streams the archived notes of a patient, or of all patients, ordered like {@link #streamByPatientId(Integer)}.
+     * The returned stream holds the cursor open and must be closed once read.
+     *
+     * @param patientId  the id of the patient to be searched on, or null to stream the archived notes of all patients
+     * @return           the stream of archived notes
+     */
+    Stream<Note> streamArchivedByPatientId(Integer patientId);
+
+    /**
+     * Returns the archived note with the given id.
+     *
+     * @param noteId  the id of the note
+     * @return        the archived note, or null if no archived note has this id
+     */
+    Note findArchivedById(String noteId);
+
+    /**
+     * Moves notes not modified since the given date to the archive collection, by at most the given number.
+     * Notes are copied to the archive, then deleted from the hot collection provided they weren't updated meanwhile,
+     * so that a note is always found in at least one collection. The copy of a note updated or deleted meanwhile is
+     * deleted again, and only the notes deleted by the move are counted.
+     *
+     * @param modifiedBefore  the date before which the moved notes were last modified
+     * @param limit           the maximum number of notes to move
+     * @return                the number of moved notes of each patient, empty if no note is old enough
+     */
+    Map<Integer, Long> archiveModifiedBefore(LocalDateTime modifiedBefore, int limit);
+
+    /**
+     * Moves an archived note back to the hot collection, before it is updated.
+     *
+     * @param noteId  the id of the note to restore
+     * @return        the restored note, or null if no archived note has this id
+     */
+    Note restoreArchived(String noteId);
+
+    /**
+     * Deletes an archived note.
+     *
+     * @param noteId  the id of the note to delete
+     * @return        the deleted note, or null if no archived note has this id
+     */
+    Note deleteArchivedById(String noteId);
+
+    /**
+     * Deletes the archived notes of a patient.
+     *
+     * @param patientId  the id of the patient whose archived notes must be deleted
+     */
+    void deleteArchivedByPatientId(Integer patientId);
+
+}
@@ -0,0 +1,441 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.config.NoteContentCompressor;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteSearchCriteria;
+import com.mongodb.ReadPreference;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Field;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Implements the note queries which can't be derived from method names.
+ */
+public class NoteRepositoryCustomImpl implements NoteRepositoryCustom {
+
+    /**
+     * Language of the notes which don't have one, as declared on the note document.
+     */
+    private static final String DEFAULT_LANGUAGE = "english";
+
+    /**
+     * Smallest max staleness accepted by the servers, which only measure the lag of secondaries every ten seconds.
+     */
+    private static final Duration MIN_MAX_STALENESS = Duration.ofSeconds(90);
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Component that compresses the content of long notes, which save events don't do for updates.
+     */
+    private final NoteContentCompressor noteContentCompressor;
+
+    /**
+     * Number of notes fetched from the database by each round trip of a streaming cursor.
+     */
+    private final int streamBatchSize;
+
+    /**
+     * Number of notes sent to the database by each bulk write.
+     */
+    private final int bulkChunkSize;
+
+    /**
+     * Same queries run by a template reading from secondaries, or these queries when secondary reads are disabled.
+     */
+    private final NoteRepositoryCustomImpl secondaryReads;
+
+    /**
+     * Instantiates the custom part of the note repository.
+     *
+     * @param mongoTemplate          the template used to run the queries
+     * @param applicationContext     the context publishing the mapping events of the notes read from secondaries
+     * @param noteContentCompressor  the compressor of the content of long notes
+     * @param streamBatchSize        the number of notes fetched by each round trip of a streaming cursor
+     * @param bulkChunkSize          the number of notes sent to the database by each bulk write
+     * @param secondaryReadsEnabled  whether the queries asked to read from secondaries do so
+     * @param maxStaleness           how far behind the primary the secondaries read from may be, at least 90 seconds
+     */
+    @Autowired
+    public NoteRepositoryCustomImpl(MongoTemplate mongoTemplate, ApplicationContext applicationContext, NoteContentCompressor noteContentCompressor,
+                                    @Value("${mediscreen.notes.stream-batch-size:1000}") int streamBatchSize,
+                                    @Value("${mediscreen.notes.bulk-chunk-size:1000}") int bulkChunkSize,
+                                    @Value("${mediscreen.mongodb.secondary-reads.enabled:false}") boolean secondaryReadsEnabled,
+                                    @Value("${mediscreen.mongodb.secondary-reads.max-staleness:90s}") Duration maxStaleness) {
+        this.mongoTemplate = mongoTemplate;
+        this.noteContentCompressor = noteContentCompressor;
+        this.streamBatchSize = streamBatchSize;
+        this.bulkChunkSize = bulkChunkSize;
+        if (!secondaryReadsEnabled) {
+            this.secondaryReads = this;
+            return;
+        }
+        if (maxStaleness.compareTo(MIN_MAX_STALENESS) < 0) {
+            throw new IllegalArgumentException("Max staleness of secondary reads must be at least " + MIN_MAX_STALENESS.getSeconds() + " seconds");
+        }
+        // Shares the connections, the mapping and the events of the notes with the template reading from the primary
+        MongoTemplate secondaryTemplate = new MongoTemplate(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter());
+        secondaryTemplate.setApplicationContext(applicationContext);
+        secondaryTemplate.setReadPreference(ReadPreference.secondaryPreferred(maxStaleness.getSeconds(), TimeUnit.SECONDS));
+        this.secondaryReads = new NoteRepositoryCustomImpl(secondaryTemplate, this);
+    }
+
+    private NoteRepositoryCustomImpl(MongoTemplate secondaryTemplate, NoteRepositoryCustomImpl primaryReads) {
+        this.mongoTemplate = secondaryTemplate;
+        this.noteContentCompressor = primaryReads.noteContentCompressor;
+        this.streamBatchSize = primaryReads.streamBatchSize;
+        this.bulkChunkSize = primaryReads.bulkChunkSize;
+        this.secondaryReads = this;
+    }
+
+    @Override
+    public NoteRepositoryCustom fromSecondaries() {
+        return secondaryReads;
+    }
+
+    @Override
+    public List<Note> findPageByPatientId(Integer patientId, LocalDateTime dateOfCreation, String noteId, int limit, NoteProjection projection) {
+        return mongoTemplate.find(project(pageQuery(patientId, dateOfCreation, noteId, limit), projection), Note.class);
+    }
+
+    @Override
+    public List<Note> findProjectedByPatientId(Integer patientId, NoteProjection projection) {
+        return mongoTemplate.find(project(pageQuery(patientId, null, null, 0), projection), Note.class);
+    }
+
+    @Override
+    public List<Note> findByPatientIdAndDateOfCreationRange(Integer patientId, LocalDateTime from, LocalDateTime to) {
+        return mongoTemplate.find(rangeQuery(patientId, from, to), Note.class);
+    }
+
+    @Override
+    public Stream<Note> streamByPatientId(Integer patientId) {
+        return mongoTemplate.stream(streamQuery(patientId), Note.class).stream();
+    }
+
+    @Override
+    public List<Note> searchByText(NoteSearchCriteria criteria, long skip, int limit) {
+        TextCriteria textCriteria = TextCriteria.forLanguage(criteria.getLanguage() == null ? DEFAULT_LANGUAGE : criteria.getLanguage())
+                .matching(criteria.getText());
+        // Served by the text index, other criteria filtering the matching notes
+        Query query = TextQuery.queryText(textCriteria).sortByScore();
+        if (criteria.getPatientId() != null) {
+            query.addCriteria(Criteria.where("patientId").is(criteria.getPatientId()));
+        }
+        if (criteria.getFrom() != null || criteria.getTo() != null) {
+            Criteria dateOfCreation = Criteria.where("dateOfCreation");
+            if (criteria.getFrom() != null) {
+                dateOfCreation.gte(criteria.getFrom().atStartOfDay());
+            }
+            if (criteria.getTo() != null) {
+                dateOfCreation.lt(criteria.getTo().plusDays(1).atStartOfDay());
+            }
+            query.addCriteria(dateOfCreation);
+        }
+        query.skip(skip).limit(limit);
+        return mongoTemplate.find(query, Note.class);
+    }
+
+    @Override
+    public Map<Integer, String> bulkInsert(List<Note> notes) {
+        Map<Integer, String> failures = new HashMap<>();
+        for (int chunkStart = 0; chunkStart < notes.size(); chunkStart += bulkChunkSize) {
+            List<Note> chunk = notes.subList(chunkStart, Math.min(chunkStart + bulkChunkSize, notes.size()));
+            try {
+                // Unordered, so the database goes on with the rest of the chunk after a failed note
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Note.class).insert(chunk).execute();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    failures.put(chunkStart + error.getIndex(), error.getMessage());
+                }
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public Map<Integer, Set<String>> findTermsByPatientIds(Collection<Integer> patientIds, Map<String, String> regexByTerm) {
+        // Each note is reduced to the terms it mentions, only notes mentioning one leaving the stages run on both collections
+        List<Document> termsOfContent = new ArrayList<>(regexByTerm.size());
+        for (Map.Entry<String, String> term : regexByTerm.entrySet()) {
+            Document regexMatch = new Document("$regexMatch", new Document("input", "$" + NoteContentCompressor.CONTENT_FIELD)
+                    .append("regex", term.getValue())
+                    .append("options", "i"));
+            termsOfContent.add(new Document("$cond", Arrays.asList(regexMatch, new Document("$literal", term.getKey()), null)));
+        }
+        // Served by the (patientId, dateOfCreation, _id) index of both collections
+        List<Document> termsOfNotes = List.of(
+                new Document("$match", new Document("patientId", new Document("$in", patientIds))
+                        .append(NoteContentCompressor.CONTENT_FIELD, new Document("$type", "string"))),
+                new Document("$project", new Document("_id", 0).append("patientId", 1)
+                        .append("terms", new Document("$filter", new Document("input", termsOfContent)
+                                .append("cond", new Document("$ne", List.of("$$this", null)))))),
+                new Document("$match", new Document("terms.0", new Document("$exists", true))));
+
+        List<Document> pipeline = new ArrayList<>(termsOfNotes);
+        pipeline.add(new Document("$unionWith", new Document("coll", Note.ARCHIVE_COLLECTION).append("pipeline", termsOfNotes)));
+        pipeline.add(new Document("$unwind", "$terms"));
+        pipeline.add(new Document("$group", new Document("_id", "$patientId").append("terms", new Document("$addToSet", "$terms"))));
+
+        Map<Integer, Set<String>> termsByPatient = new HashMap<>();
+        for (Document patientTerms : mongoTemplate.getCollection(mongoTemplate.getCollectionName(Note.class)).aggregate(pipeline)) {
+            termsByPatient.put(patientTerms.getInteger("_id"), new HashSet<>(patientTerms.getList("terms", String.class)));
+        }
+        return termsByPatient;
+    }
+
+    @Override
+    public List<Note> findCompressedByPatientIds(Collection<Integer> patientIds) {
+        Query query = new Query(Criteria.where("patientId").in(patientIds).and(NoteContentCompressor.DEFLATED_CONTENT_FIELD).exists(true));
+        List<Note> compressedNotes = new ArrayList<>(mongoTemplate.find(query, Note.class));
+        compressedNotes.addAll(mongoTemplate.find(query, Note.class, Note.ARCHIVE_COLLECTION));
+        return compressedNotes;
+    }
+
+    @Override
+    public Note updateFields(String noteId, Long expectedVersion, Integer patientId, String content, String language, LocalDateTime dateOfModification) {
+        Criteria criteria = Criteria.where("_id").is(noteId);
+        if (expectedVersion != null) {
+            criteria.and("version").is(expectedVersion);
+        }
+        Update update = new Update()
+                .set("dateOfModification", dateOfModification)
+                .inc("version", 1);
+        if (patientId != null) {
+            update.set("patientId", patientId);
+        }
+        if (content != null) {
+            noteContentCompressor.setContent(update, content);
+        }
+        if (language != null) {
+            update.set("language", language);
+        }
+        // Returns the former state, from which the caller knows both the previous and the new values
+        return mongoTemplate.findAndModify(new Query(criteria), update, FindAndModifyOptions.options().returnNew(false), Note.class);
+    }
+
+    // === ARCHIVE ============================================================
+
+    @Override
+    public void prepareArchive(String blockCompressor) {
+        if (!mongoTemplate.collectionExists(Note.ARCHIVE_COLLECTION)) {
+            // Archived notes are rarely read, so they are compressed harder than the hot ones at the cost of some CPU
+            mongoTemplate.getDb().createCollection(Note.ARCHIVE_COLLECTION, new CreateCollectionOptions()
+                    .storageEngineOptions(new Document("wiredTiger", new Document("configString", "block_compressor=" + blockCompressor))));
+        }
+        mongoTemplate.indexOps(Note.ARCHIVE_COLLECTION).ensureIndex(new Index()
+                .on("patientId", Sort.Direction.ASC)
+                .on("dateOfCreation", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.DESC)
+                .named("patientId_dateOfCreation_desc"));
+    }
+
+    @Override
+    public List<Note> findArchivedByPatientId(Integer patientId) {
+        // Served by the (patientId, dateOfCreation, _id) index of the archive
+        Query query = new Query(Criteria.where("patientId").is(patientId))
+                .with(Sort.by(Sort.Direction.DESC, "dateOfCreation", "_id"));
+        return mongoTemplate.find(query, Note.class, Note.ARCHIVE_COLLECTION);
+    }
+
+    @Override
+    public List<Note> findArchivedByPatientIdAndDateOfCreationRange(Integer patientId, LocalDateTime from, LocalDateTime to) {
+        return mongoTemplate.find(rangeQuery(patientId, from, to), Note.class, Note.ARCHIVE_COLLECTION);
+    }
+
+    @Override
+    public List<Note> findArchivedPageByPatientId(Integer patientId, LocalDateTime dateOfCreation, String noteId, int limit, NoteProjection projection) {
+        return mongoTemplate.find(project(pageQuery(patientId, dateOfCreation, noteId, limit), projection), Note.class, Note.ARCHIVE_COLLECTION);
+    }
+
+    @Override
+    public List<Note> findArchivedProjectedByPatientId(Integer patientId, NoteProjection projection) {
+        return mongoTemplate.find(project(pageQuery(patientId, null, null, 0), projection), Note.class, Note.ARCHIVE_COLLECTION);
+    }
+
+    @Override
+    public Stream<Note> streamArchivedByPatientId(Integer patientId) {
+        return mongoTemplate.stream(streamQuery(patientId), Note.class, Note.ARCHIVE_COLLECTION).stream();
+    }
+
+    @Override
+    public Note findArchivedById(String noteId) {
+        return mongoTemplate.findById(noteId, Note.class, Note.ARCHIVE_COLLECTION);
+    }
+
+    @Override
+    public Map<Integer, Long> archiveModifiedBefore(LocalDateTime modifiedBefore, int limit) {
+        // Raw documents are moved, so that compressed contents are not inflated and deflated again
+        MongoCollection<Document> notes = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Note.class));
+        MongoCollection<Document> archive = mongoTemplate.getCollection(Note.ARCHIVE_COLLECTION);
+        // Served by the dateOfModification index
+        List<Document> oldNotes = notes.find(Filters.lt("dateOfModification", modifiedBefore)).limit(limit).into(new ArrayList<>());
+        if (oldNotes.isEmpty()) {
+            return Map.of();
+        }
+
+        // Replaced rather than inserted, in case a former move was interrupted after the copy
+        List<WriteModel<Document>> copies = new ArrayList<>(oldNotes.size());
+        for (Document oldNote : oldNotes) {
+            copies.add(new ReplaceOneModel<>(Filters.eq("_id", oldNote.get("_id")), oldNote, new ReplaceOptions().upsert(true)));
+        }
+        archive.bulkWrite(copies, new BulkWriteOptions().ordered(false));
+
+        // Deleted one by one, a bulk write only telling how many notes it deleted and not which ones. A note updated
+        // since it was read is skipped, a note deleted meanwhile by a user is not deleted by the move
+        Map<Integer, Long> movedNotesByPatient = new HashMap<>();
+        List<Object> notMovedIds = new ArrayList<>();
+        for (Document oldNote : oldNotes) {
+            Object id = oldNote.get("_id");
+            if (notes.deleteOne(Filters.and(Filters.eq("_id", id), Filters.eq("version", oldNote.get("version")))).getDeletedCount() > 0) {
+                movedNotesByPatient.merge(oldNote.getInteger("patientId"), 1L, Long::sum);
+            } else {
+                notMovedIds.add(id);
+            }
+        }
+        // Copies of the notes updated or deleted meanwhile, which would otherwise come back with the archive
+        if (!notMovedIds.isEmpty()) {
+            archive.deleteMany(Filters.in("_id", notMovedIds));
+        }
+        return movedNotesByPatient;
+    }
+
+    @Override
+    public Note restoreArchived(String noteId) {
+        Note archivedNote = findArchivedById(noteId);
+        if (archivedNote == null) {
+            return null;
+        }
+        // Copied back before being deleted from the archive, so that the note is always found in one collection
+        try {
+            mongoTemplate.insert(archivedNote);
+        } catch (DuplicateKeyException e) {
+            // Already copied back by an interrupted restore, or updated while being archived, the hot note being current
+            archivedNote = mongoTemplate.findById(noteId, Note.class);
+        }
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(noteId)), Note.ARCHIVE_COLLECTION);
+        return archivedNote;
+    }
+
+    @Override
+    public Note deleteArchivedById(String noteId) {
+        return mongoTemplate.findAndRemove(new Query(Criteria.where("_id").is(noteId)), Note.class, Note.ARCHIVE_COLLECTION);
+    }
+
+    @Override
+    public void deleteArchivedByPatientId(Integer patientId) {
+        mongoTemplate.remove(new Query(Criteria.where("patientId").is(patientId)), Note.ARCHIVE_COLLECTION);
+    }
+
+    // ========================================================================
+
+    /**
+     * Limits the fields read by a query of notes to the projected ones. The date of creation and id are always read,
+     * since they order the merge of the hot and archived notes and make the cursor of the next page.
+     */
+    private static Query project(Query query, NoteProjection projection) {
+        if (projection.isWhole()) {
+            return query;
+        }
+        Field fields = query.fields().include("_id", "dateOfCreation");
+        for (String field : projection.getFields()) {
+            if (!field.equals("id") && !field.equals(NoteProjection.CONTENT_FIELD)) {
+                fields.include(field);
+            }
+        }
+        if (projection.includes(NoteProjection.CONTENT_FIELD)) {
+            // A compressed content can't be cut by the database, it is truncated once inflated
+            fields.include(NoteContentCompressor.DEFLATED_CONTENT_FIELD);
+            if (projection.getPreview() == null) {
+                fields.include(NoteContentCompressor.CONTENT_FIELD);
+            } else {
+                Document preview = new Document("$cond", List.of(
+                        new Document("$eq", List.of(new Document("$type", "$" + NoteContentCompressor.CONTENT_FIELD), "string")),
+                        new Document("$substrCP", List.of("$" + NoteContentCompressor.CONTENT_FIELD, 0, projection.getPreview())),
+                        "$$REMOVE"));
+                fields.project(() -> preview).as(NoteContentCompressor.CONTENT_FIELD);
+            }
+        }
+        return query;
+    }
+
+    private static Query pageQuery(Integer patientId, LocalDateTime dateOfCreation, String noteId, int limit) {
+        Criteria criteria = Criteria.where("patientId").is(patientId);
+        if (dateOfCreation != null && noteId != null) {
+            // Keyset condition on (dateOfCreation desc, _id desc), served by the (patientId, dateOfCreation, _id) index
+            criteria = criteria.orOperator(
+                    Criteria.where("dateOfCreation").lt(dateOfCreation),
+                    Criteria.where("dateOfCreation").is(dateOfCreation).and("_id").lt(new ObjectId(noteId)));
+        }
+        // A limit of 0 reads all the notes of the patient
+        return new Query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "dateOfCreation", "_id"))
+                .limit(limit);
+    }
+
+    private static Query rangeQuery(Integer patientId, LocalDateTime from, LocalDateTime to) {
+        Criteria criteria = Criteria.where("patientId").is(patientId);
+        if (from != null || to != null) {
+            // Bounds of the dateOfCreation key of the (patientId, dateOfCreation, _id) index
+            Criteria dateOfCreation = criteria.and("dateOfCreation");
+            if (from != null) {
+                dateOfCreation.gte(from);
+            }
+            if (to != null) {
+                dateOfCreation.lt(to);
+            }
+        }
+        return new Query(criteria).with(Sort.by(Sort.Direction.DESC, "dateOfCreation", "_id"));
+    }
+
+    private Query streamQuery(Integer patientId) {
+        Query query;
+        if (patientId != null) {
+            // Served by the (patientId, dateOfCreation, _id) index
+            query = new Query(Criteria.where("patientId").is(patientId))
+                    .with(Sort.by(Sort.Direction.DESC, "dateOfCreation", "_id"));
+        } else {
+            // Served by the _id index, in an order which stays stable while notes are added
+            query = new Query().with(Sort.by(Sort.Direction.ASC, "_id"));
+        }
+        return query.cursorBatchSize(streamBatchSize);
+    }
+
+}
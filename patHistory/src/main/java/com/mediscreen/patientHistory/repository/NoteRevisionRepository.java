@@ -0,0 +1,48 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.NoteRevision;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Allows interaction with the note revisions table of the NoSQL database.
+ */
+@Repository
+public interface NoteRevisionRepository extends MongoRepository<NoteRevision, String> {
+
+    /**
+     * Returns the revisions of a note, from the latest to the oldest one.
+     *
+     * @param noteId  the id of the note
+     * @return        the revisions of the note
+     */
+    List<NoteRevision> findAllByNoteIdOrderByVersionDesc(String noteId);
+
+    /**
+     * Streams the revisions of a note from the given version, in ascending order, as the database cursor is consumed.
+     * The returned stream holds the cursor open and must be closed once read.
+     *
+     * @param noteId   the id of the note
+     * @param version  the version of the first revision
+     * @return         the revisions of the note from the given version
+     */
+    Stream<NoteRevision> findByNoteIdAndVersionGreaterThanEqualOrderByVersionAsc(String noteId, long version);
+
+    /**
+     * Deletes the revisions of a note.
+     *
+     * @param noteId  the id of the note
+     */
+    void deleteAllByNoteId(String noteId);
+
+    /**
+     * Deletes the revisions written for a patient.
+     *
+     * @param patientId  the id of the patient
+     */
+    void deleteAllByPatientId(Integer patientId);
+
+}
@@ -0,0 +1,12 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Allows interaction with the note summaries table of the NoSQL database.
+ */
+@Repository
+public interface PatientNoteSummaryRepository extends MongoRepository<PatientNoteSummary, Integer>, PatientNoteSummaryRepositoryCustom {
+}
@@ -0,0 +1,21 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+
+import java.util.List;
+
+/**
+ * Note summary updates which can't be derived from method names.
+ */
+public interface PatientNoteSummaryRepositoryCustom {
+
+    /**
+     * Applies changes to the summaries of patients, each one in a single atomic update creating the summary if needed.
+     * The note counts of each change are added to the summary, its content hash is combined by exclusive or with the
+     * summary one, and its date of last modification, if any, replaces the summary one if later.
+     *
+     * @param changes  the changes to apply, one per patient
+     */
+    void applyChanges(List<PatientNoteSummary> changes);
+
+}
@@ -0,0 +1,66 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+
+/**
+ * Implements the note summary updates declared by {@link PatientNoteSummaryRepositoryCustom}.
+ */
+public class PatientNoteSummaryRepositoryCustomImpl implements PatientNoteSummaryRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Instantiates the custom part of the note summary repository.
+     *
+     * @param mongoTemplate  the template used to run the updates
+     */
+    @Autowired
+    public PatientNoteSummaryRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void applyChanges(List<PatientNoteSummary> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (changes.size() == 1) {
+            PatientNoteSummary change = changes.get(0);
+            mongoTemplate.upsert(queryOf(change), updateOf(change), PatientNoteSummary.class);
+            return;
+        }
+        // Changes are made to distinct patients, so their order doesn't matter
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, PatientNoteSummary.class);
+        for (PatientNoteSummary change : changes) {
+            bulkOperations.upsert(queryOf(change), updateOf(change));
+        }
+        bulkOperations.execute();
+    }
+
+    // ========================================================================
+
+    private static Query queryOf(PatientNoteSummary change) {
+        return new Query(Criteria.where("_id").is(change.getPatientId()));
+    }
+
+    private static Update updateOf(PatientNoteSummary change) {
+        Update update = new Update()
+                .inc("noteCount", change.getNoteCount())
+                .inc("archivedNoteCount", change.getArchivedNoteCount());
+        // Moving notes between the hot and archive collections doesn't modify them
+        if (change.getLastModification() != null) {
+            update.max("lastModification", change.getLastModification());
+        }
+        update.bitwise("contentHash").xor(change.getContentHash());
+        return update;
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.Note;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Non-blocking counterpart of {@link NoteRepository}, used by the reactive runtime mode to read notes as streams.
+ */
+@Repository
+public interface ReactiveNoteRepository extends ReactiveMongoRepository<Note, String>, ReactiveNoteRepositoryCustom {
+
+    /**
+     * Streams the notes of a patient ordered by latest date of creation then id, as the database cursor is consumed.
+     *
+     * @param patientId  the id of the patient to be searched on
+     * @return           the notes of the patient, fetched as they are requested downstream
+     */
+    Flux<Note> findAllByPatientIdOrderByDateOfCreationDescIdDesc(Integer patientId);
+
+}
@@ -0,0 +1,28 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.Note;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking note queries on the archive collection, which can't be derived from method names.
+ */
+public interface ReactiveNoteRepositoryCustom {
+
+    /**
+     * Streams the archived notes of a patient, or of all patients, ordered like the hot notes they are merged with.
+     *
+     * @param patientId  the id of the patient to be searched on, or null to stream the archived notes of all patients
+     * @return           the archived notes of the patient ordered by latest date of creation then id, or all of them by id
+     */
+    Flux<Note> findArchivedByPatientId(Integer patientId);
+
+    /**
+     * Returns the archived note with the given id.
+     *
+     * @param noteId  the id of the note
+     * @return        the archived note, or empty if no archived note has this id
+     */
+    Mono<Note> findArchivedById(String noteId);
+
+}
@@ -0,0 +1,38 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.model.Note;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Implements the non-blocking note queries on the archive collection.
+ */
+public class ReactiveNoteRepositoryCustomImpl implements ReactiveNoteRepositoryCustom {
+
+    private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    public ReactiveNoteRepositoryCustomImpl(ReactiveMongoTemplate reactiveMongoTemplate) {
+        this.reactiveMongoTemplate = reactiveMongoTemplate;
+    }
+
+    @Override
+    public Flux<Note> findArchivedByPatientId(Integer patientId) {
+        Query query = patientId != null
+                ? Query.query(Criteria.where("patientId").is(patientId))
+                        .with(Sort.by(Sort.Direction.DESC, "dateOfCreation", "_id"))
+                : new Query().with(Sort.by(Sort.Direction.ASC, "_id"));
+        return reactiveMongoTemplate.find(query, Note.class, Note.ARCHIVE_COLLECTION);
+    }
+
+    @Override
+    public Mono<Note> findArchivedById(String noteId) {
+        return reactiveMongoTemplate.findById(noteId, Note.class, Note.ARCHIVE_COLLECTION);
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.repository.NoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Moves the notes not modified for a while from the hot notes collection to the archive collection, enabled with the
+ * mediscreen.notes.archive.enabled property.
+ * <p>
+ * Lists of notes only read the hot collection unless the full history is asked for, so that their working set is
+ * limited to the recent notes practitioners read. The archive collection is created with a stronger block compression
+ * than the hot one. The job runs periodically by batches, on a single instance of the service, since the summaries of
+ * the patients count the notes each run moves.
+ */
+@Component
+public class NoteArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteArchiver.class);
+
+    /**
+     * Component that manages database operations for patient notes.
+     */
+    private final NoteRepository noteRepository;
+
+    /**
+     * Component that counts the archived notes in the summary of each patient.
+     */
+    private final PatientNoteSummaryTracker summaryTracker;
+
+    /**
+     * Component that keeps in memory the hot notes of the patients recently read.
+     */
+    private final PatientNotesCache patientNotesCache;
+
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final int batchSize;
+    private final String blockCompressor;
+
+    /**
+     * Instantiates a new note archiver.
+     *
+     * @param noteRepository     the repository linked to note data
+     * @param summaryTracker     the tracker of the summary of the notes of each patient
+     * @param patientNotesCache  the cache of the notes of each patient
+     * @param enabled            whether old notes have to be archived
+     * @param maxAge             the time after its last modification a note is archived
+     * @param batchSize          the number of notes moved by each batch
+     * @param blockCompressor    the block compressor of the archive collection, used when creating it
+     */
+    @Autowired
+    public NoteArchiver(NoteRepository noteRepository, PatientNoteSummaryTracker summaryTracker, PatientNotesCache patientNotesCache,
+                        @Value("${mediscreen.notes.archive.enabled:false}") boolean enabled,
+                        @Value("${mediscreen.notes.archive.max-age:365d}") Duration maxAge,
+                        @Value("${mediscreen.notes.archive.batch-size:1000}") int batchSize,
+                        @Value("${mediscreen.notes.archive.block-compressor:zstd}") String blockCompressor) {
+        this.noteRepository = noteRepository;
+        this.summaryTracker = summaryTracker;
+        this.patientNotesCache = patientNotesCache;
+        this.enabled = enabled;
+        this.maxAge = maxAge;
+        this.batchSize = batchSize;
+        this.blockCompressor = blockCompressor;
+    }
+
+
+    /**
+     * Creates the archive collection and its index once the application is ready, if the archive is enabled.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void prepareArchive() {
+        if (!enabled) {
+            return;
+        }
+        noteRepository.prepareArchive(blockCompressor);
+        logger.info("### Notes not modified for {} archived to the {} compressed archive", maxAge, blockCompressor);
+    }
+
+    /**
+     * Moves the notes not modified for the configured time to the archive, then reports how many were moved.
+     */
+    @Scheduled(initialDelayString = "${mediscreen.notes.archive.interval:PT1H}", fixedDelayString = "${mediscreen.notes.archive.interval:PT1H}")
+    public void archiveOldNotes() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime modifiedBefore = LocalDateTime.now().minus(maxAge);
+        logger.debug("### Try to archive notes not modified since {}", modifiedBefore);
+        long start = System.nanoTime();
+
+        long archivedNotes = 0;
+        int archivedPatients = 0;
+        Map<Integer, Long> movedNotesByPatient;
+        do {
+            movedNotesByPatient = noteRepository.archiveModifiedBefore(modifiedBefore, batchSize);
+            // Invalidated before the summaries change, so that their ETag is never served with the former notes
+            for (Map.Entry<Integer, Long> movedNotes : movedNotesByPatient.entrySet()) {
+                patientNotesCache.invalidate(movedNotes.getKey());
+                archivedNotes += movedNotes.getValue();
+            }
+            summaryTracker.notesArchived(movedNotesByPatient);
+            archivedPatients += movedNotesByPatient.size();
+        } while (!movedNotesByPatient.isEmpty());
+
+        logger.info("### Archived {} notes of {} patients not modified since {} in {} ms",
+                archivedNotes, archivedPatients, modifiedBefore, (System.nanoTime() - start) / 1_000_000);
+    }
+
+}
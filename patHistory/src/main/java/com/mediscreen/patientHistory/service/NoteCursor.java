@@ -0,0 +1,72 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.exception.InvalidRequestParameterException;
+import com.mediscreen.patientHistory.model.Note;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in the notes of a patient, given to clients as an opaque string.
+ * It holds the date of creation and id of the last note read, which are the sort keys of the pages.
+ */
+@AllArgsConstructor
+@Getter
+class NoteCursor {
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime dateOfCreation;
+    private final String noteId;
+
+    /**
+     * Returns the position just after the given note.
+     *
+     * @param note  the last note read
+     * @return      the cursor pointing after the note
+     */
+    static NoteCursor of(Note note) {
+        return new NoteCursor(note.getDateOfCreation(), note.getId());
+    }
+
+    /**
+     * Decodes a cursor received from a client.
+     *
+     * @param cursor  the opaque cursor, or null to start from the latest note
+     * @return        the decoded cursor, or null if none was given
+     * @throws InvalidRequestParameterException  if the cursor can't be decoded
+     */
+    static NoteCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = decoded.lastIndexOf(SEPARATOR);
+            LocalDateTime dateOfCreation = LocalDateTime.parse(decoded.substring(0, separatorIndex));
+            String noteId = decoded.substring(separatorIndex + 1);
+            if (!ObjectId.isValid(noteId)) {
+                throw new IllegalArgumentException("Invalid note id");
+            }
+            return new NoteCursor(dateOfCreation, noteId);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new InvalidRequestParameterException("Invalid notes cursor");
+        }
+    }
+
+    /**
+     * Encodes the cursor for a client.
+     *
+     * @return  the opaque cursor
+     */
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((dateOfCreation + SEPARATOR + noteId).getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,266 @@
+package com.mediscreen.patientHistory.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes and applies the compact differences between two contents of a note, stored instead of whole contents.
+ * <p>
+ * A delta is a sequence of operations run over the source content: {@code =n} keeps its next n chars, {@code -n} skips
+ * them and {@code +n:text} inserts the n chars of text. The rest of the source is kept after the last operation, so
+ * that an unchanged content has an empty delta. Contents are compared by code points with Myers' algorithm, so that
+ * inserted texts never split a surrogate pair.
+ */
+final class NoteDelta {
+
+    /**
+     * Maximum number of code points inserted or deleted looked for between the common start and end of two contents.
+     * Beyond, the part between them is replaced whole, which keeps the time and memory of a diff bounded.
+     */
+    static final int MAX_EDIT_DISTANCE = 500;
+
+    private static final char KEEP = '=';
+    private static final char SKIP = '-';
+    private static final char INSERT = '+';
+
+    private NoteDelta() {
+    }
+
+    /**
+     * Computes the delta turning a source content into a target content.
+     *
+     * @param source  the content the delta applies to
+     * @param target  the content the delta produces
+     * @return        the delta, empty if both contents are equal
+     */
+    static String diff(String source, String target) {
+        int[] sourceCodePoints = source.codePoints().toArray();
+        int[] targetCodePoints = target.codePoints().toArray();
+
+        int prefix = 0;
+        while (prefix < sourceCodePoints.length && prefix < targetCodePoints.length
+                && sourceCodePoints[prefix] == targetCodePoints[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < sourceCodePoints.length - prefix && suffix < targetCodePoints.length - prefix
+                && sourceCodePoints[sourceCodePoints.length - 1 - suffix] == targetCodePoints[targetCodePoints.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        DeltaWriter writer = new DeltaWriter(sourceCodePoints, targetCodePoints);
+        writer.keep(0, prefix);
+        List<int[]> edits = editsBetween(sourceCodePoints, prefix, sourceCodePoints.length - suffix,
+                targetCodePoints, prefix, targetCodePoints.length - suffix);
+        if (edits == null) {
+            writer.skip(prefix, sourceCodePoints.length - suffix);
+            writer.insert(prefix, targetCodePoints.length - suffix);
+        } else {
+            for (int[] edit : edits) {
+                writer.write(edit);
+            }
+        }
+        // The kept end of the source is implied
+        return writer.toString();
+    }
+
+    /**
+     * Applies a delta to the content it was computed from.
+     *
+     * @param source  the content the delta was computed from
+     * @param delta   the delta to apply
+     * @return        the content the delta produces
+     * @throws IllegalArgumentException  if the delta is invalid or doesn't fit the source
+     */
+    static String apply(String source, String delta) {
+        StringBuilder target = new StringBuilder(source.length() + delta.length());
+        int position = 0;
+        int index = 0;
+        try {
+            while (index < delta.length()) {
+                char operation = delta.charAt(index++);
+                int lengthStart = index;
+                while (index < delta.length() && Character.isDigit(delta.charAt(index))) {
+                    index++;
+                }
+                int length = Integer.parseInt(delta, lengthStart, index, 10);
+                switch (operation) {
+                    case KEEP:
+                        target.append(source, position, position + length);
+                        position += length;
+                        break;
+                    case SKIP:
+                        position += length;
+                        break;
+                    case INSERT:
+                        index++; // Separator
+                        target.append(delta, index, index + length);
+                        index += length;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid note delta operation '" + operation + "'");
+                }
+            }
+            target.append(source, position, source.length());
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("Note delta doesn't fit its source content", e);
+        }
+        return target.toString();
+    }
+
+    // ========================================================================
+
+    /**
+     * Finds the shortest sequence of kept, skipped and inserted code points turning a part of the source into a part of
+     * the target, with Myers' algorithm.
+     *
+     * @return  the edits in order, each one as {type, source index, target index}, or null if the parts differ by more
+     *          than {@link #MAX_EDIT_DISTANCE} code points
+     */
+    private static List<int[]> editsBetween(int[] source, int sourceStart, int sourceEnd, int[] target, int targetStart, int targetEnd) {
+        int n = sourceEnd - sourceStart;
+        int m = targetEnd - targetStart;
+        int maxDistance = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = maxDistance + 1;
+        int[] furthest = new int[2 * maxDistance + 3];
+        // Furthest reaching positions before each step, only on the diagonals the step reads
+        List<int[]> trace = new ArrayList<>();
+
+        for (int distance = 0; distance <= maxDistance; distance++) {
+            int[] snapshot = new int[2 * distance + 3];
+            System.arraycopy(furthest, offset - distance - 1, snapshot, 0, snapshot.length);
+            trace.add(snapshot);
+            for (int k = -distance; k <= distance; k += 2) {
+                int x = k == -distance || (k != distance && furthest[offset + k - 1] < furthest[offset + k + 1])
+                        ? furthest[offset + k + 1]
+                        : furthest[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && source[sourceStart + x] == target[targetStart + y]) {
+                    x++;
+                    y++;
+                }
+                furthest[offset + k] = x;
+                if (x >= n && y >= m) {
+                    return backtrack(trace, n, m, sourceStart, targetStart);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static List<int[]> backtrack(List<int[]> trace, int n, int m, int sourceStart, int targetStart) {
+        List<int[]> edits = new ArrayList<>();
+        int x = n;
+        int y = m;
+        for (int distance = trace.size() - 1; distance >= 0; distance--) {
+            int[] furthest = trace.get(distance);
+            int offset = distance + 1;
+            int k = x - y;
+            int previousK = k == -distance || (k != distance && furthest[offset + k - 1] < furthest[offset + k + 1]) ? k + 1 : k - 1;
+            int previousX = furthest[offset + previousK];
+            int previousY = previousX - previousK;
+            while (x > previousX && y > previousY) {
+                x--;
+                y--;
+                edits.add(new int[]{KEEP, sourceStart + x, targetStart + y});
+            }
+            if (distance > 0) {
+                if (x == previousX) {
+                    edits.add(new int[]{INSERT, sourceStart + x, targetStart + previousY});
+                } else {
+                    edits.add(new int[]{SKIP, sourceStart + previousX, targetStart + y});
+                }
+            }
+            x = previousX;
+            y = previousY;
+        }
+        Collections.reverse(edits);
+        return edits;
+    }
+
+    /**
+     * Writes the edits of code points as operations on chars, merging the following edits of the same type.
+     */
+    private static final class DeltaWriter {
+
+        private final int[] source;
+        private final int[] target;
+        private final StringBuilder delta = new StringBuilder();
+        private final StringBuilder insertedText = new StringBuilder();
+        private char pendingOperation;
+        private int pendingLength;
+
+        private DeltaWriter(int[] source, int[] target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        private void write(int[] edit) {
+            if (edit[0] == INSERT) {
+                insert(edit[2], edit[2] + 1);
+            } else if (edit[0] == SKIP) {
+                skip(edit[1], edit[1] + 1);
+            } else {
+                keep(edit[1], edit[1] + 1);
+            }
+        }
+
+        private void keep(int sourceStart, int sourceEnd) {
+            append(KEEP, charCount(source, sourceStart, sourceEnd));
+        }
+
+        private void skip(int sourceStart, int sourceEnd) {
+            append(SKIP, charCount(source, sourceStart, sourceEnd));
+        }
+
+        private void insert(int targetStart, int targetEnd) {
+            int length = charCount(target, targetStart, targetEnd);
+            append(INSERT, length);
+            if (length > 0) {
+                for (int index = targetStart; index < targetEnd; index++) {
+                    insertedText.appendCodePoint(target[index]);
+                }
+            }
+        }
+
+        private void append(char operation, int length) {
+            if (length == 0) {
+                return;
+            }
+            if (operation != pendingOperation) {
+                flush();
+                pendingOperation = operation;
+            }
+            pendingLength += length;
+        }
+
+        private void flush() {
+            if (pendingLength > 0) {
+                delta.append(pendingOperation).append(pendingLength);
+                if (pendingOperation == INSERT) {
+                    delta.append(':').append(insertedText);
+                    insertedText.setLength(0);
+                }
+            }
+            pendingLength = 0;
+        }
+
+        @Override
+        public String toString() {
+            if (pendingOperation != KEEP) {
+                flush();
+            }
+            return delta.toString();
+        }
+
+        private static int charCount(int[] codePoints, int start, int end) {
+            int count = 0;
+            for (int index = start; index < end; index++) {
+                count += Character.charCount(codePoints[index]);
+            }
+            return count;
+        }
+    }
+
+}
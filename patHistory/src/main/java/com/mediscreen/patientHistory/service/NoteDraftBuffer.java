@@ -0,0 +1,193 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.repository.NoteDraftRepository;
+import com.mongodb.MongoException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces the autosaves of note drafts in memory and writes them to the database periodically.
+ * <p>
+ * A practitioner typing a note sends its draft every few seconds, each autosave replacing the previous one. Only the
+ * latest autosave of each draft is kept in memory, and all the drafts saved since the previous flush are written by a
+ * single bulk write with a relaxed write concern, so that autosaves cost the database one write per draft and flush
+ * interval at most. Drafts are read from memory first, so that a client always gets its latest autosave back.
+ * <p>
+ * The date each draft is discarded is remembered for a while, so that an autosave still on its way when the note was
+ * saved can't bring the draft back: autosaves of a form opened before the draft was discarded are ignored.
+ * <p>
+ * The number of autosaves received, of drafts written and of drafts waiting to be written are published as the
+ * notes.drafts.* metrics.
+ */
+@Component
+public class NoteDraftBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteDraftBuffer.class);
+
+    /**
+     * Time a discarded draft is remembered, far longer than an autosave can take to arrive.
+     */
+    private static final Duration DISCARDED_DRAFTS_RETENTION = Duration.ofHours(1);
+
+    /**
+     * Component that manages database operations for note drafts.
+     */
+    private final NoteDraftRepository noteDraftRepository;
+
+    private final int maxPendingDrafts;
+
+    /**
+     * Latest autosave of each draft not written yet.
+     */
+    private final Map<String, NoteDraft> pendingDrafts = new ConcurrentHashMap<>();
+
+    /**
+     * Drafts being written by the current flush, still read from memory until written.
+     */
+    private final Map<String, NoteDraft> flushingDrafts = new ConcurrentHashMap<>();
+
+    /**
+     * Date each draft was last discarded, for the retention time.
+     */
+    private final Map<String, LocalDateTime> discardedDrafts = new ConcurrentHashMap<>();
+
+    private final Counter savedDrafts;
+    private final Counter writtenDrafts;
+
+    /**
+     * Instantiates a new note draft buffer.
+     *
+     * @param noteDraftRepository  the repository linked to note draft data
+     * @param meterRegistry        the registry the metrics of the drafts are published to
+     * @param maxPendingDrafts     the number of drafts waiting to be written beyond which they are written at once
+     */
+    @Autowired
+    public NoteDraftBuffer(NoteDraftRepository noteDraftRepository, MeterRegistry meterRegistry,
+                           @Value("${mediscreen.notes.drafts.max-pending:10000}") int maxPendingDrafts) {
+        this.noteDraftRepository = noteDraftRepository;
+        this.maxPendingDrafts = maxPendingDrafts;
+        this.savedDrafts = meterRegistry.counter("notes.drafts.saves");
+        this.writtenDrafts = meterRegistry.counter("notes.drafts.writes");
+        meterRegistry.gaugeMapSize("notes.drafts.pending", List.of(), pendingDrafts);
+    }
+
+
+    /**
+     * Keeps the given autosave of a draft, replacing the previous one, to be written by the next flush, unless the
+     * draft was discarded since its form was opened.
+     *
+     * @param draft  the draft to save
+     * @return       true if the autosave was kept, false if it was ignored
+     */
+    public boolean save(NoteDraft draft) {
+        // Checked atomically with the replacement, as the draft may be discarded meanwhile
+        if (pendingDrafts.compute(draft.getId(), (draftId, pendingDraft) -> isDiscarded(draft) ? pendingDraft : draft) != draft) {
+            return false;
+        }
+        savedDrafts.increment();
+        if (pendingDrafts.size() > maxPendingDrafts) {
+            // Bounds the memory held by drafts when the flush falls behind
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the latest autosave of a draft, from memory if it isn't written yet.
+     *
+     * @param draftId  the id of the draft
+     * @return         the draft, or null if none exists or if it was discarded since its form was opened
+     */
+    public NoteDraft find(String draftId) {
+        NoteDraft draft = pendingDrafts.get(draftId);
+        if (draft == null) {
+            draft = flushingDrafts.get(draftId);
+        }
+        if (draft == null) {
+            draft = noteDraftRepository.findById(draftId).orElse(null);
+        }
+        // A draft whose deletion failed is still left out
+        return draft != null && !isDiscarded(draft) ? draft : null;
+    }
+
+    /**
+     * Discards a draft, from memory and from the database.
+     *
+     * @param draftId  the id of the draft
+     */
+    public void discard(String draftId) {
+        // Remembered first, so that an autosave arriving meanwhile is either ignored or removed below
+        discardedDrafts.put(draftId, LocalDateTime.now());
+        pendingDrafts.remove(draftId);
+        flushingDrafts.remove(draftId);
+        noteDraftRepository.deleteById(draftId);
+    }
+
+    /**
+     * Writes the drafts saved since the previous flush in a single bulk write.
+     */
+    @Scheduled(initialDelayString = "${mediscreen.notes.drafts.flush-interval:PT5S}", fixedDelayString = "${mediscreen.notes.drafts.flush-interval:PT5S}")
+    public synchronized void flush() {
+        LocalDateTime retentionStart = LocalDateTime.now().minus(DISCARDED_DRAFTS_RETENTION);
+        discardedDrafts.values().removeIf(discardDate -> discardDate.isBefore(retentionStart));
+        if (pendingDrafts.isEmpty()) {
+            return;
+        }
+        // Moved to the flushing drafts before leaving the pending ones, so that a draft is always found in memory
+        List<NoteDraft> drafts = new ArrayList<>(pendingDrafts.size());
+        for (NoteDraft draft : pendingDrafts.values()) {
+            flushingDrafts.put(draft.getId(), draft);
+            pendingDrafts.remove(draft.getId(), draft);
+            drafts.add(draft);
+        }
+
+        try {
+            noteDraftRepository.upsertAllRelaxed(drafts);
+            writtenDrafts.increment(drafts.size());
+            logger.debug("### Wrote {} note drafts", drafts.size());
+        } catch (DataAccessException | MongoException e) {
+            // Retried by the next flush, unless a later autosave replaced them or they were discarded meanwhile
+            drafts.forEach(draft -> pendingDrafts.compute(draft.getId(),
+                    (draftId, pendingDraft) -> pendingDraft != null || isDiscarded(draft) ? pendingDraft : draft));
+            logger.warn("### Failed to write {} note drafts, retried later --> {}", drafts.size(), e.getMessage());
+        } finally {
+            for (NoteDraft draft : drafts) {
+                if (!flushingDrafts.remove(draft.getId(), draft) && !pendingDrafts.containsKey(draft.getId())) {
+                    // Discarded while being written, so the write may have brought it back
+                    noteDraftRepository.deleteById(draft.getId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the drafts not written yet before the application stops.
+     */
+    @PreDestroy
+    public void flushBeforeShutdown() {
+        flush();
+    }
+
+    // Whether the draft was discarded after its form was opened, drafts of unknown forms being older than any discard
+    private boolean isDiscarded(NoteDraft draft) {
+        LocalDateTime discardDate = discardedDrafts.get(draft.getId());
+        return discardDate != null && (draft.getDateOfCreation() == null || !draft.getDateOfCreation().isAfter(discardDate));
+    }
+
+}
@@ -0,0 +1,174 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.repository.NoteRevisionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the former versions of the notes replaced by updates, enabled with the mediscreen.notes.revisions.enabled
+ * property, so that any version of a note can be rebuilt.
+ * <p>
+ * Each update stores the version it replaces as the delta turning the new content back into the former one, which is
+ * usually a small fraction of the content. Every snapshot-interval versions, the former content is stored whole
+ * instead, as well as when its delta wouldn't be shorter. A version is rebuilt by applying the deltas of the following
+ * versions backwards from the closest later snapshot, or from the note itself, so that at most snapshot-interval - 1
+ * deltas are applied whatever the number of versions.
+ */
+@Component
+public class NoteRevisionTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteRevisionTracker.class);
+
+    /**
+     * Component that manages database operations for note revisions.
+     */
+    private final NoteRevisionRepository noteRevisionRepository;
+
+    private final boolean enabled;
+    private final int snapshotInterval;
+
+    /**
+     * Instantiates a new note revision tracker.
+     *
+     * @param noteRevisionRepository  the repository linked to note revision data
+     * @param enabled                 whether the former versions of the notes have to be kept
+     * @param snapshotInterval        the number of versions between two versions stored whole
+     */
+    @Autowired
+    public NoteRevisionTracker(NoteRevisionRepository noteRevisionRepository,
+                               @Value("${mediscreen.notes.revisions.enabled:false}") boolean enabled,
+                               @Value("${mediscreen.notes.revisions.snapshot-interval:10}") int snapshotInterval) {
+        this.noteRevisionRepository = noteRevisionRepository;
+        this.enabled = enabled;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+    }
+
+
+    // === MAINTENANCE ========================================================
+
+    /**
+     * Keeps the version of a note replaced by an update.
+     *
+     * @param previousNote  the note before the update
+     * @param updatedNote   the note after the update
+     */
+    public void noteUpdated(Note previousNote, Note updatedNote) {
+        if (!enabled) {
+            return;
+        }
+        long version = versionOf(previousNote);
+        String content = null;
+        String delta = null;
+        if (version % snapshotInterval != 0) {
+            delta = NoteDelta.diff(updatedNote.getContent(), previousNote.getContent());
+        }
+        if (delta == null || delta.length() >= previousNote.getContent().length()) {
+            content = previousNote.getContent();
+            delta = null;
+        }
+        NoteRevision revision = new NoteRevision(null, previousNote.getId(), previousNote.getPatientId(), version,
+                previousNote.getDateOfModification(), previousNote.getLanguage(), content, delta);
+        noteRevisionRepository.insert(revision);
+        logger.debug("### Kept version {} of note with id={} --> {} of {} chars", version, previousNote.getId(),
+                revision.isSnapshot() ? "snapshot" : "delta", revision.getStoredLength());
+    }
+
+    /**
+     * Deletes the former versions of a deleted note.
+     *
+     * @param noteId  the id of the deleted note
+     */
+    public void noteDeleted(String noteId) {
+        noteRevisionRepository.deleteAllByNoteId(noteId);
+    }
+
+    /**
+     * Deletes the former versions of the notes written for a deleted patient.
+     *
+     * @param patientId  the id of the patient whose notes were deleted
+     */
+    public void patientDeleted(Integer patientId) {
+        noteRevisionRepository.deleteAllByPatientId(patientId);
+    }
+
+    // === QUERY ==============================================================
+
+    /**
+     * Returns the former versions kept for a note.
+     *
+     * @param noteId  the id of the note
+     * @return        the revisions of the note, from the latest to the oldest one
+     */
+    public List<NoteRevision> findRevisions(String noteId) {
+        return noteRevisionRepository.findAllByNoteIdOrderByVersionDesc(noteId);
+    }
+
+    /**
+     * Rebuilds a version of a note from its current state and the kept revisions.
+     *
+     * @param currentNote  the note as it is now
+     * @param version      the version to rebuild
+     * @return             the note as it was at the given version, or null if this version isn't kept
+     */
+    public Note rebuild(Note currentNote, long version) {
+        long currentVersion = versionOf(currentNote);
+        if (version == currentVersion) {
+            return currentNote;
+        }
+        if (version < 0 || version > currentVersion) {
+            return null;
+        }
+
+        // Revisions from the asked version up to the first snapshot, each one a delta from the next one
+        List<NoteRevision> chain = new ArrayList<>();
+        String content = currentNote.getContent();
+        try (Stream<NoteRevision> revisions = noteRevisionRepository.findByNoteIdAndVersionGreaterThanEqualOrderByVersionAsc(currentNote.getId(), version)) {
+            Iterator<NoteRevision> iterator = revisions.iterator();
+            long expectedVersion = version;
+            while (expectedVersion < currentVersion) {
+                NoteRevision revision = iterator.hasNext() ? iterator.next() : null;
+                if (revision == null || revision.getVersion() != expectedVersion) {
+                    logger.error("### Version {} of note with id={} is missing, version {} can't be rebuilt", expectedVersion, currentNote.getId(), version);
+                    return null;
+                }
+                if (revision.isSnapshot()) {
+                    content = revision.getContent();
+                    if (chain.isEmpty()) {
+                        chain.add(revision);
+                    }
+                    break;
+                }
+                chain.add(revision);
+                expectedVersion++;
+            }
+        }
+
+        for (int index = chain.size() - 1; index >= 0; index--) {
+            NoteRevision revision = chain.get(index);
+            if (!revision.isSnapshot()) {
+                content = NoteDelta.apply(content, revision.getDelta());
+            }
+        }
+        NoteRevision rebuiltRevision = chain.get(0);
+        logger.debug("### Rebuilt version {} of note with id={} from {} revisions", version, currentNote.getId(), chain.size());
+        return new Note(currentNote.getId(), rebuiltRevision.getPatientId(), currentNote.getDateOfCreation(),
+                rebuiltRevision.getDateOfModification(), content, rebuiltRevision.getLanguage(), version);
+    }
+
+    // ========================================================================
+
+    private static long versionOf(Note note) {
+        return note.getVersion() != null ? note.getVersion() : 0;
+    }
+
+}
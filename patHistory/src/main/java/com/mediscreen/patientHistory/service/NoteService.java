@@ -1,8 +1,25 @@
 package com.mediscreen.patientHistory.service;
 
 import com.mediscreen.patientHistory.exception.DataNotFoundException;
+import com.mediscreen.patientHistory.exception.IndexNotReadyException;
+import com.mediscreen.patientHistory.exception.InvalidRequestParameterException;
+import com.mediscreen.patientHistory.exception.StaleNoteVersionException;
 import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteBulkReport;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.model.NoteSearchCriteria;
+import com.mediscreen.patientHistory.model.NoteSearchPage;
+import com.mediscreen.patientHistory.model.PatientCohort;
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -19,15 +36,160 @@ public interface NoteService {
     Note createNote(Note note);
 
     /**
-     * Retrieves all notes relating to a specific patient from database.
+     * Creates a new note in database and discards the draft it was typed in, so that its form can't resume a note
+     * already saved.
      *
-     * @param patientId  the id of the patient to retrieve notes list
-     * @return           a list of notes related to the given patientId
+     * @param note     the note to create
+     * @param draftId  the key of the draft of the note
+     * @return         the newly created note
      */
-    List<Note> readAllNotesByPatientId(Integer patientId);
+    Note createNote(Note note, String draftId);
 
     /**
-     * Retrieves a note by its id from database.
+     * Creates a batch of notes in database, keeping their dates of creation when given.
+     * Each note is validated and inserted on its own, so an invalid or failing note doesn't prevent the others from being created.
+     *
+     * @param notes  the notes to create
+     * @return       the result of each note of the batch
+     */
+    NoteBulkReport createNotes(List<Note> notes);
+
+    /**
+     * Retrieves all notes relating to a specific patient from database, from the latest to the oldest one.
+     * Archived notes are only merged in when the full history is asked for.
+     *
+     * @param patientId    the id of the patient to retrieve notes list
+     * @param fullHistory  whether the archived notes of the patient have to be retrieved too
+     * @return             a list of notes related to the given patientId
+     */
+    List<Note> readAllNotesByPatientId(Integer patientId, boolean fullHistory);
+
+    /**
+     * Retrieves the notes relating to a specific patient from database, from the latest to the oldest one, reading only
+     * the projected fields and the beginning of their content. Archived notes are only merged in when the full history
+     * is asked for. Whole notes are always read from the cache of the notes, which no write leaves stale.
+     *
+     * @param patientId    the id of the patient to retrieve notes list
+     * @param projection   the fields of the notes and the maximum number of characters of their content
+     * @param fullHistory  whether the archived notes of the patient have to be retrieved too
+     * @param secondaryOk  whether the projected notes may be read from a secondary, missing the latest writes
+     * @return             a list of notes related to the given patientId, without the fields left out
+     * @throws InvalidRequestParameterException  if a field is unknown or the preview length isn't positive
+     */
+    List<Note> readNotesByPatientId(Integer patientId, NoteProjection projection, boolean fullHistory, boolean secondaryOk) throws InvalidRequestParameterException;
+
+    /**
+     * Retrieves a page of the notes relating to a specific patient from database, from the latest to the oldest one.
+     * Archived notes are only merged in when the full history is asked for.
+     *
+     * @param patientId    the id of the patient to retrieve notes page
+     * @param cursor       the cursor returned with the previous page, or null to get the first page
+     * @param size         the maximum number of notes of the page
+     * @param fullHistory  whether the archived notes of the patient have to be retrieved too
+     * @param projection   the fields of the notes and the maximum number of characters of their content
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @return             the page of notes with the cursor to get the next one
+     * @throws InvalidRequestParameterException  if the cursor or the projection is invalid
+     */
+    NotePage readNotesPageByPatientId(Integer patientId, String cursor, int size, boolean fullHistory, NoteProjection projection,
+                                      boolean secondaryOk) throws InvalidRequestParameterException;
+
+    /**
+     * Retrieves the notes relating to a specific patient created within a range of days, from the latest to the oldest
+     * one, reading only the notes of the range. Archived notes are only merged in when the full history is asked for.
+     *
+     * @param patientId    the id of the patient to retrieve notes
+     * @param from         the first day of creation of the notes, inclusive, or null for no lower bound
+     * @param to           the last day of creation of the notes, inclusive, or null for no upper bound
+     * @param fullHistory  whether the archived notes of the patient have to be retrieved too
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @return             the notes of the patient created within the range
+     * @throws InvalidRequestParameterException  if the start of the range is after its end
+     */
+    List<Note> readNotesByPatientIdAndDateRange(Integer patientId, LocalDate from, LocalDate to, boolean fullHistory,
+                                                boolean secondaryOk) throws InvalidRequestParameterException;
+
+    /**
+     * Searches the notes containing the given words, in the given language, and matching the other given criteria.
+     * Notes are searched on a secondary when secondary reads are enabled, so a note just written may not be found yet.
+     *
+     * @param criteria  the searched words and criteria
+     * @param page      the number of the page to return, starting from 0
+     * @param size      the maximum number of notes of the page
+     * @return          the page of matching notes, from the most to the least relevant one
+     * @throws InvalidRequestParameterException  if the searched words are missing or a criterion is invalid
+     */
+    NoteSearchPage searchNotes(NoteSearchCriteria criteria, int page, int size) throws InvalidRequestParameterException;
+
+    /**
+     * Retrieves the patients whose notes mention all the trigger terms of the first list and at least one of the second list.
+     * Terms are given by name, as SMOKER, or by trigger term, as Smoker, ignoring case.
+     *
+     * @param allOf  the trigger terms all mentioned by the patients
+     * @param anyOf  the trigger terms among which at least one is mentioned by the patients
+     * @param limit  the maximum number of patient ids to return
+     * @return       the number of matching patients and their ids in ascending order, up to the limit
+     * @throws InvalidRequestParameterException  if a term is unknown
+     * @throws IndexNotReadyException            if the term cohort index is not loaded
+     */
+    PatientCohort readCohortByTriggerTerms(List<String> allOf, List<String> anyOf, int limit) throws InvalidRequestParameterException, IndexNotReadyException;
+
+    /**
+     * Counts the patients whose notes mention all the trigger terms of the first list and at least one of the second list.
+     *
+     * @param allOf  the trigger terms all mentioned by the patients
+     * @param anyOf  the trigger terms among which at least one is mentioned by the patients
+     * @return       the number of matching patients
+     * @throws InvalidRequestParameterException  if a term is unknown
+     * @throws IndexNotReadyException            if the term cohort index is not loaded
+     */
+    long countCohortByTriggerTerms(List<String> allOf, List<String> anyOf) throws InvalidRequestParameterException, IndexNotReadyException;
+
+    /**
+     * Retrieves the summaries of the notes of the given patients, without reading their notes.
+     *
+     * @param patientIds  the ids of the patients, without duplicates
+     * @return            the summary of the notes of each patient in the given order, empty for a patient without notes
+     */
+    List<PatientNoteSummary> readSummariesByPatientIds(List<Integer> patientIds);
+
+    /**
+     * Finds the terms of a catalogue mentioned in the hot and archived notes of the given patients, matched inside the
+     * database whatever their case and accents, so that no note has to be returned.
+     * Terms equal once their case and accents are folded are found once, under the first of them.
+     *
+     * @param patientIds  the ids of the patients, without duplicates
+     * @param terms       the catalogue of terms, or null to look for the trigger terms of the diabetes terminology
+     * @return            the terms found in the notes of each patient in the given order, empty for a patient without any
+     * @throws InvalidRequestParameterException  if there are too many terms or a term is blank or too long
+     */
+    List<PatientTriggerTerms> readTriggerTermsByPatientIds(List<Integer> patientIds, List<String> terms) throws InvalidRequestParameterException;
+
+    /**
+     * Returns the entity tag of the notes of a patient, derived from their number, number of archived ones, latest date
+     * of modification and content hash, and so changed by any write to them or move to the archive. It is read from the
+     * summary of the patient, without any note.
+     *
+     * @param patientId  the id of the patient
+     * @return           the entity tag of the notes of the patient, without quotes
+     */
+    String readNotesETagByPatientId(Integer patientId);
+
+    /**
+     * Writes the notes relating to a specific patient, or to all patients, to the given output as newline delimited JSON.
+     * Notes are written as they are read from the database, so memory use doesn't depend on the number of notes.
+     * Archived notes are only merged in, in the same order, when the full history is asked for.
+     *
+     * @param patientId     the id of the patient to export notes, or null to export the notes of all patients
+     * @param fullHistory   whether the archived notes have to be exported too
+     * @param outputStream  the output to write notes to, left open
+     * @return              the number of exported notes
+     * @throws IOException  if the notes can't be written to the output
+     */
+    long exportNotesByPatientId(Integer patientId, boolean fullHistory, OutputStream outputStream) throws IOException;
+
+    /**
+     * Retrieves a note by its id from database, whether it is archived or not.
      *
      * @param id  the id of the note to retrieve
      * @return    the note with the given id
@@ -36,17 +198,49 @@ public interface NoteService {
     Note readNoteById(String id) throws DataNotFoundException;
 
     /**
-     * Updates an existing note in database.
+     * Retrieves the former versions kept for a note, without their content.
+     *
+     * @param id  the id of the note
+     * @return    the revisions of the note from the latest to the oldest one, empty if it was never updated
+     * @throws DataNotFoundException  if the note doesn't exist
+     */
+    List<NoteRevision> readRevisionsByNoteId(String id) throws DataNotFoundException;
+
+    /**
+     * Rebuilds a note as it was at the given version, from its kept revisions.
+     *
+     * @param id       the id of the note
+     * @param version  the version of the note to rebuild
+     * @return         the note as it was at the given version
+     * @throws DataNotFoundException  if the note doesn't exist or this version of it isn't kept
+     */
+    Note readNoteRevision(String id, long version) throws DataNotFoundException;
+
+    /**
+     * Updates an existing note in database, provided it is still at the version of the given note if it has one.
+     * An archived note is moved back to the hot notes before being updated.
      *
      * @param id    the id of the note to update
      * @param note  the note with the values to update
      * @return      the updated note
-     * @throws DataNotFoundException  if the note doesn't exist
+     * @throws DataNotFoundException       if the note doesn't exist
+     * @throws StaleNoteVersionException  if the note is no longer at the given version
      */
-    Note updateNote(String id, Note note) throws DataNotFoundException;
+    Note updateNote(String id, Note note) throws DataNotFoundException, StaleNoteVersionException;
 
     /**
-     * Deletes an existing note by its id from database.
+     * Updates only the given fields of an existing note in database, provided it is still at the given version if any.
+     *
+     * @param id         the id of the note to patch
+     * @param notePatch  the fields to update
+     * @return           the patched note
+     * @throws DataNotFoundException       if the note doesn't exist
+     * @throws StaleNoteVersionException  if the note is no longer at the given version
+     */
+    Note patchNote(String id, NotePatch notePatch) throws DataNotFoundException, StaleNoteVersionException;
+
+    /**
+     * Deletes an existing note by its id from database, whether it is archived or not.
      *
      * @param id  the id of the note to delete
      * @throws DataNotFoundException  if the note doesn't exist
@@ -54,9 +248,37 @@ public interface NoteService {
     void deleteNote(String id) throws DataNotFoundException;
 
     /**
-     * Deletes all notes related to a specific patient by its id.
+     * Deletes all notes related to a specific patient by its id, archived ones included.
      *
      * @param patientId  the id of patient to delete notes list
      */
     void deleteNotesByPatientId(Integer patientId);
+
+    /**
+     * Autosaves the draft of a note being written or edited, replacing its previous autosave. Drafts are written to the
+     * database in batches and with a relaxed durability, the note itself being saved by {@link #createNote(Note)} or
+     * {@link #updateNote(String, Note)} only.
+     *
+     * @param draftId  the key of the draft chosen by the client
+     * @param draft    the draft to save
+     * @return         the saved draft
+     * @throws InvalidRequestParameterException  if the key of the draft is invalid
+     */
+    NoteDraft saveDraft(String draftId, NoteDraft draft) throws InvalidRequestParameterException;
+
+    /**
+     * Retrieves the latest autosave of a draft.
+     *
+     * @param draftId  the key of the draft
+     * @return         the draft
+     * @throws DataNotFoundException  if the draft doesn't exist, was discarded or has expired
+     */
+    NoteDraft readDraft(String draftId) throws DataNotFoundException;
+
+    /**
+     * Discards a draft, once its note is saved or abandoned.
+     *
+     * @param draftId  the key of the draft
+     */
+    void deleteDraft(String draftId);
 }
@@ -1,16 +1,58 @@
 package com.mediscreen.patientHistory.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mediscreen.patientHistory.constants.DiabetesTerminology;
 import com.mediscreen.patientHistory.exception.DataNotFoundException;
+import com.mediscreen.patientHistory.exception.IndexNotReadyException;
+import com.mediscreen.patientHistory.exception.InvalidRequestParameterException;
+import com.mediscreen.patientHistory.exception.StaleNoteVersionException;
 import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteBulkReport;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NoteBulkResult;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.model.NoteSearchCriteria;
+import com.mediscreen.patientHistory.model.NoteSearchPage;
+import com.mediscreen.patientHistory.model.PatientCohort;
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
 import com.mediscreen.patientHistory.repository.NoteRepository;
+import com.mediscreen.patientHistory.repository.NoteRepositoryCustom;
+import com.mongodb.MongoException;
+import org.bson.types.ObjectId;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Implements the CRUD operations related to the note business logic.
@@ -20,19 +62,104 @@ public class NoteServiceImpl implements NoteService {
 
     private static final Logger logger = LoggerFactory.getLogger(NoteService.class);
 
+    /**
+     * Number of exported notes after which the written ones are flushed to the client.
+     */
+    private static final int EXPORT_FLUSH_INTERVAL = 1000;
+
+    private static final SerializedString NEW_LINE = new SerializedString("\n");
+
+    /**
+     * Languages in which searched words can be stemmed, as supported by the text index.
+     */
+    private static final Set<String> SEARCH_LANGUAGES = Set.of("english", "french");
+
+    /**
+     * Maximum length of the searched words.
+     */
+    private static final int MAX_SEARCH_TEXT_LENGTH = 200;
+
+    /**
+     * Terms looked for in the notes when no catalogue is given: the trigger terms of the diabetes terminology.
+     */
+    private static final List<String> DEFAULT_TERMS = Stream.of(DiabetesTerminology.values())
+            .map(DiabetesTerminology::getTriggerTerm).collect(Collectors.toUnmodifiableList());
+
+    /**
+     * Maximum number of terms of a catalogue, and maximum length of each of them.
+     */
+    private static final int MAX_TERMS = 100;
+    private static final int MAX_TERM_LENGTH = 100;
+
+    /**
+     * Keys of drafts the clients may choose, short enough to be kept in memory and used in URLs as is.
+     */
+    private static final Pattern DRAFT_ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,100}");
+
     /**
      * Component that manages database operations for patient notes.
      */
     private final NoteRepository noteRepository;
 
+    /**
+     * Component that serializes exported notes to JSON.
+     */
+    private final ObjectWriter noteWriter;
+
+    /**
+     * Component that checks the constraints of notes created by batch.
+     */
+    private final Validator validator;
+
+    /**
+     * Component that indexes the patients mentioning each trigger term, kept current from the writes made to notes.
+     */
+    private final TermCohortIndex termCohortIndex;
+
+    /**
+     * Component that keeps in memory the notes of the patients recently read, invalidated by the writes made to notes.
+     */
+    private final PatientNotesCache patientNotesCache;
+
+    /**
+     * Component that keeps the summary of the notes of each patient current from the writes made to notes.
+     */
+    private final PatientNoteSummaryTracker summaryTracker;
+
+    /**
+     * Component that keeps the former versions of the notes replaced by updates.
+     */
+    private final NoteRevisionTracker revisionTracker;
+
+    /**
+     * Component that coalesces the autosaves of note drafts before writing them.
+     */
+    private final NoteDraftBuffer draftBuffer;
+
     /**
      * Instantiates a new note service.
      *
-     * @param noteRepository  the repository linked to note data
+     * @param noteRepository     the repository linked to note data
+     * @param objectMapper       the mapper used to serialize exported notes
+     * @param validator          the validator of notes created by batch
+     * @param termCohortIndex    the index of the patients mentioning each trigger term
+     * @param patientNotesCache  the cache of the notes of each patient
+     * @param summaryTracker     the tracker of the summary of the notes of each patient
+     * @param revisionTracker    the tracker of the former versions of the notes
+     * @param draftBuffer        the buffer of the autosaves of note drafts
      */
     @Autowired
-    public NoteServiceImpl(NoteRepository noteRepository) {
+    public NoteServiceImpl(NoteRepository noteRepository, ObjectMapper objectMapper, Validator validator, TermCohortIndex termCohortIndex,
+                           PatientNotesCache patientNotesCache, PatientNoteSummaryTracker summaryTracker, NoteRevisionTracker revisionTracker,
+                           NoteDraftBuffer draftBuffer) {
         this.noteRepository = noteRepository;
+        this.noteWriter = objectMapper.writerFor(Note.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.validator = validator;
+        this.termCohortIndex = termCohortIndex;
+        this.patientNotesCache = patientNotesCache;
+        this.summaryTracker = summaryTracker;
+        this.revisionTracker = revisionTracker;
+        this.draftBuffer = draftBuffer;
     }
 
 
@@ -45,17 +172,103 @@ public class NoteServiceImpl implements NoteService {
         noteToCreate.setDateOfModification(noteToCreate.getDateOfCreation());
 
         Note createdNote = noteRepository.insert(noteToCreate);
+        // Invalidated before the summary gives the notes a new ETag, so that the new ETag is never served with the former notes
+        patientNotesCache.invalidate(createdNote.getPatientId());
+        summaryTracker.noteCreated(createdNote);
+        termCohortIndex.addNote(createdNote);
 
         logger.info("### New note saved --> {}", createdNote);
         return createdNote;
     }
 
+    @Override
+    public Note createNote(Note noteToCreate, String draftId) {
+        Note createdNote = createNote(noteToCreate);
+
+        // The note is saved whether or not its draft is deleted, the draft being ignored from now on anyway
+        try {
+            draftBuffer.discard(draftId);
+            logger.info("### Discarded draft with id={} of new note", draftId);
+        } catch (DataAccessException | MongoException e) {
+            logger.warn("### Failed to delete draft with id={} of new note, left to expire --> {}", draftId, e.getMessage());
+        }
+        return createdNote;
+    }
+
+    // === CREATE BATCH =======================================================
+    @Override
+    public NoteBulkReport createNotes(List<Note> notesToCreate) {
+        logger.debug("### Try to save in database batch of {} notes", notesToCreate.size());
+
+        LocalDateTime now = LocalDateTime.now();
+        String[] rejections = new String[notesToCreate.size()];
+        List<Note> validNotes = new ArrayList<>(notesToCreate.size());
+        List<Integer> validNotesIndexes = new ArrayList<>(notesToCreate.size());
+        for (int i = 0; i < notesToCreate.size(); i++) {
+            Note note = notesToCreate.get(i);
+            Set<ConstraintViolation<Note>> violations = note == null ? Set.of() : validator.validate(note);
+            if (note == null || !violations.isEmpty()) {
+                rejections[i] = note == null ? "Note is mandatory." : violations.stream()
+                        .map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining(" "));
+                continue;
+            }
+            // Other ids would break the cursors and the id-ordered reads of the notes
+            if (note.getId() != null && !ObjectId.isValid(note.getId())) {
+                rejections[i] = "Id must be a 24-character hexadecimal ObjectId.";
+                continue;
+            }
+            // Ids are set here so that each note can be matched with its result whatever the order of insertion
+            if (note.getId() == null) {
+                note.setId(new ObjectId().toHexString());
+            }
+            // Keeps the dates of notes imported from other systems
+            if (note.getDateOfCreation() == null) {
+                note.setDateOfCreation(now);
+            }
+            if (note.getDateOfModification() == null) {
+                note.setDateOfModification(note.getDateOfCreation());
+            }
+            // Bulk writes don't initialize the version as inserts do
+            note.setVersion(0L);
+            validNotes.add(note);
+            validNotesIndexes.add(i);
+        }
+
+        Map<Integer, String> failures = validNotes.isEmpty() ? Map.of() : noteRepository.bulkInsert(validNotes);
+        for (Map.Entry<Integer, String> failure : failures.entrySet()) {
+            rejections[validNotesIndexes.get(failure.getKey())] = failure.getValue();
+        }
+
+        List<NoteBulkResult> results = new ArrayList<>(notesToCreate.size());
+        List<Note> insertedNotes = new ArrayList<>(validNotes.size());
+        for (int i = 0; i < notesToCreate.size(); i++) {
+            if (rejections[i] == null) {
+                // Invalidated before the summaries are updated below, as for a single note
+                patientNotesCache.invalidate(notesToCreate.get(i).getPatientId());
+                termCohortIndex.addNote(notesToCreate.get(i));
+                results.add(new NoteBulkResult(i, notesToCreate.get(i).getId(), true, null));
+                insertedNotes.add(notesToCreate.get(i));
+            } else {
+                results.add(new NoteBulkResult(i, null, false, rejections[i]));
+            }
+        }
+        summaryTracker.notesCreated(insertedNotes);
+        int insertedCount = insertedNotes.size();
+
+        logger.info("### Batch of notes saved --> {} inserted, {} rejected", insertedCount, notesToCreate.size() - insertedCount);
+        return new NoteBulkReport(insertedCount, notesToCreate.size() - insertedCount, results);
+    }
+
     // === READ ALL BY PATIENT ID =============================================
     @Override
-    public List<Note> readAllNotesByPatientId(Integer patientId) {
-        logger.debug("### Try to retrieve all notes with patientId={} from database", patientId);
+    public List<Note> readAllNotesByPatientId(Integer patientId, boolean fullHistory) {
+        logger.debug("### Try to retrieve all notes with patientId={} from database, full history={}", patientId, fullHistory);
 
-        List<Note> patientNotes = noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(patientId);
+        List<Note> patientNotes = patientNotesCache.get(patientId, noteRepository::findAllByPatientIdOrderByDateOfCreationDesc);
+        if (fullHistory) {
+            // Only the hot notes are cached, the archived ones being rarely read
+            patientNotes = NoteTiers.merge(patientNotes, noteRepository.findArchivedByPatientId(patientId), NoteTiers.LATEST_FIRST, Integer.MAX_VALUE);
+        }
 
         if(patientNotes.isEmpty()) {
             logger.info("### No notes found from database");
@@ -66,38 +279,394 @@ public class NoteServiceImpl implements NoteService {
         }
     }
 
+    // === READ PROJECTED BY PATIENT ID =======================================
+    @Override
+    public List<Note> readNotesByPatientId(Integer patientId, NoteProjection projection, boolean fullHistory, boolean secondaryOk) {
+        if (projection.isWhole()) {
+            // Served by the cache, which is kept current from the writes and thus never stale
+            return readAllNotesByPatientId(patientId, fullHistory);
+        }
+        logger.debug("### Try to retrieve notes with patientId={} projected as {} from database, full history={}, secondary ok={}",
+                patientId, projection, fullHistory, secondaryOk);
+
+        checkProjection(projection);
+        // Not cached, the projection being applied by the database
+        NoteRepositoryCustom notesReader = secondaryOk ? noteRepository.fromSecondaries() : noteRepository;
+        List<Note> notes = notesReader.findProjectedByPatientId(patientId, projection);
+        if (fullHistory) {
+            notes = NoteTiers.merge(notes, notesReader.findArchivedProjectedByPatientId(patientId, projection),
+                    NoteTiers.LATEST_FIRST, Integer.MAX_VALUE);
+        }
+        notes.forEach(projection::apply);
+
+        logger.info("### {} projected notes retrieved", notes.size());
+        return notes;
+    }
+
+    private void checkProjection(NoteProjection projection) {
+        for (String field : projection.getFields()) {
+            if (!NoteProjection.FIELDS.contains(field)) {
+                logger.error("### Failed to project notes on unknown field '{}'", field);
+                throw new InvalidRequestParameterException("Unknown note field '" + field + "', fields are " + NoteProjection.FIELDS);
+            }
+        }
+        if (projection.getPreview() != null && projection.getPreview() < 1) {
+            logger.error("### Failed to project notes with a preview of {} characters", projection.getPreview());
+            throw new InvalidRequestParameterException("Preview must be a positive number");
+        }
+    }
+
+    // === READ PAGE BY PATIENT ID ============================================
+    @Override
+    public NotePage readNotesPageByPatientId(Integer patientId, String cursor, int size, boolean fullHistory, NoteProjection projection,
+                                             boolean secondaryOk) {
+        logger.debug("### Try to retrieve page of {} notes with patientId={} after cursor '{}' from database, full history={}, projected as {}, secondary ok={}",
+                size, patientId, cursor, fullHistory, projection, secondaryOk);
+
+        checkProjection(projection);
+        NoteCursor position = NoteCursor.decode(cursor);
+        LocalDateTime dateOfCreation = position == null ? null : position.getDateOfCreation();
+        String noteId = position == null ? null : position.getNoteId();
+        // Fetches one more note to know if a next page exists
+        NoteRepositoryCustom notesReader = secondaryOk ? noteRepository.fromSecondaries() : noteRepository;
+        List<Note> notes = notesReader.findPageByPatientId(patientId, dateOfCreation, noteId, size + 1, projection);
+        if (fullHistory) {
+            // The cursor being a position in the sort order, the same one pages through both collections
+            notes = NoteTiers.merge(notes, notesReader.findArchivedPageByPatientId(patientId, dateOfCreation, noteId, size + 1, projection),
+                    NoteTiers.LATEST_FIRST, size + 1);
+        }
+
+        boolean hasMore = notes.size() > size;
+        if (hasMore) {
+            notes = new ArrayList<>(notes.subList(0, size));
+        }
+        String nextCursor = hasMore ? NoteCursor.of(notes.get(notes.size() - 1)).encode() : null;
+        // Cleared once the cursor is made, the fields it is made of being read whatever the projection
+        notes.forEach(projection::apply);
+
+        logger.info("### Page of {} notes retrieved, more available={}", notes.size(), hasMore);
+        return new NotePage(notes, nextCursor, hasMore);
+    }
+
+    // === READ BY PATIENT ID AND DATE RANGE ==================================
+    @Override
+    public List<Note> readNotesByPatientIdAndDateRange(Integer patientId, LocalDate from, LocalDate to, boolean fullHistory, boolean secondaryOk) {
+        logger.debug("### Try to retrieve notes with patientId={} created from {} to {} from database, full history={}, secondary ok={}",
+                patientId, from, to, fullHistory, secondaryOk);
+
+        if (from != null && to != null && from.isAfter(to)) {
+            logger.error("### Failed to retrieve notes created from {} to {}", from, to);
+            throw new InvalidRequestParameterException("Start of the date range must not be after its end");
+        }
+
+        LocalDateTime start = from == null ? null : from.atStartOfDay();
+        LocalDateTime end = to == null ? null : to.plusDays(1).atStartOfDay();
+        // Not cached, the range being read from the index rather than filtered from the whole history
+        NoteRepositoryCustom notesReader = secondaryOk ? noteRepository.fromSecondaries() : noteRepository;
+        List<Note> notes = notesReader.findByPatientIdAndDateOfCreationRange(patientId, start, end);
+        if (fullHistory) {
+            notes = NoteTiers.merge(notes, notesReader.findArchivedByPatientIdAndDateOfCreationRange(patientId, start, end),
+                    NoteTiers.LATEST_FIRST, Integer.MAX_VALUE);
+        }
+
+        logger.info("### {} notes created from {} to {} retrieved", notes.size(), from, to);
+        return notes;
+    }
+
+    // === SEARCH BY TEXT =====================================================
+    @Override
+    public NoteSearchPage searchNotes(NoteSearchCriteria criteria, int page, int size) {
+        logger.debug("### Try to search in database notes matching {}, page {} of size {}", criteria, page, size);
+
+        if (criteria.getText() == null || criteria.getText().isBlank() || criteria.getText().length() > MAX_SEARCH_TEXT_LENGTH) {
+            logger.error("### Failed to search notes with text '{}'", criteria.getText());
+            throw new InvalidRequestParameterException("Searched text is mandatory and must be at most " + MAX_SEARCH_TEXT_LENGTH + " characters long");
+        }
+        if (criteria.getLanguage() != null && !SEARCH_LANGUAGES.contains(criteria.getLanguage())) {
+            logger.error("### Failed to search notes in language '{}'", criteria.getLanguage());
+            throw new InvalidRequestParameterException("Language must be one of " + SEARCH_LANGUAGES);
+        }
+        if (criteria.getFrom() != null && criteria.getTo() != null && criteria.getFrom().isAfter(criteria.getTo())) {
+            logger.error("### Failed to search notes created from {} to {}", criteria.getFrom(), criteria.getTo());
+            throw new InvalidRequestParameterException("Start of the date range must not be after its end");
+        }
+
+        // Fetches one more note to know if a next page exists, from a secondary if any since nobody expects a note
+        // to be found the very moment it is written
+        List<Note> notes = noteRepository.fromSecondaries().searchByText(criteria, (long) page * size, size + 1);
+
+        boolean hasMore = notes.size() > size;
+        if (hasMore) {
+            notes = new ArrayList<>(notes.subList(0, size));
+        }
+
+        logger.info("### Page {} of notes matching {} retrieved --> {} notes, more available={}", page, criteria, notes.size(), hasMore);
+        return new NoteSearchPage(notes, page, size, hasMore);
+    }
+
+    // === READ COHORT BY TRIGGER TERMS =======================================
+    @Override
+    public PatientCohort readCohortByTriggerTerms(List<String> allOf, List<String> anyOf, int limit) {
+        logger.debug("### Try to retrieve patients mentioning all of {} and any of {}", allOf, anyOf);
+
+        RoaringBitmap patientIds = termCohortIndex.findPatients(termsOf(allOf), termsOf(anyOf));
+
+        List<Integer> limitedPatientIds = new ArrayList<>((int) Math.min(limit, patientIds.getLongCardinality()));
+        IntIterator iterator = patientIds.getIntIterator();
+        while (iterator.hasNext() && limitedPatientIds.size() < limit) {
+            limitedPatientIds.add(iterator.next());
+        }
+
+        logger.info("### Cohort of patients retrieved --> {} patients", patientIds.getLongCardinality());
+        return new PatientCohort(patientIds.getLongCardinality(), limitedPatientIds, patientIds.getLongCardinality() > limit);
+    }
+
+    // === COUNT COHORT BY TRIGGER TERMS ======================================
+    @Override
+    public long countCohortByTriggerTerms(List<String> allOf, List<String> anyOf) {
+        logger.debug("### Try to count patients mentioning all of {} and any of {}", allOf, anyOf);
+
+        long patientCount = termCohortIndex.countPatients(termsOf(allOf), termsOf(anyOf));
+
+        logger.info("### Cohort of patients counted --> {} patients", patientCount);
+        return patientCount;
+    }
+
+    private Set<DiabetesTerminology> termsOf(List<String> namesOrTriggerTerms) {
+        if (!termCohortIndex.isReady()) {
+            throw new IndexNotReadyException("Term cohort index is not loaded, try again later");
+        }
+        Set<DiabetesTerminology> terms = EnumSet.noneOf(DiabetesTerminology.class);
+        for (String nameOrTriggerTerm : namesOrTriggerTerms) {
+            DiabetesTerminology term = TermCohortIndex.termOf(nameOrTriggerTerm);
+            if (term == null) {
+                throw new InvalidRequestParameterException("Unknown trigger term '" + nameOrTriggerTerm + "'");
+            }
+            terms.add(term);
+        }
+        return terms;
+    }
+
+    // === READ SUMMARIES BY PATIENT IDS =======================================
+    @Override
+    public List<PatientNoteSummary> readSummariesByPatientIds(List<Integer> patientIds) {
+        logger.debug("### Try to retrieve summaries of notes with patientIds={} from database", patientIds);
+
+        List<PatientNoteSummary> summaries = summaryTracker.findSummaries(patientIds);
+
+        logger.info("### Summaries of notes retrieved --> {}", summaries);
+        return summaries;
+    }
+
+    // === READ TRIGGER TERMS BY PATIENT IDS ==================================
+    @Override
+    public List<PatientTriggerTerms> readTriggerTermsByPatientIds(List<Integer> patientIds, List<String> terms) {
+        logger.debug("### Try to find in database terms {} mentioned in notes with patientIds={}", terms, patientIds);
+
+        List<String> catalogue = terms == null || terms.isEmpty() ? DEFAULT_TERMS : terms;
+        if (catalogue.size() > MAX_TERMS || catalogue.stream().anyMatch(term -> term == null || term.isBlank() || term.length() > MAX_TERM_LENGTH)) {
+            logger.error("### Failed to find terms {}", terms);
+            throw new InvalidRequestParameterException("At most " + MAX_TERMS + " terms of at most " + MAX_TERM_LENGTH + " characters must be given");
+        }
+        // Terms with the same folded form match the same contents, so each one is looked for once, under its first name
+        Map<String, String> regexByTerm = new LinkedHashMap<>();
+        Set<String> foldedTerms = new HashSet<>();
+        for (String term : catalogue) {
+            if (foldedTerms.add(TermPatterns.fold(term))) {
+                regexByTerm.put(term, TermPatterns.regexOf(term));
+            }
+        }
+
+        Map<Integer, Set<String>> termsByPatient = noteRepository.findTermsByPatientIds(patientIds, regexByTerm);
+        // The database can't read compressed contents, which are matched here with the same expressions
+        List<Note> compressedNotes = noteRepository.findCompressedByPatientIds(patientIds);
+        if (!compressedNotes.isEmpty()) {
+            Map<String, Pattern> patternByTerm = new LinkedHashMap<>();
+            regexByTerm.keySet().forEach(term -> patternByTerm.put(term, TermPatterns.compile(term)));
+            for (Note note : compressedNotes) {
+                patternByTerm.forEach((term, pattern) -> {
+                    if (pattern.matcher(note.getContent()).find()) {
+                        termsByPatient.computeIfAbsent(note.getPatientId(), patientId -> new HashSet<>()).add(term);
+                    }
+                });
+            }
+        }
+
+        List<PatientTriggerTerms> patientTerms = patientIds.stream()
+                .map(patientId -> new PatientTriggerTerms(patientId, regexByTerm.keySet().stream()
+                        .filter(termsByPatient.getOrDefault(patientId, Set.of())::contains)
+                        .collect(Collectors.toList())))
+                .collect(Collectors.toList());
+
+        logger.info("### Terms found in notes of {} patients, {} compressed notes read --> {}", patientIds.size(), compressedNotes.size(), patientTerms);
+        return patientTerms;
+    }
+
+    // === READ NOTES ETAG BY PATIENT ID =======================================
+    @Override
+    public String readNotesETagByPatientId(Integer patientId) {
+        PatientNoteSummary summary = summaryTracker.findSummaries(List.of(patientId)).get(0);
+
+        long lastModification = summary.getLastModification() == null ? 0
+                : summary.getLastModification().toInstant(ZoneOffset.UTC).toEpochMilli();
+        // The archived note count changes the hot notes without changing the others
+        String notesETag = summary.getNoteCount() + "-" + summary.getArchivedNoteCount() + "-" + Long.toHexString(lastModification)
+                + "-" + Long.toHexString(summary.getContentHash());
+
+        logger.debug("### ETag of notes with patientId={} --> {}", patientId, notesETag);
+        return notesETag;
+    }
+
+    // === EXPORT BY PATIENT ID ===============================================
+    @Override
+    public long exportNotesByPatientId(Integer patientId, boolean fullHistory, OutputStream outputStream) throws IOException {
+        logger.debug("### Try to export notes with patientId={} from database, full history={}", patientId, fullHistory);
+
+        long startTime = System.nanoTime();
+        long exportedNotes = 0;
+        try (Stream<Note> notes = noteRepository.streamByPatientId(patientId);
+             Stream<Note> archivedNotes = fullHistory ? noteRepository.streamArchivedByPatientId(patientId) : Stream.empty();
+             JsonGenerator generator = noteWriter.createGenerator(outputStream)) {
+            // One note per line, the output being closed by its owner
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(NEW_LINE);
+            Iterator<Note> iterator = !fullHistory ? notes.iterator()
+                    : NoteTiers.merge(notes.iterator(), archivedNotes.iterator(), patientId == null ? NoteTiers.BY_ID : NoteTiers.LATEST_FIRST);
+            while (iterator.hasNext()) {
+                noteWriter.writeValue(generator, iterator.next());
+                // Written notes are sent by bunches instead of one by one
+                if (++exportedNotes % EXPORT_FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+            if (exportedNotes > 0) {
+                generator.writeRaw(NEW_LINE.getValue());
+            }
+        } catch (IOException e) {
+            logger.error("### Export of notes with patientId={} interrupted after {} notes --> {}", patientId, exportedNotes, e.getMessage());
+            throw e;
+        }
+
+        double elapsedSeconds = Math.max(System.nanoTime() - startTime, 1) / 1_000_000_000d;
+        logger.info("### Exported {} notes with patientId={} in {} s ({} notes/s)", exportedNotes, patientId,
+                String.format("%.3f", elapsedSeconds), Math.round(exportedNotes / elapsedSeconds));
+        return exportedNotes;
+    }
+
     // === READ ONE BY ID =====================================================
     @Override
     public Note readNoteById(String noteId) {
         logger.debug("### Try to retrieve from database note with id={}", noteId);
 
-        Note retrievedNote = noteRepository.findById(noteId).orElseThrow(() -> {
+        Note retrievedNote = noteRepository.findById(noteId).orElseGet(() -> noteRepository.findArchivedById(noteId));
+        if (retrievedNote == null) {
             logger.error("### Failed to retrieve note with id={} from database", noteId);
             throw new DataNotFoundException("Note not found or doesn't exist");
-        });
+        }
 
         logger.info("### Retrieved note with id={} --> {}", noteId, retrievedNote);
         return retrievedNote;
     }
 
+    // === READ REVISIONS BY NOTE ID ==========================================
+    @Override
+    public List<NoteRevision> readRevisionsByNoteId(String noteId) {
+        logger.debug("### Try to retrieve from database revisions of note with id={}", noteId);
+
+        // Checks the note exists, its revisions being deleted with it
+        readNoteById(noteId);
+        List<NoteRevision> revisions = revisionTracker.findRevisions(noteId);
+
+        logger.info("### Retrieved {} revisions of note with id={}", revisions.size(), noteId);
+        return revisions;
+    }
+
+    // === READ ONE REVISION ==================================================
+    @Override
+    public Note readNoteRevision(String noteId, long version) {
+        logger.debug("### Try to rebuild version {} of note with id={}", version, noteId);
+
+        Note rebuiltNote = revisionTracker.rebuild(readNoteById(noteId), version);
+        if (rebuiltNote == null) {
+            logger.error("### Failed to rebuild version {} of note with id={}", version, noteId);
+            throw new DataNotFoundException("Revision not found or no longer kept");
+        }
+
+        logger.info("### Rebuilt version {} of note with id={}", version, noteId);
+        return rebuiltNote;
+    }
+
     // === UPDATE =============================================================
     @Override
     public Note updateNote(String noteId, Note noteToUpdate) {
         logger.debug("### Try to update in database note with id={}", noteId);
 
-        // Checks if note with given id already exists in database ...
-        Note existingNote = noteRepository.findById(noteId).orElseThrow(() -> {
+        // Keeps the language of the note for clients which don't know about it
+        Note updatedNote = updateFields(noteId, noteToUpdate.getVersion(), noteToUpdate.getPatientId(),
+                noteToUpdate.getContent(), noteToUpdate.getLanguage());
+
+        logger.info("### Updated note with id={} --> {}", noteId, updatedNote);
+        return updatedNote;
+    }
+
+    // === PATCH ==============================================================
+    @Override
+    public Note patchNote(String noteId, NotePatch notePatch) {
+        logger.debug("### Try to patch in database note with id={} --> {}", noteId, notePatch);
+
+        Note patchedNote = updateFields(noteId, notePatch.getVersion(), null, notePatch.getContent(), notePatch.getLanguage());
+
+        logger.info("### Patched note with id={} --> {}", noteId, patchedNote);
+        return patchedNote;
+    }
+
+    /**
+     * Sets the given fields of a note in a single round trip, rejecting the update if the note has another version.
+     *
+     * @param noteId           the id of the note to update
+     * @param expectedVersion  the version the note must have, or null to update it whatever its version
+     * @param patientId        the new patient id, or null to keep it
+     * @param content          the new content, or null to keep it
+     * @param language         the new language, or null to keep it
+     * @return                 the updated note
+     */
+    private Note updateFields(String noteId, Long expectedVersion, Integer patientId, String content, String language) {
+        LocalDateTime dateOfModification = LocalDateTime.now();
+        Note previousNote = noteRepository.updateFields(noteId, expectedVersion, patientId, content, language, dateOfModification);
+        if (previousNote == null) {
+            Note restoredNote = noteRepository.restoreArchived(noteId);
+            if (restoredNote != null) {
+                logger.info("### Restored archived note with id={} before updating it", noteId);
+                patientNotesCache.invalidate(restoredNote.getPatientId());
+                summaryTracker.noteRestored(restoredNote);
+                previousNote = noteRepository.updateFields(noteId, expectedVersion, patientId, content, language, dateOfModification);
+            }
+        }
+        if (previousNote == null) {
+            if (expectedVersion != null && noteRepository.existsById(noteId)) {
+                logger.error("### Failed to update note with id={}, which is no longer at version {}", noteId, expectedVersion);
+                throw new StaleNoteVersionException("Note was modified by someone else, reload it before saving your changes");
+            }
             logger.error("### Failed to retrieve note with id={}", noteId);
             throw new DataNotFoundException("Note not found or doesn't exist");
-        });
-        // ... then saves modifications
-        LocalDateTime originalDateOfCreation = existingNote.getDateOfCreation();
-        noteToUpdate.setId(noteId);
-        noteToUpdate.setDateOfCreation(originalDateOfCreation);
-        noteToUpdate.setDateOfModification(LocalDateTime.now());
-        Note updatedNote = noteRepository.save(noteToUpdate);
+        }
 
-        logger.info("### Updated note with id={} --> {}", noteId, updatedNote);
+        Note updatedNote = new Note(noteId,
+                patientId != null ? patientId : previousNote.getPatientId(),
+                previousNote.getDateOfCreation(),
+                dateOfModification,
+                content != null ? content : previousNote.getContent(),
+                language != null ? language : previousNote.getLanguage(),
+                previousNote.getVersion() != null ? previousNote.getVersion() + 1 : 1L);
+        patientNotesCache.invalidate(previousNote.getPatientId());
+        patientNotesCache.invalidate(updatedNote.getPatientId());
+        summaryTracker.noteUpdated(previousNote, updatedNote);
+        revisionTracker.noteUpdated(previousNote, updatedNote);
+        // The former content or patient may have been the only one to mention a term
+        termCohortIndex.refreshPatient(previousNote.getPatientId());
+        if (!previousNote.getPatientId().equals(updatedNote.getPatientId())) {
+            termCohortIndex.refreshPatient(updatedNote.getPatientId());
+        }
         return updatedNote;
     }
 
@@ -106,14 +675,23 @@ public class NoteServiceImpl implements NoteService {
     public void deleteNote(String noteId) {
         logger.debug("### Try to delete from database note with id={}", noteId);
 
-        // Checks if given id exists in database before deleting
-        if(noteRepository.existsById(noteId)) {
+        // Checks if given id exists in database before deleting, keeping the note to know its patient
+        Note existingNote = noteRepository.findById(noteId).orElse(null);
+        if (existingNote != null) {
             noteRepository.deleteById(noteId);
-            logger.info("### Deleted note with id={}", noteId);
+            patientNotesCache.invalidate(existingNote.getPatientId());
+            summaryTracker.noteDeleted(existingNote);
         } else {
-            logger.error("### Failed to delete note with id={}", noteId);
-            throw new DataNotFoundException("Note not found or doesn't exist");
+            existingNote = noteRepository.deleteArchivedById(noteId);
+            if (existingNote == null) {
+                logger.error("### Failed to delete note with id={}", noteId);
+                throw new DataNotFoundException("Note not found or doesn't exist");
+            }
+            summaryTracker.archivedNoteDeleted(existingNote);
         }
+        revisionTracker.noteDeleted(noteId);
+        termCohortIndex.refreshPatient(existingNote.getPatientId());
+        logger.info("### Deleted note with id={}", noteId);
     }
 
     // === DELETE NOTES BY PATIENT ID =========================================
@@ -122,7 +700,60 @@ public class NoteServiceImpl implements NoteService {
         logger.debug("### Try to delete from database all notes with patientId={}", patientId);
 
         noteRepository.deleteAllByPatientId(patientId);
+        noteRepository.deleteArchivedByPatientId(patientId);
+        patientNotesCache.invalidate(patientId);
+        summaryTracker.patientDeleted(patientId);
+        revisionTracker.patientDeleted(patientId);
+        termCohortIndex.removePatient(patientId);
 
         logger.info("### Deleted notes with patientId={}", patientId);
     }
+
+    // === SAVE DRAFT =========================================================
+    @Override
+    public NoteDraft saveDraft(String draftId, NoteDraft draft) {
+        logger.debug("### Try to autosave draft with id={}", draftId);
+
+        if (draftId == null || !DRAFT_ID_PATTERN.matcher(draftId).matches()) {
+            logger.error("### Failed to autosave draft with invalid id={}", draftId);
+            throw new InvalidRequestParameterException("Draft id must be 1 to 100 letters, digits, '-' or '_'");
+        }
+        draft.setId(draftId);
+        draft.setDateOfModification(LocalDateTime.now());
+        if (draft.getDateOfCreation() == null) {
+            draft.setDateOfCreation(draft.getDateOfModification());
+        }
+        if (!draftBuffer.save(draft)) {
+            logger.info("### Ignored autosave of draft with id={} discarded since its form was opened", draftId);
+            return draft;
+        }
+
+        logger.debug("### Autosaved draft with id={}", draftId);
+        return draft;
+    }
+
+    // === READ DRAFT =========================================================
+    @Override
+    public NoteDraft readDraft(String draftId) {
+        logger.debug("### Try to retrieve draft with id={}", draftId);
+
+        NoteDraft draft = draftBuffer.find(draftId);
+        if (draft == null) {
+            logger.error("### Failed to retrieve draft with id={}", draftId);
+            throw new DataNotFoundException("Draft not found, discarded or expired");
+        }
+
+        logger.info("### Retrieved draft with id={}", draftId);
+        return draft;
+    }
+
+    // === DELETE DRAFT =======================================================
+    @Override
+    public void deleteDraft(String draftId) {
+        logger.debug("### Try to discard draft with id={}", draftId);
+
+        draftBuffer.discard(draftId);
+
+        logger.info("### Discarded draft with id={}", draftId);
+    }
 }
@@ -0,0 +1,100 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.model.Note;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges the notes read from the hot and archive collections, each one already sorted, into a single sorted sequence.
+ * A note being moved to or from the archive may be read from both collections, in which case it is kept once.
+ */
+final class NoteTiers {
+
+    /**
+     * Order of the notes of a patient, from the latest to the oldest one, as sorted by the database.
+     */
+    static final Comparator<Note> LATEST_FIRST = Comparator
+            .comparing(Note::getDateOfCreation, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder()))
+            .thenComparing(Note::getId)
+            .reversed();
+
+    /**
+     * Order of the notes of all patients, by id, as sorted by the database.
+     */
+    static final Comparator<Note> BY_ID = Comparator.comparing(Note::getId);
+
+    private NoteTiers() {
+    }
+
+    /**
+     * Merges two lists of notes sorted in the given order, up to the given number of notes.
+     *
+     * @param hotNotes       the notes read from the hot collection
+     * @param archivedNotes  the notes read from the archive collection
+     * @param order          the order of both lists
+     * @param limit          the maximum number of notes to return
+     * @return               the merged notes, in the given order
+     */
+    static List<Note> merge(List<Note> hotNotes, List<Note> archivedNotes, Comparator<Note> order, int limit) {
+        if (archivedNotes.isEmpty()) {
+            return hotNotes.size() > limit ? new ArrayList<>(hotNotes.subList(0, limit)) : hotNotes;
+        }
+        List<Note> mergedNotes = new ArrayList<>(Math.min(hotNotes.size() + archivedNotes.size(), limit));
+        Iterator<Note> iterator = merge(hotNotes.iterator(), archivedNotes.iterator(), order);
+        while (iterator.hasNext() && mergedNotes.size() < limit) {
+            mergedNotes.add(iterator.next());
+        }
+        return mergedNotes;
+    }
+
+    /**
+     * Lazily merges two sequences of notes sorted in the given order, reading each note only when it is requested.
+     *
+     * @param hotNotes       the notes read from the hot collection
+     * @param archivedNotes  the notes read from the archive collection
+     * @param order          the order of both sequences
+     * @return               the merged notes, in the given order
+     */
+    static Iterator<Note> merge(Iterator<Note> hotNotes, Iterator<Note> archivedNotes, Comparator<Note> order) {
+        return new Iterator<>() {
+
+            private Note nextHotNote = nextOrNull(hotNotes);
+            private Note nextArchivedNote = nextOrNull(archivedNotes);
+
+            @Override
+            public boolean hasNext() {
+                return nextHotNote != null || nextArchivedNote != null;
+            }
+
+            @Override
+            public Note next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Note note;
+                if (nextArchivedNote == null || (nextHotNote != null && order.compare(nextHotNote, nextArchivedNote) <= 0)) {
+                    note = nextHotNote;
+                    nextHotNote = nextOrNull(hotNotes);
+                } else {
+                    note = nextArchivedNote;
+                    nextArchivedNote = nextOrNull(archivedNotes);
+                }
+                // Both copies of a note being moved have the same sort keys, so they come one after the other
+                if (nextArchivedNote != null && nextArchivedNote.getId().equals(note.getId())) {
+                    nextArchivedNote = nextOrNull(archivedNotes);
+                }
+                return note;
+            }
+        };
+    }
+
+    private static Note nextOrNull(Iterator<Note> notes) {
+        return notes.hasNext() ? notes.next() : null;
+    }
+
+}
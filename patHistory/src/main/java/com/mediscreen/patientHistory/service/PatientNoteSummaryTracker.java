@@ -0,0 +1,358 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import com.mediscreen.patientHistory.repository.NoteRepository;
+import com.mediscreen.patientHistory.repository.PatientNoteSummaryRepository;
+import com.mongodb.MongoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a summary of the notes of each patient, with their number, latest date of modification and a hash of their
+ * contents, so that clients can tell whether the notes of a patient changed without reading them. Archived notes are
+ * part of the summary, which also counts them.
+ * <p>
+ * Each note write made by this service is followed by a single atomic update of the summary of its patient, adding
+ * the change in number of notes, moving the date of last modification forward and toggling the hash of the former and
+ * new note in and out of the summary hash. The hash of a note being combined by exclusive or, the summary hash doesn't
+ * depend on the order of the writes and is the same as if computed again from all the notes.
+ * <p>
+ * The notes being written before their summary, a failed update of the summary would leave it behind the notes, with
+ * an ETag clients would keep using. The summary of the patient is then marked stale and computed again from their notes,
+ * at once, before it is next read, or by the periodic repair (mediscreen.notes.summary.repair-interval), whichever
+ * comes first.
+ * <p>
+ * Summaries are computed from all the notes once the application is ready if none exists yet, enabled with the
+ * mediscreen.notes.summary.initialize property.
+ */
+@Component
+public class PatientNoteSummaryTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientNoteSummaryTracker.class);
+
+    /**
+     * Component that manages database operations for patient notes.
+     */
+    private final NoteRepository noteRepository;
+
+    /**
+     * Component that manages database operations for the summaries of patient notes.
+     */
+    private final PatientNoteSummaryRepository summaryRepository;
+
+    private final boolean initialize;
+
+    /**
+     * Ids of the patients whose summary missed an update, to be computed again from their notes.
+     */
+    private final Set<Integer> staleSummaries = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Instantiates a new patient note summary tracker.
+     *
+     * @param noteRepository     the repository linked to note data, used to initialize the summaries
+     * @param summaryRepository  the repository linked to note summary data
+     * @param initialize         whether the summaries have to be computed at startup if none exists yet
+     */
+    @Autowired
+    public PatientNoteSummaryTracker(NoteRepository noteRepository, PatientNoteSummaryRepository summaryRepository,
+                                     @Value("${mediscreen.notes.summary.initialize:false}") boolean initialize) {
+        this.noteRepository = noteRepository;
+        this.summaryRepository = summaryRepository;
+        this.initialize = initialize;
+    }
+
+
+    // === INITIALIZATION =====================================================
+
+    /**
+     * Computes the summaries of all patients from their notes, if no summary exists yet.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeSummaries() {
+        if (!initialize || summaryRepository.count() > 0) {
+            return;
+        }
+        logger.debug("### Try to compute the summaries of notes of all patients from database");
+        long start = System.nanoTime();
+
+        Map<Integer, PatientNoteSummary> summaries = new HashMap<>();
+        try (Stream<Note> notes = noteRepository.streamByPatientId(null)) {
+            addNotes(summaries, notes, false);
+        }
+        try (Stream<Note> archivedNotes = noteRepository.streamArchivedByPatientId(null)) {
+            addNotes(summaries, archivedNotes, true);
+        }
+        int recomputedSummaries = 0;
+        for (PatientNoteSummary summary : summaries.values()) {
+            try {
+                summaryRepository.insert(summary);
+            } catch (DuplicateKeyException e) {
+                // A note of the patient was written meanwhile, so the summary is computed again from their notes
+                recomputeSummary(summary.getPatientId());
+                recomputedSummaries++;
+            }
+        }
+
+        logger.info("### Summaries of notes of {} patients computed in {} ms, {} computed again after concurrent writes",
+                summaries.size(), (System.nanoTime() - start) / 1_000_000, recomputedSummaries);
+    }
+
+    /**
+     * Computes again the summary of a patient from all their notes, archived ones included.
+     *
+     * @param patientId  the id of the patient
+     */
+    public void recomputeSummary(Integer patientId) {
+        PatientNoteSummary summary = new PatientNoteSummary(patientId, 0, null, 0);
+        for (Note note : noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(patientId)) {
+            addNote(summary, note);
+        }
+        for (Note archivedNote : noteRepository.findArchivedByPatientId(patientId)) {
+            addNote(summary, archivedNote);
+            summary.setArchivedNoteCount(summary.getArchivedNoteCount() + 1);
+        }
+        summaryRepository.save(summary);
+    }
+
+    private static void addNotes(Map<Integer, PatientNoteSummary> summaries, Stream<Note> notes, boolean archived) {
+        Iterator<Note> iterator = notes.iterator();
+        while (iterator.hasNext()) {
+            Note note = iterator.next();
+            PatientNoteSummary summary = summaries.computeIfAbsent(note.getPatientId(),
+                    patientId -> new PatientNoteSummary(patientId, 0, null, 0));
+            addNote(summary, note);
+            if (archived) {
+                summary.setArchivedNoteCount(summary.getArchivedNoteCount() + 1);
+            }
+        }
+    }
+
+    // === QUERY ==============================================================
+
+    /**
+     * Returns the summaries of the given patients, in the given order, a patient without notes having an empty summary.
+     *
+     * @param patientIds  the ids of the patients
+     * @return            the summary of each patient
+     */
+    public List<PatientNoteSummary> findSummaries(Collection<Integer> patientIds) {
+        for (Integer patientId : patientIds) {
+            if (staleSummaries.contains(patientId)) {
+                // Never returned behind the notes, so a failure to compute it again fails the query
+                recomputeStaleSummary(patientId);
+            }
+        }
+        Map<Integer, PatientNoteSummary> foundSummaries = new HashMap<>();
+        summaryRepository.findAllById(patientIds).forEach(summary -> foundSummaries.put(summary.getPatientId(), summary));
+        List<PatientNoteSummary> summaries = new ArrayList<>(patientIds.size());
+        for (Integer patientId : patientIds) {
+            summaries.add(foundSummaries.getOrDefault(patientId, new PatientNoteSummary(patientId, 0, null, 0)));
+        }
+        return summaries;
+    }
+
+    // === MAINTENANCE ========================================================
+
+    /**
+     * Adds a newly created note to the summary of its patient.
+     *
+     * @param note  the created note
+     */
+    public void noteCreated(Note note) {
+        applyChanges(List.of(
+                new PatientNoteSummary(note.getPatientId(), 1, note.getDateOfModification(), hashOf(note))));
+    }
+
+    /**
+     * Adds newly created notes to the summaries of their patients, with one update per patient.
+     *
+     * @param notes  the created notes
+     */
+    public void notesCreated(List<Note> notes) {
+        Map<Integer, PatientNoteSummary> changes = new LinkedHashMap<>();
+        for (Note note : notes) {
+            addNote(changes.computeIfAbsent(note.getPatientId(), patientId -> new PatientNoteSummary(patientId, 0, null, 0)), note);
+        }
+        applyChanges(new ArrayList<>(changes.values()));
+    }
+
+    /**
+     * Replaces a note by its updated version in the summaries of their patients.
+     *
+     * @param previousNote  the note before the update
+     * @param updatedNote   the note after the update
+     */
+    public void noteUpdated(Note previousNote, Note updatedNote) {
+        if (previousNote.getPatientId().equals(updatedNote.getPatientId())) {
+            applyChanges(List.of(new PatientNoteSummary(updatedNote.getPatientId(), 0,
+                    updatedNote.getDateOfModification(), hashOf(previousNote) ^ hashOf(updatedNote))));
+        } else {
+            applyChanges(List.of(
+                    new PatientNoteSummary(previousNote.getPatientId(), -1, updatedNote.getDateOfModification(), hashOf(previousNote)),
+                    new PatientNoteSummary(updatedNote.getPatientId(), 1, updatedNote.getDateOfModification(), hashOf(updatedNote))));
+        }
+    }
+
+    /**
+     * Removes a deleted note from the summary of its patient.
+     *
+     * @param note  the deleted note
+     */
+    public void noteDeleted(Note note) {
+        applyChanges(List.of(
+                new PatientNoteSummary(note.getPatientId(), -1, LocalDateTime.now(), hashOf(note))));
+    }
+
+    /**
+     * Removes a deleted archived note from the summary of its patient.
+     *
+     * @param note  the deleted archived note
+     */
+    public void archivedNoteDeleted(Note note) {
+        applyChanges(List.of(
+                new PatientNoteSummary(note.getPatientId(), -1, LocalDateTime.now(), hashOf(note), -1)));
+    }
+
+    /**
+     * Counts notes moved to the archive among the notes of their patients, with one update per patient.
+     * The notes themselves being unchanged, the summaries keep their hash and date of last modification.
+     *
+     * @param archivedNotesByPatient  the number of notes moved to the archive for each patient
+     */
+    public void notesArchived(Map<Integer, Long> archivedNotesByPatient) {
+        List<PatientNoteSummary> changes = new ArrayList<>(archivedNotesByPatient.size());
+        archivedNotesByPatient.forEach((patientId, archivedNotes) -> changes.add(new PatientNoteSummary(patientId, 0, null, 0, archivedNotes)));
+        applyChanges(changes);
+    }
+
+    /**
+     * Stops counting a note moved back from the archive among the archived notes of its patient.
+     *
+     * @param note  the restored note
+     */
+    public void noteRestored(Note note) {
+        applyChanges(List.of(new PatientNoteSummary(note.getPatientId(), 0, null, 0, -1)));
+    }
+
+    /**
+     * Removes the summary of a patient, after all their notes were deleted.
+     *
+     * @param patientId  the id of the patient
+     */
+    public void patientDeleted(Integer patientId) {
+        try {
+            summaryRepository.deleteById(patientId);
+        } catch (DataAccessException | MongoException e) {
+            markStale(List.of(patientId), e);
+        }
+    }
+
+    // === REPAIR =============================================================
+
+    /**
+     * Computes again from their notes the summaries which missed an update, keeping those which still fail for the next
+     * repair.
+     */
+    @Scheduled(initialDelayString = "${mediscreen.notes.summary.repair-interval:PT30S}", fixedDelayString = "${mediscreen.notes.summary.repair-interval:PT30S}")
+    public void repairSummaries() {
+        for (Integer patientId : staleSummaries) {
+            try {
+                recomputeStaleSummary(patientId);
+                logger.info("### Summary of notes of patientId={} computed again after a failed update", patientId);
+            } catch (DataAccessException | MongoException e) {
+                logger.warn("### Failed to compute again summary of notes of patientId={}, retried later --> {}", patientId, e.getMessage());
+            }
+        }
+    }
+
+    private void recomputeStaleSummary(Integer patientId) {
+        // Left stale before reading the notes, so that an update failing meanwhile marks it stale again
+        staleSummaries.remove(patientId);
+        try {
+            recomputeSummary(patientId);
+        } catch (RuntimeException e) {
+            staleSummaries.add(patientId);
+            throw e;
+        }
+    }
+
+    private void applyChanges(List<PatientNoteSummary> changes) {
+        try {
+            summaryRepository.applyChanges(changes);
+        } catch (DataAccessException | MongoException e) {
+            markStale(changes.stream().map(PatientNoteSummary::getPatientId).collect(Collectors.toList()), e);
+        }
+    }
+
+    private void markStale(List<Integer> patientIds, RuntimeException cause) {
+        // The notes are already written, so the write succeeds and the summaries catch up with them
+        staleSummaries.addAll(patientIds);
+        logger.warn("### Failed to update summaries of notes of patientIds={}, computed again --> {}", patientIds, cause.getMessage());
+        for (Integer patientId : patientIds) {
+            try {
+                recomputeStaleSummary(patientId);
+            } catch (DataAccessException | MongoException e) {
+                logger.warn("### Failed to compute again summary of notes of patientId={}, retried later --> {}", patientId, e.getMessage());
+            }
+        }
+    }
+
+    // ========================================================================
+
+    /**
+     * Returns the hash of the id and content of a note, combined with the other notes of its patient by exclusive or.
+     *
+     * @param note  the note to hash
+     * @return      the first 64 bits of the SHA-256 digest of the id and content of the note
+     */
+    static long hashOf(Note note) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // The id tells apart notes with the same content, whose hashes would otherwise cancel each other out
+            digest.update(note.getId().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Objects.toString(note.getContent(), "").getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void addNote(PatientNoteSummary summary, Note note) {
+        summary.setNoteCount(summary.getNoteCount() + 1);
+        summary.setContentHash(summary.getContentHash() ^ hashOf(note));
+        if (summary.getLastModification() == null
+                || (note.getDateOfModification() != null && note.getDateOfModification().isAfter(summary.getLastModification()))) {
+            summary.setLastModification(note.getDateOfModification());
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.mediscreen.patientHistory.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mediscreen.patientHistory.model.Note;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Bounded in-memory cache of the notes of each patient, latest first, enabled with the mediscreen.notes.cache.enabled
+ * property.
+ * <p>
+ * The notes of a patient are read from the database on the first request, then served from memory until one of them
+ * is written by this service, which invalidates the patient once the write is done and before its summary, hence the
+ * ETag of its notes, changes. Notes read while the patient was invalidated aren't cached, as they may have been read
+ * before the write. The cache is limited to an
+ * estimated number of bytes, the least used patients being evicted first, and its hits, misses and evictions are
+ * published as the cache.* metrics tagged with cache=patientNotes.
+ */
+@Component
+public class PatientNotesCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientNotesCache.class);
+
+    static final String CACHE_NAME = "patientNotes";
+
+    /**
+     * Estimated size of a note in memory apart from its content: object headers, id, dates and boxed numbers.
+     */
+    private static final int NOTE_OVERHEAD_BYTES = 300;
+
+    /**
+     * Estimated size of the list of notes of a patient and of its cache entry.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 100;
+
+    /**
+     * Number of generation counters the patients are spread over.
+     */
+    private static final int GENERATION_STRIPES = 256;
+
+    private final boolean enabled;
+    private final Cache<Integer, List<Note>> notesByPatient;
+
+    /**
+     * Number of invalidations of the patients of each stripe, telling whether a patient was invalidated during a read.
+     */
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    /**
+     * Instantiates a new patient notes cache.
+     *
+     * @param meterRegistry  the registry the metrics of the cache are published to
+     * @param enabled        whether the notes of patients have to be cached
+     * @param maxBytes       the estimated memory the cached notes may use, in bytes
+     */
+    @Autowired
+    public PatientNotesCache(MeterRegistry meterRegistry,
+                             @Value("${mediscreen.notes.cache.enabled:false}") boolean enabled,
+                             @Value("${mediscreen.notes.cache.max-bytes:67108864}") long maxBytes) {
+        this.enabled = enabled;
+        this.notesByPatient = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(PatientNotesCache::weigh)
+                .recordStats()
+                // Evicts on the reading thread rather than later in the common pool, so that the ceiling is kept at all times
+                .executor(Runnable::run)
+                .build();
+        if (enabled) {
+            CaffeineCacheMetrics.monitor(meterRegistry, notesByPatient, CACHE_NAME);
+            logger.info("### Notes of patients cached up to {} bytes", maxBytes);
+        }
+    }
+
+
+    /**
+     * Returns the notes of a patient, read with the given loader if they are not cached yet.
+     *
+     * @param patientId  the id of the patient
+     * @param loader     the function reading the notes of a patient from the database
+     * @return           the unmodifiable list of the notes of the patient
+     */
+    public List<Note> get(Integer patientId, Function<Integer, List<Note>> loader) {
+        if (!enabled) {
+            return loader.apply(patientId);
+        }
+        List<Note> cachedNotes = notesByPatient.getIfPresent(patientId);
+        if (cachedNotes != null) {
+            return cachedNotes;
+        }
+        long generation = generations.get(stripeOf(patientId));
+        List<Note> notes = List.copyOf(loader.apply(patientId));
+        // Kept only if the patient wasn't invalidated since the read began, the check and the put being atomic
+        notesByPatient.asMap().compute(patientId,
+                (id, currentNotes) -> generations.get(stripeOf(id)) == generation ? notes : currentNotes);
+        return notes;
+    }
+
+    /**
+     * Removes the notes of a patient from the cache, after one of them was written.
+     *
+     * @param patientId  the id of the patient
+     */
+    public void invalidate(Integer patientId) {
+        if (enabled && patientId != null) {
+            // Counted first, so that a read still running can't put its notes back once they are removed
+            generations.incrementAndGet(stripeOf(patientId));
+            notesByPatient.invalidate(patientId);
+        }
+    }
+
+    /**
+     * Returns the statistics of the cache since startup.
+     *
+     * @return  the hits, misses and evictions of the cache
+     */
+    public CacheStats stats() {
+        return notesByPatient.stats();
+    }
+
+    /**
+     * Returns the estimated memory used by the cached notes.
+     *
+     * @return  the estimated size of the cached notes in bytes
+     */
+    public long weightedSize() {
+        return notesByPatient.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    // ========================================================================
+
+    private static int stripeOf(Integer patientId) {
+        return Math.floorMod(patientId.hashCode(), GENERATION_STRIPES);
+    }
+
+    private static int weigh(Integer patientId, List<Note> notes) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (Note note : notes) {
+            // Two bytes per character, as content may not be latin-1 only
+            bytes += NOTE_OVERHEAD_BYTES + (note.getContent() == null ? 0 : 2L * note.getContent().length());
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+}
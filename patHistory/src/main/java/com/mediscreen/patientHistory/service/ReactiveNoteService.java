@@ -0,0 +1,192 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.exception.DataNotFoundException;
+import com.mediscreen.patientHistory.exception.InvalidRequestParameterException;
+import com.mediscreen.patientHistory.exception.StaleNoteVersionException;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Manages business service layer CRUD operations related to patient notes without blocking the calling thread,
+ * in the reactive runtime mode.
+ */
+public interface ReactiveNoteService {
+
+    /**
+     * Creates a new note in database.
+     *
+     * @param note  the note to create
+     * @return      the created note
+     */
+    Mono<Note> createNote(Note note);
+
+    /**
+     * Creates a new note in database and discards the draft it was typed in.
+     *
+     * @param note     the note to create
+     * @param draftId  the key of the draft of the note
+     * @return         the created note
+     */
+    Mono<Note> createNote(Note note, String draftId);
+
+    /**
+     * Streams the notes relating to a specific patient, or to all patients, from database.
+     * Notes are read from the database as they are requested downstream, so a slow client slows the reading down.
+     *
+     * @param patientId    the id of the patient, or null to stream the notes of all patients
+     * @param fullHistory  whether the archived notes have to be streamed too, merged in the same order
+     * @return             the notes of the patient from the latest to the oldest one, or all notes by id
+     */
+    Flux<Note> readNotesByPatientId(Integer patientId, boolean fullHistory);
+
+    /**
+     * Retrieves a page of the notes relating to a specific patient, from the latest to the oldest one.
+     *
+     * @param patientId    the id of the patient
+     * @param cursor       the cursor returned with the previous page, or null to get the first page
+     * @param size         the maximum number of notes of the page
+     * @param fullHistory  whether the archived notes have to be paged through too
+     * @param projection   the fields of the notes to return and the maximum length of their contents
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @return             the page of notes
+     * @throws InvalidRequestParameterException  signalled if the cursor or the projection is invalid
+     */
+    Mono<NotePage> readNotesPageByPatientId(Integer patientId, String cursor, int size, boolean fullHistory, NoteProjection projection,
+                                            boolean secondaryOk);
+
+    /**
+     * Retrieves the notes relating to a specific patient created within a range of days, from the latest to the oldest one.
+     *
+     * @param patientId    the id of the patient
+     * @param from         the first day of creation of the notes, inclusive, or null for no lower bound
+     * @param to           the last day of creation of the notes, inclusive, or null for no upper bound
+     * @param fullHistory  whether the archived notes have to be retrieved too
+     * @param secondaryOk  whether the notes may be read from a secondary, missing the latest writes
+     * @return             the notes of the patient created within the range
+     * @throws InvalidRequestParameterException  signalled if the range ends before it starts
+     */
+    Mono<List<Note>> readNotesByPatientIdAndDateRange(Integer patientId, LocalDate from, LocalDate to, boolean fullHistory,
+                                                      boolean secondaryOk);
+
+    /**
+     * Finds the terms of a catalogue mentioned in the notes of each given patient.
+     *
+     * @param patientIds  the ids of the patients, without duplicates
+     * @param terms       the catalogue of terms, or null to look for the trigger terms of the diabetes terminology
+     * @return            the terms found in the notes of each patient in the given order
+     * @throws InvalidRequestParameterException  signalled if there are too many terms or a term is invalid
+     */
+    Mono<List<PatientTriggerTerms>> readTriggerTermsByPatientIds(List<Integer> patientIds, List<String> terms);
+
+    /**
+     * Returns the entity tag of the notes of a patient, changed by any write to them.
+     *
+     * @param patientId  the id of the patient
+     * @return           the entity tag of the notes of the patient, without quotes
+     */
+    Mono<String> readNotesETagByPatientId(Integer patientId);
+
+    /**
+     * Retrieves a note by its id from database, archived or not.
+     *
+     * @param id  the id of the note to retrieve
+     * @return    the note with the given id, or an error if it doesn't exist
+     * @throws DataNotFoundException  signalled if the note doesn't exist
+     */
+    Mono<Note> readNoteById(String id);
+
+    /**
+     * Lists the former versions kept for a note.
+     *
+     * @param id  the id of the note
+     * @return    the revisions of the note, from the latest to the oldest one
+     * @throws DataNotFoundException  signalled if the note doesn't exist
+     */
+    Mono<List<NoteRevision>> readRevisionsByNoteId(String id);
+
+    /**
+     * Rebuilds a note as it was at the given version.
+     *
+     * @param id       the id of the note
+     * @param version  the version to rebuild
+     * @return         the note at this version
+     * @throws DataNotFoundException  signalled if the note doesn't exist or this version of it isn't kept
+     */
+    Mono<Note> readNoteRevision(String id, long version);
+
+    /**
+     * Updates an existing note in database, provided it is still at the version of the given note if it has one.
+     *
+     * @param id    the id of the note to update
+     * @param note  the note with the values to update
+     * @return      the updated note
+     * @throws DataNotFoundException       signalled if the note doesn't exist
+     * @throws StaleNoteVersionException  signalled if the note is no longer at the given version
+     */
+    Mono<Note> updateNote(String id, Note note);
+
+    /**
+     * Updates only the given fields of an existing note in database, provided it is still at the given version if any.
+     *
+     * @param id         the id of the note to patch
+     * @param notePatch  the fields to update
+     * @return           the patched note
+     * @throws DataNotFoundException       signalled if the note doesn't exist
+     * @throws StaleNoteVersionException  signalled if the note is no longer at the given version
+     */
+    Mono<Note> patchNote(String id, NotePatch notePatch);
+
+    /**
+     * Deletes an existing note by its id from database.
+     *
+     * @param id  the id of the note to delete
+     * @return    the completion of the deletion
+     * @throws DataNotFoundException  signalled if the note doesn't exist
+     */
+    Mono<Void> deleteNote(String id);
+
+    /**
+     * Deletes all notes related to a specific patient by its id.
+     *
+     * @param patientId  the id of patient to delete notes list
+     * @return           the completion of the deletion
+     */
+    Mono<Void> deleteNotesByPatientId(Integer patientId);
+
+    /**
+     * Autosaves the draft of a note being written or edited, replacing its previous autosave.
+     *
+     * @param draftId  the key of the draft chosen by the client
+     * @param draft    the draft to save
+     * @return         the saved draft
+     * @throws InvalidRequestParameterException  signalled if the key of the draft is invalid
+     */
+    Mono<NoteDraft> saveDraft(String draftId, NoteDraft draft);
+
+    /**
+     * Retrieves the latest autosave of a draft.
+     *
+     * @param draftId  the key of the draft
+     * @return         the draft
+     * @throws DataNotFoundException  signalled if the draft doesn't exist
+     */
+    Mono<NoteDraft> readDraft(String draftId);
+
+    /**
+     * Discards a draft.
+     *
+     * @param draftId  the key of the draft
+     * @return         the completion of the discard
+     */
+    Mono<Void> deleteDraft(String draftId);
+}
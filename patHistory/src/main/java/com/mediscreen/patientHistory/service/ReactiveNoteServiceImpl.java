@@ -0,0 +1,202 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.exception.DataNotFoundException;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
+import com.mediscreen.patientHistory.repository.ReactiveNoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Implements the note operations of the reactive runtime mode, enabled with the reactive profile.
+ * <p>
+ * Notes are read through the reactive driver, without holding a thread while the database responds. Writes go through
+ * the blocking note service on the bounded elastic scheduler instead, since they also keep the cache, cohort index and
+ * summaries of the patients current, which are shared with the servlet mode. So do the pages, ranges, terms, ETags,
+ * revisions and drafts, which rely on that cache, index and those summaries as well.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveNoteServiceImpl implements ReactiveNoteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveNoteService.class);
+
+    /**
+     * Component that reads notes from the database without blocking.
+     */
+    private final ReactiveNoteRepository reactiveNoteRepository;
+
+    /**
+     * Component that writes notes and keeps the data derived from them current.
+     */
+    private final NoteService noteService;
+
+    /**
+     * Instantiates a new reactive note service.
+     *
+     * @param reactiveNoteRepository  the non-blocking repository linked to note data
+     * @param noteService             the blocking note service the writes are delegated to
+     */
+    @Autowired
+    public ReactiveNoteServiceImpl(ReactiveNoteRepository reactiveNoteRepository, NoteService noteService) {
+        this.reactiveNoteRepository = reactiveNoteRepository;
+        this.noteService = noteService;
+    }
+
+
+    // === CREATE =============================================================
+    @Override
+    public Mono<Note> createNote(Note noteToCreate) {
+        return offload(() -> noteService.createNote(noteToCreate));
+    }
+
+    @Override
+    public Mono<Note> createNote(Note noteToCreate, String draftId) {
+        return offload(() -> noteService.createNote(noteToCreate, draftId));
+    }
+
+    // === READ ALL BY PATIENT ID =============================================
+    @Override
+    public Flux<Note> readNotesByPatientId(Integer patientId, boolean fullHistory) {
+        logger.debug("### Try to stream notes with patientId={} and fullHistory={} from database", patientId, fullHistory);
+
+        Flux<Note> notes = patientId != null
+                ? reactiveNoteRepository.findAllByPatientIdOrderByDateOfCreationDescIdDesc(patientId)
+                // In an order which stays stable while notes are added
+                : reactiveNoteRepository.findAll(Sort.by(Sort.Direction.ASC, "_id"));
+        if (fullHistory) {
+            // Both tiers are sorted alike, so that a note being moved is read twice in a row and kept once
+            notes = Flux.mergeComparing(patientId != null ? NoteTiers.LATEST_FIRST : NoteTiers.BY_ID,
+                            notes, reactiveNoteRepository.findArchivedByPatientId(patientId))
+                    .distinctUntilChanged(Note::getId);
+        }
+
+        return notes.doOnComplete(() -> logger.info("### Streamed notes with patientId={}", patientId));
+    }
+
+    // === READ PAGE BY PATIENT ID ============================================
+    @Override
+    public Mono<NotePage> readNotesPageByPatientId(Integer patientId, String cursor, int size, boolean fullHistory,
+                                                   NoteProjection projection, boolean secondaryOk) {
+        return offload(() -> noteService.readNotesPageByPatientId(patientId, cursor, size, fullHistory, projection, secondaryOk));
+    }
+
+    // === READ BY PATIENT ID AND DATE RANGE ==================================
+    @Override
+    public Mono<List<Note>> readNotesByPatientIdAndDateRange(Integer patientId, LocalDate from, LocalDate to, boolean fullHistory,
+                                                             boolean secondaryOk) {
+        return offload(() -> noteService.readNotesByPatientIdAndDateRange(patientId, from, to, fullHistory, secondaryOk));
+    }
+
+    // === READ TRIGGER TERMS BY PATIENT IDS ==================================
+    @Override
+    public Mono<List<PatientTriggerTerms>> readTriggerTermsByPatientIds(List<Integer> patientIds, List<String> terms) {
+        return offload(() -> noteService.readTriggerTermsByPatientIds(patientIds, terms));
+    }
+
+    // === READ NOTES ETAG BY PATIENT ID ======================================
+    @Override
+    public Mono<String> readNotesETagByPatientId(Integer patientId) {
+        return offload(() -> noteService.readNotesETagByPatientId(patientId));
+    }
+
+    // === READ ONE BY ID =====================================================
+    @Override
+    public Mono<Note> readNoteById(String noteId) {
+        logger.debug("### Try to retrieve from database note with id={}", noteId);
+
+        return reactiveNoteRepository.findById(noteId)
+                .switchIfEmpty(Mono.defer(() -> reactiveNoteRepository.findArchivedById(noteId)))
+                .switchIfEmpty(Mono.defer(() -> {
+                    logger.error("### Failed to retrieve note with id={} from database", noteId);
+                    return Mono.error(new DataNotFoundException("Note not found or doesn't exist"));
+                }))
+                .doOnNext(retrievedNote -> logger.info("### Retrieved note with id={} --> {}", noteId, retrievedNote));
+    }
+
+    // === READ REVISIONS BY ID ===============================================
+    @Override
+    public Mono<List<NoteRevision>> readRevisionsByNoteId(String noteId) {
+        return offload(() -> noteService.readRevisionsByNoteId(noteId));
+    }
+
+    @Override
+    public Mono<Note> readNoteRevision(String noteId, long version) {
+        return offload(() -> noteService.readNoteRevision(noteId, version));
+    }
+
+    // === UPDATE =============================================================
+    @Override
+    public Mono<Note> updateNote(String noteId, Note noteToUpdate) {
+        return offload(() -> noteService.updateNote(noteId, noteToUpdate));
+    }
+
+    // === PATCH ==============================================================
+    @Override
+    public Mono<Note> patchNote(String noteId, NotePatch notePatch) {
+        return offload(() -> noteService.patchNote(noteId, notePatch));
+    }
+
+    // === DELETE =============================================================
+    @Override
+    public Mono<Void> deleteNote(String noteId) {
+        return offload(() -> {
+            noteService.deleteNote(noteId);
+            return null;
+        });
+    }
+
+    // === DELETE NOTES BY PATIENT ID =========================================
+    @Override
+    public Mono<Void> deleteNotesByPatientId(Integer patientId) {
+        return offload(() -> {
+            noteService.deleteNotesByPatientId(patientId);
+            return null;
+        });
+    }
+
+    // === DRAFTS =============================================================
+    @Override
+    public Mono<NoteDraft> saveDraft(String draftId, NoteDraft draft) {
+        return offload(() -> noteService.saveDraft(draftId, draft));
+    }
+
+    @Override
+    public Mono<NoteDraft> readDraft(String draftId) {
+        return offload(() -> noteService.readDraft(draftId));
+    }
+
+    @Override
+    public Mono<Void> deleteDraft(String draftId) {
+        return offload(() -> {
+            noteService.deleteDraft(draftId);
+            return null;
+        });
+    }
+
+    // ========================================================================
+
+    /**
+     * Runs a blocking operation on the bounded elastic scheduler, so that it doesn't hold an event loop thread.
+     */
+    private static <T> Mono<T> offload(Callable<T> blockingOperation) {
+        return Mono.fromCallable(blockingOperation).subscribeOn(Schedulers.boundedElastic());
+    }
+
+}
@@ -0,0 +1,378 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.constants.DiabetesTerminology;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.repository.NoteRepository;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the patients mentioning each trigger term of the diabetes terminology in their notes,
+ * enabled with the mediscreen.cohort-index.enabled property.
+ * <p>
+ * Each term is mapped to the compressed bitmap of the ids of the patients having at least one note which contains it,
+ * matched whatever its case and accents by the same patterns as the terms of the notes endpoint. Cohorts of patients mentioning all or any of several terms are then
+ * computed by intersecting and merging bitmaps, without reading any note.
+ * <p>
+ * The index is loaded from the notes of both the hot and archive collections once the application is ready, then kept
+ * current from the writes made by this service.
+ * A created note only adds its terms to its patient, whereas an updated or deleted note makes the terms of its patient
+ * be computed again from all their notes, since another note may still mention a term. The changes of a patient are
+ * applied one at a time, from the reading of their notes to the update of the bitmaps, so that the terms read by an
+ * earlier change never replace those of a later one.
+ */
+@Component
+public class TermCohortIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(TermCohortIndex.class);
+
+    private static final DiabetesTerminology[] TERMS = DiabetesTerminology.values();
+    private static final Pattern[] TRIGGER_TERM_PATTERNS = Stream.of(TERMS)
+            .map(term -> TermPatterns.compile(term.getTriggerTerm())).toArray(Pattern[]::new);
+
+    /**
+     * Number of locks the changes of the patients are serialized by, each one shared by the patients of the same stripe.
+     */
+    private static final int PATIENT_LOCK_STRIPES = 64;
+
+    /**
+     * Component that manages database operations for patient notes.
+     */
+    private final NoteRepository noteRepository;
+
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object[] patientLocks = Stream.generate(Object::new).limit(PATIENT_LOCK_STRIPES).toArray();
+    private volatile boolean ready;
+    /**
+     * Ids of the patients whose notes changed while the index is loading, computed again once it is loaded.
+     */
+    private Set<Integer> changedWhileLoading;
+
+    /**
+     * Bitmaps of the ids of the patients mentioning each term, indexed by term ordinal.
+     */
+    private RoaringBitmap[] patientsByTerm = emptyBitmaps();
+
+    /**
+     * Instantiates a new term cohort index.
+     *
+     * @param noteRepository  the repository linked to note data, used to load the index
+     * @param enabled         whether the index has to be loaded and used
+     */
+    @Autowired
+    public TermCohortIndex(NoteRepository noteRepository, @Value("${mediscreen.cohort-index.enabled:false}") boolean enabled) {
+        this.noteRepository = noteRepository;
+        this.enabled = enabled;
+    }
+
+
+    // === LOAD ===============================================================
+
+    /**
+     * Loads the terms mentioned by all the notes of the database into the index, then reports its memory footprint.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        logger.debug("### Try to load the term cohort index from database");
+        long start = System.nanoTime();
+
+        lock.writeLock().lock();
+        try {
+            changedWhileLoading = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Built aside so that writes and queries are not blocked while reading all the notes
+        RoaringBitmap[] loadedBitmaps = emptyBitmaps();
+        long noteCount = 0;
+        try (Stream<Note> notes = noteRepository.streamByPatientId(null)) {
+            noteCount += addTerms(loadedBitmaps, notes);
+        }
+        try (Stream<Note> archivedNotes = noteRepository.streamArchivedByPatientId(null)) {
+            noteCount += addTerms(loadedBitmaps, archivedNotes);
+        }
+        for (RoaringBitmap bitmap : loadedBitmaps) {
+            bitmap.runOptimize();
+        }
+
+        Set<Integer> changedPatients;
+        lock.writeLock().lock();
+        try {
+            patientsByTerm = loadedBitmaps;
+            changedPatients = changedWhileLoading;
+            changedWhileLoading = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        changedPatients.forEach(this::refreshPatient);
+
+        logger.info("### Term cohort index loaded in {} ms --> {} notes, {} terms, {} bytes",
+                (System.nanoTime() - start) / 1_000_000, noteCount, TERMS.length, footprintBytes());
+    }
+
+    /**
+     * Tells whether the index is loaded and can be queried.
+     *
+     * @return  true if the index is loaded
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    // === QUERY ==============================================================
+
+    /**
+     * Returns the ids of the patients mentioning all the terms of the first group and at least one term of the second one.
+     * An empty group doesn't restrict the patients, but at least one of the groups must contain a term.
+     *
+     * @param allOf  the terms all mentioned by the patients
+     * @param anyOf  the terms among which at least one is mentioned by the patients
+     * @return       the bitmap of the ids of the matching patients, owned by the caller
+     */
+    public RoaringBitmap findPatients(Collection<DiabetesTerminology> allOf, Collection<DiabetesTerminology> anyOf) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap allOfPatients = allOf.isEmpty() ? null
+                    : allOf.size() == 1 ? bitmapsOf(allOf)[0].clone() : FastAggregation.and(bitmapsOf(allOf));
+            RoaringBitmap anyOfPatients = anyOf.isEmpty() ? null
+                    : anyOf.size() == 1 ? bitmapsOf(anyOf)[0].clone() : FastAggregation.or(bitmapsOf(anyOf));
+            if (allOfPatients == null) {
+                return anyOfPatients == null ? new RoaringBitmap() : anyOfPatients;
+            }
+            return anyOfPatients == null ? allOfPatients : RoaringBitmap.and(allOfPatients, anyOfPatients);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the patients mentioning all the terms of the first group and at least one term of the second one.
+     *
+     * @param allOf  the terms all mentioned by the patients
+     * @param anyOf  the terms among which at least one is mentioned by the patients
+     * @return       the number of matching patients
+     */
+    public long countPatients(Collection<DiabetesTerminology> allOf, Collection<DiabetesTerminology> anyOf) {
+        if (allOf.size() == 2 && anyOf.isEmpty()) {
+            // Most common question, counted without building the intersection
+            lock.readLock().lock();
+            try {
+                Iterator<DiabetesTerminology> terms = allOf.iterator();
+                return RoaringBitmap.andCardinality(patientsByTerm[terms.next().ordinal()], patientsByTerm[terms.next().ordinal()]);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        return findPatients(allOf, anyOf).getLongCardinality();
+    }
+
+    /**
+     * Returns the approximate memory footprint of the bitmaps of the index.
+     *
+     * @return  the size of the bitmaps in bytes
+     */
+    public long footprintBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (RoaringBitmap bitmap : patientsByTerm) {
+                bytes += bitmap.getLongSizeInBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // === MAINTENANCE ========================================================
+
+    /**
+     * Adds the terms mentioned by a newly created note to its patient.
+     *
+     * @param note  the created note
+     */
+    public void addNote(Note note) {
+        if (!enabled) {
+            return;
+        }
+        int terms = termsMentionedIn(note.getContent());
+        synchronized (patientLock(note.getPatientId())) {
+            lock.writeLock().lock();
+            try {
+                if (!ready) {
+                    changedWhileLoading.add(note.getPatientId());
+                    return;
+                }
+                addTerms(patientsByTerm, note.getPatientId(), terms);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Computes again the terms mentioned by a patient from all their notes, archived ones included, after one of them
+     * was updated or deleted.
+     *
+     * @param patientId  the id of the patient
+     */
+    public void refreshPatient(Integer patientId) {
+        if (!enabled) {
+            return;
+        }
+        // Held while reading the notes, so that a concurrent change of the patient is applied after this one
+        synchronized (patientLock(patientId)) {
+            int terms = 0;
+            for (Note note : noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(patientId)) {
+                terms |= termsMentionedIn(note.getContent());
+            }
+            for (Note archivedNote : noteRepository.findArchivedByPatientId(patientId)) {
+                terms |= termsMentionedIn(archivedNote.getContent());
+            }
+            lock.writeLock().lock();
+            try {
+                if (!ready) {
+                    changedWhileLoading.add(patientId);
+                    return;
+                }
+                for (int ordinal = 0; ordinal < TERMS.length; ordinal++) {
+                    if ((terms & (1 << ordinal)) != 0) {
+                        patientsByTerm[ordinal].add(patientId);
+                    } else {
+                        patientsByTerm[ordinal].remove(patientId);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes a patient from the index, after all their notes were deleted.
+     *
+     * @param patientId  the id of the patient
+     */
+    public void removePatient(Integer patientId) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (patientLock(patientId)) {
+            lock.writeLock().lock();
+            try {
+                if (!ready) {
+                    changedWhileLoading.add(patientId);
+                    return;
+                }
+                for (RoaringBitmap bitmap : patientsByTerm) {
+                    bitmap.remove(patientId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // ========================================================================
+
+    /**
+     * Returns the terms of the terminology contained by the given content whatever their case and accents, one bit per
+     * term ordinal.
+     *
+     * @param content  the content of a note
+     * @return         the bits of the contained terms
+     */
+    static int termsMentionedIn(String content) {
+        if (content == null) {
+            return 0;
+        }
+        int terms = 0;
+        for (int ordinal = 0; ordinal < TRIGGER_TERM_PATTERNS.length; ordinal++) {
+            if (TRIGGER_TERM_PATTERNS[ordinal].matcher(content).find()) {
+                terms |= 1 << ordinal;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Returns the term of the terminology with the given name or trigger term, ignoring case.
+     *
+     * @param nameOrTriggerTerm  the name of the term, as SMOKER, or its trigger term, as Smoker
+     * @return                   the matching term, or null if none matches
+     */
+    static DiabetesTerminology termOf(String nameOrTriggerTerm) {
+        String searchedTerm = nameOrTriggerTerm.trim();
+        for (DiabetesTerminology term : TERMS) {
+            if (term.name().equalsIgnoreCase(searchedTerm) || term.getTriggerTerm().toLowerCase(Locale.ROOT).equals(searchedTerm.toLowerCase(Locale.ROOT))) {
+                return term;
+            }
+        }
+        return null;
+    }
+
+    private Object patientLock(Integer patientId) {
+        return patientLocks[Math.floorMod(patientId.hashCode(), PATIENT_LOCK_STRIPES)];
+    }
+
+    private RoaringBitmap[] bitmapsOf(Collection<DiabetesTerminology> terms) {
+        List<RoaringBitmap> bitmaps = new ArrayList<>(terms.size());
+        for (DiabetesTerminology term : terms) {
+            bitmaps.add(patientsByTerm[term.ordinal()]);
+        }
+        return bitmaps.toArray(new RoaringBitmap[0]);
+    }
+
+    private static long addTerms(RoaringBitmap[] bitmaps, Stream<Note> notes) {
+        long noteCount = 0;
+        Iterator<Note> iterator = notes.iterator();
+        while (iterator.hasNext()) {
+            Note note = iterator.next();
+            addTerms(bitmaps, note.getPatientId(), termsMentionedIn(note.getContent()));
+            noteCount++;
+        }
+        return noteCount;
+    }
+
+    private static void addTerms(RoaringBitmap[] bitmaps, Integer patientId, int terms) {
+        for (int ordinal = 0; ordinal < TERMS.length; ordinal++) {
+            if ((terms & (1 << ordinal)) != 0) {
+                bitmaps[ordinal].add(patientId);
+            }
+        }
+    }
+
+    private static RoaringBitmap[] emptyBitmaps() {
+        RoaringBitmap[] bitmaps = new RoaringBitmap[TERMS.length];
+        for (int ordinal = 0; ordinal < bitmaps.length; ordinal++) {
+            bitmaps[ordinal] = new RoaringBitmap();
+        }
+        return bitmaps;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.mediscreen.patientHistory.service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the regular expressions finding a term in the content of notes whatever its case and accents, written in the
+ * common syntax of MongoDB and Java, so that the database and this service match notes the same way.
+ * <p>
+ * Each letter of a term is matched by the class of all its cases and accented forms, as e for é, è, ê, ë, É... Other
+ * chars are matched as is. Like the assessment service, a term is found anywhere in a content, even inside a word.
+ */
+final class TermPatterns {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Chars matching each lower case ASCII letter, indexed from a: both cases of the letter and of its accented forms.
+     */
+    private static final String[] LETTER_CLASSES = letterClasses();
+
+    private TermPatterns() {
+    }
+
+    /**
+     * Folds the case and accents of a term, two terms with the same folded form matching the same contents.
+     *
+     * @param term  the term to fold
+     * @return      the term in lower case, without accents
+     */
+    static String fold(String term) {
+        return MARKS.matcher(Normalizer.normalize(term, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Builds the regular expression finding a term whatever its case and accents.
+     *
+     * @param term  the term to find
+     * @return      the regular expression
+     */
+    static String regexOf(String term) {
+        StringBuilder regex = new StringBuilder();
+        fold(term).codePoints().forEach(codePoint -> {
+            if (codePoint >= 'a' && codePoint <= 'z') {
+                regex.append('[').append(LETTER_CLASSES[codePoint - 'a']).append(']');
+            } else if (Character.isLetterOrDigit(codePoint) || codePoint == ' ') {
+                regex.appendCodePoint(codePoint);
+            } else {
+                // A backslash makes any other char literal in both syntaxes
+                regex.append('\\').appendCodePoint(codePoint);
+            }
+        });
+        return regex.toString();
+    }
+
+    /**
+     * Compiles the regular expression of a term, to match contents the database can't read.
+     *
+     * @param term  the term to find
+     * @return      the compiled pattern
+     */
+    static Pattern compile(String term) {
+        // Letters outside the latin alphabet are left to the case insensitivity of the pattern, as the database does
+        return Pattern.compile(regexOf(term), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    // ========================================================================
+
+    private static String[] letterClasses() {
+        StringBuilder[] classes = new StringBuilder[26];
+        for (char letter = 'a'; letter <= 'z'; letter++) {
+            classes[letter - 'a'] = new StringBuilder().append(letter).append(Character.toUpperCase(letter));
+        }
+        // Latin-1 Supplement and Latin Extended-A and B, where the accented forms of the latin letters are
+        for (char accented = 'À'; accented <= 'ɏ'; accented++) {
+            String base = fold(String.valueOf(accented));
+            if (Character.isLetter(accented) && base.length() == 1 && base.charAt(0) >= 'a' && base.charAt(0) <= 'z') {
+                classes[base.charAt(0) - 'a'].append(accented);
+            }
+        }
+        String[] letterClasses = new String[26];
+        for (int index = 0; index < 26; index++) {
+            letterClasses[index] = classes[index].toString();
+        }
+        return letterClasses;
+    }
+
+}
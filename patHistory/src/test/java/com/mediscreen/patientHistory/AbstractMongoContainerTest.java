@@ -0,0 +1,87 @@
+package com.mediscreen.patientHistory;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Base of the tests which need a real MongoDB server, started in a container.
+ * These tests are skipped when Docker isn't available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public abstract class AbstractMongoContainerTest {
+
+    private static final Set<String> DRIVER_FIELDS = Set.of("lsid", "txnNumber", "writeConcern", "readConcern");
+
+    @Container
+    protected static final MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+    @Autowired
+    protected MongoTemplate mongoTemplate;
+
+    @DynamicPropertySource
+    static void mongoProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.host", mongoDBContainer::getHost);
+        registry.add("spring.data.mongodb.port", mongoDBContainer::getFirstMappedPort);
+    }
+
+    /**
+     * Returns the stages of the plans chosen by the server to run a command recorded as sent by the application.
+     *
+     * @param command  the find, aggregate, findAndModify, update or delete command, with a single statement
+     * @return         the names of all the stages of the winning plans, from the root to the leaves
+     */
+    protected List<String> winningPlanStages(BsonDocument command) {
+        BsonDocument explainedCommand = new BsonDocument();
+        command.forEach((key, value) -> {
+            // Leaves out the session, cluster time and write concern added by the driver, which explain rejects
+            if (!key.startsWith("$") && !DRIVER_FIELDS.contains(key)) {
+                explainedCommand.append(key, value);
+            }
+        });
+        Document explanation = mongoTemplate.getDb().runCommand(new BsonDocument("explain", explainedCommand)
+                .append("verbosity", new BsonString("queryPlanner")));
+        List<String> stages = new ArrayList<>();
+        collectWinningPlans(explanation, stages);
+        return stages;
+    }
+
+    private static void collectWinningPlans(Object node, List<String> stages) {
+        if (node instanceof Document) {
+            // Plans of aggregations are nested in their stages, the ones of $unionWith in its sub-pipeline
+            ((Document) node).forEach((key, value) -> {
+                if (key.equals("winningPlan")) {
+                    collectStages(value, stages);
+                } else if (!key.equals("rejectedPlans")) {
+                    collectWinningPlans(value, stages);
+                }
+            });
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(value -> collectWinningPlans(value, stages));
+        }
+    }
+
+    private static void collectStages(Object node, List<String> stages) {
+        if (node instanceof Document) {
+            Document document = (Document) node;
+            if (document.containsKey("stage")) {
+                stages.add(document.getString("stage"));
+            }
+            document.values().forEach(value -> collectStages(value, stages));
+        } else if (node instanceof List) {
+            ((List<?>) node).forEach(value -> collectStages(value, stages));
+        }
+    }
+
+}
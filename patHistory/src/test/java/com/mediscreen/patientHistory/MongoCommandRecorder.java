@@ -0,0 +1,90 @@
+package com.mediscreen.patientHistory;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Records the commands the application sends to the MongoDB server, so that the tests importing it check the commands
+ * really sent rather than copies of them. Can also run an action right before a command is sent.
+ */
+@TestConfiguration
+public class MongoCommandRecorder implements CommandListener {
+
+    private final List<BsonDocument> commands = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Runnable> actionsBeforeCommand = new ConcurrentHashMap<>();
+
+    @Bean
+    MongoClientSettingsBuilderCustomizer commandRecordingCustomizer() {
+        return settings -> settings.addCommandListener(this);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        // Copied, as the command is released once sent
+        commands.add(event.getCommand().clone());
+        BsonValue collection = event.getCommand().get(event.getCommandName());
+        if (collection != null && collection.isString()) {
+            // Removed before being run, so that its own commands don't run it again
+            Runnable action = actionsBeforeCommand.remove(event.getCommandName() + " " + collection.asString().getValue());
+            if (action != null) {
+                action.run();
+            }
+        }
+    }
+
+    /**
+     * Runs the given action once, right before the next command of the given name is sent on the given collection,
+     * so that the tests interleave the writes of another client with the commands of a repository.
+     *
+     * @param commandName  the name of the command, e.g. delete or update
+     * @param collection   the name of the collection
+     * @param action       the action to run
+     */
+    public void beforeNextCommand(String commandName, String collection, Runnable action) {
+        actionsBeforeCommand.put(commandName + " " + collection, action);
+    }
+
+    /**
+     * Forgets the commands recorded so far.
+     */
+    public void clear() {
+        commands.clear();
+        actionsBeforeCommand.clear();
+    }
+
+    /**
+     * Returns the commands of the given name recorded since the last clear, in the order they were sent.
+     *
+     * @param commandName  the name of the command, e.g. find or aggregate
+     * @return             the commands, as sent to the server
+     */
+    public List<BsonDocument> commandsNamed(String commandName) {
+        return commands.stream().filter(command -> command.getFirstKey().equals(commandName)).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the commands of the given name run on a collection since the last clear, in the order they were sent.
+     *
+     * @param commandName  the name of the command, e.g. find or aggregate
+     * @param collection   the name of the collection
+     * @return             the commands, as sent to the server
+     */
+    public List<BsonDocument> commandsOn(String commandName, String collection) {
+        return commandsNamed(commandName).stream()
+                .filter(command -> command.get(commandName).isString() && command.getString(commandName).getValue().equals(collection))
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.mediscreen.patientHistory.config;
+
+import com.mediscreen.patientHistory.AbstractMongoContainerTest;
+import com.mediscreen.patientHistory.MongoCommandRecorder;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mongodb.client.model.IndexOptions;
+import org.assertj.core.api.SoftAssertions;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that the indexes of the notes collection are made to match their declaration.
+ */
+@DataMongoTest
+@Import({MongoIndexReconciler.class, NoteContentCompressor.class, MongoCommandRecorder.class})
+public class MongoIndexReconcilerTest extends AbstractMongoContainerTest {
+
+    private static final String DECLARED_INDEX = "patientId_dateOfCreation_desc";
+
+    @Autowired
+    private MongoIndexReconciler reconcilerUnderTest;
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @Autowired
+    private MongoCommandRecorder commandRecorder;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(Note.class);
+        mongoTemplate.createCollection(Note.class);
+        mongoTemplate.dropCollection(NoteDraft.class);
+        mongoTemplate.createCollection(NoteDraft.class);
+    }
+
+    // === TEST RECONCILE OPERATION ===========================================
+    @Test
+    void reconcile_shouldCreateDeclaredIndex_whenIndexIsMissing() {
+        reconcilerUnderTest.reconcile(Note.class);
+
+        assertDeclaredIndexIsPresent();
+    }
+
+    @Test
+    void reconcile_shouldRecreateIndex_whenIndexWithSameNameHasOtherKeys() {
+        mongoTemplate.indexOps(Note.class).ensureIndex(new Index("patientId", Sort.Direction.ASC).named(DECLARED_INDEX));
+
+        reconcilerUnderTest.reconcile(Note.class);
+
+        assertDeclaredIndexIsPresent();
+    }
+
+    @Test
+    void reconcile_shouldRecreateIndex_whenIndexWithSameNameMissesTheIdKey() {
+        mongoTemplate.indexOps(Note.class).ensureIndex(
+                new CompoundIndexDefinition(new Document("patientId", 1).append("dateOfCreation", -1)).named(DECLARED_INDEX));
+
+        reconcilerUnderTest.reconcile(Note.class);
+
+        assertDeclaredIndexIsPresent();
+    }
+
+    @Test
+    void reconcile_shouldReplaceIndex_whenIndexWithSameKeysHasOtherName() {
+        mongoTemplate.indexOps(Note.class).ensureIndex(
+                new CompoundIndexDefinition(new Document("patientId", 1).append("dateOfCreation", -1).append("_id", -1)).named("legacy_index"));
+
+        reconcilerUnderTest.reconcile(Note.class);
+
+        assertDeclaredIndexIsPresent();
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(indexNamed("legacy_index")).as("Conflicting index").isEmpty());
+    }
+
+    @Test
+    void reconcile_shouldKeepUndeclaredIndex_whenIndexDoesNotConflict() {
+        mongoTemplate.indexOps(Note.class).ensureIndex(new Index("content", Sort.Direction.ASC).named("content_1"));
+
+        reconcilerUnderTest.reconcile(Note.class);
+
+        assertDeclaredIndexIsPresent();
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(indexNamed("content_1")).as("Undeclared index").isPresent());
+    }
+
+    @Test
+    void reconcile_shouldKeepTextIndex_whenCreatedByInitScript() {
+        // As created by dbscripts/mongodb/init-notes.js, listed by the server as the _fts and _ftsx keys
+        mongoTemplate.getCollection("notes").createIndex(new Document("content", "text"),
+                new IndexOptions().name("Note_TextIndex").defaultLanguage("english").languageOverride("language"));
+        commandRecorder.clear();
+
+        reconcilerUnderTest.reconcile(Note.class);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(commandRecorder.commandsNamed("dropIndexes")).as("Dropped indexes").isEmpty();
+            softly.assertThat(indexNamed("Note_TextIndex")).as("Text index").isPresent();
+        });
+    }
+
+    @Test
+    void reconcile_shouldRecreateTextIndex_whenIndexHasOtherLanguage() {
+        mongoTemplate.getCollection("notes").createIndex(new Document("content", "text"),
+                new IndexOptions().name("Note_TextIndex").defaultLanguage("french").languageOverride("language"));
+
+        reconcilerUnderTest.reconcile(Note.class);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(indexNamed("Note_TextIndex").map(IndexInfo::getLanguage))
+                .as("Text index default language").contains("english"));
+    }
+
+    @Test
+    void reconcile_shouldRecreateIndex_whenIndexHasOtherExpiry() {
+        mongoTemplate.getCollection("note_drafts").createIndex(new Document("dateOfModification", 1),
+                new IndexOptions().name("dateOfModification_ttl").expireAfter(1L, TimeUnit.DAYS));
+
+        reconcilerUnderTest.reconcile(NoteDraft.class);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(mongoTemplate.indexOps(NoteDraft.class).getIndexInfo().stream()
+                        .filter(index -> index.getName().equals("dateOfModification_ttl")).findFirst().flatMap(IndexInfo::getExpireAfter))
+                .as("Draft expiry").contains(Duration.ofDays(7)));
+    }
+
+    @Test
+    void reconcileAll_shouldChangeNoIndex_whenIndexesAreAlreadyReconciled() {
+        MongoIndexReconciler enabledReconciler = new MongoIndexReconciler(mongoTemplate, mappingContext, true);
+        enabledReconciler.reconcileAll();
+        commandRecorder.clear();
+
+        enabledReconciler.reconcileAll();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(commandRecorder.commandsNamed("dropIndexes")).as("Dropped indexes").isEmpty();
+            softly.assertThat(commandRecorder.commandsNamed("createIndexes")).as("Created indexes").isEmpty();
+        });
+    }
+
+    // ========================================================================
+
+    private void assertDeclaredIndexIsPresent() {
+        Optional<IndexInfo> declaredIndex = indexNamed(DECLARED_INDEX);
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(declaredIndex).as("Declared index").isPresent();
+            softly.assertThat(declaredIndex.map(IndexInfo::getIndexFields).orElse(List.of()))
+                    .as("Declared index fields")
+                    .containsExactly(IndexField.create("patientId", Sort.Direction.ASC), IndexField.create("dateOfCreation", Sort.Direction.DESC), IndexField.create("_id", Sort.Direction.DESC));
+        });
+    }
+
+    private Optional<IndexInfo> indexNamed(String name) {
+        return mongoTemplate.indexOps(Note.class).getIndexInfo().stream().filter(index -> index.getName().equals(name)).findFirst();
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.mediscreen.patientHistory.config;
+
+import com.mediscreen.patientHistory.model.Note;
+import org.assertj.core.api.SoftAssertions;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.mapping.event.AfterLoadEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.data.mongodb.core.query.Update;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Tests that the content of long notes is compressed when saved and restored when read.
+ */
+public class NoteContentCompressorTest {
+
+    private static final String LONG_CONTENT = "Patient reports dizziness after the last reaction, hémoglobine A1C to be checked. ".repeat(40);
+
+    private final NoteContentCompressor compressorUnderTest = new NoteContentCompressor(null, true, 2048, false, true);
+
+    // === TEST CONSTRUCTION ==================================================
+    @Test
+    void constructor_shouldRefuseCompression_whenUnsearchableNotesAreNotAccepted() {
+        Throwable result = catchThrowable(() -> new NoteContentCompressor(null, true, 2048, false, false));
+
+        assertThat(result).as("Thrown exception")
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("mediscreen.notes.compression.accept-unsearchable");
+    }
+
+    // === TEST SAVE ==========================================================
+    @Test
+    void onBeforeSave_shouldReplaceLongContentByDeflatedContent() {
+        Document document = new Document("patientId", 1).append("content", LONG_CONTENT);
+
+        compressorUnderTest.onBeforeSave(new BeforeSaveEvent<>(new Note(), document, "notes"));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(document).as("Saved document").doesNotContainKey("content").containsKey("contentDeflated");
+            softly.assertThat(document.get("contentDeflated", Binary.class).length()).as("Size of deflated content")
+                    .isLessThan(LONG_CONTENT.length() / 4);
+        });
+    }
+
+    @Test
+    void onBeforeSave_shouldKeepShortContent() {
+        Document document = new Document("patientId", 1).append("content", "Patient states that they are a smoker");
+
+        compressorUnderTest.onBeforeSave(new BeforeSaveEvent<>(new Note(), document, "notes"));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(document).as("Saved document")
+                .containsEntry("content", "Patient states that they are a smoker").doesNotContainKey("contentDeflated"));
+    }
+
+    @Test
+    void onBeforeSave_shouldKeepLongContent_whenCompressionIsDisabled() {
+        NoteContentCompressor disabledCompressor = new NoteContentCompressor(null, false, 2048, false, false);
+        Document document = new Document("patientId", 1).append("content", LONG_CONTENT);
+
+        disabledCompressor.onBeforeSave(new BeforeSaveEvent<>(new Note(), document, "notes"));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(document).as("Saved document").containsEntry("content", LONG_CONTENT));
+    }
+
+    // === TEST UPDATE ========================================================
+    @Test
+    void setContent_shouldSetDeflatedContentAndUnsetPlainContent_whenContentIsLong() {
+        Document update = compressorUnderTest.setContent(new Update(), LONG_CONTENT).getUpdateObject();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(update.get("$set", Document.class)).as("Set fields").containsOnlyKeys("contentDeflated");
+            softly.assertThat(update.get("$unset", Document.class)).as("Unset fields").containsOnlyKeys("content");
+        });
+    }
+
+    @Test
+    void setContent_shouldUnsetFormerDeflatedContent_whenContentIsShort() {
+        Document update = compressorUnderTest.setContent(new Update(), "Patient states that they are a smoker").getUpdateObject();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(update.get("$set", Document.class)).as("Set fields").containsEntry("content", "Patient states that they are a smoker");
+            softly.assertThat(update.get("$unset", Document.class)).as("Unset fields").containsOnlyKeys("contentDeflated");
+        });
+    }
+
+    // === TEST LOAD ==========================================================
+    @Test
+    void onAfterLoad_shouldRestoreDeflatedContent_evenWhenCompressionIsDisabled() {
+        Document document = new Document("patientId", 1).append("content", LONG_CONTENT);
+        compressorUnderTest.onBeforeSave(new BeforeSaveEvent<>(new Note(), document, "notes"));
+        NoteContentCompressor disabledCompressor = new NoteContentCompressor(null, false, 2048, false, false);
+
+        disabledCompressor.onAfterLoad(new AfterLoadEvent<>(document, Note.class, "notes"));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(document).as("Loaded document")
+                .containsEntry("content", LONG_CONTENT).doesNotContainKey("contentDeflated"));
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.mediscreen.patientHistory.config;
+
+import com.mediscreen.patientHistory.AbstractMongoContainerTest;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.repository.NoteRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests that the dates of notes stored as strings are converted to native dates.
+ */
+@DataMongoTest
+@Import({NoteDateMigrator.class, NoteContentCompressor.class})
+public class NoteDateMigratorTest extends AbstractMongoContainerTest {
+
+    @Autowired
+    private NoteDateMigrator migratorUnderTest;
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(Note.class);
+        mongoTemplate.dropCollection(Note.ARCHIVE_COLLECTION);
+        mongoTemplate.getCollection("notes").insertMany(List.of(
+                new Document("patientId", 1).append("content", "Seeded note")
+                        .append("dateOfCreation", "2023-07-01T08:00:00.000Z").append("dateOfModification", "2023-07-01T08:00:00.000Z"),
+                new Document("patientId", 1).append("content", "Written note")
+                        .append("dateOfCreation", new Date(1_690_000_000_000L)).append("dateOfModification", new Date(1_690_000_000_000L))));
+    }
+
+    // === TEST MIGRATE OPERATION =============================================
+    @Test
+    void migrate_shouldConvertStringDates_andLeaveNativeDatesUnchanged() {
+        long convertedDates = migratorUnderTest.migrate("notes");
+        long convertedAgain = migratorUnderTest.migrate("notes");
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(convertedDates).as("Converted dates").isEqualTo(2);
+            softly.assertThat(convertedAgain).as("Dates converted again").isZero();
+            softly.assertThat(mongoTemplate.count(new Query(new Criteria().orOperator(
+                    Criteria.where("dateOfCreation").type(BsonType.STRING.getValue()),
+                    Criteria.where("dateOfModification").type(BsonType.STRING.getValue()))), "notes"))
+                    .as("Notes with string dates").isZero();
+            softly.assertThat(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(1)).as("Notes ordered by date")
+                    .extracting(Note::getContent).containsExactly("Written note", "Seeded note");
+            softly.assertThat(noteRepository.findByPatientIdAndDateOfCreationRange(1, null, LocalDateTime.of(2023, 7, 10, 0, 0)))
+                    .as("Notes within range").extracting(Note::getContent).containsExactly("Seeded note");
+        });
+    }
+
+    @Test
+    void migrate_shouldDoNothing_whenCollectionDoesNotExist() {
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(migratorUnderTest.migrate(Note.ARCHIVE_COLLECTION))
+                .as("Converted dates").isZero());
+    }
+
+}
@@ -2,7 +2,22 @@ package com.mediscreen.patientHistory.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mediscreen.patientHistory.exception.DataNotFoundException;
+import com.mediscreen.patientHistory.exception.IndexNotReadyException;
+import com.mediscreen.patientHistory.exception.InvalidRequestParameterException;
+import com.mediscreen.patientHistory.exception.StaleNoteVersionException;
 import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteBulkReport;
+import com.mediscreen.patientHistory.model.NoteBulkResult;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.model.NoteSearchCriteria;
+import com.mediscreen.patientHistory.model.NoteSearchPage;
+import com.mediscreen.patientHistory.model.PatientCohort;
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
 import com.mediscreen.patientHistory.service.NoteService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,16 +25,23 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import static org.mockito.ArgumentMatchers.any;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(NoteController.class)
 public class NoteControllerTest {
@@ -31,6 +53,8 @@ public class NoteControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    private static final String NOTES_ETAG = "2-185671ea5e0-7b3c0a9d41e2f6c8";
+
     private final LocalDateTime creationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
     private final LocalDateTime modificationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
     private final Note note1 = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation made to patient 1");
@@ -53,6 +77,21 @@ public class NoteControllerTest {
         verify(noteService).createNote(any(Note.class));
     }
 
+    @Test
+    void addNewNote_shouldDiscardDraftOfNote_whenDraftIdIsGiven() throws Exception {
+        Note noteToAdd = new Note(1, creationDate, modificationDate, "Recommendation made to patient 1");
+        when(noteService.createNote(any(Note.class), eq("new-1-form"))).thenReturn(note1);
+
+        mockMvc.perform(post("/patHistories")
+                .param("draftId", "new-1-form")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(noteToAdd)))
+                .andExpect(status().isCreated());
+
+        verify(noteService, never()).createNote(any(Note.class));
+    }
+
     @Test
     void addNewNote_shouldReturnHttpStatus400BadRequest_whenRequestFailedWithValidationErrors() throws Exception {
         Note noteToAdd = new Note(null, null, null, null);
@@ -66,30 +105,419 @@ public class NoteControllerTest {
         verify(noteService, times(0)).createNote(any(Note.class));
     }
 
+    // === TEST ADD BATCH OF NOTES =============================================
+    @Test
+    void addNewNotes_shouldReturnHttpStatus200OkWithResultOfEachNote_whenRequestIsSuccessful() throws Exception {
+        List<Note> notesToAdd = Arrays.asList(new Note(1, creationDate, modificationDate, "Recommendation made to patient 1"),
+                new Note(null, null, null, null));
+        NoteBulkReport report = new NoteBulkReport(1, 1, Arrays.asList(
+                new NoteBulkResult(0, "generatedId1", true, null),
+                new NoteBulkResult(1, null, false, "Content is mandatory. Patient Id is mandatory.")));
+        when(noteService.createNotes(anyList())).thenReturn(report);
+
+        mockMvc.perform(post("/patHistories/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(notesToAdd)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.insertedCount", is(1)))
+                .andExpect(jsonPath("$.rejectedCount", is(1)))
+                .andExpect(jsonPath("$.results", hasSize(2)))
+                .andExpect(jsonPath("$.results[1].error", is("Content is mandatory. Patient Id is mandatory.")));
+
+        verify(noteService).createNotes(anyList());
+    }
+
+    @Test
+    void addNewNotes_shouldReturnHttpStatus400BadRequest_whenBatchIsEmpty() throws Exception {
+        mockMvc.perform(post("/patHistories/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, times(0)).createNotes(anyList());
+    }
+
     // === TEST GET ALL NOTES BY PATIENT ID ===================================
     @Test
     void getAllNotesByPatientId_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
         List<Note> expectedNotesListWithSamePatientId = Arrays.asList(note2, note3);
-        when(noteService.readAllNotesByPatientId(anyInt())).thenReturn(expectedNotesListWithSamePatientId);
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesByPatientId(anyInt(), any(), anyBoolean(), anyBoolean())).thenReturn(expectedNotesListWithSamePatientId);
 
         mockMvc.perform(get("/patHistories?patientId=2")
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + NOTES_ETAG + "\""));
+
+        verify(noteService).readNotesByPatientId(2, NoteProjection.WHOLE, false, false);
+    }
+
+    @Test
+    void getAllNotesByPatientId_shouldReturnHttpStatus304NotModifiedWithoutReadingNotes_whenETagMatches() throws Exception {
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+
+        mockMvc.perform(get("/patHistories?patientId=2")
+                        .header("If-None-Match", "\"" + NOTES_ETAG + "\"")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
 
-        verify(noteService).readAllNotesByPatientId(2);
+        verify(noteService, times(0)).readAllNotesByPatientId(anyInt(), anyBoolean());
+    }
+
+    @Test
+    void getAllNotesByPatientId_shouldReturnHttpStatus200Ok_whenETagDoesNotMatch() throws Exception {
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesByPatientId(anyInt(), any(), anyBoolean(), anyBoolean())).thenReturn(Arrays.asList(note2, note3));
+
+        mockMvc.perform(get("/patHistories?patientId=2")
+                        .header("If-None-Match", "\"1-185671ea5e0-1f\"")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        verify(noteService).readNotesByPatientId(2, NoteProjection.WHOLE, false, false);
     }
 
     @Test
     void getAllNotesByPatientId_shouldReturnHttpStatus204NoContent_whenRequestIsSuccessfulWithListOfNotesEmpty() throws Exception {
-        when(noteService.readAllNotesByPatientId(anyInt())).thenReturn(new ArrayList<>());
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn("0-0-0-0");
+        when(noteService.readNotesByPatientId(anyInt(), any(), anyBoolean(), anyBoolean())).thenReturn(new ArrayList<>());
 
         mockMvc.perform(get("/patHistories?patientId=2")
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNoContent());
 
-        verify(noteService).readAllNotesByPatientId(2);
+        verify(noteService).readNotesByPatientId(2, NoteProjection.WHOLE, false, false);
+    }
+
+    @Test
+    void getAllNotesByPatientId_shouldReturnArchivedNotesToo_whenFullHistoryIsAsked() throws Exception {
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesByPatientId(anyInt(), any(), anyBoolean(), anyBoolean())).thenReturn(Arrays.asList(note2, note3));
+
+        mockMvc.perform(get("/patHistories?patientId=2&fullHistory=true")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        verify(noteService).readNotesByPatientId(2, NoteProjection.WHOLE, true, false);
+    }
+
+    @Test
+    void getAllNotesByPatientId_shouldReturnOnlyProjectedFields_whenFieldsAndPreviewAreGiven() throws Exception {
+        Note projectedNote = new Note("generatedId2", null, null, null, "Recommendation");
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesByPatientId(anyInt(), any(), anyBoolean(), anyBoolean())).thenReturn(List.of(projectedNote));
+
+        mockMvc.perform(get("/patHistories?patientId=2&fields=id,content&preview=14")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id", is("generatedId2")))
+                .andExpect(jsonPath("$[0].content", is("Recommendation")))
+                .andExpect(jsonPath("$[0].patientId").doesNotExist())
+                .andExpect(jsonPath("$[0].dateOfModification").doesNotExist());
+
+        verify(noteService).readNotesByPatientId(2, new NoteProjection(List.of("id", "content"), 14), false, false);
+    }
+
+    @Test
+    void getAllNotesByPatientId_shouldReturnHttpStatus400BadRequest_whenFieldIsUnknown() throws Exception {
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesByPatientId(anyInt(), any(), anyBoolean(), anyBoolean())).thenThrow(new InvalidRequestParameterException("Unknown note field 'password'"));
+
+        mockMvc.perform(get("/patHistories?patientId=2&fields=password")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    // === TEST GET PAGE OF NOTES BY PATIENT ID ===============================
+    @Test
+    void getNotesPageByPatientId_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        NotePage expectedPage = new NotePage(Arrays.asList(note2, note3), "nextCursor", true);
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesPageByPatientId(anyInt(), any(), anyInt(), anyBoolean(), any(), anyBoolean())).thenReturn(expectedPage);
+
+        mockMvc.perform(get("/patHistories/page?patientId=2&cursor=previousCursor&size=500")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.notes", hasSize(2)))
+                .andExpect(jsonPath("$.nextCursor", is("nextCursor")))
+                .andExpect(jsonPath("$.hasMore", is(true)));
+
+        verify(noteService).readNotesPageByPatientId(2, "previousCursor", 100, false, NoteProjection.WHOLE, false);
+    }
+
+    @Test
+    void getNotesPageByPatientId_shouldReturnHttpStatus304NotModifiedWithoutReadingNotes_whenETagMatches() throws Exception {
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+
+        mockMvc.perform(get("/patHistories/page?patientId=2&size=50")
+                        .header("If-None-Match", "W/\"" + NOTES_ETAG + "\"")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotModified());
+
+        verify(noteService, times(0)).readNotesPageByPatientId(anyInt(), any(), anyInt(), anyBoolean(), any(), anyBoolean());
+    }
+
+    @Test
+    void getNotesPageByPatientId_shouldReturnHttpStatus400BadRequest_whenCursorIsInvalid() throws Exception {
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesPageByPatientId(anyInt(), any(), anyInt(), anyBoolean(), any(), anyBoolean())).thenThrow(new InvalidRequestParameterException("Invalid notes cursor"));
+
+        mockMvc.perform(get("/patHistories/page?patientId=2&cursor=abc")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService).readNotesPageByPatientId(2, "abc", 20, false, NoteProjection.WHOLE, false);
+    }
+
+    @Test
+    void getNotesPageByPatientId_shouldAskForProjectedNotes_whenPreviewIsGiven() throws Exception {
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesPageByPatientId(anyInt(), any(), anyInt(), anyBoolean(), any(), anyBoolean())).thenReturn(new NotePage(List.of(note2), null, false));
+
+        mockMvc.perform(get("/patHistories/page?patientId=2&size=10&fullHistory=true&preview=300")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        verify(noteService).readNotesPageByPatientId(2, null, 10, true, new NoteProjection(null, 300), false);
+    }
+
+    @Test
+    void getNotesPageByPatientId_shouldReturnNotesWithoutETag_whenSecondaryIsOk() throws Exception {
+        when(noteService.readNotesPageByPatientId(anyInt(), any(), anyInt(), anyBoolean(), any(), anyBoolean())).thenReturn(new NotePage(List.of(note2), null, false));
+
+        mockMvc.perform(get("/patHistories/page?patientId=2&secondaryOk=true")
+                        .header("If-None-Match", "W/\"" + NOTES_ETAG + "\"")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"));
+
+        verify(noteService, never()).readNotesETagByPatientId(anyInt());
+        verify(noteService).readNotesPageByPatientId(2, null, 20, false, NoteProjection.WHOLE, true);
+    }
+
+    @Test
+    void getNotesPageByPatientId_shouldReturnHttpStatus400BadRequest_whenSizeIsNotPositive() throws Exception {
+        mockMvc.perform(get("/patHistories/page?patientId=2&size=0")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, times(0)).readNotesPageByPatientId(anyInt(), any(), anyInt(), anyBoolean(), any(), anyBoolean());
+    }
+
+    // === TEST GET NOTES BY PATIENT ID AND DATE RANGE ========================
+    @Test
+    void getNotesByPatientIdAndDateRange_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        when(noteService.readNotesETagByPatientId(anyInt())).thenReturn(NOTES_ETAG);
+        when(noteService.readNotesByPatientIdAndDateRange(anyInt(), any(), any(), anyBoolean(), anyBoolean())).thenReturn(Arrays.asList(note2, note3));
+
+        mockMvc.perform(get("/patHistories/range?patientId=2&from=2022-12-01&to=2022-12-31&fullHistory=true")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + NOTES_ETAG + "\""))
+                .andExpect(jsonPath("$", hasSize(2)));
+
+        verify(noteService).readNotesByPatientIdAndDateRange(2, LocalDate.of(2022, 12, 1), LocalDate.of(2022, 12, 31), true, false);
+    }
+
+    @Test
+    void getNotesByPatientIdAndDateRange_shouldReturnHttpStatus400BadRequest_whenDateIsInvalid() throws Exception {
+        mockMvc.perform(get("/patHistories/range?patientId=2&from=31/12/2022")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, times(0)).readNotesByPatientIdAndDateRange(anyInt(), any(), any(), anyBoolean(), anyBoolean());
+    }
+
+    // === TEST SEARCH NOTES ==================================================
+    @Test
+    void searchNotes_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        when(noteService.searchNotes(any(NoteSearchCriteria.class), anyInt(), anyInt()))
+                .thenReturn(new NoteSearchPage(Arrays.asList(note2, note3), 1, 100, false));
+
+        mockMvc.perform(get("/patHistories/search?text=microalbumin&language=french&patientId=2&from=2022-01-01&to=2022-12-31&page=1&size=500")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.notes", hasSize(2)))
+                .andExpect(jsonPath("$.hasMore", is(false)));
+
+        verify(noteService).searchNotes(argThat(criteria -> criteria.getText().equals("microalbumin")
+                && criteria.getLanguage().equals("french")
+                && criteria.getPatientId() == 2
+                && criteria.getTo().getYear() == 2022), eq(1), eq(100));
+    }
+
+    @Test
+    void searchNotes_shouldReturnHttpStatus400BadRequest_whenPageIsTooDeep() throws Exception {
+        mockMvc.perform(get("/patHistories/search?text=microalbumin&page=1000&size=100")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, times(0)).searchNotes(any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void searchNotes_shouldReturnHttpStatus400BadRequest_whenSearchedTextIsMissing() throws Exception {
+        when(noteService.searchNotes(any(NoteSearchCriteria.class), anyInt(), anyInt()))
+                .thenThrow(new InvalidRequestParameterException("Searched text is mandatory"));
+
+        mockMvc.perform(get("/patHistories/search?patientId=2")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    // === TEST GET COHORT BY TRIGGER TERMS ===================================
+    @Test
+    void getCohortByTriggerTerms_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        when(noteService.readCohortByTriggerTerms(anyList(), anyList(), anyInt())).thenReturn(new PatientCohort(2, Arrays.asList(3, 8), false));
+
+        mockMvc.perform(get("/patHistories/cohort?allOf=Smoker&allOf=Cholesterol&anyOf=Relapse")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count", is(2)))
+                .andExpect(jsonPath("$.patientIds", hasSize(2)));
+
+        verify(noteService).readCohortByTriggerTerms(List.of("Smoker", "Cholesterol"), List.of("Relapse"), 1000);
+    }
+
+    @Test
+    void getCohortByTriggerTerms_shouldReturnHttpStatus400BadRequest_whenNoTermIsGiven() throws Exception {
+        mockMvc.perform(get("/patHistories/cohort")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, times(0)).readCohortByTriggerTerms(anyList(), anyList(), anyInt());
+    }
+
+    @Test
+    void countCohortByTriggerTerms_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        when(noteService.countCohortByTriggerTerms(anyList(), anyList())).thenReturn(42L);
+
+        mockMvc.perform(get("/patHistories/cohort/count?anyOf=Smoker,Fume")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().string("42"));
+
+        verify(noteService).countCohortByTriggerTerms(List.of(), List.of("Smoker", "Fume"));
+    }
+
+    @Test
+    void countCohortByTriggerTerms_shouldReturnHttpStatus503ServiceUnavailable_whenIndexIsNotReady() throws Exception {
+        when(noteService.countCohortByTriggerTerms(anyList(), anyList())).thenThrow(new IndexNotReadyException("Term cohort index is not loaded"));
+
+        mockMvc.perform(get("/patHistories/cohort/count?allOf=Smoker")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    // === TEST GET TRIGGER TERMS OF PATIENTS =================================
+    @Test
+    void getTriggerTermsByPatientIds_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        when(noteService.readTriggerTermsByPatientIds(anyList(), any()))
+                .thenReturn(List.of(new PatientTriggerTerms(1, List.of("Smoker")), new PatientTriggerTerms(2, List.of())));
+
+        mockMvc.perform(get("/patHistories/terms?patientIds=1,2,1&terms=Smoker,Réaction")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].terms[0]", is("Smoker")))
+                .andExpect(jsonPath("$[1].terms", hasSize(0)));
+
+        verify(noteService).readTriggerTermsByPatientIds(List.of(1, 2), List.of("Smoker", "Réaction"));
+    }
+
+    @Test
+    void getTriggerTermsByPatientIds_shouldReturnHttpStatus400BadRequest_whenTooManyPatientIdsAreGiven() throws Exception {
+        String patientIds = IntStream.rangeClosed(1, 1001).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+        mockMvc.perform(get("/patHistories/terms?patientIds=" + patientIds)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, times(0)).readTriggerTermsByPatientIds(anyList(), any());
+    }
+
+    // === TEST EXPORT NOTES ==================================================
+    @Test
+    void exportNotes_shouldReturnHttpStatus200OkWithStreamedNotes_whenRequestIsSuccessful() throws Exception {
+        when(noteService.exportNotesByPatientId(eq(2), eq(false), any(OutputStream.class))).thenAnswer(invocation -> {
+            OutputStream outputStream = invocation.getArgument(2);
+            outputStream.write((objectMapper.writeValueAsString(note2) + "\n" + objectMapper.writeValueAsString(note3) + "\n").getBytes());
+            return 2L;
+        });
+
+        MvcResult mvcResult = mockMvc.perform(get("/patHistories/export?patientId=2"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(objectMapper.writeValueAsString(note2) + "\n" + objectMapper.writeValueAsString(note3) + "\n"));
+
+        verify(noteService).exportNotesByPatientId(eq(2), eq(false), any(OutputStream.class));
+    }
+
+    @Test
+    void exportNotes_shouldExportArchivedNotesToo_whenFullHistoryIsAsked() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(get("/patHistories/export?patientId=2&fullHistory=true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+
+        verify(noteService).exportNotesByPatientId(eq(2), eq(true), any(OutputStream.class));
+    }
+
+    @Test
+    void exportNotes_shouldExportNotesOfAllPatients_whenPatientIdIsNotGiven() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(get("/patHistories/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+
+        verify(noteService).exportNotesByPatientId(isNull(), eq(false), any(OutputStream.class));
+    }
+
+    // === TEST GET SUMMARIES OF NOTES =========================================
+    @Test
+    void getSummaryByPatientId_shouldReturnHttpStatus200Ok_withSummaryOfPatient() throws Exception {
+        when(noteService.readSummariesByPatientIds(List.of(1))).thenReturn(List.of(new PatientNoteSummary(1, 3, modificationDate, -7046029254386353131L)));
+
+        mockMvc.perform(get("/patHistories/summary").param("patientId", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.patientId", is(1)))
+                .andExpect(jsonPath("$.noteCount", is(3)))
+                .andExpect(jsonPath("$.contentHash", is("-7046029254386353131")));
+    }
+
+    @Test
+    void getSummariesByPatientIds_shouldReturnHttpStatus200Ok_withSummaryOfEachDistinctPatient() throws Exception {
+        when(noteService.readSummariesByPatientIds(List.of(2, 1))).thenReturn(List.of(
+                new PatientNoteSummary(2, 2, modificationDate, 5L), new PatientNoteSummary(1, 0, null, 0)));
+
+        mockMvc.perform(get("/patHistories/summaries").param("patientIds", "2,1,2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].noteCount", is(0)));
+
+        verify(noteService).readSummariesByPatientIds(List.of(2, 1));
+    }
+
+    @Test
+    void getSummariesByPatientIds_shouldReturnHttpStatus400BadRequest_whenTooManyPatientIdsAreGiven() throws Exception {
+        String patientIds = IntStream.rangeClosed(1, 1001).mapToObj(String::valueOf).collect(Collectors.joining(","));
+
+        mockMvc.perform(get("/patHistories/summaries").param("patientIds", patientIds))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, never()).readSummariesByPatientIds(anyList());
     }
 
     // === TEST GET NOTE BY ID ================================================
@@ -119,6 +547,41 @@ public class NoteControllerTest {
         verify(noteService).readNoteById(unknownNoteId);
     }
 
+    // === TEST GET REVISIONS OF NOTE =========================================
+    @Test
+    void getRevisionsByNoteId_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        NoteRevision revision = new NoteRevision("revisionId1", "generatedId1", 1, 0L, modificationDate, null, null, "=14+6: made");
+        when(noteService.readRevisionsByNoteId("generatedId1")).thenReturn(List.of(revision));
+
+        mockMvc.perform(get("/patHistories/{id}/revisions", "generatedId1")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].version", is(0)))
+                .andExpect(jsonPath("$[0].snapshot", is(false)))
+                .andExpect(jsonPath("$[0].delta").doesNotExist());
+    }
+
+    @Test
+    void getNoteRevision_shouldReturnHttpStatus200Ok_whenVersionIsKept() throws Exception {
+        Note rebuiltNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation made to patient 1", null, 0L);
+        when(noteService.readNoteRevision("generatedId1", 0L)).thenReturn(rebuiltNote);
+
+        mockMvc.perform(get("/patHistories/{id}/revisions/{version}", "generatedId1", 0)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", is("Recommendation made to patient 1")));
+    }
+
+    @Test
+    void getNoteRevision_shouldReturnHttpStatus404NotFound_whenVersionIsNotKept() throws Exception {
+        when(noteService.readNoteRevision("generatedId1", 7L)).thenThrow(DataNotFoundException.class);
+
+        mockMvc.perform(get("/patHistories/{id}/revisions/{version}", "generatedId1", 7)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound());
+    }
+
     // === TEST UPDATE NOTE BY ID =============================================
     @Test
     void updateNoteById_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
@@ -166,6 +629,65 @@ public class NoteControllerTest {
         verify(noteService).updateNote(anyString(), any(Note.class));
     }
 
+    @Test
+    void updateNoteById_shouldReturnHttpStatus409Conflict_whenNoteIsNoLongerAtGivenVersion() throws Exception {
+        Note staleNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation updated", null, 3L);
+        when(noteService.updateNote(anyString(), any(Note.class))).thenThrow(new StaleNoteVersionException("Note was modified by someone else"));
+
+        mockMvc.perform(put("/patHistories/{id}", "generatedId1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(staleNote)))
+                .andExpect(status().isConflict());
+    }
+
+    // === TEST PATCH NOTE BY ID ==============================================
+    @Test
+    void patchNoteById_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        Note patchedNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation patched", null, 4L);
+        when(noteService.patchNote(anyString(), any(NotePatch.class))).thenReturn(patchedNote);
+
+        mockMvc.perform(patch("/patHistories/{id}", "generatedId1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"Recommendation patched\", \"version\": 3}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", is("Recommendation patched")))
+                .andExpect(jsonPath("$.version", is(4)));
+
+        verify(noteService).patchNote(eq("generatedId1"), argThat(notePatch -> notePatch.getVersion() == 3L && notePatch.getLanguage() == null));
+    }
+
+    @Test
+    void patchNoteById_shouldReturnHttpStatus400BadRequest_whenNoFieldIsGiven() throws Exception {
+        mockMvc.perform(patch("/patHistories/{id}", "generatedId1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"version\": 3}"))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, never()).patchNote(anyString(), any(NotePatch.class));
+    }
+
+    @Test
+    void patchNoteById_shouldReturnHttpStatus400BadRequest_whenContentIsBlank() throws Exception {
+        mockMvc.perform(patch("/patHistories/{id}", "generatedId1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"  \"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, never()).patchNote(anyString(), any(NotePatch.class));
+    }
+
+    @Test
+    void patchNoteById_shouldReturnHttpStatus409Conflict_whenNoteIsNoLongerAtGivenVersion() throws Exception {
+        when(noteService.patchNote(anyString(), any(NotePatch.class))).thenThrow(new StaleNoteVersionException("Note was modified by someone else"));
+
+        mockMvc.perform(patch("/patHistories/{id}", "generatedId1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"Recommendation patched\", \"version\": 2}"))
+                .andExpect(status().isConflict());
+    }
+
     // === TEST DELETE NOTE BY ID =============================================
     @Test
     void deleteNoteById_shouldReturnHttpStatus204NoContent_whenRequestIsSuccessful() throws Exception {
@@ -206,4 +728,45 @@ public class NoteControllerTest {
 
         verify(noteService).deleteNotesByPatientId(patientId);
     }
+
+    // === TEST DRAFTS ========================================================
+    @Test
+    void saveDraft_shouldReturnHttpStatus202Accepted_whenRequestIsSuccessful() throws Exception {
+        NoteDraft savedDraft = new NoteDraft("new-1", 1, null, null, "Recommendation being typed", null, modificationDate);
+        when(noteService.saveDraft(anyString(), any(NoteDraft.class))).thenReturn(savedDraft);
+
+        mockMvc.perform(put("/patHistories/drafts/{draftId}", "new-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"patientId\": 1, \"content\": \"Recommendation being typed\"}"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id", is("new-1")));
+
+        verify(noteService).saveDraft(eq("new-1"), any(NoteDraft.class));
+    }
+
+    @Test
+    void saveDraft_shouldReturnHttpStatus400BadRequest_whenPatientIdIsMissing() throws Exception {
+        mockMvc.perform(put("/patHistories/drafts/{draftId}", "new-1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"content\": \"Recommendation being typed\"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(noteService, never()).saveDraft(anyString(), any(NoteDraft.class));
+    }
+
+    @Test
+    void getDraft_shouldReturnHttpStatus404NotFound_whenDraftIsNotFound() throws Exception {
+        when(noteService.readDraft(anyString())).thenThrow(new DataNotFoundException("Draft not found, discarded or expired"));
+
+        mockMvc.perform(get("/patHistories/drafts/{draftId}", "new-1"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void deleteDraft_shouldReturnHttpStatus204NoContent_whenRequestIsSuccessful() throws Exception {
+        mockMvc.perform(delete("/patHistories/drafts/{draftId}", "new-1"))
+                .andExpect(status().isNoContent());
+
+        verify(noteService).deleteDraft("new-1");
+    }
 }
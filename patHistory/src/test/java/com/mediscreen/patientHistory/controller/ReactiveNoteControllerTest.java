@@ -0,0 +1,232 @@
+package com.mediscreen.patientHistory.controller;
+
+import com.mediscreen.patientHistory.exception.DataNotFoundException;
+import com.mediscreen.patientHistory.exception.StaleNoteVersionException;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
+import com.mediscreen.patientHistory.service.ReactiveNoteService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@WebFluxTest(ReactiveNoteController.class)
+@ActiveProfiles("reactive")
+public class ReactiveNoteControllerTest {
+
+    @MockBean
+    private ReactiveNoteService reactiveNoteService;
+    @Autowired
+    private WebTestClient webTestClient;
+
+    private final LocalDateTime creationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
+    private final Note note1 = new Note("generatedId1", 1, creationDate, creationDate, "Recommendation made to patient 1");
+    private final Note note2 = new Note("generatedId2", 2, creationDate, creationDate, "Recommendation A made to patient 2");
+    private final Note note3 = new Note("generatedId3", 2, creationDate, creationDate, "Recommendation B made to patient 2");
+
+
+    // === TEST ADD NEW NOTE ==================================================
+    @Test
+    void addNewNote_shouldReturnHttpStatus201Created_whenRequestIsSuccessful() {
+        when(reactiveNoteService.createNote(any(Note.class))).thenReturn(Mono.just(note1));
+
+        webTestClient.post().uri("/patHistories")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Note(1, null, null, "Recommendation made to patient 1"))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody().jsonPath("$.id").isEqualTo("generatedId1");
+    }
+
+    @Test
+    void addNewNote_shouldReturnHttpStatus400BadRequest_whenRequestFailedWithValidationErrors() {
+        webTestClient.post().uri("/patHistories")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Note(null, null, null, " "))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(reactiveNoteService, never()).createNote(any(Note.class));
+    }
+
+    // === TEST GET ALL NOTES OF ONE PATIENT BY HIS ID ========================
+    @Test
+    void getAllNotesByPatientId_shouldStreamNotesAsJsonArray() {
+        when(reactiveNoteService.readNotesETagByPatientId(2)).thenReturn(Mono.just("2-0-abc-def"));
+        when(reactiveNoteService.readNotesByPatientId(2, false)).thenReturn(Flux.just(note2, note3));
+
+        webTestClient.get().uri("/patHistories?patientId={id}", 2)
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"2-0-abc-def\"")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].id").isEqualTo("generatedId3");
+    }
+
+    @Test
+    void getAllNotesByPatientId_shouldReturnHttpStatus304NotModified_whenNotesDidNotChangeSinceETag() {
+        when(reactiveNoteService.readNotesETagByPatientId(2)).thenReturn(Mono.just("2-0-abc-def"));
+
+        webTestClient.get().uri("/patHistories?patientId={id}", 2)
+                .ifNoneMatch("\"2-0-abc-def\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+
+        verify(reactiveNoteService, never()).readNotesByPatientId(anyInt(), anyBoolean());
+    }
+
+    @Test
+    void exportNotes_shouldStreamOneNotePerLine() {
+        when(reactiveNoteService.readNotesByPatientId(null, false)).thenReturn(Flux.just(note1, note2, note3));
+
+        webTestClient.get().uri("/patHistories/export")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Note.class).hasSize(3);
+    }
+
+    // === TEST GET PAGE OF NOTES OF ONE PATIENT ===============================
+    @Test
+    void getNotesPageByPatientId_shouldReturnPageWithETag() {
+        when(reactiveNoteService.readNotesETagByPatientId(2)).thenReturn(Mono.just("2-0-abc-def"));
+        when(reactiveNoteService.readNotesPageByPatientId(eq(2), eq("cursor"), eq(50), eq(true), any(), eq(false)))
+                .thenReturn(Mono.just(new NotePage(List.of(note2, note3), "nextCursor", true)));
+
+        webTestClient.get().uri("/patHistories/page?patientId={id}&cursor=cursor&size=50&fullHistory=true", 2)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"2-0-abc-def\"")
+                .expectBody()
+                .jsonPath("$.notes.length()").isEqualTo(2)
+                .jsonPath("$.nextCursor").isEqualTo("nextCursor");
+    }
+
+    @Test
+    void getNotesPageByPatientId_shouldReturnHttpStatus304NotModified_whenNotesDidNotChangeSinceETag() {
+        when(reactiveNoteService.readNotesETagByPatientId(2)).thenReturn(Mono.just("2-0-abc-def"));
+
+        webTestClient.get().uri("/patHistories/page?patientId={id}", 2)
+                .ifNoneMatch("\"2-0-abc-def\"")
+                .exchange()
+                .expectStatus().isNotModified();
+
+        verify(reactiveNoteService, never()).readNotesPageByPatientId(anyInt(), any(), anyInt(), anyBoolean(), any(), anyBoolean());
+    }
+
+    @Test
+    void getNotesPageByPatientId_shouldReturnPageWithoutETag_whenSecondaryIsOk() {
+        when(reactiveNoteService.readNotesPageByPatientId(eq(2), isNull(), eq(20), eq(false), any(), eq(true)))
+                .thenReturn(Mono.just(new NotePage(List.of(note2), null, false)));
+
+        webTestClient.get().uri("/patHistories/page?patientId={id}&secondaryOk=true", 2)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("ETag");
+
+        verify(reactiveNoteService, never()).readNotesETagByPatientId(anyInt());
+    }
+
+    // === TEST GET TRIGGER TERMS OF PATIENTS =================================
+    @Test
+    void getTriggerTermsByPatientIds_shouldReturnTermsOfDistinctPatients() {
+        when(reactiveNoteService.readTriggerTermsByPatientIds(List.of(1, 2), List.of("Smoker", "Weight")))
+                .thenReturn(Mono.just(List.of(new PatientTriggerTerms(1, List.of("Smoker")), new PatientTriggerTerms(2, List.of()))));
+
+        webTestClient.get().uri("/patHistories/terms?patientIds=1,2,1&terms=Smoker,Weight")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].terms[0]").isEqualTo("Smoker");
+    }
+
+    // === TEST DRAFTS ========================================================
+    @Test
+    void saveDraft_shouldReturnHttpStatus202Accepted() {
+        NoteDraft draft = new NoteDraft("new-1", 1, null, null, "Recommendation being typed", null, creationDate);
+        when(reactiveNoteService.saveDraft(eq("new-1"), any(NoteDraft.class))).thenReturn(Mono.just(draft));
+
+        webTestClient.put().uri("/patHistories/drafts/{draftId}", "new-1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(draft)
+                .exchange()
+                .expectStatus().isAccepted()
+                .expectBody().jsonPath("$.content").isEqualTo("Recommendation being typed");
+    }
+
+    @Test
+    void deleteDraft_shouldReturnHttpStatus204NoContent() {
+        when(reactiveNoteService.deleteDraft("new-1")).thenReturn(Mono.empty());
+
+        webTestClient.delete().uri("/patHistories/drafts/{draftId}", "new-1")
+                .exchange()
+                .expectStatus().isNoContent();
+
+        verify(reactiveNoteService).deleteDraft("new-1");
+    }
+
+    // === TEST GET NOTE BY ID ================================================
+    @Test
+    void getNoteById_shouldReturnHttpStatus404NotFound_whenNoteDoesNotExist() {
+        when(reactiveNoteService.readNoteById("000")).thenReturn(Mono.error(new DataNotFoundException("Note not found or doesn't exist")));
+
+        webTestClient.get().uri("/patHistories/{id}", "000")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    // === TEST UPDATE AND PATCH NOTE BY ID ===================================
+    @Test
+    void updateNoteById_shouldReturnHttpStatus409Conflict_whenNoteIsNoLongerAtGivenVersion() {
+        when(reactiveNoteService.updateNote(anyString(), any(Note.class)))
+                .thenReturn(Mono.error(new StaleNoteVersionException("Note was modified by someone else")));
+
+        webTestClient.put().uri("/patHistories/{id}", "generatedId1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new Note("generatedId1", 1, creationDate, creationDate, "Recommendation updated", null, 3L))
+                .exchange()
+                .expectStatus().isEqualTo(409);
+    }
+
+    @Test
+    void patchNoteById_shouldReturnHttpStatus400BadRequest_whenNoFieldIsGiven() {
+        webTestClient.patch().uri("/patHistories/{id}", "generatedId1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"version\": 3}")
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        verify(reactiveNoteService, never()).patchNote(anyString(), any(NotePatch.class));
+    }
+
+    // === TEST DELETE NOTE BY ID =============================================
+    @Test
+    void deleteNoteById_shouldReturnHttpStatus204NoContent_whenRequestIsSuccessful() {
+        when(reactiveNoteService.deleteNote("generatedId1")).thenReturn(Mono.empty());
+
+        webTestClient.delete().uri("/patHistories/{id}", "generatedId1")
+                .exchange()
+                .expectStatus().isNoContent();
+
+        verify(reactiveNoteService).deleteNote("generatedId1");
+    }
+
+}
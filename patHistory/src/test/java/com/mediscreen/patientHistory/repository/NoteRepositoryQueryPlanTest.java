@@ -0,0 +1,358 @@
+package com.mediscreen.patientHistory.repository;
+
+import com.mediscreen.patientHistory.AbstractMongoContainerTest;
+import com.mediscreen.patientHistory.MongoCommandRecorder;
+import com.mediscreen.patientHistory.config.MongoIndexReconciler;
+import com.mediscreen.patientHistory.config.NoteContentCompressor;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteSearchCriteria;
+import org.assertj.core.api.SoftAssertions;
+import org.bson.BsonDocument;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Tests that every query of the note repositories is served by an index, without sorting documents in memory.
+ * The commands explained are the ones the repositories really sent, as recorded by the driver.
+ */
+@DataMongoTest(properties = {"mediscreen.notes.compression.enabled=true", "mediscreen.notes.compression.accept-unsearchable=true"})
+@Import({MongoIndexReconciler.class, NoteContentCompressor.class, MongoCommandRecorder.class})
+public class NoteRepositoryQueryPlanTest extends AbstractMongoContainerTest {
+
+    @Autowired
+    private MongoIndexReconciler mongoIndexReconciler;
+    @Autowired
+    private MongoCommandRecorder commandRecorder;
+    @Autowired
+    private NoteRepository noteRepository;
+    @Autowired
+    private NoteDraftRepository noteDraftRepository;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection(Note.class);
+        mongoTemplate.createCollection(Note.class);
+        mongoIndexReconciler.reconcile(Note.class);
+        mongoTemplate.dropCollection(Note.ARCHIVE_COLLECTION);
+        noteRepository.prepareArchive("zstd");
+        mongoTemplate.dropCollection(NoteDraft.class);
+
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            LocalDateTime date = LocalDateTime.of(2023, 7, 1, 8, 0).plusHours(i);
+            notes.add(new Note(i % 20, date, date, "Note " + i));
+        }
+        noteRepository.insert(notes);
+    }
+
+    // === TEST FIND ALL BY PATIENT ID QUERY ==================================
+    @Test
+    void findAllByPatientIdOrderByDateOfCreationDesc_shouldUseIndexWithoutSort() {
+        commandRecorder.clear();
+        List<Note> notes = noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(2);
+
+        assertServedByIndexWithoutSort(sentCommand("find", "notes"));
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(notes)
+                .as("Notes of patient").hasSize(10)
+                .isSortedAccordingTo((note1, note2) -> note2.getDateOfCreation().compareTo(note1.getDateOfCreation())));
+    }
+
+    // === TEST FIND PAGE BY PATIENT ID QUERY ==================================
+    @Test
+    void findPageByPatientId_shouldUseIndexWithoutSort_whenCursorIsGiven() {
+        List<Note> firstPage = noteRepository.findPageByPatientId(2, null, null, 4, NoteProjection.WHOLE);
+        Note lastNote = firstPage.get(firstPage.size() - 1);
+
+        commandRecorder.clear();
+        List<Note> secondPage = noteRepository.findPageByPatientId(2, lastNote.getDateOfCreation(), lastNote.getId(), 10, NoteProjection.WHOLE);
+
+        assertServedByIndexWithoutSort(sentCommand("find", "notes"));
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(firstPage).as("Notes of first page").hasSize(4);
+            softly.assertThat(secondPage).as("Notes of second page").hasSize(6)
+                    .allMatch(note -> note.getDateOfCreation().isBefore(lastNote.getDateOfCreation()));
+        });
+    }
+
+    // === TEST FIND PROJECTED BY PATIENT ID QUERY ============================
+    @Test
+    void findProjectedByPatientId_shouldReadProjectedFieldsAndBeginningOfContentOnly() {
+        commandRecorder.clear();
+        List<Note> notes = noteRepository.findProjectedByPatientId(2, new NoteProjection(List.of("content"), 6));
+
+        assertServedByIndexWithoutSort(sentCommand("find", "notes"));
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(notes).as("Notes of patient").hasSize(10)
+                    .isSortedAccordingTo((note1, note2) -> note2.getDateOfCreation().compareTo(note1.getDateOfCreation()));
+            softly.assertThat(notes).as("Contents").extracting(Note::getContent).allMatch(content -> content.length() <= 6)
+                    .contains("Note 2", "Note 1");
+            softly.assertThat(notes).as("Fields left out").allMatch(note -> note.getPatientId() == null && note.getDateOfModification() == null);
+        });
+    }
+
+    // === TEST FIND BY PATIENT ID AND DATE OF CREATION RANGE QUERY ===========
+    @Test
+    void findByPatientIdAndDateOfCreationRange_shouldUseIndexWithoutSort() {
+        LocalDateTime from = LocalDateTime.of(2023, 7, 2, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 7, 4, 0, 0);
+
+        commandRecorder.clear();
+        List<Note> notes = noteRepository.findByPatientIdAndDateOfCreationRange(2, from, to);
+
+        assertServedByIndexWithoutSort(sentCommand("find", "notes"));
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(notes).as("Notes of patient within range").hasSize(3)
+                .allMatch(note -> !note.getDateOfCreation().isBefore(from) && note.getDateOfCreation().isBefore(to))
+                .isSortedAccordingTo((note1, note2) -> note2.getDateOfCreation().compareTo(note1.getDateOfCreation())));
+    }
+
+    // === TEST STREAM BY PATIENT ID QUERY ====================================
+    @Test
+    void streamByPatientId_shouldUseIndexWithoutSort() {
+        commandRecorder.clear();
+        List<Note> patientNotes;
+        try (Stream<Note> notes = noteRepository.streamByPatientId(2)) {
+            patientNotes = notes.collect(Collectors.toList());
+        }
+        BsonDocument patientCommand = sentCommand("find", "notes");
+        commandRecorder.clear();
+        long allNotesCount;
+        try (Stream<Note> notes = noteRepository.streamByPatientId(null)) {
+            allNotesCount = notes.count();
+        }
+
+        assertServedByIndexWithoutSort(patientCommand);
+        assertServedByIndexWithoutSort(sentCommand("find", "notes"));
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(patientNotes).as("Streamed notes of patient").hasSize(10)
+                    .isSortedAccordingTo((note1, note2) -> note2.getDateOfCreation().compareTo(note1.getDateOfCreation()));
+            softly.assertThat(allNotesCount).as("Streamed notes of all patients").isEqualTo(200);
+        });
+    }
+
+    // === TEST FIND TERMS BY PATIENT IDS QUERY ===============================
+    @Test
+    void findTermsByPatientIds_shouldMatchTermsInDatabase_whateverTheirCaseAndAccents() {
+        noteRepository.insert(List.of(
+                new Note(60, LocalDateTime.of(2023, 7, 1, 8, 0), null, "Patient is a SMOKER, réaction to the drug"),
+                new Note(61, LocalDateTime.of(2023, 7, 1, 8, 0), null, "Taille et poids normaux")));
+        mongoTemplate.insert(new Note(61, LocalDateTime.of(2020, 7, 1, 8, 0), null, "Ancienne rechute"), Note.ARCHIVE_COLLECTION);
+        Map<String, String> regexByTerm = Map.of("Smoker", "[sS]moker", "Reaction", "r[eéÉ]action", "Rechute", "rechute");
+
+        commandRecorder.clear();
+        Map<Integer, Set<String>> termsByPatient = noteRepository.findTermsByPatientIds(List.of(60, 61, 62), regexByTerm);
+
+        // Plans of both the notes and the archive, read by the $unionWith stage
+        List<String> stages = winningPlanStages(sentCommand("aggregate", "notes"));
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(stages).as("Winning plan stages").contains("IXSCAN").doesNotContain("COLLSCAN");
+            softly.assertThat(termsByPatient).as("Terms of patients")
+                    .containsOnlyKeys(60, 61)
+                    .containsEntry(60, Set.of("Smoker", "Reaction"))
+                    .containsEntry(61, Set.of("Rechute"));
+        });
+    }
+
+    // === TEST FIND COMPRESSED BY PATIENT IDS QUERY ==========================
+    @Test
+    void findCompressedByPatientIds_shouldUseIndexesOfNotesAndArchive() {
+        String longContent = "Patient reports weight gain and dizziness. ".repeat(100);
+        noteRepository.insert(new Note(2, LocalDateTime.of(2023, 8, 1, 8, 0), null, longContent));
+        mongoTemplate.insert(new Note(3, LocalDateTime.of(2020, 8, 1, 8, 0), null, longContent), Note.ARCHIVE_COLLECTION);
+
+        commandRecorder.clear();
+        List<Note> compressedNotes = noteRepository.findCompressedByPatientIds(List.of(2, 3));
+
+        assertServedByIndexWithoutSort(sentCommand("find", "notes"));
+        assertServedByIndexWithoutSort(sentCommand("find", Note.ARCHIVE_COLLECTION));
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(compressedNotes).as("Compressed notes")
+                .extracting(Note::getPatientId).containsExactlyInAnyOrder(2, 3));
+    }
+
+    // === TEST UPDATE FIELDS QUERY ===========================================
+    @Test
+    void updateFields_shouldFindNoteByIdIndex() {
+        Note note = noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(2).get(0);
+
+        commandRecorder.clear();
+        Note formerNote = noteRepository.updateFields(note.getId(), note.getVersion(), null, "Updated note", null, LocalDateTime.now());
+
+        assertServedByIndexWithoutSort(sentCommand("findAndModify", "notes"));
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(formerNote).as("Former note").extracting(Note::getContent).isEqualTo(note.getContent());
+            softly.assertThat(noteRepository.findById(note.getId())).as("Updated note")
+                    .map(Note::getContent).contains("Updated note");
+        });
+    }
+
+    // === TEST ARCHIVE MODIFIED BEFORE QUERY =================================
+    @Test
+    void archiveModifiedBefore_shouldScanDateOfModificationIndex() {
+        commandRecorder.clear();
+        Map<Integer, Long> movedNotesByPatient = noteRepository.archiveModifiedBefore(LocalDateTime.of(2023, 7, 2, 0, 0), 5);
+
+        // The first find of the notes reads the ones to archive
+        assertServedByIndexWithoutSort(sentCommand("find", "notes"));
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(movedNotesByPatient.values().stream().mapToLong(Long::longValue).sum()).as("Archived notes").isEqualTo(5);
+            softly.assertThat(mongoTemplate.count(new Query(), Note.ARCHIVE_COLLECTION))
+                    .as("Notes in archive").isEqualTo(5);
+        });
+    }
+
+    @Test
+    void archiveModifiedBefore_shouldNeitherArchiveNorCountNotes_deletedOrUpdatedDuringMove() {
+        List<Note> oldNotes = noteRepository.findAll().stream()
+                .sorted((note1, note2) -> note1.getDateOfModification().compareTo(note2.getDateOfModification()))
+                .limit(5)
+                .collect(Collectors.toList());
+        Note deletedNote = oldNotes.get(0);
+        Note updatedNote = oldNotes.get(1);
+        // Written by a user once the notes are copied to the archive, before they are deleted from the hot collection
+        commandRecorder.beforeNextCommand("delete", "notes", () -> {
+            noteRepository.deleteById(deletedNote.getId());
+            updatedNote.setContent("Updated note");
+            noteRepository.save(updatedNote);
+        });
+
+        Map<Integer, Long> movedNotesByPatient = noteRepository.archiveModifiedBefore(LocalDateTime.of(2023, 7, 2, 0, 0), 5);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(movedNotesByPatient).as("Archived notes of each patient").doesNotContainKeys(deletedNote.getPatientId(), updatedNote.getPatientId());
+            softly.assertThat(movedNotesByPatient.values().stream().mapToLong(Long::longValue).sum()).as("Archived notes").isEqualTo(3);
+            softly.assertThat(noteRepository.findArchivedById(deletedNote.getId())).as("Deleted note in archive").isNull();
+            softly.assertThat(noteRepository.findArchivedById(updatedNote.getId())).as("Updated note in archive").isNull();
+            softly.assertThat(mongoTemplate.count(new Query(), Note.ARCHIVE_COLLECTION)).as("Notes in archive").isEqualTo(3);
+            softly.assertThat(noteRepository.findById(updatedNote.getId())).as("Updated note")
+                    .map(Note::getContent).contains("Updated note");
+        });
+    }
+
+    // === TEST SEARCH BY TEXT QUERY ==========================================
+    @Test
+    void searchByText_shouldUseTextIndexWithoutCollectionScan() {
+        Note englishNote = new Note(null, 50, LocalDateTime.of(2022, 6, 1, 8, 0), null, "Microalbumin levels are increasing", "english", null);
+        Note frenchNote = new Note(null, 50, LocalDateTime.of(2023, 6, 1, 8, 0), null, "Les taux de microalbumine augmentent", "french", null);
+        noteRepository.insert(List.of(englishNote, frenchNote));
+        NoteSearchCriteria criteria = new NoteSearchCriteria();
+        criteria.setText("increased");
+        criteria.setPatientId(50);
+
+        commandRecorder.clear();
+        List<Note> englishResults = noteRepository.searchByText(criteria, 0, 10);
+        List<String> stages = winningPlanStages(sentCommand("find", "notes"));
+        criteria.setText("augmenté");
+        criteria.setLanguage("french");
+        criteria.setTo(LocalDate.of(2022, 12, 31));
+        List<Note> frenchResultsOfLastYear = noteRepository.searchByText(criteria, 0, 10);
+        criteria.setTo(null);
+        List<Note> frenchResults = noteRepository.searchByText(criteria, 0, 10);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(stages).as("Winning plan stages").contains("TEXT_MATCH").doesNotContain("COLLSCAN");
+            softly.assertThat(englishResults).as("Notes matching an english stem").extracting(Note::getId).containsExactly(englishNote.getId());
+            softly.assertThat(frenchResults).as("Notes matching a french stem").extracting(Note::getId).containsExactly(frenchNote.getId());
+            softly.assertThat(frenchResultsOfLastYear).as("Notes matching a french stem out of the date range").isEmpty();
+        });
+    }
+
+    // === TEST BULK INSERT ===================================================
+    @Test
+    void bulkInsert_shouldInsertFollowingNotes_whenOneNoteFails() {
+        LocalDateTime date = LocalDateTime.of(2015, 3, 2, 14, 45);
+        String existingId = noteRepository.findAll().get(0).getId();
+        List<Note> notes = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Note note = new Note(100, date, date, "Imported note " + i);
+            note.setId(i == 1 ? existingId : new ObjectId().toHexString());
+            notes.add(note);
+        }
+
+        Map<Integer, String> failures = noteRepository.bulkInsert(notes);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(failures).as("Failed notes").containsOnlyKeys(1);
+            softly.assertThat(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(100)).as("Inserted notes").hasSize(4)
+                    .allMatch(note -> note.getDateOfCreation().equals(date));
+        });
+    }
+
+    // === TEST DELETE ALL BY PATIENT ID QUERY ================================
+    @Test
+    void deleteAllByPatientId_shouldUseIndex() {
+        commandRecorder.clear();
+        noteRepository.deleteAllByPatientId(2);
+
+        assertServedByIndexWithoutSort(sentCommand("delete", "notes"));
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(2))
+                .as("Notes of patient").isEmpty());
+    }
+
+    // === TEST FIND BY ID QUERY ==============================================
+    @Test
+    void findById_shouldUseIdIndex() {
+        Note note = noteRepository.findAll().get(0);
+
+        commandRecorder.clear();
+        Optional<Note> foundNote = noteRepository.findById(note.getId());
+
+        assertServedByIndexWithoutSort(sentCommand("find", "notes"));
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(foundNote).as("Found note").isPresent());
+    }
+
+    // === TEST NOTE DRAFT QUERIES ============================================
+    @Test
+    void noteDraftQueries_shouldUseIdIndex() {
+        NoteDraft draft = new NoteDraft("new-2-form", 2, null, null, "Recommendation being typed", null, LocalDateTime.now());
+
+        commandRecorder.clear();
+        noteDraftRepository.upsertAllRelaxed(List.of(draft));
+        BsonDocument upsertCommand = sentCommand("update", "note_drafts");
+        commandRecorder.clear();
+        Optional<NoteDraft> foundDraft = noteDraftRepository.findById(draft.getId());
+        BsonDocument findCommand = sentCommand("find", "note_drafts");
+        commandRecorder.clear();
+        noteDraftRepository.deleteById(draft.getId());
+
+        assertServedByIndexWithoutSort(upsertCommand);
+        assertServedByIndexWithoutSort(findCommand);
+        assertServedByIndexWithoutSort(sentCommand("delete", "note_drafts"));
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(foundDraft).as("Found draft").map(NoteDraft::getContent).contains("Recommendation being typed");
+            softly.assertThat(noteDraftRepository.findById(draft.getId())).as("Deleted draft").isEmpty();
+        });
+    }
+
+    // ========================================================================
+
+    private BsonDocument sentCommand(String commandName, String collection) {
+        List<BsonDocument> commands = commandRecorder.commandsOn(commandName, collection);
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(commands).as("Sent " + commandName + " commands on " + collection).isNotEmpty());
+        return commands.get(0);
+    }
+
+    private void assertServedByIndexWithoutSort(BsonDocument command) {
+        List<String> stages = winningPlanStages(command);
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(stages).as("Winning plan stages").anyMatch(stage -> stage.equals("IXSCAN") || stage.equals("IDHACK") || stage.startsWith("EXPRESS"));
+            softly.assertThat(stages).as("Winning plan stages").doesNotContain("COLLSCAN", "SORT");
+        });
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.repository.NoteRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that old notes are moved to the archive by batches and counted in the summaries of their patients as expected.
+ */
+@ExtendWith(MockitoExtension.class)
+public class NoteArchiverTest {
+
+    @Mock
+    private NoteRepository noteRepository;
+    @Mock
+    private PatientNoteSummaryTracker summaryTracker;
+    @Mock
+    private PatientNotesCache patientNotesCache;
+
+    // === TEST ARCHIVE =======================================================
+    @Test
+    void archiveOldNotes_shouldMoveNotesByBatches_untilNoNoteIsOldEnough() {
+        NoteArchiver archiverUnderTest = new NoteArchiver(noteRepository, summaryTracker, patientNotesCache, true, Duration.ofDays(365), 2, "zstd");
+        when(noteRepository.archiveModifiedBefore(any(LocalDateTime.class), eq(2)))
+                .thenReturn(Map.of(1, 2L))
+                .thenReturn(Map.of(2, 1L))
+                .thenReturn(Map.of());
+
+        LocalDateTime start = LocalDateTime.now();
+        archiverUnderTest.archiveOldNotes();
+
+        ArgumentCaptor<LocalDateTime> modifiedBefore = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(noteRepository, times(3)).archiveModifiedBefore(modifiedBefore.capture(), eq(2));
+        verify(summaryTracker).notesArchived(Map.of(1, 2L));
+        verify(summaryTracker).notesArchived(Map.of(2, 1L));
+        verify(patientNotesCache).invalidate(1);
+        verify(patientNotesCache).invalidate(2);
+        List<LocalDateTime> dates = modifiedBefore.getAllValues();
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(dates).as("Dates of last modification of all batches").containsOnly(dates.get(0));
+            softly.assertThat(dates.get(0)).as("Date of last modification").isBetween(start.minusDays(365), LocalDateTime.now().minusDays(365));
+        });
+    }
+
+    @Test
+    void archiveOldNotes_shouldNotMoveAnyNote_whenArchiveIsDisabled() {
+        NoteArchiver archiverUnderTest = new NoteArchiver(noteRepository, summaryTracker, patientNotesCache, false, Duration.ofDays(365), 1000, "zstd");
+
+        archiverUnderTest.prepareArchive();
+        archiverUnderTest.archiveOldNotes();
+
+        verifyNoInteractions(noteRepository, summaryTracker, patientNotesCache);
+    }
+
+    @Test
+    void prepareArchive_shouldCreateArchiveWithGivenCompressor_whenArchiveIsEnabled() {
+        NoteArchiver archiverUnderTest = new NoteArchiver(noteRepository, summaryTracker, patientNotesCache, true, Duration.ofDays(365), 1000, "zlib");
+
+        archiverUnderTest.prepareArchive();
+
+        verify(noteRepository).prepareArchive("zlib");
+    }
+
+}
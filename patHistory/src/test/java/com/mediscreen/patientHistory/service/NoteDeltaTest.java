@@ -0,0 +1,104 @@
+package com.mediscreen.patientHistory.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests that the deltas between contents of notes are compact and rebuild the contents exactly.
+ */
+public class NoteDeltaTest {
+
+    private static final String CONTENT = "Patient states that they are 'feeling terrific'. Weight at or below recommended level. "
+            + "Hemoglobin A1C above recommended level. Microalbumin elevated. ";
+
+    // === TEST DIFF ==========================================================
+    @Test
+    void diff_shouldKeepOnlyChangedChars_whenWordIsReplaced() {
+        String target = CONTENT.replace("feeling terrific", "feeling tired");
+
+        String delta = NoteDelta.diff(CONTENT, target);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(NoteDelta.apply(CONTENT, delta)).as("Rebuilt content").isEqualTo(target);
+            softly.assertThat(delta).as("Delta").startsWith("=").hasSizeLessThan(20);
+        });
+    }
+
+    @Test
+    void diff_shouldReturnEmptyDelta_whenContentIsUnchanged() {
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(NoteDelta.diff(CONTENT, CONTENT)).as("Delta").isEmpty());
+    }
+
+    @Test
+    void diff_shouldRebuildContent_whenEditsAreSpreadAndTextContainsDigitsAndSeparators() {
+        String target = "Note: " + CONTENT.replace("A1C", "A1C=7.2%").replace("Weight", "-Weight+") + " Follow-up in 3:30 months.";
+
+        String delta = NoteDelta.diff(CONTENT, target);
+        String reverseDelta = NoteDelta.diff(target, CONTENT);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(NoteDelta.apply(CONTENT, delta)).as("Rebuilt target").isEqualTo(target);
+            softly.assertThat(NoteDelta.apply(target, reverseDelta)).as("Rebuilt source").isEqualTo(CONTENT);
+        });
+    }
+
+    @Test
+    void diff_shouldNotSplitSurrogatePairs() {
+        String source = "Patient mood 😀 today";
+        String target = "Patient mood 😁 today";
+
+        String delta = NoteDelta.diff(source, target);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(NoteDelta.apply(source, delta)).as("Rebuilt content").isEqualTo(target);
+            // Lone surrogates would be replaced once encoded in UTF-8 by the database
+            softly.assertThat(new String(delta.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)).as("Encoded delta").isEqualTo(delta);
+        });
+    }
+
+    @Test
+    void diff_shouldReplaceWholeMiddle_whenContentsDifferMoreThanMaxEditDistance() {
+        Random random = new Random(42);
+        StringBuilder source = new StringBuilder();
+        StringBuilder target = new StringBuilder();
+        for (int index = 0; index < 2 * NoteDelta.MAX_EDIT_DISTANCE; index++) {
+            source.append((char) ('a' + random.nextInt(26)));
+            target.append((char) ('a' + random.nextInt(26)));
+        }
+
+        String delta = NoteDelta.diff(source.toString(), target.toString());
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(NoteDelta.apply(source.toString(), delta)).as("Rebuilt content")
+                .isEqualTo(target.toString()));
+    }
+
+    @Test
+    void diff_shouldStayCompact_acrossSuccessiveEditsOfLongNote() {
+        String content = CONTENT.repeat(20);
+        long deltaLength = 0;
+        long contentLength = 0;
+        for (int edit = 0; edit < 50; edit++) {
+            String edited = content.substring(0, edit * 40) + "Dose adjusted " + edit + ". " + content.substring(edit * 40);
+            deltaLength += NoteDelta.diff(edited, content).length();
+            contentLength += content.length();
+            content = edited;
+        }
+
+        long finalDeltaLength = deltaLength;
+        long finalContentLength = contentLength;
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(finalDeltaLength).as("Stored chars of deltas")
+                .isLessThan(finalContentLength / 50));
+    }
+
+    // === TEST APPLY =========================================================
+    @Test
+    void apply_shouldThrowAnException_whenDeltaDoesNotFitSource() {
+        assertThatThrownBy(() -> NoteDelta.apply("short", "=10-3")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.repository.NoteDraftRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that the autosaves of note drafts are coalesced in memory and written by batches as expected.
+ */
+@ExtendWith(MockitoExtension.class)
+public class NoteDraftBufferTest {
+
+    @Mock
+    private NoteDraftRepository noteDraftRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LocalDateTime modificationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
+    private NoteDraftBuffer bufferUnderTest;
+
+    @BeforeEach
+    void setUp() {
+        bufferUnderTest = new NoteDraftBuffer(noteDraftRepository, meterRegistry, 2);
+    }
+
+    // === TEST SAVE AND FLUSH ================================================
+    @Test
+    void flush_shouldWriteOnlyLatestAutosaveOfEachDraft() {
+        List<List<NoteDraft>> writtenBatches = captureWrittenBatches();
+        bufferUnderTest.save(draft("new-1", "Recommendation"));
+        bufferUnderTest.save(draft("new-1", "Recommendation being typed"));
+        bufferUnderTest.save(draft("new-2", "Other recommendation"));
+
+        bufferUnderTest.flush();
+        bufferUnderTest.flush();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(writtenBatches).as("Written batches").hasSize(1);
+            softly.assertThat(writtenBatches.get(0)).as("Written drafts").extracting(NoteDraft::getContent)
+                    .containsExactlyInAnyOrder("Recommendation being typed", "Other recommendation");
+            softly.assertThat(meterRegistry.get("notes.drafts.saves").counter().count()).as("Published autosaves").isEqualTo(3);
+            softly.assertThat(meterRegistry.get("notes.drafts.writes").counter().count()).as("Published writes").isEqualTo(2);
+            softly.assertThat(meterRegistry.get("notes.drafts.pending").gauge().value()).as("Published pending drafts").isZero();
+        });
+    }
+
+    @Test
+    void save_shouldFlushAtOnce_whenTooManyDraftsArePending() {
+        bufferUnderTest.save(draft("new-1", "Recommendation made to patient 1"));
+        bufferUnderTest.save(draft("new-2", "Recommendation made to patient 2"));
+        verify(noteDraftRepository, never()).upsertAllRelaxed(anyCollection());
+
+        bufferUnderTest.save(draft("new-3", "Recommendation made to patient 3"));
+
+        verify(noteDraftRepository).upsertAllRelaxed(argThat(drafts -> drafts.size() == 3));
+    }
+
+    @Test
+    void flush_shouldKeepDraftsToRetry_whenWriteFailed() {
+        doThrow(new DataAccessResourceFailureException("Connection refused")).doNothing()
+                .when(noteDraftRepository).upsertAllRelaxed(anyCollection());
+        bufferUnderTest.save(draft("new-1", "Recommendation being typed"));
+
+        bufferUnderTest.flush();
+        NoteDraft keptDraft = bufferUnderTest.find("new-1");
+        bufferUnderTest.flush();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(keptDraft).as("Draft kept in memory").isNotNull();
+            softly.assertThat(meterRegistry.get("notes.drafts.writes").counter().count()).as("Published writes").isEqualTo(1);
+        });
+        verify(noteDraftRepository, times(2)).upsertAllRelaxed(anyCollection());
+        verify(noteDraftRepository, never()).findById(anyString());
+    }
+
+    // === TEST FIND ==========================================================
+    @Test
+    void find_shouldReturnPendingDraftBeforeWrittenOne() {
+        bufferUnderTest.save(draft("new-1", "Recommendation being typed"));
+
+        NoteDraft result = bufferUnderTest.find("new-1");
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Found draft")
+                .extracting(NoteDraft::getContent).isEqualTo("Recommendation being typed"));
+        verify(noteDraftRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void find_shouldReadDatabase_whenDraftIsAlreadyWritten() {
+        when(noteDraftRepository.findById("new-1")).thenReturn(Optional.of(draft("new-1", "Recommendation written")));
+
+        NoteDraft result = bufferUnderTest.find("new-1");
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Found draft")
+                .extracting(NoteDraft::getContent).isEqualTo("Recommendation written"));
+    }
+
+    // === TEST DISCARD =======================================================
+    @Test
+    void discard_shouldDropPendingDraftAndDeleteWrittenOne() {
+        bufferUnderTest.save(draft("new-1", "Recommendation being typed"));
+
+        bufferUnderTest.discard("new-1");
+        bufferUnderTest.flush();
+
+        verify(noteDraftRepository).deleteById("new-1");
+        verify(noteDraftRepository, never()).upsertAllRelaxed(anyCollection());
+    }
+
+    @Test
+    void save_shouldIgnoreLateAutosave_whenDraftWasDiscardedAfterFormWasOpened() {
+        bufferUnderTest.discard("new-1");
+
+        boolean lateAutosaveKept = bufferUnderTest.save(draft("new-1", "Recommendation already saved"));
+        NoteDraft newFormDraft = draft("new-1", "Next recommendation");
+        newFormDraft.setDateOfCreation(LocalDateTime.now().plusSeconds(1));
+        boolean newFormAutosaveKept = bufferUnderTest.save(newFormDraft);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(lateAutosaveKept).as("Autosave of form opened before discard kept").isFalse();
+            softly.assertThat(newFormAutosaveKept).as("Autosave of form opened after discard kept").isTrue();
+            softly.assertThat(bufferUnderTest.find("new-1")).as("Found draft").isSameAs(newFormDraft);
+        });
+    }
+
+    @Test
+    void find_shouldLeaveOutDiscardedDraft_whenItsDeletionFailed() {
+        doThrow(new DataAccessResourceFailureException("Connection refused")).when(noteDraftRepository).deleteById("new-1");
+        when(noteDraftRepository.findById("new-1")).thenReturn(Optional.of(draft("new-1", "Recommendation already saved")));
+
+        catchThrowable(() -> bufferUnderTest.discard("new-1"));
+        NoteDraft result = bufferUnderTest.find("new-1");
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Found draft").isNull());
+    }
+
+    @Test
+    void flush_shouldNotRetryDraft_whenDiscardedWhileBeingWritten() {
+        bufferUnderTest.save(draft("new-1", "Recommendation being typed"));
+        doAnswer(invocation -> {
+            bufferUnderTest.discard("new-1");
+            throw new DataAccessResourceFailureException("Connection refused");
+        }).when(noteDraftRepository).upsertAllRelaxed(anyCollection());
+
+        bufferUnderTest.flush();
+        bufferUnderTest.flush();
+
+        verify(noteDraftRepository, times(1)).upsertAllRelaxed(anyCollection());
+    }
+
+    // ========================================================================
+
+    private List<List<NoteDraft>> captureWrittenBatches() {
+        List<List<NoteDraft>> writtenBatches = new ArrayList<>();
+        doAnswer(invocation -> writtenBatches.add(new ArrayList<>(invocation.<Collection<NoteDraft>>getArgument(0))))
+                .when(noteDraftRepository).upsertAllRelaxed(anyCollection());
+        return writtenBatches;
+    }
+
+    private NoteDraft draft(String draftId, String content) {
+        return new NoteDraft(draftId, 1, null, null, content, modificationDate, modificationDate);
+    }
+}
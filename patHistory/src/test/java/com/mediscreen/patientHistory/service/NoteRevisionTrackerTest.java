@@ -0,0 +1,130 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteRevision;
+import com.mediscreen.patientHistory.repository.NoteRevisionRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that the former versions of notes are kept as deltas and snapshots and rebuilt as expected.
+ */
+@ExtendWith(MockitoExtension.class)
+public class NoteRevisionTrackerTest {
+
+    private static final int SNAPSHOT_INTERVAL = 3;
+    private static final List<String> SYMPTOMS = List.of("Smoker", "Reaction", "Antibodies", "Relapse", "Abnormal",
+            "Dizziness", "Cholesterol", "Height", "Weight");
+
+    @Mock
+    private NoteRevisionRepository noteRevisionRepository;
+
+    private NoteRevisionTracker trackerUnderTest;
+
+    private final LocalDateTime creationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
+    private final List<NoteRevision> storedRevisions = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        trackerUnderTest = new NoteRevisionTracker(noteRevisionRepository, true, SNAPSHOT_INTERVAL);
+    }
+
+    // === TEST MAINTENANCE ===================================================
+    @Test
+    void noteUpdated_shouldKeepDeltas_andSnapshotEverySnapshotInterval() {
+        when(noteRevisionRepository.insert(any(NoteRevision.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Note current = versionOf(0);
+        for (int version = 1; version <= 7; version++) {
+            Note updated = versionOf(version);
+            trackerUnderTest.noteUpdated(current, updated);
+            current = updated;
+        }
+
+        ArgumentCaptor<NoteRevision> revisions = ArgumentCaptor.forClass(NoteRevision.class);
+        verify(noteRevisionRepository, times(7)).insert(revisions.capture());
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(revisions.getAllValues()).as("Snapshot versions")
+                    .filteredOn(NoteRevision::isSnapshot).extracting(NoteRevision::getVersion).containsExactly(0L, 3L, 6L);
+            softly.assertThat(revisions.getAllValues()).as("Stored lengths of deltas")
+                    .filteredOn(revision -> !revision.isSnapshot()).allMatch(revision -> revision.getStoredLength() < 20);
+        });
+    }
+
+    @Test
+    void noteUpdated_shouldNotKeepAnything_whenRevisionsAreDisabled() {
+        new NoteRevisionTracker(noteRevisionRepository, false, SNAPSHOT_INTERVAL).noteUpdated(versionOf(0), versionOf(1));
+
+        verifyNoInteractions(noteRevisionRepository);
+    }
+
+    // === TEST REBUILD =======================================================
+    @Test
+    void rebuild_shouldRebuildEveryVersion_fromClosestLaterSnapshotOrCurrentNote() {
+        Note current = storeVersionsUpTo(8);
+        when(noteRevisionRepository.findByNoteIdAndVersionGreaterThanEqualOrderByVersionAsc(eq("generatedId1"), anyLong()))
+                .thenAnswer(invocation -> storedRevisions.stream().filter(revision -> revision.getVersion() >= invocation.<Long>getArgument(1)));
+
+        List<Note> rebuiltNotes = new ArrayList<>();
+        for (long version = 0; version <= 8; version++) {
+            rebuiltNotes.add(trackerUnderTest.rebuild(current, version));
+        }
+
+        SoftAssertions.assertSoftly(softly -> {
+            for (int version = 0; version <= 8; version++) {
+                Note expectedNote = versionOf(version);
+                softly.assertThat(rebuiltNotes.get(version)).as("Version " + version)
+                        .extracting(Note::getContent, Note::getVersion, Note::getDateOfModification)
+                        .containsExactly(expectedNote.getContent(), (long) version, expectedNote.getDateOfModification());
+            }
+        });
+    }
+
+    @Test
+    void rebuild_shouldReturnNull_whenVersionIsMissingOrUnknown() {
+        Note current = storeVersionsUpTo(5);
+        storedRevisions.removeIf(revision -> revision.getVersion() == 4);
+        when(noteRevisionRepository.findByNoteIdAndVersionGreaterThanEqualOrderByVersionAsc(eq("generatedId1"), anyLong()))
+                .thenAnswer(invocation -> storedRevisions.stream().filter(revision -> revision.getVersion() >= invocation.<Long>getArgument(1)));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(trackerUnderTest.rebuild(current, 4)).as("Missing version").isNull();
+            softly.assertThat(trackerUnderTest.rebuild(current, 3)).as("Snapshot before missing version").isNotNull();
+            softly.assertThat(trackerUnderTest.rebuild(current, 6)).as("Future version").isNull();
+        });
+    }
+
+    // ========================================================================
+
+    private Note versionOf(int version) {
+        String content = "Patient reports " + "episodes of dizziness. ".repeat(3)
+                + SYMPTOMS.subList(0, version + 1).stream().collect(Collectors.joining(", "))
+                + ". Checked on visit " + version + ".";
+        return new Note("generatedId1", 1, creationDate, creationDate.plusDays(version), content, "english", (long) version);
+    }
+
+    private Note storeVersionsUpTo(int currentVersion) {
+        when(noteRevisionRepository.insert(any(NoteRevision.class))).thenAnswer(invocation -> {
+            storedRevisions.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        for (int version = 0; version < currentVersion; version++) {
+            trackerUnderTest.noteUpdated(versionOf(version), versionOf(version + 1));
+        }
+        return versionOf(currentVersion);
+    }
+
+}
@@ -1,23 +1,57 @@
 package com.mediscreen.patientHistory.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediscreen.patientHistory.constants.DiabetesTerminology;
 import com.mediscreen.patientHistory.exception.DataNotFoundException;
+import com.mediscreen.patientHistory.exception.IndexNotReadyException;
+import com.mediscreen.patientHistory.exception.InvalidRequestParameterException;
+import com.mediscreen.patientHistory.exception.StaleNoteVersionException;
 import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NoteBulkReport;
+import com.mediscreen.patientHistory.model.NoteDraft;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NotePatch;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.model.NoteSearchCriteria;
+import com.mediscreen.patientHistory.model.NoteSearchPage;
+import com.mediscreen.patientHistory.model.PatientCohort;
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import com.mediscreen.patientHistory.model.PatientTriggerTerms;
 import com.mediscreen.patientHistory.repository.NoteRepository;
+import com.mediscreen.patientHistory.repository.NoteRepositoryCustom;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.roaringbitmap.RoaringBitmap;
+
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForClassTypes.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.assertj.core.groups.Tuple.tuple;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -30,6 +64,22 @@ public class NoteServiceImplTest {
     private NoteServiceImpl serviceUnderTest;
     @Mock
     private NoteRepository noteRepository;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    @Mock
+    private TermCohortIndex termCohortIndex;
+    @Mock
+    private PatientNoteSummaryTracker summaryTracker;
+    @Mock
+    private NoteRevisionTracker revisionTracker;
+    @Mock
+    private NoteDraftBuffer draftBuffer;
+    @Spy
+    private PatientNotesCache patientNotesCache = new PatientNotesCache(new SimpleMeterRegistry(), true, 1_000_000);
+    @Captor
+    private ArgumentCaptor<Map<String, String>> regexByTerm;
 
     private final LocalDateTime creationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
     private final LocalDateTime modificationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
@@ -50,6 +100,103 @@ public class NoteServiceImplTest {
                 .isNotNull()
                 .usingRecursiveComparison().isEqualTo(note1));
         verify(noteRepository).insert(noteToSave);
+        verify(summaryTracker).noteCreated(note1);
+        verify(termCohortIndex).addNote(note1);
+    }
+
+    @Test
+    void createNote_shouldDiscardDraftOfNote() {
+        Note noteToSave = new Note(1, creationDate, modificationDate, "Recommendation made to patient 1");
+        when(noteRepository.insert(any(Note.class))).thenReturn(note1);
+
+        serviceUnderTest.createNote(noteToSave, "new-1-form");
+
+        verify(draftBuffer).discard("new-1-form");
+    }
+
+    @Test
+    void createNote_shouldReturnCreatedNote_whenDraftCannotBeDeleted() {
+        Note noteToSave = new Note(1, creationDate, modificationDate, "Recommendation made to patient 1");
+        when(noteRepository.insert(any(Note.class))).thenReturn(note1);
+        doThrow(new DataAccessResourceFailureException("Connection refused")).when(draftBuffer).discard("new-1-form");
+
+        Note result = serviceUnderTest.createNote(noteToSave, "new-1-form");
+
+        assertThat(result).as("Note saved in database").isEqualTo(note1);
+    }
+
+    // === TEST CREATE BATCH OF NOTES OPERATION ===============================
+    @Test
+    void createNotes_shouldKeepGivenDatesAndReturnIdOfEachNote() {
+        LocalDateTime importedDate = LocalDateTime.of(2015, 3, 2, 14, 45);
+        Note importedNote = new Note(1, importedDate, null, "Imported recommendation");
+        Note noteWithoutDate = new Note(2, null, null, "Recommendation without date");
+        when(noteRepository.bulkInsert(anyList())).thenReturn(Map.of());
+
+        NoteBulkReport result = serviceUnderTest.createNotes(Arrays.asList(importedNote, noteWithoutDate));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getInsertedCount()).as("Inserted notes").isEqualTo(2);
+            softly.assertThat(result.getRejectedCount()).as("Rejected notes").isZero();
+            softly.assertThat(result.getResults()).as("Results of notes").hasSize(2)
+                    .allMatch(noteResult -> noteResult.isInserted() && noteResult.getId() != null && noteResult.getError() == null);
+            softly.assertThat(result.getResults().get(0).getId()).as("Id of first note").isEqualTo(importedNote.getId());
+            softly.assertThat(importedNote.getDateOfCreation()).as("Imported date of creation").isEqualTo(importedDate);
+            softly.assertThat(importedNote.getDateOfModification()).as("Imported date of modification").isEqualTo(importedDate);
+            softly.assertThat(noteWithoutDate.getDateOfCreation()).as("Date of creation of note without date").isNotNull();
+        });
+        verify(noteRepository).bulkInsert(Arrays.asList(importedNote, noteWithoutDate));
+    }
+
+    @Test
+    void createNotes_shouldReportInvalidAndFailedNotesAtTheirPosition() {
+        Note invalidNote = new Note(null, creationDate, modificationDate, " ");
+        Note duplicateNote = new Note("64a1f0c2e4b0a1b2c3d4e5f6", 1, creationDate, modificationDate, "Recommendation made to patient 1");
+        Note validNote = new Note(2, creationDate, modificationDate, "Recommendation made to patient 2");
+        // Repository positions are the ones of the valid notes only
+        when(noteRepository.bulkInsert(anyList())).thenReturn(Map.of(0, "E11000 duplicate key error"));
+
+        NoteBulkReport result = serviceUnderTest.createNotes(Arrays.asList(invalidNote, duplicateNote, validNote));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getInsertedCount()).as("Inserted notes").isEqualTo(1);
+            softly.assertThat(result.getRejectedCount()).as("Rejected notes").isEqualTo(2);
+            softly.assertThat(result.getResults().get(0).getError()).as("Error of invalid note")
+                    .contains("Patient Id is mandatory.", "Content is mandatory.");
+            softly.assertThat(result.getResults().get(1).getError()).as("Error of duplicate note").contains("duplicate key");
+            softly.assertThat(result.getResults().get(1).getId()).as("Id of duplicate note").isNull();
+            softly.assertThat(result.getResults().get(2).isInserted()).as("Valid note inserted").isTrue();
+        });
+        verify(noteRepository).bulkInsert(Arrays.asList(duplicateNote, validNote));
+        verify(summaryTracker).notesCreated(List.of(validNote));
+    }
+
+    @Test
+    void createNotes_shouldRejectNote_whenIdIsNotObjectId() {
+        Note noteWithInvalidId = new Note("legacy-42", 1, creationDate, modificationDate, "Imported recommendation");
+        Note validNote = new Note(2, creationDate, modificationDate, "Recommendation made to patient 2");
+        when(noteRepository.bulkInsert(anyList())).thenReturn(Map.of());
+
+        NoteBulkReport result = serviceUnderTest.createNotes(Arrays.asList(noteWithInvalidId, validNote));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getInsertedCount()).as("Inserted notes").isEqualTo(1);
+            softly.assertThat(result.getResults().get(0).isInserted()).as("Note with invalid id inserted").isFalse();
+            softly.assertThat(result.getResults().get(0).getError()).as("Error of note with invalid id").contains("ObjectId");
+        });
+        verify(noteRepository).bulkInsert(List.of(validNote));
+    }
+
+    @Test
+    void createNotes_shouldNotCallDatabase_whenNoNoteIsValid() {
+        NoteBulkReport result = serviceUnderTest.createNotes(Arrays.asList(new Note(null, null, null, null), null));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getInsertedCount()).as("Inserted notes").isZero();
+            softly.assertThat(result.getRejectedCount()).as("Rejected notes").isEqualTo(2);
+            softly.assertThat(result.getResults().get(1).getError()).as("Error of missing note").isEqualTo("Note is mandatory.");
+        });
+        verify(noteRepository, times(0)).bulkInsert(anyList());
     }
 
     // === TEST READ ALL BY PATIENT ID OPERATION ==============================
@@ -58,7 +205,7 @@ public class NoteServiceImplTest {
         Integer patientId = 2;
         when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(anyInt())).thenReturn(new ArrayList<>());
 
-        List<Note> result = serviceUnderTest.readAllNotesByPatientId(patientId);
+        List<Note> result = serviceUnderTest.readAllNotesByPatientId(patientId, false);
 
         SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Notes found from database")
                 .isNotNull()
@@ -72,7 +219,7 @@ public class NoteServiceImplTest {
         List<Note> expectedNotesList = Arrays.asList(note2, note3);
         when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(anyInt())).thenReturn(expectedNotesList);
 
-        List<Note> result = serviceUnderTest.readAllNotesByPatientId(patientId);
+        List<Note> result = serviceUnderTest.readAllNotesByPatientId(patientId, false);
 
         SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Notes found from database")
                 .isNotNull()
@@ -82,6 +229,382 @@ public class NoteServiceImplTest {
         verify(noteRepository).findAllByPatientIdOrderByDateOfCreationDesc(patientId);
     }
 
+    @Test
+    void readAllNotesByPatientId_shouldReturnWrittenNote_whenReadLandsWhileSummaryIsUpdated() {
+        Note createdNote = new Note("generatedId4", 2, creationDate, modificationDate, "Recommendation C made to patient 2");
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(2))
+                .thenReturn(Arrays.asList(note2, note3))
+                .thenReturn(Arrays.asList(createdNote, note2, note3));
+        when(noteRepository.insert(any(Note.class))).thenReturn(createdNote);
+        List<List<Note>> readsDuringSummaryUpdate = new ArrayList<>();
+        // The summary gives the notes their new ETag, so a read made meanwhile must already get the new notes
+        doAnswer(invocation -> readsDuringSummaryUpdate.add(serviceUnderTest.readAllNotesByPatientId(2, false)))
+                .when(summaryTracker).noteCreated(createdNote);
+
+        serviceUnderTest.readAllNotesByPatientId(2, false);
+        serviceUnderTest.createNote(new Note(2, null, null, "Recommendation C made to patient 2"));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(readsDuringSummaryUpdate).as("Notes read while summary is updated")
+                .containsExactly(List.of(createdNote, note2, note3)));
+    }
+
+    @Test
+    void readAllNotesByPatientId_shouldReadDatabaseOnlyOnce_untilNoteOfPatientIsWritten() {
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(2)).thenReturn(Arrays.asList(note2, note3));
+        when(noteRepository.insert(any(Note.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        serviceUnderTest.readAllNotesByPatientId(2, false);
+        List<Note> cachedResult = serviceUnderTest.readAllNotesByPatientId(2, false);
+        serviceUnderTest.createNote(new Note(1, null, null, "Recommendation made to patient 1"));
+        serviceUnderTest.readAllNotesByPatientId(2, false);
+        serviceUnderTest.createNote(new Note(2, null, null, "Recommendation C made to patient 2"));
+        serviceUnderTest.readAllNotesByPatientId(2, false);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(cachedResult).as("Notes served from cache").containsExactly(note2, note3);
+            softly.assertThat(patientNotesCache.stats().hitCount()).as("Cache hits").isEqualTo(2);
+        });
+        verify(noteRepository, times(2)).findAllByPatientIdOrderByDateOfCreationDesc(2);
+    }
+
+    @Test
+    void readAllNotesByPatientId_shouldMergeArchivedNotes_whenFullHistoryIsAsked() {
+        Note latestNote = new Note("generatedId4", 2, creationDate.plusYears(2), modificationDate.plusYears(2), "Recommendation C made to patient 2");
+        Note archivedNote = new Note("generatedId5", 2, creationDate.minusYears(2), modificationDate.minusYears(2), "Recommendation made to patient 2");
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(2)).thenReturn(Arrays.asList(latestNote, note3));
+        // The archive still holds a copy of a note being moved
+        when(noteRepository.findArchivedByPatientId(2)).thenReturn(Arrays.asList(note3, archivedNote));
+
+        List<Note> hotNotes = serviceUnderTest.readAllNotesByPatientId(2, false);
+        List<Note> allNotes = serviceUnderTest.readAllNotesByPatientId(2, true);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(hotNotes).as("Hot notes").containsExactly(latestNote, note3);
+            softly.assertThat(allNotes).as("Notes of full history").containsExactly(latestNote, note3, archivedNote);
+        });
+        verify(noteRepository).findAllByPatientIdOrderByDateOfCreationDesc(2);
+        verify(noteRepository).findArchivedByPatientId(2);
+    }
+
+    // === TEST READ PROJECTED BY PATIENT ID OPERATION ========================
+    @Test
+    void readNotesByPatientId_shouldReadProjectedNotesOfBothTiers_andTruncateInflatedContents() {
+        NoteProjection projection = new NoteProjection(List.of("id", "content"), 14);
+        Note recentNote = new Note("generatedId4", 2, creationDate.plusYears(2), modificationDate, "Recommendation");
+        // A compressed content is read whole, the database being unable to cut it
+        Note compressedNote = new Note("generatedId5", 2, creationDate, modificationDate, "Recommendation made to patient 2 ".repeat(100));
+        when(noteRepository.findProjectedByPatientId(2, projection)).thenReturn(new ArrayList<>(List.of(recentNote)));
+        when(noteRepository.findArchivedProjectedByPatientId(2, projection)).thenReturn(List.of(compressedNote));
+
+        List<Note> result = serviceUnderTest.readNotesByPatientId(2, projection, true, false);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Projected notes")
+                .extracting(Note::getId, Note::getContent, Note::getPatientId, Note::getDateOfCreation, Note::getDateOfModification)
+                .containsExactly(tuple("generatedId4", "Recommendation", null, null, null),
+                        tuple("generatedId5", "Recommendation", null, null, null)));
+        verify(noteRepository, never()).findAllByPatientIdOrderByDateOfCreationDesc(anyInt());
+    }
+
+    @Test
+    void readNotesByPatientId_shouldReadCachedWholeNotes_whenNoProjectionIsAsked() {
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(2)).thenReturn(Arrays.asList(note2, note3));
+
+        List<Note> result = serviceUnderTest.readNotesByPatientId(2, NoteProjection.WHOLE, false, false);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Whole notes").containsExactly(note2, note3));
+        verify(noteRepository, never()).findProjectedByPatientId(anyInt(), any());
+    }
+
+    @Test
+    void readNotesByPatientId_shouldThrowAnException_whenFieldIsUnknownOrPreviewIsNotPositive() {
+        Throwable unknownField = catchThrowable(() -> serviceUnderTest.readNotesByPatientId(2, new NoteProjection(List.of("id", "password"), null), false, false));
+        Throwable negativePreview = catchThrowable(() -> serviceUnderTest.readNotesByPatientId(2, new NoteProjection(null, 0), false, false));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(unknownField).as("Unknown field").isInstanceOf(InvalidRequestParameterException.class)
+                    .hasMessageContaining("password");
+            softly.assertThat(negativePreview).as("Preview of 0 characters").isInstanceOf(InvalidRequestParameterException.class);
+        });
+        verifyNoInteractions(noteRepository);
+    }
+
+    // === TEST READ PAGE BY PATIENT ID OPERATION =============================
+    @Test
+    void readNotesPageByPatientId_shouldReturnFirstPageWithCursor_whenMoreNotesThanSizeExist() {
+        Note noteA = new Note("64a7f0e1c2b3a4d5e6f70801", 2, creationDate.plusDays(2), modificationDate, "Recommendation A made to patient 2");
+        Note noteB = new Note("64a7f0e1c2b3a4d5e6f70802", 2, creationDate.plusDays(1), modificationDate, "Recommendation B made to patient 2");
+        Note noteC = new Note("64a7f0e1c2b3a4d5e6f70803", 2, creationDate, modificationDate, "Recommendation C made to patient 2");
+        when(noteRepository.findPageByPatientId(anyInt(), any(), any(), anyInt(), any())).thenReturn(Arrays.asList(noteA, noteB, noteC));
+
+        NotePage result = serviceUnderTest.readNotesPageByPatientId(2, null, 2, false, NoteProjection.WHOLE, false);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getNotes()).as("Notes of the page").containsExactly(noteA, noteB);
+            softly.assertThat(result.isHasMore()).as("More notes available").isTrue();
+            softly.assertThat(result.getNextCursor()).as("Next cursor").isNotBlank();
+        });
+        verify(noteRepository).findPageByPatientId(2, null, null, 3, NoteProjection.WHOLE);
+    }
+
+    @Test
+    void readNotesPageByPatientId_shouldResumeAfterLastNoteOfPreviousPage_whenCursorIsGiven() {
+        Note noteB = new Note("64a7f0e1c2b3a4d5e6f70802", 2, creationDate.plusDays(1), modificationDate, "Recommendation B made to patient 2");
+        Note noteC = new Note("64a7f0e1c2b3a4d5e6f70803", 2, creationDate, modificationDate, "Recommendation C made to patient 2");
+        when(noteRepository.findPageByPatientId(anyInt(), any(), any(), anyInt(), any()))
+                .thenReturn(Arrays.asList(noteB, noteC))
+                .thenReturn(List.of(noteC));
+
+        NotePage firstPage = serviceUnderTest.readNotesPageByPatientId(2, null, 1, false, NoteProjection.WHOLE, false);
+        NotePage secondPage = serviceUnderTest.readNotesPageByPatientId(2, firstPage.getNextCursor(), 1, false, NoteProjection.WHOLE, false);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(secondPage.getNotes()).as("Notes of the second page").containsExactly(noteC);
+            softly.assertThat(secondPage.isHasMore()).as("More notes available").isFalse();
+            softly.assertThat(secondPage.getNextCursor()).as("Next cursor").isNull();
+        });
+        verify(noteRepository).findPageByPatientId(2, noteB.getDateOfCreation(), noteB.getId(), 2, NoteProjection.WHOLE);
+    }
+
+    @Test
+    void readNotesPageByPatientId_shouldPageThroughBothCollections_whenFullHistoryIsAsked() {
+        Note noteA = new Note("64a7f0e1c2b3a4d5e6f70801", 2, creationDate.plusDays(2), modificationDate, "Recommendation A made to patient 2");
+        Note noteB = new Note("64a7f0e1c2b3a4d5e6f70802", 2, creationDate.plusDays(1), modificationDate, "Recommendation B made to patient 2");
+        Note noteC = new Note("64a7f0e1c2b3a4d5e6f70803", 2, creationDate, modificationDate, "Recommendation C made to patient 2");
+        when(noteRepository.findPageByPatientId(2, null, null, 3, NoteProjection.WHOLE)).thenReturn(Arrays.asList(noteA, noteC));
+        when(noteRepository.findArchivedPageByPatientId(2, null, null, 3, NoteProjection.WHOLE)).thenReturn(List.of(noteB));
+
+        NotePage result = serviceUnderTest.readNotesPageByPatientId(2, null, 2, true, NoteProjection.WHOLE, false);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getNotes()).as("Notes of the page").containsExactly(noteA, noteB);
+            softly.assertThat(result.isHasMore()).as("More notes available").isTrue();
+            softly.assertThat(NoteCursor.decode(result.getNextCursor()).getNoteId()).as("Note of the next cursor").isEqualTo(noteB.getId());
+        });
+    }
+
+    @Test
+    void readNotesPageByPatientId_shouldMakeCursorOfNextPage_whenProjectionLeavesOutItsFields() {
+        NoteProjection projection = new NoteProjection(List.of("content"), 100);
+        Note noteA = new Note("64a7f0e1c2b3a4d5e6f70801", null, creationDate.plusDays(1), null, "Recommendation A made to patient 2");
+        Note noteB = new Note("64a7f0e1c2b3a4d5e6f70802", null, creationDate, null, "Recommendation B made to patient 2");
+        when(noteRepository.findPageByPatientId(2, null, null, 2, projection)).thenReturn(new ArrayList<>(List.of(noteA, noteB)));
+
+        NotePage result = serviceUnderTest.readNotesPageByPatientId(2, null, 1, false, projection, false);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getNotes()).as("Projected notes of the page")
+                    .extracting(Note::getId, Note::getDateOfCreation, Note::getContent)
+                    .containsExactly(tuple(null, null, "Recommendation A made to patient 2"));
+            softly.assertThat(NoteCursor.decode(result.getNextCursor()).getNoteId()).as("Note of the next cursor").isEqualTo("64a7f0e1c2b3a4d5e6f70801");
+        });
+    }
+
+    @Test
+    void readNotesPageByPatientId_shouldReadBothCollectionsFromSecondaries_whenSecondaryIsOk() {
+        NoteRepositoryCustom secondaryReads = mock(NoteRepositoryCustom.class);
+        when(noteRepository.fromSecondaries()).thenReturn(secondaryReads);
+        when(secondaryReads.findPageByPatientId(2, null, null, 3, NoteProjection.WHOLE)).thenReturn(List.of(note2));
+        when(secondaryReads.findArchivedPageByPatientId(2, null, null, 3, NoteProjection.WHOLE)).thenReturn(List.of(note3));
+
+        NotePage result = serviceUnderTest.readNotesPageByPatientId(2, null, 2, true, NoteProjection.WHOLE, true);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result.getNotes()).as("Notes of the page").containsExactlyInAnyOrder(note2, note3));
+        verify(noteRepository, never()).findPageByPatientId(anyInt(), any(), any(), anyInt(), any());
+        verify(noteRepository, never()).findArchivedPageByPatientId(anyInt(), any(), any(), anyInt(), any());
+    }
+
+    @Test
+    void readNotesPageByPatientId_shouldThrowAnException_whenCursorIsInvalid() {
+        Throwable result = catchThrowable(() -> serviceUnderTest.readNotesPageByPatientId(2, "not-a-cursor", 20, false, NoteProjection.WHOLE, false));
+
+        assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("Invalid notes cursor");
+        verify(noteRepository, times(0)).findPageByPatientId(anyInt(), any(), any(), anyInt(), any());
+    }
+
+    // === TEST READ BY PATIENT ID AND DATE RANGE OPERATION ===================
+    @Test
+    void readNotesByPatientIdAndDateRange_shouldReadWholeDaysOfRangeFromBothTiers_whenFullHistoryIsAsked() {
+        Note recentNote = new Note("64a7f0e1c2b3a4d5e6f70801", 2, creationDate, modificationDate, "Recommendation A made to patient 2");
+        Note archivedNote = new Note("64a7f0e1c2b3a4d5e6f70802", 2, creationDate.minusDays(3), modificationDate, "Recommendation B made to patient 2");
+        LocalDateTime start = LocalDateTime.of(2022, 12, 1, 0, 0);
+        LocalDateTime end = LocalDateTime.of(2023, 1, 1, 0, 0);
+        when(noteRepository.findByPatientIdAndDateOfCreationRange(2, start, end)).thenReturn(List.of(recentNote));
+        when(noteRepository.findArchivedByPatientIdAndDateOfCreationRange(2, start, end)).thenReturn(List.of(archivedNote));
+
+        List<Note> result = serviceUnderTest.readNotesByPatientIdAndDateRange(2, LocalDate.of(2022, 12, 1), LocalDate.of(2022, 12, 31), true, false);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Notes of range").containsExactly(recentNote, archivedNote));
+        verify(noteRepository, never()).findAllByPatientIdOrderByDateOfCreationDesc(anyInt());
+    }
+
+    @Test
+    void readNotesByPatientIdAndDateRange_shouldLeaveBoundOpen_whenDateIsNotGiven() {
+        when(noteRepository.findByPatientIdAndDateOfCreationRange(2, null, LocalDateTime.of(2023, 1, 1, 0, 0))).thenReturn(List.of(note2));
+
+        List<Note> result = serviceUnderTest.readNotesByPatientIdAndDateRange(2, null, LocalDate.of(2022, 12, 31), false, false);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Notes of range").containsExactly(note2));
+        verify(noteRepository, never()).findArchivedByPatientIdAndDateOfCreationRange(any(), any(), any());
+    }
+
+    @Test
+    void readNotesByPatientIdAndDateRange_shouldThrowAnException_whenStartIsAfterEnd() {
+        Throwable result = catchThrowable(() -> serviceUnderTest.readNotesByPatientIdAndDateRange(2, LocalDate.of(2023, 1, 2), LocalDate.of(2023, 1, 1), false, false));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("Start of the date range"));
+        verifyNoInteractions(noteRepository);
+    }
+
+    // === TEST SEARCH BY TEXT OPERATION ======================================
+    @Test
+    void searchNotes_shouldReturnPageOfMatchingNotesFromSecondaries_whenMoreNotesMatch() {
+        NoteSearchCriteria criteria = searchCriteria("microalbumin", "english");
+        criteria.setFrom(LocalDate.of(2022, 1, 1));
+        criteria.setTo(LocalDate.of(2022, 12, 31));
+        NoteRepositoryCustom secondaryReads = mock(NoteRepositoryCustom.class);
+        when(noteRepository.fromSecondaries()).thenReturn(secondaryReads);
+        when(secondaryReads.searchByText(criteria, 4, 3)).thenReturn(new ArrayList<>(Arrays.asList(note1, note2, note3)));
+
+        NoteSearchPage result = serviceUnderTest.searchNotes(criteria, 2, 2);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getNotes()).as("Notes of the page").containsExactly(note1, note2);
+            softly.assertThat(result.getPage()).as("Number of the page").isEqualTo(2);
+            softly.assertThat(result.isHasMore()).as("More notes available").isTrue();
+        });
+        verify(secondaryReads).searchByText(criteria, 4, 3);
+        verify(noteRepository, never()).searchByText(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void searchNotes_shouldThrowAnException_whenSearchedTextIsBlank() {
+        Throwable result = catchThrowable(() -> serviceUnderTest.searchNotes(searchCriteria(" ", null), 0, 20));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("Searched text is mandatory"));
+        verify(noteRepository, times(0)).searchByText(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void searchNotes_shouldThrowAnException_whenLanguageIsNotSupported() {
+        Throwable result = catchThrowable(() -> serviceUnderTest.searchNotes(searchCriteria("microalbumin", "german"), 0, 20));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("Language must be one of"));
+        verify(noteRepository, times(0)).searchByText(any(), anyLong(), anyInt());
+    }
+
+    // === TEST READ COHORT BY TRIGGER TERMS OPERATION ========================
+    @Test
+    void readCohortByTriggerTerms_shouldReturnIdsOfPatientsUpToLimit() {
+        when(termCohortIndex.isReady()).thenReturn(true);
+        when(termCohortIndex.findPatients(Set.of(DiabetesTerminology.SMOKER, DiabetesTerminology.CHOLESTEROL), Set.of()))
+                .thenReturn(RoaringBitmap.bitmapOf(3, 8, 12));
+
+        PatientCohort result = serviceUnderTest.readCohortByTriggerTerms(List.of("Smoker", "CHOLESTEROL"), List.of(), 2);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getCount()).as("Number of patients").isEqualTo(3);
+            softly.assertThat(result.getPatientIds()).as("Ids of patients").containsExactly(3, 8);
+            softly.assertThat(result.isTruncated()).as("Ids left out").isTrue();
+        });
+    }
+
+    @Test
+    void readCohortByTriggerTerms_shouldThrowAnException_whenTermIsUnknown() {
+        when(termCohortIndex.isReady()).thenReturn(true);
+
+        Throwable result = catchThrowable(() -> serviceUnderTest.readCohortByTriggerTerms(List.of("Smoker"), List.of("Unknown"), 10));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("Unknown trigger term"));
+        verify(termCohortIndex, times(0)).findPatients(anyCollection(), anyCollection());
+    }
+
+    @Test
+    void countCohortByTriggerTerms_shouldThrowAnException_whenIndexIsNotReady() {
+        when(termCohortIndex.isReady()).thenReturn(false);
+
+        Throwable result = catchThrowable(() -> serviceUnderTest.countCohortByTriggerTerms(List.of("Smoker"), List.of()));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(IndexNotReadyException.class));
+        verify(termCohortIndex, times(0)).countPatients(anyCollection(), anyCollection());
+    }
+
+    // === TEST EXPORT BY PATIENT ID OPERATION ================================
+    @Test
+    void exportNotesByPatientId_shouldWriteOneNotePerLine() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        when(noteRepository.streamByPatientId(2)).thenReturn(Stream.of(note2, note3));
+
+        long result = serviceUnderTest.exportNotesByPatientId(2, false, output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n", -1);
+        Note firstExportedNote = objectMapper.readValue(lines[0], Note.class);
+        Note secondExportedNote = objectMapper.readValue(lines[1], Note.class);
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("Number of exported notes").isEqualTo(2);
+            softly.assertThat(lines).as("Exported lines").hasSize(3);
+            softly.assertThat(firstExportedNote).as("First exported note").usingRecursiveComparison().isEqualTo(note2);
+            softly.assertThat(secondExportedNote).as("Second exported note").usingRecursiveComparison().isEqualTo(note3);
+            softly.assertThat(lines[2]).as("End of the export").isEmpty();
+        });
+    }
+
+    @Test
+    void exportNotesByPatientId_shouldWriteNothing_whenThereIsNoNote() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        when(noteRepository.streamByPatientId(null)).thenReturn(Stream.empty());
+
+        long result = serviceUnderTest.exportNotesByPatientId(null, false, output);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("Number of exported notes").isZero();
+            softly.assertThat(output.size()).as("Exported bytes").isZero();
+        });
+    }
+
+    @Test
+    void exportNotesByPatientId_shouldMergeArchivedNotesById_whenFullHistoryOfAllPatientsIsAsked() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        when(noteRepository.streamByPatientId(null)).thenReturn(Stream.of(note1, note3));
+        when(noteRepository.streamArchivedByPatientId(null)).thenReturn(Stream.of(note2));
+
+        long result = serviceUnderTest.exportNotesByPatientId(null, true, output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("Number of exported notes").isEqualTo(3);
+            softly.assertThat(lines).as("Exported lines").hasSize(3);
+            softly.assertThat(lines[1]).as("Second exported note").contains(note2.getId());
+        });
+    }
+
+    @Test
+    void exportNotesByPatientId_shouldCloseDatabaseCursor_whenOutputFails() {
+        List<String> closedStreams = new ArrayList<>();
+        when(noteRepository.streamByPatientId(2)).thenReturn(Stream.of(note2, note3).onClose(() -> closedStreams.add("notes")));
+        OutputStream brokenOutput = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset by peer");
+            }
+        };
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThatThrownBy(() -> serviceUnderTest.exportNotesByPatientId(2, false, brokenOutput)).isInstanceOf(IOException.class);
+            softly.assertThat(closedStreams).as("Closed database cursors").containsExactly("notes");
+        });
+    }
+
     // === TEST READ ONE BY ID OPERATION ======================================
     @Test
     void readNoteById_shouldReturnTheNoteWithTheGivenId_whenGivenIdIsPresentInDatabase() {
@@ -111,65 +634,251 @@ public class NoteServiceImplTest {
         verify(noteRepository).findById(unknownNoteId);
     }
 
+    @Test
+    void readNoteById_shouldReturnArchivedNote_whenNoteIsNoLongerHot() {
+        when(noteRepository.findById("generatedId1")).thenReturn(Optional.empty());
+        when(noteRepository.findArchivedById("generatedId1")).thenReturn(note1);
+
+        Note result = serviceUnderTest.readNoteById("generatedId1");
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Archived note").isEqualTo(note1));
+    }
+
+    // === TEST READ REVISIONS OPERATION ======================================
+    @Test
+    void readNoteRevision_shouldReturnRebuiltNote_whenVersionIsKept() {
+        Note currentNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation updated", null, 2L);
+        Note rebuiltNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation made to patient 1", null, 1L);
+        when(noteRepository.findById("generatedId1")).thenReturn(Optional.of(currentNote));
+        when(revisionTracker.rebuild(currentNote, 1L)).thenReturn(rebuiltNote);
+
+        Note result = serviceUnderTest.readNoteRevision("generatedId1", 1L);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Rebuilt note").isEqualTo(rebuiltNote));
+    }
+
+    @Test
+    void readNoteRevision_shouldThrowAnException_whenVersionIsNotKept() {
+        when(noteRepository.findById("generatedId1")).thenReturn(Optional.of(note1));
+        when(revisionTracker.rebuild(note1, 7L)).thenReturn(null);
+
+        Throwable result = catchThrowable(() -> serviceUnderTest.readNoteRevision("generatedId1", 7L));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(DataNotFoundException.class)
+                .hasMessageContaining("Revision not found"));
+    }
+
+    @Test
+    void readRevisionsByNoteId_shouldThrowAnException_whenNoteIsNotPresentInDatabase() {
+        when(noteRepository.findById("unknownId")).thenReturn(Optional.empty());
+
+        Throwable result = catchThrowable(() -> serviceUnderTest.readRevisionsByNoteId("unknownId"));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(DataNotFoundException.class)
+                .hasMessageContaining("Note not found"));
+        verifyNoInteractions(revisionTracker);
+    }
+
     // === TEST UPDATE NOTE OPERATION =========================================
     @Test
     void updateNote_shouldReturnUpdatedNote_whenGivenIdIsPresentInDatabase() {
-        LocalDateTime modificationDateUpdated = LocalDateTime.of(2022, 12, 31, 18, 20);
-        Note noteToUpdate = new Note("generatedId1", 1, creationDate, modificationDateUpdated, "Recommendation updated");
-        Note noteUpdated = new Note("generatedId1", 1, creationDate, modificationDateUpdated, "Recommendation updated");
-        String noteId = note1.getId();
-        when(noteRepository.findById(anyString())).thenReturn(Optional.of(note1));
-        when(noteRepository.save(any(Note.class))).thenReturn(noteUpdated);
+        Note noteToUpdate = new Note(null, 2, null, null, "Recommendation updated", null, 3L);
+        Note previousNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation made to patient 1", "french", 3L);
+        when(noteRepository.updateFields(eq("generatedId1"), eq(3L), eq(2), eq("Recommendation updated"), isNull(), any(LocalDateTime.class)))
+                .thenReturn(previousNote);
 
-        Note result = serviceUnderTest.updateNote(noteId, noteToUpdate);
+        Note result = serviceUnderTest.updateNote("generatedId1", noteToUpdate);
 
-        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Patient updated")
-                .isNotNull()
-                .isEqualTo(noteUpdated));
-        verify(noteRepository).findById(noteId);
-        verify(noteRepository).save(noteToUpdate);
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("Note updated")
+                    .extracting(Note::getId, Note::getPatientId, Note::getDateOfCreation, Note::getContent, Note::getLanguage, Note::getVersion)
+                    .containsExactly("generatedId1", 2, creationDate, "Recommendation updated", "french", 4L);
+            softly.assertThat(result.getDateOfModification()).as("Date of modification").isAfter(modificationDate);
+        });
+        verify(noteRepository, never()).findById(anyString());
+        verify(noteRepository, never()).save(any(Note.class));
+        verify(summaryTracker).noteUpdated(previousNote, result);
+        verify(revisionTracker).noteUpdated(previousNote, result);
+        verify(patientNotesCache).invalidate(1);
+        verify(patientNotesCache).invalidate(2);
+        verify(termCohortIndex).refreshPatient(1);
+        verify(termCohortIndex).refreshPatient(2);
     }
 
     @Test
     void updateNote_shouldThrowAnException_whenGivenIdIsNotPresentInDatabase() {
         String unknownNoteId = "000";
-        when(noteRepository.findById(anyString())).thenReturn(Optional.empty());
+        when(noteRepository.updateFields(eq(unknownNoteId), isNull(), anyInt(), anyString(), isNull(), any(LocalDateTime.class))).thenReturn(null);
 
         Throwable result = catchThrowable(() -> serviceUnderTest.updateNote(unknownNoteId, note1));
 
         SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
                 .isInstanceOf(DataNotFoundException.class)
                 .hasMessageContaining("Note not found"));
-        verify(noteRepository).findById(unknownNoteId);
-        verify(noteRepository, times(0)).save(note1);
+        verify(noteRepository, never()).existsById(anyString());
+        verifyNoInteractions(termCohortIndex);
+    }
+
+    @Test
+    void updateNote_shouldRestoreArchivedNoteBeforeUpdatingIt() {
+        Note noteToUpdate = new Note(null, 1, null, null, "Recommendation updated", null, 3L);
+        Note archivedNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation made to patient 1", null, 3L);
+        when(noteRepository.updateFields(eq("generatedId1"), eq(3L), eq(1), eq("Recommendation updated"), isNull(), any(LocalDateTime.class)))
+                .thenReturn(null)
+                .thenReturn(archivedNote);
+        when(noteRepository.restoreArchived("generatedId1")).thenReturn(archivedNote);
+
+        Note result = serviceUnderTest.updateNote("generatedId1", noteToUpdate);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Note updated")
+                .extracting(Note::getContent, Note::getVersion)
+                .containsExactly("Recommendation updated", 4L));
+        verify(summaryTracker).noteRestored(archivedNote);
+        verify(summaryTracker).noteUpdated(archivedNote, result);
+        verify(noteRepository, never()).existsById(anyString());
+    }
+
+    @Test
+    void updateNote_shouldThrowAnException_whenNoteIsNoLongerAtGivenVersion() {
+        Note staleNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation updated", null, 3L);
+        when(noteRepository.updateFields(eq("generatedId1"), eq(3L), anyInt(), anyString(), isNull(), any(LocalDateTime.class))).thenReturn(null);
+        when(noteRepository.existsById("generatedId1")).thenReturn(true);
+
+        Throwable result = catchThrowable(() -> serviceUnderTest.updateNote("generatedId1", staleNote));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(StaleNoteVersionException.class)
+                .hasMessageContaining("modified by someone else"));
+        verifyNoInteractions(termCohortIndex);
+    }
+
+    // === TEST PATCH NOTE OPERATION ==========================================
+    @Test
+    void patchNote_shouldUpdateOnlyGivenFields() {
+        Note previousNote = new Note("generatedId1", 1, creationDate, modificationDate, "Recommendation made to patient 1", null, 0L);
+        when(noteRepository.updateFields(eq("generatedId1"), eq(0L), isNull(), isNull(), eq("english"), any(LocalDateTime.class)))
+                .thenReturn(previousNote);
+
+        Note result = serviceUnderTest.patchNote("generatedId1", new NotePatch(null, "english", 0L));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Note patched")
+                .extracting(Note::getPatientId, Note::getContent, Note::getLanguage, Note::getVersion)
+                .containsExactly(1, "Recommendation made to patient 1", "english", 1L));
+        verify(termCohortIndex).refreshPatient(1);
+    }
+
+    // === TEST READ SUMMARIES OPERATION =======================================
+    @Test
+    void readSummariesByPatientIds_shouldReturnSummariesWithoutReadingNotes() {
+        List<PatientNoteSummary> summaries = List.of(new PatientNoteSummary(1, 3, modificationDate, 42L), new PatientNoteSummary(2, 0, null, 0));
+        when(summaryTracker.findSummaries(List.of(1, 2))).thenReturn(summaries);
+
+        List<PatientNoteSummary> result = serviceUnderTest.readSummariesByPatientIds(List.of(1, 2));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Summaries").isEqualTo(summaries));
+        verifyNoInteractions(noteRepository);
+    }
+
+    // === TEST READ TRIGGER TERMS OPERATION ===================================
+    @Test
+    void readTriggerTermsByPatientIds_shouldReturnTermsOfEachPatientInCatalogueOrder_lookingForFoldedDuplicatesOnce() {
+        when(noteRepository.findTermsByPatientIds(eq(List.of(1, 2, 3)), anyMap()))
+                .thenReturn(new HashMap<>(Map.of(1, Set.of("Smoker", "Reaction"), 2, Set.of("Reaction"))));
+        when(noteRepository.findCompressedByPatientIds(List.of(1, 2, 3))).thenReturn(List.of());
+
+        List<PatientTriggerTerms> result = serviceUnderTest.readTriggerTermsByPatientIds(List.of(1, 2, 3), List.of("Reaction", "Smoker", "RÉACTION"));
+
+        verify(noteRepository).findTermsByPatientIds(eq(List.of(1, 2, 3)), regexByTerm.capture());
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(regexByTerm.getValue()).as("Looked for terms").containsOnlyKeys("Reaction", "Smoker");
+            softly.assertThat(result).as("Terms of patients")
+                    .extracting(PatientTriggerTerms::getPatientId, PatientTriggerTerms::getTerms)
+                    .containsExactly(tuple(1, List.of("Reaction", "Smoker")), tuple(2, List.of("Reaction")), tuple(3, List.of()));
+        });
+    }
+
+    @Test
+    void readTriggerTermsByPatientIds_shouldMatchCompressedNotesInService_andUseDiabetesTerminologyByDefault() {
+        Note compressedNote = new Note("generatedId4", 2, creationDate, modificationDate, "Patient est FUMEUR, vertiges fréquents");
+        when(noteRepository.findTermsByPatientIds(eq(List.of(2)), anyMap())).thenReturn(new HashMap<>());
+        when(noteRepository.findCompressedByPatientIds(List.of(2))).thenReturn(List.of(compressedNote));
+
+        List<PatientTriggerTerms> result = serviceUnderTest.readTriggerTermsByPatientIds(List.of(2), null);
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result.get(0).getTerms()).as("Terms of compressed note")
+                .containsExactly("Fume", "Vertige"));
+    }
+
+    @Test
+    void readTriggerTermsByPatientIds_shouldThrowAnException_whenTermIsBlank() {
+        Throwable result = catchThrowable(() -> serviceUnderTest.readTriggerTermsByPatientIds(List.of(1), List.of("Smoker", " ")));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class));
+        verifyNoInteractions(noteRepository);
+    }
+
+    // === TEST READ NOTES ETAG OPERATION ======================================
+    @Test
+    void readNotesETagByPatientId_shouldDeriveETagFromSummaryWithoutReadingNotes() {
+        when(summaryTracker.findSummaries(List.of(1))).thenReturn(List.of(new PatientNoteSummary(1, 3, LocalDateTime.of(2023, 1, 2, 3, 4, 5), 42L)));
+        when(summaryTracker.findSummaries(List.of(2))).thenReturn(List.of(new PatientNoteSummary(2, 0, null, 0)));
+
+        String notesETag = serviceUnderTest.readNotesETagByPatientId(1);
+        String emptyNotesETag = serviceUnderTest.readNotesETagByPatientId(2);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(notesETag).as("ETag of notes").isEqualTo("3-0-185706fac88-2a");
+            softly.assertThat(emptyNotesETag).as("ETag of no notes").isEqualTo("0-0-0-0");
+        });
+        verifyNoInteractions(noteRepository);
     }
 
     // === TEST DELETE NOTE OPERATION =========================================
     @Test
     void deleteNote_shouldDeleteNote_whenGivenIdIsPresentInDatabase() {
         String noteId = note1.getId();
-        when(noteRepository.existsById(anyString())).thenReturn(true);
+        when(noteRepository.findById(anyString())).thenReturn(Optional.of(note1));
 
         serviceUnderTest.deleteNote(noteId);
 
-        verify(noteRepository).existsById(noteId);
+        verify(noteRepository).findById(noteId);
         verify(noteRepository).deleteById(noteId);
+        verify(summaryTracker).noteDeleted(note1);
+        verify(revisionTracker).noteDeleted(noteId);
+        verify(patientNotesCache).invalidate(note1.getPatientId());
+        verify(termCohortIndex).refreshPatient(note1.getPatientId());
     }
 
     @Test
     void deleteNote_shouldThrowAnException_whenGivenIdIsNotPresentInDatabase() {
         String unknownNoteId = "unknownId";
-        when(noteRepository.existsById(anyString())).thenReturn(false);
+        when(noteRepository.findById(anyString())).thenReturn(Optional.empty());
 
         Throwable result = catchThrowable(() -> serviceUnderTest.deleteNote(unknownNoteId));
 
         SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Thrown exception")
                 .isInstanceOf(DataNotFoundException.class)
                 .hasMessageContaining("Note not found"));
-        verify(noteRepository).existsById(unknownNoteId);
+        verify(noteRepository).findById(unknownNoteId);
         verify(noteRepository, times(0)).deleteById(unknownNoteId);
     }
 
+    @Test
+    void deleteNote_shouldDeleteArchivedNote_whenNoteIsNoLongerHot() {
+        when(noteRepository.findById("generatedId1")).thenReturn(Optional.empty());
+        when(noteRepository.deleteArchivedById("generatedId1")).thenReturn(note1);
+
+        serviceUnderTest.deleteNote("generatedId1");
+
+        verify(noteRepository, never()).deleteById(anyString());
+        verify(summaryTracker).archivedNoteDeleted(note1);
+        verify(summaryTracker, never()).noteDeleted(any(Note.class));
+        verify(termCohortIndex).refreshPatient(note1.getPatientId());
+    }
+
     // === TEST DELETE NOTES BY PATIENT ID OPERATION ==========================
     @Test
     void deleteNotesByPatientId_shouldDeleteNotesWithTheSamePatientId() {
@@ -178,5 +887,66 @@ public class NoteServiceImplTest {
         serviceUnderTest.deleteNotesByPatientId(patientId);
 
         verify(noteRepository).deleteAllByPatientId(patientId);
+        verify(noteRepository).deleteArchivedByPatientId(patientId);
+        verify(summaryTracker).patientDeleted(patientId);
+        verify(revisionTracker).patientDeleted(patientId);
+        verify(patientNotesCache).invalidate(patientId);
+        verify(termCohortIndex).removePatient(patientId);
+    }
+
+    // === TEST DRAFT OPERATIONS ==============================================
+    @Test
+    void saveDraft_shouldKeepDraftUnderGivenKeyWithoutWritingNote() {
+        NoteDraft draft = new NoteDraft(null, 1, "generatedId1", 3L, "Recommendation being typed", null, null);
+        when(draftBuffer.save(draft)).thenReturn(true);
+
+        NoteDraft result = serviceUnderTest.saveDraft("note-generatedId1", draft);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getId()).as("Key of draft").isEqualTo("note-generatedId1");
+            softly.assertThat(result.getDateOfModification()).as("Date of autosave").isNotNull();
+            softly.assertThat(result.getDateOfCreation()).as("Date of form when not given").isEqualTo(result.getDateOfModification());
+        });
+        verify(draftBuffer).save(draft);
+        verifyNoInteractions(noteRepository, summaryTracker, revisionTracker, termCohortIndex);
+    }
+
+    @Test
+    void saveDraft_shouldThrowAnException_whenKeyIsInvalid() {
+        NoteDraft draft = new NoteDraft(null, 1, null, null, "Recommendation being typed", null, null);
+
+        Throwable result = catchThrowable(() -> serviceUnderTest.saveDraft("new/1", draft));
+
+        assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("Draft id");
+        verify(draftBuffer, never()).save(any(NoteDraft.class));
+    }
+
+    @Test
+    void readDraft_shouldThrowAnException_whenDraftIsNotFound() {
+        when(draftBuffer.find("new-1")).thenReturn(null);
+
+        Throwable result = catchThrowable(() -> serviceUnderTest.readDraft("new-1"));
+
+        assertThat(result).as("Thrown exception")
+                .isInstanceOf(DataNotFoundException.class)
+                .hasMessageContaining("Draft not found");
+    }
+
+    @Test
+    void deleteDraft_shouldDiscardDraft() {
+        serviceUnderTest.deleteDraft("new-1");
+
+        verify(draftBuffer).discard("new-1");
+    }
+
+    // ========================================================================
+
+    private static NoteSearchCriteria searchCriteria(String text, String language) {
+        NoteSearchCriteria criteria = new NoteSearchCriteria();
+        criteria.setText(text);
+        criteria.setLanguage(language);
+        return criteria;
     }
 }
@@ -0,0 +1,217 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.PatientNoteSummary;
+import com.mediscreen.patientHistory.repository.NoteRepository;
+import com.mediscreen.patientHistory.repository.PatientNoteSummaryRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that the summaries of the notes of patients are initialized, queried and kept current as expected.
+ */
+@ExtendWith(MockitoExtension.class)
+public class PatientNoteSummaryTrackerTest {
+
+    @Mock
+    private NoteRepository noteRepository;
+    @Mock
+    private PatientNoteSummaryRepository summaryRepository;
+    @Captor
+    private ArgumentCaptor<List<PatientNoteSummary>> changes;
+
+    private PatientNoteSummaryTracker trackerUnderTest;
+
+    private final LocalDateTime creationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
+    private final Note noteA = new Note("generatedIdA", 1, creationDate, creationDate, "Recommendation A made to patient 1");
+    private final Note noteB = new Note("generatedIdB", 1, creationDate, creationDate.plusDays(1), "Recommendation B made to patient 1");
+
+    @BeforeEach
+    void setUp() {
+        trackerUnderTest = new PatientNoteSummaryTracker(noteRepository, summaryRepository, true);
+    }
+
+    // === TEST INITIALIZATION ================================================
+    @Test
+    void initializeSummaries_shouldComputeSummaryOfEachPatient_whenNoSummaryExists() {
+        Note noteOfPatient2 = new Note("generatedIdC", 2, creationDate, creationDate, "Recommendation made to patient 2");
+        when(summaryRepository.count()).thenReturn(0L);
+        when(noteRepository.streamByPatientId(null)).thenReturn(Stream.of(noteA, noteOfPatient2));
+        when(noteRepository.streamArchivedByPatientId(null)).thenReturn(Stream.of(noteB));
+        ArgumentCaptor<PatientNoteSummary> insertedSummaries = ArgumentCaptor.forClass(PatientNoteSummary.class);
+
+        trackerUnderTest.initializeSummaries();
+
+        verify(summaryRepository, times(2)).insert(insertedSummaries.capture());
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(insertedSummaries.getAllValues()).as("Initialized summaries")
+                .extracting(PatientNoteSummary::getPatientId, PatientNoteSummary::getNoteCount, PatientNoteSummary::getLastModification,
+                        PatientNoteSummary::getContentHash, PatientNoteSummary::getArchivedNoteCount)
+                .containsExactlyInAnyOrder(
+                        tuple(1, 2L, creationDate.plusDays(1), PatientNoteSummaryTracker.hashOf(noteA) ^ PatientNoteSummaryTracker.hashOf(noteB), 1L),
+                        tuple(2, 1L, creationDate, PatientNoteSummaryTracker.hashOf(noteOfPatient2), 0L)));
+    }
+
+    @Test
+    void initializeSummaries_shouldComputeAgainSummaryWrittenMeanwhile() {
+        when(summaryRepository.count()).thenReturn(0L);
+        when(noteRepository.streamByPatientId(null)).thenReturn(Stream.of(noteA));
+        when(noteRepository.streamArchivedByPatientId(null)).thenReturn(Stream.empty());
+        when(summaryRepository.insert(any(PatientNoteSummary.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(1)).thenReturn(List.of(noteB, noteA));
+
+        trackerUnderTest.initializeSummaries();
+
+        verify(summaryRepository).save(argThat(summary -> summary.getPatientId() == 1 && summary.getNoteCount() == 2));
+    }
+
+    @Test
+    void initializeSummaries_shouldNotReadNotes_whenSummariesExist() {
+        when(summaryRepository.count()).thenReturn(10L);
+
+        trackerUnderTest.initializeSummaries();
+
+        verifyNoInteractions(noteRepository);
+    }
+
+    // === TEST MAINTENANCE ===================================================
+    @Test
+    void writes_shouldKeepSameHashAsComputedFromRemainingNotes_whateverTheirOrder() {
+        Note updatedNoteB = new Note("generatedIdB", 1, creationDate, creationDate.plusDays(2), "Recommendation B updated", null, 1L);
+
+        trackerUnderTest.noteCreated(noteA);
+        trackerUnderTest.noteCreated(noteB);
+        trackerUnderTest.noteUpdated(noteB, updatedNoteB);
+        trackerUnderTest.noteDeleted(noteA);
+
+        verify(summaryRepository, times(4)).applyChanges(changes.capture());
+        long count = 0;
+        long hash = 0;
+        for (List<PatientNoteSummary> change : changes.getAllValues()) {
+            count += change.get(0).getNoteCount();
+            hash ^= change.get(0).getContentHash();
+        }
+        long finalCount = count;
+        long finalHash = hash;
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(finalCount).as("Note count").isEqualTo(1);
+            softly.assertThat(finalHash).as("Content hash").isEqualTo(PatientNoteSummaryTracker.hashOf(updatedNoteB));
+            softly.assertThat(changes.getAllValues().get(2).get(0).getLastModification()).as("Last modification of update")
+                    .isEqualTo(creationDate.plusDays(2));
+        });
+    }
+
+    @Test
+    void noteUpdated_shouldMoveNoteBetweenSummaries_whenPatientChanged() {
+        Note movedNoteA = new Note("generatedIdA", 2, creationDate, creationDate.plusDays(1), noteA.getContent(), null, 1L);
+
+        trackerUnderTest.noteUpdated(noteA, movedNoteA);
+
+        verify(summaryRepository).applyChanges(argThat(changes -> changes.size() == 2
+                && changes.get(0).getPatientId() == 1 && changes.get(0).getNoteCount() == -1
+                && changes.get(1).getPatientId() == 2 && changes.get(1).getNoteCount() == 1
+                && changes.get(0).getContentHash() == changes.get(1).getContentHash()));
+    }
+
+    @Test
+    void notesCreated_shouldApplyOneChangePerPatient() {
+        Note noteOfPatient2 = new Note("generatedIdC", 2, creationDate, creationDate, "Recommendation made to patient 2");
+
+        trackerUnderTest.notesCreated(List.of(noteA, noteOfPatient2, noteB));
+
+        verify(summaryRepository).applyChanges(argThat(changes -> changes.size() == 2
+                && changes.get(0).getPatientId() == 1 && changes.get(0).getNoteCount() == 2
+                && changes.get(0).getLastModification().equals(creationDate.plusDays(1))));
+    }
+
+    @Test
+    void notesArchived_shouldCountArchivedNotesWithoutChangingHashOrLastModification() {
+        trackerUnderTest.notesArchived(Map.of(1, 2L));
+        trackerUnderTest.noteRestored(noteA);
+        trackerUnderTest.archivedNoteDeleted(noteB);
+
+        verify(summaryRepository, times(3)).applyChanges(changes.capture());
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(changes.getAllValues()).as("Changes of summaries")
+                .extracting(change -> change.get(0))
+                .extracting(PatientNoteSummary::getNoteCount, PatientNoteSummary::getArchivedNoteCount, PatientNoteSummary::getContentHash)
+                .containsExactly(tuple(0L, 2L, 0L), tuple(0L, -1L, 0L), tuple(-1L, -1L, PatientNoteSummaryTracker.hashOf(noteB))));
+    }
+
+    // === TEST REPAIR ========================================================
+    @Test
+    void noteCreated_shouldComputeSummaryAgain_whenUpdateFailed() {
+        doThrow(new DataAccessResourceFailureException("Timed out")).when(summaryRepository).applyChanges(anyList());
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(1)).thenReturn(List.of(noteB, noteA));
+        when(noteRepository.findArchivedByPatientId(1)).thenReturn(List.of());
+
+        trackerUnderTest.noteCreated(noteB);
+
+        verify(summaryRepository).save(argThat(summary -> summary.getPatientId() == 1 && summary.getNoteCount() == 2
+                && summary.getContentHash() == (PatientNoteSummaryTracker.hashOf(noteA) ^ PatientNoteSummaryTracker.hashOf(noteB))));
+    }
+
+    @Test
+    void findSummaries_shouldComputeStaleSummaryAgainBeforeReadingIt() {
+        doThrow(new DataAccessResourceFailureException("Timed out")).when(summaryRepository).applyChanges(anyList());
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(1)).thenReturn(List.of(noteB, noteA));
+        when(noteRepository.findArchivedByPatientId(1)).thenReturn(List.of());
+        // Still failing right after the update, then back
+        when(summaryRepository.save(any(PatientNoteSummary.class)))
+                .thenThrow(new DataAccessResourceFailureException("Timed out"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        trackerUnderTest.noteCreated(noteB);
+        when(summaryRepository.findAllById(List.of(1))).thenReturn(List.of(new PatientNoteSummary(1, 2, creationDate.plusDays(1), 42L)));
+
+        List<PatientNoteSummary> result = trackerUnderTest.findSummaries(List.of(1));
+        trackerUnderTest.repairSummaries();
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Summaries")
+                .extracting(PatientNoteSummary::getNoteCount).containsExactly(2L));
+        // Computed again once by the update and once by the query, none being left for the repair
+        verify(summaryRepository, times(2)).save(any(PatientNoteSummary.class));
+    }
+
+    @Test
+    void repairSummaries_shouldComputeAgainSummariesStillStale() {
+        doThrow(new DataAccessResourceFailureException("Timed out")).when(summaryRepository).deleteById(1);
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(1))
+                .thenThrow(new DataAccessResourceFailureException("Timed out"))
+                .thenReturn(List.of());
+        when(noteRepository.findArchivedByPatientId(1)).thenReturn(List.of());
+        trackerUnderTest.patientDeleted(1);
+
+        trackerUnderTest.repairSummaries();
+        trackerUnderTest.repairSummaries();
+
+        verify(summaryRepository).save(argThat(summary -> summary.getPatientId() == 1 && summary.getNoteCount() == 0));
+    }
+
+    // === TEST QUERY =========================================================
+    @Test
+    void findSummaries_shouldReturnEmptySummary_forPatientWithoutNotes() {
+        when(summaryRepository.findAllById(List.of(2, 1))).thenReturn(List.of(new PatientNoteSummary(1, 2, creationDate, 42L)));
+
+        List<PatientNoteSummary> result = trackerUnderTest.findSummaries(List.of(2, 1));
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(result).as("Summaries")
+                .extracting(PatientNoteSummary::getPatientId, PatientNoteSummary::getNoteCount)
+                .containsExactly(tuple(2, 0L), tuple(1, 2L)));
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.model.Note;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Tests that the notes of patients are cached, invalidated and bounded as expected.
+ */
+public class PatientNotesCacheTest {
+
+    private final LocalDateTime creationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger databaseReads = new AtomicInteger();
+    private final Function<Integer, List<Note>> loader = patientId -> {
+        databaseReads.incrementAndGet();
+        return List.of(note(patientId, "Recommendation made to patient " + patientId));
+    };
+
+    // === TEST GET ===========================================================
+    @Test
+    void get_shouldReadDatabaseOnlyOnce_untilPatientIsInvalidated() {
+        PatientNotesCache cacheUnderTest = new PatientNotesCache(meterRegistry, true, 1_000_000);
+
+        cacheUnderTest.get(1, loader);
+        List<Note> cachedNotes = cacheUnderTest.get(1, loader);
+        cacheUnderTest.invalidate(1);
+        cacheUnderTest.get(1, loader);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(cachedNotes).as("Cached notes").extracting(Note::getContent).containsExactly("Recommendation made to patient 1");
+            softly.assertThat(databaseReads).as("Database reads").hasValue(2);
+            softly.assertThat(meterRegistry.get("cache.gets").tag("cache", "patientNotes").tag("result", "hit").functionCounter().count())
+                    .as("Published hits").isEqualTo(1);
+            softly.assertThat(meterRegistry.get("cache.gets").tag("cache", "patientNotes").tag("result", "miss").functionCounter().count())
+                    .as("Published misses").isEqualTo(2);
+        });
+    }
+
+    @Test
+    void get_shouldNotCacheNotesRead_whenPatientIsInvalidatedDuringRead() {
+        PatientNotesCache cacheUnderTest = new PatientNotesCache(meterRegistry, true, 1_000_000);
+        // A note is written and the patient invalidated while its former notes are being read
+        Function<Integer, List<Note>> loaderOverlappingWrite = patientId -> {
+            List<Note> formerNotes = loader.apply(patientId);
+            cacheUnderTest.invalidate(patientId);
+            return formerNotes;
+        };
+
+        cacheUnderTest.get(1, loaderOverlappingWrite);
+        cacheUnderTest.get(1, loader);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(databaseReads).as("Database reads").hasValue(2);
+            softly.assertThat(cacheUnderTest.stats().hitCount()).as("Cache hits").isZero();
+        });
+    }
+
+    @Test
+    void get_shouldAlwaysReadDatabase_whenCacheIsDisabled() {
+        PatientNotesCache disabledCache = new PatientNotesCache(meterRegistry, false, 1_000_000);
+
+        disabledCache.get(1, loader);
+        disabledCache.get(1, loader);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(databaseReads).as("Database reads").hasValue(2);
+            softly.assertThat(meterRegistry.find("cache.gets").meters()).as("Published metrics").isEmpty();
+        });
+    }
+
+    // === TEST MEMORY CEILING ================================================
+    @Test
+    void get_shouldEvictPatients_whenCachedNotesExceedMaxBytes() {
+        PatientNotesCache cacheUnderTest = new PatientNotesCache(meterRegistry, true, 50_000);
+        String longContent = "Patient reports dizziness after the last reaction. ".repeat(100);
+
+        for (int patientId = 1; patientId <= 100; patientId++) {
+            cacheUnderTest.get(patientId, id -> List.of(note(id, longContent)));
+        }
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(cacheUnderTest.weightedSize()).as("Estimated size").isPositive().isLessThanOrEqualTo(50_000);
+            softly.assertThat(cacheUnderTest.stats().evictionCount()).as("Evicted patients").isPositive();
+        });
+    }
+
+    // ========================================================================
+
+    private Note note(Integer patientId, String content) {
+        return new Note(null, patientId, creationDate, creationDate, content);
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.exception.DataNotFoundException;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.model.NotePage;
+import com.mediscreen.patientHistory.model.NoteProjection;
+import com.mediscreen.patientHistory.repository.ReactiveNoteRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that the reactive note service reads notes without blocking and delegates writes as expected.
+ */
+@ExtendWith(MockitoExtension.class)
+public class ReactiveNoteServiceImplTest {
+
+    @InjectMocks
+    private ReactiveNoteServiceImpl serviceUnderTest;
+    @Mock
+    private ReactiveNoteRepository reactiveNoteRepository;
+    @Mock
+    private NoteService noteService;
+
+    private final LocalDateTime creationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
+    private final Note note1 = new Note("generatedId1", 1, creationDate, creationDate, "Recommendation made to patient 1");
+    private final Note note2 = new Note("generatedId2", 2, creationDate, creationDate, "Recommendation A made to patient 2");
+
+    // === TEST READ OPERATIONS ===============================================
+    @Test
+    void readNotesByPatientId_shouldStreamNotesAsRequestedDownstream() {
+        when(reactiveNoteRepository.findAllByPatientIdOrderByDateOfCreationDescIdDesc(2))
+                .thenReturn(Flux.range(1, 1000).map(i -> note2));
+
+        StepVerifier.create(serviceUnderTest.readNotesByPatientId(2, false), 10)
+                .expectNextCount(10)
+                .thenRequest(990)
+                .expectNextCount(990)
+                .verifyComplete();
+    }
+
+    @Test
+    void readNotesByPatientId_shouldStreamAllNotesById_whenNoPatientIsGiven() {
+        when(reactiveNoteRepository.findAll(Sort.by(Sort.Direction.ASC, "_id"))).thenReturn(Flux.just(note1, note2));
+
+        StepVerifier.create(serviceUnderTest.readNotesByPatientId(null, false))
+                .expectNext(note1, note2)
+                .verifyComplete();
+    }
+
+    @Test
+    void readNotesByPatientId_shouldMergeArchivedNotesOnce_whenFullHistoryIsAsked() {
+        Note latestNote = new Note("generatedId3", 2, creationDate.plusYears(1), creationDate.plusYears(1), "Recommendation B made to patient 2");
+        Note archivedNote = new Note("generatedId4", 2, creationDate.minusYears(1), creationDate.minusYears(1), "Recommendation C made to patient 2");
+        when(reactiveNoteRepository.findAllByPatientIdOrderByDateOfCreationDescIdDesc(2)).thenReturn(Flux.just(latestNote, note2));
+        // The archive still holds a copy of a note being moved
+        when(reactiveNoteRepository.findArchivedByPatientId(2)).thenReturn(Flux.just(note2, archivedNote));
+
+        StepVerifier.create(serviceUnderTest.readNotesByPatientId(2, true))
+                .expectNext(latestNote, note2, archivedNote)
+                .verifyComplete();
+    }
+
+    @Test
+    void readNoteById_shouldReturnArchivedNote_whenNoteIsNoLongerHot() {
+        when(reactiveNoteRepository.findById("generatedId1")).thenReturn(Mono.empty());
+        when(reactiveNoteRepository.findArchivedById("generatedId1")).thenReturn(Mono.just(note1));
+
+        StepVerifier.create(serviceUnderTest.readNoteById("generatedId1"))
+                .expectNext(note1)
+                .verifyComplete();
+    }
+
+    @Test
+    void readNoteById_shouldSignalAnException_whenGivenIdIsNotPresentInDatabase() {
+        when(reactiveNoteRepository.findById("000")).thenReturn(Mono.empty());
+        when(reactiveNoteRepository.findArchivedById("000")).thenReturn(Mono.empty());
+
+        StepVerifier.create(serviceUnderTest.readNoteById("000"))
+                .expectError(DataNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void readNotesPageByPatientId_shouldDelegateToBlockingServiceOffEventLoop() {
+        NotePage notePage = new NotePage(List.of(note2), null, false);
+        when(noteService.readNotesPageByPatientId(2, null, 50, true, NoteProjection.WHOLE, false)).thenAnswer(invocation ->
+                Thread.currentThread().getName().startsWith("boundedElastic") ? notePage : null);
+
+        StepVerifier.create(serviceUnderTest.readNotesPageByPatientId(2, null, 50, true, NoteProjection.WHOLE, false))
+                .expectNext(notePage)
+                .verifyComplete();
+    }
+
+    // === TEST WRITE OPERATIONS ==============================================
+    @Test
+    void createNote_shouldDelegateToBlockingServiceOffEventLoop() {
+        when(noteService.createNote(note1)).thenAnswer(invocation -> {
+            // Blocking calls are not allowed on the threads of the parallel or event loop schedulers
+            return Thread.currentThread().getName().startsWith("boundedElastic") ? note1 : null;
+        });
+
+        StepVerifier.create(serviceUnderTest.createNote(note1))
+                .expectNext(note1)
+                .verifyComplete();
+    }
+
+    @Test
+    void deleteNote_shouldSignalAnException_whenGivenIdIsNotPresentInDatabase() {
+        doThrow(new DataNotFoundException("Note not found or doesn't exist")).when(noteService).deleteNote("000");
+
+        StepVerifier.create(serviceUnderTest.deleteNote("000"))
+                .expectError(DataNotFoundException.class)
+                .verify();
+    }
+
+}
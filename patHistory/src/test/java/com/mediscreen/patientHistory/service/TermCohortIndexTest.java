@@ -0,0 +1,207 @@
+package com.mediscreen.patientHistory.service;
+
+import com.mediscreen.patientHistory.constants.DiabetesTerminology;
+import com.mediscreen.patientHistory.model.Note;
+import com.mediscreen.patientHistory.repository.NoteRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.mediscreen.patientHistory.constants.DiabetesTerminology.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that the term cohort index is loaded, queried and kept current as expected.
+ */
+@ExtendWith(MockitoExtension.class)
+public class TermCohortIndexTest {
+
+    @Mock
+    private NoteRepository noteRepository;
+
+    private TermCohortIndex indexUnderTest;
+
+    private final LocalDateTime creationDate = LocalDateTime.of(2022, 12, 31, 8, 20);
+
+    @BeforeEach
+    void setUp() {
+        indexUnderTest = new TermCohortIndex(noteRepository, true);
+    }
+
+    // === TEST LOAD ==========================================================
+    @Test
+    void load_shouldIndexTermsMentionedByEachPatient() {
+        when(noteRepository.streamByPatientId(null)).thenReturn(Stream.of(
+                note(1, "Patient is a smoker, cholesterol is high"),
+                note(2, "Le patient fume"),
+                note(2, "Cholestérol élevé"),
+                note(3, "Microalbumin levels are normal")));
+
+        indexUnderTest.load();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(indexUnderTest.isReady()).as("Index ready").isTrue();
+            softly.assertThat(indexUnderTest.findPatients(List.of(SMOKER, CHOLESTEROL), List.of()).toArray()).as("Smokers with cholesterol")
+                    .containsExactly(1);
+            softly.assertThat(indexUnderTest.findPatients(List.of(), List.of(SMOKER, FUMEUR)).toArray()).as("Smokers in english or french")
+                    .containsExactly(1, 2);
+            // Cholesterol and cholestérol are the same term once their accents are folded
+            softly.assertThat(indexUnderTest.findPatients(List.of(FR_CHOLESTEROL), List.of(SMOKER, FUMEUR)).toArray()).as("Smokers with cholestérol")
+                    .containsExactly(1, 2);
+            softly.assertThat(indexUnderTest.countPatients(List.of(MICROALBUMIN), List.of())).as("Patients mentioning microalbumin")
+                    .isEqualTo(1);
+            softly.assertThat(indexUnderTest.countPatients(List.of(SMOKER, CHOLESTEROL), List.of())).as("Smokers with cholesterol count")
+                    .isEqualTo(1);
+        });
+    }
+
+    @Test
+    void load_shouldNotReadDatabase_whenIndexIsDisabled() {
+        TermCohortIndex disabledIndex = new TermCohortIndex(noteRepository, false);
+
+        disabledIndex.load();
+        disabledIndex.addNote(note(1, "Smoker"));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(disabledIndex.isReady()).as("Index ready").isFalse();
+            softly.assertThat(disabledIndex.countPatients(List.of(SMOKER), List.of())).as("Smokers").isZero();
+        });
+        verifyNoInteractions(noteRepository);
+    }
+
+    @Test
+    void load_shouldComputeAgainPatientsChangedWhileLoading() {
+        when(noteRepository.streamByPatientId(null)).thenAnswer(invocation -> {
+            // Note deleted by another request once read by the loading
+            indexUnderTest.refreshPatient(1);
+            return Stream.of(note(1, "Smoker"));
+        });
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(1)).thenReturn(List.of());
+
+        indexUnderTest.load();
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(indexUnderTest.countPatients(List.of(SMOKER), List.of())).as("Smokers")
+                .isZero());
+        verify(noteRepository, times(2)).findAllByPatientIdOrderByDateOfCreationDesc(1);
+    }
+
+    // === TEST MAINTENANCE ===================================================
+    @Test
+    void addNote_shouldAddTermsOfNoteToItsPatient() {
+        loadWith(note(1, "Smoker"));
+
+        indexUnderTest.addNote(note(1, "Dizziness after reaction"));
+        indexUnderTest.addNote(note(2, "Dizziness"));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(indexUnderTest.findPatients(List.of(SMOKER, DIZZINESS, REACTION), List.of()).toArray()).as("Patients with all terms")
+                    .containsExactly(1);
+            softly.assertThat(indexUnderTest.findPatients(List.of(DIZZINESS), List.of()).toArray()).as("Patients with dizziness")
+                    .containsExactly(1, 2);
+        });
+    }
+
+    @Test
+    void refreshPatient_shouldRemoveTermsNoLongerMentioned() {
+        loadWith(note(1, "Smoker"), note(1, "Smoker and abnormal weight"));
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(1)).thenReturn(List.of(note(1, "Smoker")));
+
+        indexUnderTest.refreshPatient(1);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(indexUnderTest.countPatients(List.of(SMOKER), List.of())).as("Smokers").isEqualTo(1);
+            softly.assertThat(indexUnderTest.countPatients(List.of(), List.of(ABNORMAL, WEIGHT))).as("Patients with abnormal weight").isZero();
+        });
+    }
+
+    @Test
+    void refreshPatient_shouldNotDropTermsOfNoteAddedWhileReadingNotes() throws InterruptedException {
+        loadWith(note(1, "Smoker"));
+        Thread addingThread = new Thread(() -> indexUnderTest.addNote(note(1, "Dizziness")));
+        when(noteRepository.findAllByPatientIdOrderByDateOfCreationDesc(1)).thenAnswer(invocation -> {
+            // Note created once its patient's notes are read, and added to the index meanwhile
+            addingThread.start();
+            addingThread.join(200);
+            return List.of(note(1, "Smoker"));
+        });
+
+        indexUnderTest.refreshPatient(1);
+        addingThread.join();
+
+        SoftAssertions.assertSoftly(softly -> softly.assertThat(indexUnderTest.findPatients(List.of(SMOKER, DIZZINESS), List.of()).toArray())
+                .as("Smokers with dizziness").containsExactly(1));
+    }
+
+    @Test
+    void removePatient_shouldRemovePatientFromAllTerms() {
+        loadWith(note(1, "Smoker"), note(1, "Relapse"), note(2, "Relapse"));
+
+        indexUnderTest.removePatient(1);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(indexUnderTest.countPatients(List.of(SMOKER), List.of())).as("Smokers").isZero();
+            softly.assertThat(indexUnderTest.findPatients(List.of(RELAPSE), List.of()).toArray()).as("Patients with relapse").containsExactly(2);
+        });
+    }
+
+    @Test
+    void termsMentionedIn_shouldMatchTermsWhateverTheirCaseAndAccents() {
+        int terms = TermCohortIndex.termsMentionedIn("HÉMOGLOBINE a1c élevée, réaction au traitement");
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(terms & (1 << HEMOGLOBINE_A1C.ordinal())).as("Hémoglobine A1C").isNotZero();
+            softly.assertThat(terms & (1 << HEMOGLOBIN_A1C.ordinal())).as("Hemoglobin A1C").isZero();
+            softly.assertThat(terms & (1 << FR_REACTION.ordinal())).as("Réaction").isNotZero();
+            softly.assertThat(terms & (1 << REACTION.ordinal())).as("Reaction").isNotZero();
+            softly.assertThat(TermCohortIndex.termsMentionedIn(null)).as("Terms of no content").isZero();
+        });
+    }
+
+    // === TEST QUERY =========================================================
+    @Test
+    void findPatients_shouldReturnCopyOfIndexedPatients() {
+        loadWith(IntStream.rangeClosed(1, 100_000).mapToObj(patientId -> note(patientId, patientId % 3 == 0 ? "Smoker" : "Relapse"))
+                .toArray(Note[]::new));
+
+        indexUnderTest.findPatients(List.of(SMOKER), List.of()).clear();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(indexUnderTest.countPatients(List.of(SMOKER), List.of())).as("Smokers").isEqualTo(33_333);
+            softly.assertThat(indexUnderTest.countPatients(List.of(), List.of(SMOKER, RELAPSE))).as("Smokers or relapsing patients").isEqualTo(100_000);
+            softly.assertThat(indexUnderTest.countPatients(List.of(SMOKER, RELAPSE), List.of())).as("Smokers relapsing").isZero();
+            softly.assertThat(indexUnderTest.footprintBytes()).as("Footprint").isPositive();
+        });
+    }
+
+    @Test
+    void termOf_shouldFindTermByNameOrTriggerTermIgnoringCase() {
+        Set<DiabetesTerminology> terms = Set.of(TermCohortIndex.termOf("smoker"), TermCohortIndex.termOf("HEMOGLOBIN_A1C"), TermCohortIndex.termOf("cholestérol"));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(terms).as("Found terms").containsExactlyInAnyOrder(SMOKER, HEMOGLOBIN_A1C, FR_CHOLESTEROL);
+            softly.assertThat(TermCohortIndex.termOf("unknown")).as("Unknown term").isNull();
+        });
+    }
+
+    // ========================================================================
+
+    private void loadWith(Note... notes) {
+        when(noteRepository.streamByPatientId(null)).thenReturn(Arrays.stream(notes));
+        indexUnderTest.load();
+    }
+
+    private Note note(Integer patientId, String content) {
+        return new Note(null, patientId, creationDate, creationDate, content);
+    }
+
+}
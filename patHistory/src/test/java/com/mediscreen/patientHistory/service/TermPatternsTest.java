@@ -0,0 +1,48 @@
+package com.mediscreen.patientHistory.service;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+/**
+ * Tests that terms are found in contents whatever their case and accents.
+ */
+public class TermPatternsTest {
+
+    // === TEST FOLD ==========================================================
+    @Test
+    void fold_shouldRemoveCaseAndAccents() {
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(TermPatterns.fold("Hémoglobine A1C")).as("Folded french term").isEqualTo("hemoglobine a1c");
+            softly.assertThat(TermPatterns.fold("Réaction")).as("Folded accented term").isEqualTo(TermPatterns.fold("REACTION"));
+        });
+    }
+
+    // === TEST COMPILE =======================================================
+    @Test
+    void compile_shouldFindTerm_whateverItsCaseAndAccents() {
+        Pattern reaction = TermPatterns.compile("Réaction");
+        Pattern cholesterol = TermPatterns.compile("Cholesterol");
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(reaction.matcher("Patient reports a REACTION to the drug").find()).as("Upper case without accent").isTrue();
+            softly.assertThat(reaction.matcher("Réactions to the drug").find()).as("Inside a word").isTrue();
+            softly.assertThat(reaction.matcher("RÉACTION").find()).as("Upper case accent").isTrue();
+            softly.assertThat(reaction.matcher("Reacting well").find()).as("Other word").isFalse();
+            softly.assertThat(cholesterol.matcher("Cholestérol élevé").find()).as("Accent missing from term").isTrue();
+        });
+    }
+
+    @Test
+    void compile_shouldMatchOtherCharsLiterally() {
+        Pattern hemoglobin = TermPatterns.compile("A1C (HbA1c)");
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(hemoglobin.matcher("Level of a1c (hba1c) above").find()).as("Parentheses").isTrue();
+            softly.assertThat(hemoglobin.matcher("Level of a1c hba1c above").find()).as("Parentheses missing").isFalse();
+            softly.assertThat(TermPatterns.compile("3.5").matcher("305").find()).as("Dot").isFalse();
+        });
+    }
+
+}
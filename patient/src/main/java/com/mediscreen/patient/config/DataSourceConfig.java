@@ -0,0 +1,112 @@
+package com.mediscreen.patient.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import javax.sql.DataSource;
+
+/**
+ * Replaces the auto-configured data source by a primary/replica routing one when a replica url is configured.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "mediscreen.datasource.replica", name = "url")
+@EnableConfigurationProperties(ReplicaDataSourceProperties.class)
+public class DataSourceConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceConfig.class);
+
+    /**
+     * Creates the pool of connections to the primary database.
+     *
+     * @param primaryProperties  the settings of the primary database, from spring.datasource
+     * @param environment        the environment the settings of the pool are bound from, as spring.datasource.hikari
+     * @return                   the pool receiving writes and lag-sensitive reads
+     */
+    @Bean
+    public HikariDataSource primaryDataSource(DataSourceProperties primaryProperties, Environment environment) {
+        HikariDataSource primary = primaryProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("primary-pool");
+        // Bound as the auto-configured pool would be, the builder only setting the connection properties
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        return primary;
+    }
+
+    /**
+     * Creates the pool of connections to the replica database.
+     *
+     * @param primaryProperties  the settings of the primary database, whose driver is used unless the replica sets one
+     * @param replicaProperties  the settings of the replica database, from mediscreen.datasource.replica
+     * @return                   the pool receiving read-only transactions
+     */
+    @Bean
+    public HikariDataSource replicaDataSource(DataSourceProperties primaryProperties, ReplicaDataSourceProperties replicaProperties) {
+        HikariDataSource replica = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(replicaProperties.getDriverClassName() != null
+                        ? replicaProperties.getDriverClassName()
+                        : primaryProperties.determineDriverClassName())
+                .url(replicaProperties.getUrl())
+                .username(replicaProperties.getUsername())
+                .password(replicaProperties.getPassword())
+                .build();
+        replica.setPoolName("replica-pool");
+        // Fails fast so that reads fall back to the primary when the replica is down
+        replica.setConnectionTimeout(2000);
+        return replica;
+    }
+
+    /**
+     * Creates the monitor measuring the replication lag, at every mediscreen.datasource.replica.heartbeat-interval.
+     *
+     * @param primary            the pool of the primary database
+     * @param replica            the pool of the replica database
+     * @param replicaProperties  the settings of the replica database, holding the tolerated lag
+     * @return                   the replication lag monitor
+     */
+    @Bean
+    public ReplicationLagMonitor replicationLagMonitor(@Qualifier("primaryDataSource") DataSource primary,
+                                                       @Qualifier("replicaDataSource") DataSource replica,
+                                                       ReplicaDataSourceProperties replicaProperties) {
+        return new ReplicationLagMonitor(primary, replica, replicaProperties.getMaxLag());
+    }
+
+    /**
+     * Creates the data source used by the persistence layer.
+     *
+     * @param primary            the pool of the primary database
+     * @param replica            the pool of the replica database
+     * @param lagMonitor         the monitor telling whether the replica lags behind more than tolerated
+     * @param replicaProperties  the settings of the replica database, holding the tolerated lag
+     * @return                   the data source routing read-only transactions to the replica
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica,
+                                 ReplicationLagMonitor lagMonitor,
+                                 ReplicaDataSourceProperties replicaProperties) {
+        ReplicationRoutingDataSource routingDataSource = new ReplicationRoutingDataSource(primary, replica, replicaProperties.getMaxLag(), lagMonitor);
+        routingDataSource.afterPropertiesSet();
+
+        logger.info("### Read-only transactions routed to replica {} with max lag of {}", replicaProperties.getUrl(), replicaProperties.getMaxLag());
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.mediscreen.patient.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Connection settings of the read replica to which read-only transactions are routed.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "mediscreen.datasource.replica")
+public class ReplicaDataSourceProperties {
+
+    /**
+     * JDBC url of the replica. Routing is disabled as long as it is not set.
+     */
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    private String driverClassName;
+
+    /**
+     * Replication lag tolerated by the application. Read-only transactions started within this delay
+     * after a write of the same request are served by the primary so that the request sees its own writes.
+     */
+    private Duration maxLag = Duration.ofSeconds(5);
+
+}
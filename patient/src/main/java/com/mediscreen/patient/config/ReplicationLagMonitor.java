@@ -0,0 +1,107 @@
+package com.mediscreen.patient.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Measures the replication lag of the replica from a heartbeat row, written to the primary and read back from the replica.
+ * The lag is the age of the heartbeat the replica returns, so it is overestimated by up to the heartbeat interval,
+ * and it is unknown as long as the replica returns no heartbeat. Beats are stamped with the clock of the application,
+ * so the clocks of the instances sharing a primary must be synchronized.
+ */
+public class ReplicationLagMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationLagMonitor.class);
+
+    private final JdbcTemplate primary;
+
+    private final JdbcTemplate replica;
+
+    private final long maxLagMillis;
+
+    private volatile boolean tableCreated;
+
+    /**
+     * Whether the replica lags behind more than tolerated, assumed until the first heartbeat is read back.
+     */
+    private volatile boolean replicaBehind = true;
+
+    /**
+     * Instantiates a new replication lag monitor.
+     *
+     * @param primary  the data source the heartbeat is written to
+     * @param replica  the data source the heartbeat is read back from
+     * @param maxLag   the replication lag tolerated, beyond which the replica is behind
+     */
+    public ReplicationLagMonitor(DataSource primary, DataSource replica, Duration maxLag) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.maxLagMillis = maxLag.toMillis();
+    }
+
+    /**
+     * Writes a heartbeat to the primary, then measures the lag of the replica.
+     * The interval must be shorter than the tolerated lag, otherwise the replica is always behind.
+     */
+    @Scheduled(fixedDelayString = "${mediscreen.datasource.replica.heartbeat-interval:PT1S}")
+    public void heartbeat() {
+        beat();
+        measureLag();
+    }
+
+    /**
+     * Writes the current time to the heartbeat row of the primary, creating it on first beat.
+     */
+    public void beat() {
+        try {
+            if (!tableCreated) {
+                primary.execute("CREATE TABLE IF NOT EXISTS replication_heartbeat (id INT PRIMARY KEY, beat_millis BIGINT NOT NULL)");
+                tableCreated = true;
+            }
+            long now = System.currentTimeMillis();
+            if (primary.update("UPDATE replication_heartbeat SET beat_millis = ? WHERE id = 1", now) == 0) {
+                primary.update("INSERT INTO replication_heartbeat (id, beat_millis) VALUES (1, ?)", now);
+            }
+        } catch (DataAccessException e) {
+            logger.warn("### Replication heartbeat not written to primary --> {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the heartbeat row back from the replica and updates whether it lags behind more than tolerated.
+     */
+    public void measureLag() {
+        Long lagMillis;
+        try {
+            List<Long> beats = replica.queryForList("SELECT beat_millis FROM replication_heartbeat WHERE id = 1", Long.class);
+            lagMillis = beats.isEmpty() ? null : System.currentTimeMillis() - beats.get(0);
+        } catch (DataAccessException e) {
+            lagMillis = null;
+        }
+
+        boolean behind = lagMillis == null || lagMillis > maxLagMillis;
+        if (behind && !replicaBehind) {
+            logger.warn("### Replica lag {}, read-only transactions routed to primary", lagMillis == null ? "unknown" : lagMillis + " ms");
+        } else if (!behind && replicaBehind) {
+            logger.info("### Replica lag {} ms, read-only transactions routed to replica", lagMillis);
+        }
+        replicaBehind = behind;
+    }
+
+    /**
+     * Tells whether the replica lagged behind more than tolerated, or its lag was unknown, at the last measure.
+     *
+     * @return true when reads must not be served by the replica
+     */
+    public boolean isReplicaBehind() {
+        return replicaBehind;
+    }
+
+}
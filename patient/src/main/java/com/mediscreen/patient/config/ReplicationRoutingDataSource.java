@@ -0,0 +1,131 @@
+package com.mediscreen.patient.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Data source that sends read-only transactions to the replica and everything else to the primary.
+ * Reads fall back to the primary while the measured replication lag exceeds the tolerated one or is unknown,
+ * when they follow a write of the same HTTP request, or of the same thread outside of requests, closer than the
+ * tolerated lag, or when no connection can be obtained from the replica. Reads of other requests may thus miss
+ * writes made less than the tolerated lag before, but never older ones.
+ * Must be wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} so that
+ * the routing decision is taken once the transaction read-only flag is known.
+ */
+public class ReplicationRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicationRoutingDataSource.class);
+
+    /**
+     * Keys of the target data sources.
+     */
+    public enum Route { PRIMARY, REPLICA }
+
+    private final DataSource primary;
+
+    private final long maxLagNanos;
+
+    private final ReplicationLagMonitor lagMonitor;
+
+    /**
+     * Name of the request attribute keeping the time of the last connection handed out to a read-write transaction.
+     */
+    private static final String LAST_WRITE_ATTRIBUTE = ReplicationRoutingDataSource.class.getName() + ".lastWriteNanos";
+
+    /**
+     * Time of the last connection handed out to a read-write transaction of the thread, outside of requests.
+     * Never removed, as a time older than the tolerated lag no longer changes the routing.
+     */
+    private final ThreadLocal<Long> lastWriteNanosOfThread = new ThreadLocal<>();
+
+    /**
+     * Instantiates a new replication routing data source.
+     *
+     * @param primary     the data source receiving writes and lag-sensitive reads
+     * @param replica     the data source receiving read-only transactions
+     * @param maxLag      the replication lag tolerated after a write
+     * @param lagMonitor  the monitor telling whether the replica lags behind more than tolerated
+     */
+    public ReplicationRoutingDataSource(DataSource primary, DataSource replica, Duration maxLag, ReplicationLagMonitor lagMonitor) {
+        this.primary = primary;
+        this.maxLagNanos = maxLag.toNanos();
+        this.lagMonitor = lagMonitor;
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return Route.PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            setLastWriteNanos(System.nanoTime());
+            return Route.PRIMARY;
+        }
+        Long lastWriteNanos = getLastWriteNanos();
+        if (lastWriteNanos != null && System.nanoTime() - lastWriteNanos < maxLagNanos) {
+            logger.debug("### Read-only transaction routed to primary, last write of the request is more recent than the tolerated replica lag");
+            return Route.PRIMARY;
+        }
+        if (lagMonitor.isReplicaBehind()) {
+            logger.debug("### Read-only transaction routed to primary, replica lag is unknown or beyond the tolerated one");
+            return Route.PRIMARY;
+        }
+        return Route.REPLICA;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            return super.getConnection();
+        } catch (SQLException e) {
+            if (determineCurrentLookupKey() != Route.REPLICA) {
+                throw e;
+            }
+            logger.warn("### Replica unavailable, read-only transaction routed to primary --> {}", e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        try {
+            return super.getConnection(username, password);
+        } catch (SQLException e) {
+            if (determineCurrentLookupKey() != Route.REPLICA) {
+                throw e;
+            }
+            logger.warn("### Replica unavailable, read-only transaction routed to primary --> {}", e.getMessage());
+            return primary.getConnection(username, password);
+        }
+    }
+
+    // Kept by the current request, or by the thread when it isn't serving any
+    private void setLastWriteNanos(long lastWriteNanos) {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.setAttribute(LAST_WRITE_ATTRIBUTE, lastWriteNanos, RequestAttributes.SCOPE_REQUEST);
+        } else {
+            lastWriteNanosOfThread.set(lastWriteNanos);
+        }
+    }
+
+    private Long getLastWriteNanos() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        return request != null
+                ? (Long) request.getAttribute(LAST_WRITE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)
+                : lastWriteNanosOfThread.get();
+    }
+
+}
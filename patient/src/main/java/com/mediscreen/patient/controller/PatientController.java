@@ -1,7 +1,11 @@
 package com.mediscreen.patient.controller;
 
 import com.mediscreen.patient.exception.ErrorMessage;
+import com.mediscreen.patient.exception.InvalidRequestParameterException;
 import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChangeFeed;
+import com.mediscreen.patient.model.PatientSearchCriteria;
+import com.mediscreen.patient.model.PatientSummary;
 import com.mediscreen.patient.service.PatientService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,7 +17,10 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springdoc.api.annotations.ParameterObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -32,6 +39,21 @@ public class PatientController {
 
     private static final Logger logger = LoggerFactory.getLogger(PatientController.class);
 
+    /**
+     * Maximum number of changes returned by one call to the change feed.
+     */
+    private static final int MAX_CHANGES_PER_PAGE = 1000;
+
+    /**
+     * Maximum number of patients returned by one call to the patient search.
+     */
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+
+    /**
+     * Maximum number of patients a search can skip, deeper pages cost too much to be served.
+     */
+    private static final int MAX_SEARCH_OFFSET = 10000;
+
     /**
      * Component that handles business logic operations for patients.
      */
@@ -114,6 +136,122 @@ public class PatientController {
         return new ResponseEntity<>(allPatientsList, HttpStatus.OK);
     }
 
+    // === GET ALL PATIENT SUMMARIES ==========================================
+
+    /**
+     * Lists the summary of all patients in database, limited to the information displayed in a patients list.
+     *
+     * @param keyword  the last name to be searched on, if any
+     * @return         the list of the summaries of all patients and status of the request
+     */
+    @Operation(
+            summary = "Retrieve the summary of all patients",
+            description = "Get a summary of all Patient objects. The response is a collection of PatientSummary objects, each containing entries with id, last name, first name, date of birth, gender."
+    )
+    @Parameters({
+            @Parameter(name = "lastName", description = "The keyword to be searched on")
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "204", description = "No Content - No patient found", content = {@Content(schema = @Schema())})
+    })
+    @GetMapping(value = "/patients/summaries", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<PatientSummary>> getAllPatientSummaries(@RequestParam(value = "lastName", required = false) String keyword) {
+        logger.debug("### Request called --> GET /patients/summaries");
+
+        List<PatientSummary> allSummariesList;
+
+        if(keyword == null) {
+            allSummariesList = patientService.readAllPatientSummaries();
+        } else {
+            allSummariesList = patientService.readAllPatientSummariesByLastName(keyword);
+        }
+
+        if (allSummariesList.isEmpty()) {
+            logger.info("### Empty list of patient summaries returned");
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        }
+
+        logger.info("### Retrieved list of all patient summaries successfully");
+        return new ResponseEntity<>(allSummariesList, HttpStatus.OK);
+    }
+
+    // === SEARCH PATIENTS ====================================================
+
+    /**
+     * Lists a slice of the patients matching all the given criteria.
+     *
+     * @param criteria  the criteria to be searched on, at least one of them must be set
+     * @param page      the number of the slice to return, starting from 0
+     * @param size      the number of patients per slice
+     * @return          the slice of matching patients and status of the request
+     */
+    @Operation(
+            summary = "Search patients by criteria",
+            description = "Get a page of the Patient objects matching all the given criteria : gender, date of birth range, beginning of the last name, phone number. At least one criterion is required. The response is a slice of Patient objects, telling whether more patients match without counting them. Patients are ordered along the index serving the criteria : by id for a phone number, by last name, first name, date of birth and id for a last name prefix, by date of birth and id otherwise."
+    )
+    @Parameters({
+            @Parameter(name = "page", description = "The number of the page to return, starting from 0"),
+            @Parameter(name = "size", description = "The number of patients per page, capped to " + MAX_SEARCH_PAGE_SIZE)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad Request - Missing criteria or invalid paging supplied", content = {@Content(schema = @Schema(implementation = ErrorMessage.class))})
+    })
+    @GetMapping(value = "/patients/search", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Slice<Patient>> searchPatients(@ParameterObject PatientSearchCriteria criteria,
+                                                        @RequestParam(value = "page", defaultValue = "0") Integer page,
+                                                        @RequestParam(value = "size", defaultValue = "20") Integer size) {
+        logger.debug("### Request called --> GET /patients/search {} page={} size={}", criteria, page, size);
+
+        if (page < 0 || size < 1) {
+            throw new InvalidRequestParameterException("Page must not be negative and size must be a positive number");
+        }
+        int pageSize = Math.min(size, MAX_SEARCH_PAGE_SIZE);
+        if ((long) page * pageSize > MAX_SEARCH_OFFSET) {
+            throw new InvalidRequestParameterException("Page is too deep, refine the search criteria");
+        }
+        Slice<Patient> matchingPatients = patientService.searchPatients(criteria, PageRequest.of(page, pageSize));
+
+        logger.info("### Retrieved slice of patients matching the criteria successfully");
+        return new ResponseEntity<>(matchingPatients, HttpStatus.OK);
+    }
+
+    // === GET PATIENT CHANGES ================================================
+
+    /**
+     * Lists the creations, updates and deletions of patients made after the given cursor.
+     *
+     * @param cursor  the cursor returned by the previous call, or none to start from the first change
+     * @param limit   the maximum number of changes to return
+     * @return        the page of changes with the cursor to use for the next call and status of the request
+     */
+    @Operation(
+            summary = "Retrieve the changes of patients since a cursor",
+            description = "Get the ids and versions of the patients created, updated or deleted after the given cursor, ordered from the oldest to the most recent change. The response contains the cursor to send back to get the following changes."
+    )
+    @Parameters({
+            @Parameter(name = "since", description = "The cursor returned by the previous call, omitted to start from the first change"),
+            @Parameter(name = "limit", description = "The maximum number of changes to return, capped to " + MAX_CHANGES_PER_PAGE)
+    })
+    @ApiResponses({
+            @ApiResponse(responseCode = "200"),
+            @ApiResponse(responseCode = "400", description = "Bad Request - Invalid cursor or limit supplied", content = {@Content(schema = @Schema(implementation = ErrorMessage.class))})
+    })
+    @GetMapping(value = "/patients/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PatientChangeFeed> getPatientChanges(@RequestParam(value = "since", required = false) String cursor,
+                                                               @RequestParam(value = "limit", defaultValue = "100") Integer limit) {
+        logger.debug("### Request called --> GET /patients/changes?since={}&limit={}", cursor, limit);
+
+        if (limit < 1) {
+            throw new InvalidRequestParameterException("Limit must be a positive number");
+        }
+        PatientChangeFeed changeFeed = patientService.readChangesSince(cursor, Math.min(limit, MAX_CHANGES_PER_PAGE));
+
+        logger.info("### Patient changes returned successfully");
+        return new ResponseEntity<>(changeFeed, HttpStatus.OK);
+    }
+
     // === GET PATIENT ========================================================
 
     /**
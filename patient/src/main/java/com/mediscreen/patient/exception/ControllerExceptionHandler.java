@@ -76,6 +76,30 @@ public class ControllerExceptionHandler {
 
     // ========================================================================
 
+    /**
+     * Handles an InvalidRequestParameterException.
+     *
+     * @param ex       the exception caught
+     * @param request  the request that contains the metadata of the thrown exception
+     * @return         the simplified custom error message of the thrown exception
+     */
+    @Hidden
+    @ExceptionHandler(InvalidRequestParameterException.class)
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    public ErrorMessage invalidRequestParameterException(InvalidRequestParameterException ex, WebRequest request) {
+        ErrorMessage message = new ErrorMessage(
+                HttpStatus.BAD_REQUEST.value(),
+                new Date(),
+                ex.getMessage(),
+                request.getDescription(false)
+        );
+
+        logger.info("### Exception thrown with status code {} in {} and with message --> {}", message.getStatusCode(), request.getDescription(false), message.getMessage());
+        return message;
+    }
+
+    // ========================================================================
+
     /**
      * Handles a PatientNotFoundException.
      *
@@ -0,0 +1,17 @@
+package com.mediscreen.patient.exception;
+
+/**
+ * Exception to be thrown when a request parameter can't be used by the application.
+ */
+public class InvalidRequestParameterException extends RuntimeException {
+
+    /**
+     * Instantiates a new invalid request parameter exception.
+     *
+     * @param message  the message that gives a description of the exception that was thrown
+     */
+    public InvalidRequestParameterException(String message) {
+        super(message);
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.mediscreen.patient.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.*;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -7,6 +8,7 @@ import org.springframework.format.annotation.DateTimeFormat;
 import javax.persistence.*;
 import javax.validation.constraints.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 /**
  * The entity linked to the patients table of the database. Also contains the incoming data validation constraints.
@@ -14,11 +16,16 @@ import java.time.LocalDate;
 @Schema(description = "Patient model information")
 @Entity
 @NoArgsConstructor
-@AllArgsConstructor
 @Getter
 @Setter
 @ToString
-@Table(name = "patients")
+@Table(name = "patients", indexes = {
+        @Index(name = "idx_patients_updated_at_id", columnList = "updated_at, id"),
+        @Index(name = "idx_patients_gender_date_of_birth", columnList = "gender, date_of_birth"),
+        @Index(name = "idx_patients_date_of_birth", columnList = "date_of_birth"),
+        @Index(name = "idx_patients_last_name_first_name_date_of_birth", columnList = "last_name, first_name, date_of_birth"),
+        @Index(name = "idx_patients_phone_number", columnList = "phone_number")
+})
 public class Patient {
 
     @Schema(accessMode = Schema.AccessMode.READ_ONLY, description = "Patient id", example = "3")
@@ -63,8 +70,34 @@ public class Patient {
     @Column(name = "phone_number", length = 15)
     private String phoneNumber;
 
+    @Schema(accessMode = Schema.AccessMode.READ_ONLY, description = "Patient version, incremented on each change", example = "2")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(name = "version", nullable = false)
+    private Long version = 0L;
 
-    // === Other constructor ==================================================
+    @Schema(accessMode = Schema.AccessMode.READ_ONLY, description = "Date of the last change of the patient", example = "2023-07-01T08:00:00.123456")
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+
+    // === Other constructors =================================================
+
+    /**
+     * Instantiates a patient.
+     *
+     * @param id           the id of the patient
+     * @param lastName     the last name of the patient
+     * @param firstName    the first name of the patient
+     * @param dateOfBirth  the date of birth of the patient
+     * @param gender       the gender of the patient
+     * @param address      the address of the patient
+     * @param phoneNumber  the phone number of the patient
+     */
+    public Patient(Integer id, String lastName, String firstName, LocalDate dateOfBirth, String gender, String address, String phoneNumber) {
+        this(lastName, firstName, dateOfBirth, gender, address, phoneNumber);
+        this.id = id;
+    }
 
     /**
      * Instantiates a patient.
@@ -0,0 +1,33 @@
+package com.mediscreen.patient.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entry of the patient change feed, telling that a patient reached a given version or was deleted.
+ */
+@Schema(description = "Patient change information")
+@AllArgsConstructor
+@Getter
+@EqualsAndHashCode
+@ToString
+public class PatientChange {
+
+    @Schema(description = "Id of the changed patient", example = "3")
+    private Integer patientId;
+
+    @Schema(description = "Version of the patient after the change", example = "2")
+    private Long version;
+
+    @Schema(description = "Date of the change", example = "2023-07-01T08:00:00.123456")
+    private LocalDateTime changedAt;
+
+    @Schema(description = "Whether the patient was deleted", example = "false")
+    private boolean deleted;
+
+}
@@ -0,0 +1,28 @@
+package com.mediscreen.patient.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Page of the patient change feed, ordered from the oldest to the most recent change.
+ */
+@Schema(description = "Patient change feed page information")
+@AllArgsConstructor
+@Getter
+@ToString
+public class PatientChangeFeed {
+
+    @Schema(description = "Changes that happened after the requested cursor")
+    private List<PatientChange> changes;
+
+    @Schema(description = "Opaque cursor to send back to get the following changes", example = "MjAyMy0wNy0wMVQwODowMDowMHwz")
+    private String nextCursor;
+
+    @Schema(description = "Whether more changes are already available after the next cursor", example = "false")
+    private boolean hasMore;
+
+}
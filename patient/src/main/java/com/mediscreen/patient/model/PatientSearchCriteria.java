@@ -0,0 +1,54 @@
+package com.mediscreen.patient.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Criteria of a patient search. Criteria left empty are ignored, the other ones are all applied together.
+ */
+@Schema(description = "Patient search criteria information")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+public class PatientSearchCriteria {
+
+    @Schema(description = "Gender of the patients", example = "F")
+    private String gender;
+
+    @Schema(description = "Earliest date of birth of the patients, inclusive", example = "1945-01-01")
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private LocalDate bornAfter;
+
+    @Schema(description = "Latest date of birth of the patients, inclusive", example = "1993-12-31")
+    @DateTimeFormat(pattern = "yyyy-MM-dd")
+    private LocalDate bornBefore;
+
+    @Schema(description = "Beginning of the last name of the patients, at least 2 characters long", example = "Test")
+    private String lastNamePrefix;
+
+    @Schema(description = "Phone number of the patients", example = "300-444-5555")
+    private String phoneNumber;
+
+    /**
+     * Determines if no criterion is set, in which case a search would go through all the patients.
+     *
+     * @return  true if all criteria are empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return isBlank(gender) && bornAfter == null && bornBefore == null && isBlank(lastNamePrefix) && isBlank(phoneNumber);
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.mediscreen.patient.model;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.time.LocalDate;
+
+/**
+ * Read-only projection of a patient holding only the columns displayed in the patients list.
+ * Being a closed projection, only these columns are selected and no managed entity is created.
+ */
+@Schema(description = "Patient summary information")
+public interface PatientSummary {
+
+    @Schema(description = "Patient id", example = "3")
+    Integer getId();
+
+    @Schema(description = "Patient's last name", example = "TestInDanger")
+    String getLastName();
+
+    @Schema(description = "Patient's first name", example = "Test")
+    String getFirstName();
+
+    @Schema(description = "Patient's date of birth", example = "2004-06-18")
+    LocalDate getDateOfBirth();
+
+    @Schema(description = "Patient's gender", example = "M")
+    String getGender();
+
+}
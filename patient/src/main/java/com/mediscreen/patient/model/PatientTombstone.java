@@ -0,0 +1,33 @@
+package com.mediscreen.patient.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * The entity linked to the patient_tombstones table of the database, recording the deletion of a patient
+ * so that the change feed can report it.
+ */
+@Entity
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter
+@Setter
+@ToString
+@Table(name = "patient_tombstones", indexes = {
+        @Index(name = "idx_patient_tombstones_deleted_at_patient_id", columnList = "deleted_at, patient_id")
+})
+public class PatientTombstone {
+
+    @Id
+    @Column(name = "patient_id", nullable = false)
+    private Integer patientId;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+
+}
@@ -1,17 +1,24 @@
 package com.mediscreen.patient.repository;
 
 import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.model.PatientSummary;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * Allows interactions with the patient table of the sql database and provides functions of CRUD operations among other things.
  */
 @Repository
-public interface PatientRepository extends JpaRepository<Patient, Integer> {
+public interface PatientRepository extends JpaRepository<Patient, Integer>, JpaSpecificationExecutor<Patient>, PatientRepositoryCustom {
 
     /**
      * Determines if an instance containing the same input data already exists.
@@ -26,10 +33,52 @@ public interface PatientRepository extends JpaRepository<Patient, Integer> {
     /**
      * Returns all instances of the given type which have the same last name.
      * This includes cases where the last name is written in lowercase or uppercase or with accents.
+     * Runs read-only, declared query methods not being transactional by default, so that it is routed to the replica.
      *
      * @param lastName  the string to be searched on
      * @return          all the entities with the same last name
      */
+    @Transactional(readOnly = true)
     List<Patient> findAllByLastNameIgnoreCase(String lastName);
 
+    /**
+     * Returns the patients which id is greater than the given one, ordered by id.
+     *
+     * @param afterId   the id after which patients are returned
+     * @param pageable  the maximum number of patients to return
+     * @return          the patients following the given id
+     */
+    List<Patient> findByIdGreaterThanOrderByIdAsc(Integer afterId, Pageable pageable);
+
+    /**
+     * Returns the summary of all patients without loading them as managed entities.
+     *
+     * @return  the summaries of all the patients
+     */
+    List<PatientSummary> findAllProjectedBy();
+
+    /**
+     * Returns the summary of all patients which have the same last name without loading them as managed entities.
+     * This includes cases where the last name is written in lowercase or uppercase or with accents.
+     *
+     * @param lastName  the string to be searched on
+     * @return          the summaries of the patients with the same last name
+     */
+    List<PatientSummary> findAllProjectedByLastNameIgnoreCase(String lastName);
+
+    /**
+     * Returns the changes of patients made after the given position and before the given date, ordered by date of
+     * change then id. The range condition on the date of change lets the query be served by the (updated_at, id) index.
+     *
+     * @param since     the date of change of the last change already known
+     * @param afterId   the id of the patient of the last change already known
+     * @param until     the date before which changes are returned
+     * @param pageable  the maximum number of changes to return
+     * @return          the changes made after the given position
+     */
+    @Query("SELECT new com.mediscreen.patient.model.PatientChange(p.id, p.version, p.updatedAt, false) FROM Patient p "
+            + "WHERE p.updatedAt >= :since AND p.updatedAt < :until AND (p.updatedAt > :since OR p.id > :afterId) "
+            + "ORDER BY p.updatedAt, p.id")
+    List<PatientChange> findChangesAfter(LocalDateTime since, Integer afterId, LocalDateTime until, Pageable pageable);
+
 }
@@ -0,0 +1,23 @@
+package com.mediscreen.patient.repository;
+
+import com.mediscreen.patient.model.Patient;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Patient queries which can't be derived from method names.
+ */
+public interface PatientRepositoryCustom {
+
+    /**
+     * Returns a slice of the patients matching the given specification, telling whether more patients follow without
+     * counting them, so that only the rows of the slice are read.
+     *
+     * @param specification  the predicates the patients have to match
+     * @param pageable       the slice to return and its order
+     * @return               the slice of matching patients
+     */
+    Slice<Patient> findSlice(Specification<Patient> specification, Pageable pageable);
+
+}
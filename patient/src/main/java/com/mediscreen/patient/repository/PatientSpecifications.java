@@ -0,0 +1,134 @@
+package com.mediscreen.patient.repository;
+
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientSearchCriteria;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+
+/**
+ * Builds the query predicates of the patient search.
+ * Each supported combination of criteria is backed by an index of the patients table :
+ * <ul>
+ *     <li>gender, with or without a date of birth range : (gender, date_of_birth)</li>
+ *     <li>date of birth range alone : (date_of_birth)</li>
+ *     <li>last name prefix, with or without a date of birth range : (last_name, first_name, date_of_birth)</li>
+ *     <li>phone number : (phone_number)</li>
+ * </ul>
+ * Predicates are kept sargable (no function applied to the columns) so that the database can use these indexes, and
+ * results are sorted along the index serving the criteria, so that the database reads them in order without sorting.
+ */
+public final class PatientSpecifications {
+
+    /**
+     * Character used to escape the wildcards of a LIKE pattern.
+     */
+    private static final char LIKE_ESCAPE = '\\';
+
+    private PatientSpecifications() {
+    }
+
+    /**
+     * Combines the predicates of all the criteria which are set.
+     *
+     * @param criteria  the criteria of the search
+     * @return          the specification matching all the given criteria
+     */
+    public static Specification<Patient> matching(PatientSearchCriteria criteria) {
+        Specification<Patient> specification = Specification.where(null);
+
+        if (criteria.getGender() != null && !criteria.getGender().isBlank()) {
+            specification = specification.and(hasGender(criteria.getGender()));
+        }
+        if (criteria.getBornAfter() != null) {
+            specification = specification.and(bornOnOrAfter(criteria.getBornAfter()));
+        }
+        if (criteria.getBornBefore() != null) {
+            specification = specification.and(bornOnOrBefore(criteria.getBornBefore()));
+        }
+        if (criteria.getLastNamePrefix() != null && !criteria.getLastNamePrefix().isBlank()) {
+            specification = specification.and(lastNameStartsWith(criteria.getLastNamePrefix()));
+        }
+        if (criteria.getPhoneNumber() != null && !criteria.getPhoneNumber().isBlank()) {
+            specification = specification.and(hasPhoneNumber(criteria.getPhoneNumber()));
+        }
+        return specification;
+    }
+
+    /**
+     * Returns the order of the index serving the given criteria, ended by the id which the indexes of the patients table
+     * hold after their columns, so that the order is total and slices don't overlap.
+     *
+     * @param criteria  the criteria of the search
+     * @return          the order of the matching patients
+     */
+    public static Sort indexOrderOf(PatientSearchCriteria criteria) {
+        if (criteria.getPhoneNumber() != null && !criteria.getPhoneNumber().isBlank()) {
+            return Sort.by("id");
+        }
+        if (criteria.getLastNamePrefix() != null && !criteria.getLastNamePrefix().isBlank()) {
+            return Sort.by("lastName", "firstName", "dateOfBirth", "id");
+        }
+        // The gender, if any, is the same for all the patients, so (gender, date_of_birth) is read in date of birth order
+        return Sort.by("dateOfBirth", "id");
+    }
+
+    /**
+     * Matches the patients of the given gender.
+     *
+     * @param gender  the gender of the patients
+     * @return        the specification matching the gender
+     */
+    public static Specification<Patient> hasGender(String gender) {
+        return (root, query, builder) -> builder.equal(root.get("gender"), gender);
+    }
+
+    /**
+     * Matches the patients born on or after the given date.
+     *
+     * @param date  the earliest date of birth
+     * @return      the specification matching the dates of birth from the given date
+     */
+    public static Specification<Patient> bornOnOrAfter(LocalDate date) {
+        return (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("dateOfBirth"), date);
+    }
+
+    /**
+     * Matches the patients born on or before the given date.
+     *
+     * @param date  the latest date of birth
+     * @return      the specification matching the dates of birth until the given date
+     */
+    public static Specification<Patient> bornOnOrBefore(LocalDate date) {
+        return (root, query, builder) -> builder.lessThanOrEqualTo(root.get("dateOfBirth"), date);
+    }
+
+    /**
+     * Matches the last names beginning with the given prefix. Case is ignored through the column collation.
+     *
+     * @param prefix  the beginning of the last name, wildcards included in it are matched literally
+     * @return        the specification matching the last names beginning with the prefix
+     */
+    public static Specification<Patient> lastNameStartsWith(String prefix) {
+        return (root, query, builder) -> builder.like(root.get("lastName"), escapeLikeWildcards(prefix) + "%", LIKE_ESCAPE);
+    }
+
+    /**
+     * Matches the patients with the given phone number.
+     *
+     * @param phoneNumber  the phone number of the patients
+     * @return             the specification matching the phone number
+     */
+    public static Specification<Patient> hasPhoneNumber(String phoneNumber) {
+        return (root, query, builder) -> builder.equal(root.get("phoneNumber"), phoneNumber);
+    }
+
+    private static String escapeLikeWildcards(String value) {
+        return value
+                .replace(String.valueOf(LIKE_ESCAPE), LIKE_ESCAPE + String.valueOf(LIKE_ESCAPE))
+                .replace("%", LIKE_ESCAPE + "%")
+                .replace("_", LIKE_ESCAPE + "_");
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.mediscreen.patient.repository;
+
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.model.PatientTombstone;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Allows interactions with the patient tombstones table of the sql database.
+ */
+@Repository
+public interface PatientTombstoneRepository extends JpaRepository<PatientTombstone, Integer> {
+
+    /**
+     * Returns the deletions of patients made after the given position and before the given date, ordered by date of
+     * deletion then patient id.
+     *
+     * @param since     the date of change of the last change already known
+     * @param afterId   the id of the patient of the last change already known
+     * @param until     the date before which deletions are returned
+     * @param pageable  the maximum number of deletions to return
+     * @return          the deletions made after the given position
+     */
+    @Query("SELECT new com.mediscreen.patient.model.PatientChange(t.patientId, t.version, t.deletedAt, true) FROM PatientTombstone t "
+            + "WHERE t.deletedAt >= :since AND t.deletedAt < :until AND (t.deletedAt > :since OR t.patientId > :afterId) "
+            + "ORDER BY t.deletedAt, t.patientId")
+    List<PatientChange> findDeletionsAfter(LocalDateTime since, Integer afterId, LocalDateTime until, Pageable pageable);
+
+}
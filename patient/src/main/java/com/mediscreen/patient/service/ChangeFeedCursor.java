@@ -0,0 +1,73 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.patient.exception.InvalidRequestParameterException;
+import com.mediscreen.patient.model.PatientChange;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in the patient change feed, exchanged with clients as an opaque string.
+ */
+@AllArgsConstructor
+@Getter
+class ChangeFeedCursor {
+
+    /**
+     * Position before any change, used when the client doesn't give a cursor.
+     */
+    static final ChangeFeedCursor START = new ChangeFeedCursor(LocalDateTime.of(1970, 1, 1, 0, 0), 0);
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalDateTime changedAt;
+
+    private final Integer patientId;
+
+    /**
+     * Creates the cursor positioned on the given change.
+     *
+     * @param change  the last change read by the client
+     * @return        the cursor positioned on the change
+     */
+    static ChangeFeedCursor of(PatientChange change) {
+        return new ChangeFeedCursor(change.getChangedAt(), change.getPatientId());
+    }
+
+    /**
+     * Decodes a cursor given by a client.
+     *
+     * @param value  the opaque cursor, may be null to start from the beginning of the feed
+     * @return       the decoded cursor
+     * @throws InvalidRequestParameterException  if the value isn't a cursor
+     */
+    static ChangeFeedCursor decode(String value) {
+        if (value == null || value.isBlank()) {
+            return START;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int separatorIndex = decoded.indexOf(SEPARATOR);
+            return new ChangeFeedCursor(
+                    LocalDateTime.parse(decoded.substring(0, separatorIndex)),
+                    Integer.valueOf(decoded.substring(separatorIndex + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new InvalidRequestParameterException("Invalid change feed cursor");
+        }
+    }
+
+    /**
+     * Encodes the cursor to be sent to a client.
+     *
+     * @return  the opaque cursor
+     */
+    String encode() {
+        String raw = changedAt + SEPARATOR + patientId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,661 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.repository.PatientRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory read model of all the patients, enabled with the mediscreen.directory.enabled property.
+ * <p>
+ * Patients are stored column by column in primitive arrays indexed by a slot number. Strings are encoded in UTF-8
+ * into a single shared byte array, ids are mapped to slots through an int-keyed open-addressing table and patients
+ * with the same last name are chained together, the last name being compared without case nor accents like the
+ * database collation does. This keeps the footprint at a few dozen bytes per patient plus the size of its strings.
+ * <p>
+ * The directory is loaded once the application is ready, then kept current from the writes made by this service.
+ * Writes made to the database by other means are not seen until the next start, so the directory is meant for
+ * deployments where this service is the only writer.
+ */
+@Component
+public class PatientDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(PatientDirectory.class);
+
+    /**
+     * Number of patients read from database per query while loading the directory.
+     */
+    private static final int LOAD_BATCH_SIZE = 10000;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int NO_SLOT = -1;
+    private static final int NO_STRING = -1;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Component that handles database-related operations for patients.
+     */
+    private final PatientRepository patientRepository;
+
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+    /**
+     * Ids of the patients deleted while the directory is loading, so that an older batch doesn't bring them back.
+     */
+    private Set<Integer> removedWhileLoading;
+
+    // Columns of the patients, indexed by slot. A slot is free when its id is 0.
+    private int[] ids;
+    private int[] lastNames;
+    private int[] firstNames;
+    private int[] addresses;
+    private int[] phoneNumbers;
+    private int[] datesOfBirth;
+    private byte[] genders;
+    private long[] versions;
+    private long[] updatedAts;
+    private int[] nameHashes;
+    private int[] nextSameName;
+    private int usedSlots;
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private int size;
+
+    private StringPool strings;
+    private IntIntMap slotsById;
+    private IntIntMap firstSlotsByNameHash;
+
+    /**
+     * Instantiates a new patient directory.
+     *
+     * @param patientRepository  the repository linked to patient data, used to load the directory
+     * @param enabled            whether the directory has to be loaded and used
+     */
+    @Autowired
+    public PatientDirectory(PatientRepository patientRepository, @Value("${mediscreen.directory.enabled:false}") boolean enabled) {
+        this.patientRepository = patientRepository;
+        this.enabled = enabled;
+        clear();
+    }
+
+
+    // === LOAD ===============================================================
+
+    /**
+     * Loads all the patients of the database into the directory, then reports its memory footprint.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        logger.debug("### Try to load the patient directory from database");
+        long start = System.nanoTime();
+
+        lock.writeLock().lock();
+        try {
+            removedWhileLoading = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        int lastId = 0;
+        List<Patient> batch;
+        do {
+            batch = patientRepository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.ofSize(LOAD_BATCH_SIZE));
+            lock.writeLock().lock();
+            try {
+                for (Patient patient : batch) {
+                    if (!removedWhileLoading.contains(patient.getId())) {
+                        store(patient);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!batch.isEmpty()) {
+                lastId = batch.get(batch.size() - 1).getId();
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+
+        lock.writeLock().lock();
+        try {
+            removedWhileLoading = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long footprint = footprintBytes();
+        logger.info("### Patient directory loaded in {} ms --> {} patients, {} bytes, {} bytes per patient, about {} MB per million patients",
+                (System.nanoTime() - start) / 1_000_000, size(), footprint,
+                size() == 0 ? 0 : footprint / size(),
+                size() == 0 ? 0 : footprint * 1_000_000L / size() / (1024 * 1024));
+    }
+
+    /**
+     * Determines if the directory is loaded and can answer lookups on its own.
+     *
+     * @return  true if the directory is enabled and loaded, false otherwise
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    // === READ ===============================================================
+
+    /**
+     * Returns the patient with the given id.
+     *
+     * @param id  the id of the patient
+     * @return    the patient, or empty if it isn't in the directory or the directory isn't ready
+     */
+    public Optional<Patient> findById(Integer id) {
+        if (!ready || id == null || id <= 0) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            int slot = slotsById.get(id);
+            return slot == NO_SLOT ? Optional.empty() : Optional.of(toPatient(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all the patients with the given last name, ignoring case and accents, ordered by id.
+     *
+     * @param lastName  the last name to be searched on
+     * @return          the patients with the same last name, empty if there is none or the directory isn't ready
+     */
+    public List<Patient> findAllByLastName(String lastName) {
+        List<Patient> patients = new ArrayList<>();
+        if (!ready || lastName == null) {
+            return patients;
+        }
+        String foldedName = fold(lastName);
+        int nameHash = hashOf(foldedName);
+
+        lock.readLock().lock();
+        try {
+            for (int slot = firstSlotsByNameHash.get(nameHash); slot != NO_SLOT; slot = nextSameName[slot]) {
+                if (nameHashes[slot] == nameHash && fold(strings.get(lastNames[slot])).equals(foldedName)) {
+                    patients.add(toPatient(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        patients.sort(Comparator.comparing(Patient::getId));
+        return patients;
+    }
+
+    /**
+     * Returns the number of patients in the directory.
+     *
+     * @return  the number of patients
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the memory used by the arrays of the directory.
+     *
+     * @return  the number of bytes allocated by the directory
+     */
+    public long footprintBytes() {
+        lock.readLock().lock();
+        try {
+            long slotBytes = (long) ids.length * (Integer.BYTES * 8 + Long.BYTES * 2 + Byte.BYTES);
+            return slotBytes + (long) freeSlots.length * Integer.BYTES
+                    + strings.footprintBytes() + slotsById.footprintBytes() + firstSlotsByNameHash.footprintBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // === WRITE ==============================================================
+
+    /**
+     * Adds or replaces a patient in the directory. When called within a transaction, the change is applied once
+     * the transaction is committed so that a rolled back write is never served.
+     *
+     * @param patient  the patient as saved in database
+     */
+    public void put(Patient patient) {
+        if (!enabled || patient == null || patient.getId() == null) {
+            return;
+        }
+        Patient copy = copyOf(patient);
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                store(copy);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Removes a patient from the directory. When called within a transaction, the change is applied once
+     * the transaction is committed.
+     *
+     * @param id  the id of the deleted patient
+     */
+    public void remove(Integer id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                if (removedWhileLoading != null) {
+                    removedWhileLoading.add(id);
+                }
+                int slot = slotsById.get(id);
+                if (slot != NO_SLOT) {
+                    release(slot);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    // ========================================================================
+
+    private void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    /**
+     * Stores a patient, unless a more recent version of it is already stored. Must be called with the write lock held.
+     */
+    private void store(Patient patient) {
+        int slot = slotsById.get(patient.getId());
+        if (slot == NO_SLOT) {
+            slot = allocateSlot();
+            slotsById.put(patient.getId(), slot);
+            size++;
+        } else {
+            if (patient.getVersion() != null && versions[slot] > patient.getVersion()) {
+                return;
+            }
+            unlinkName(slot);
+            releaseStrings(slot);
+        }
+
+        ids[slot] = patient.getId();
+        lastNames[slot] = strings.add(patient.getLastName());
+        firstNames[slot] = strings.add(patient.getFirstName());
+        addresses[slot] = strings.add(patient.getAddress());
+        phoneNumbers[slot] = strings.add(patient.getPhoneNumber());
+        datesOfBirth[slot] = patient.getDateOfBirth() == null ? Integer.MIN_VALUE : (int) patient.getDateOfBirth().toEpochDay();
+        genders[slot] = patient.getGender() == null || patient.getGender().isEmpty() ? 0 : (byte) patient.getGender().charAt(0);
+        versions[slot] = patient.getVersion() == null ? 0 : patient.getVersion();
+        updatedAts[slot] = toMicros(patient.getUpdatedAt());
+        linkName(slot, hashOf(fold(patient.getLastName())));
+
+        if (strings.shouldCompact()) {
+            compactStrings();
+        }
+    }
+
+    /**
+     * Frees the slot of a patient. Must be called with the write lock held.
+     */
+    private void release(int slot) {
+        unlinkName(slot);
+        releaseStrings(slot);
+        slotsById.remove(ids[slot]);
+        ids[slot] = 0;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+        size--;
+    }
+
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (usedSlots == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            lastNames = Arrays.copyOf(lastNames, capacity);
+            firstNames = Arrays.copyOf(firstNames, capacity);
+            addresses = Arrays.copyOf(addresses, capacity);
+            phoneNumbers = Arrays.copyOf(phoneNumbers, capacity);
+            datesOfBirth = Arrays.copyOf(datesOfBirth, capacity);
+            genders = Arrays.copyOf(genders, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            updatedAts = Arrays.copyOf(updatedAts, capacity);
+            nameHashes = Arrays.copyOf(nameHashes, capacity);
+            nextSameName = Arrays.copyOf(nextSameName, capacity);
+        }
+        return usedSlots++;
+    }
+
+    private void linkName(int slot, int nameHash) {
+        nameHashes[slot] = nameHash;
+        nextSameName[slot] = firstSlotsByNameHash.get(nameHash);
+        firstSlotsByNameHash.put(nameHash, slot);
+    }
+
+    private void unlinkName(int slot) {
+        int nameHash = nameHashes[slot];
+        int current = firstSlotsByNameHash.get(nameHash);
+        if (current == slot) {
+            if (nextSameName[slot] == NO_SLOT) {
+                firstSlotsByNameHash.remove(nameHash);
+            } else {
+                firstSlotsByNameHash.put(nameHash, nextSameName[slot]);
+            }
+            return;
+        }
+        while (current != NO_SLOT && nextSameName[current] != slot) {
+            current = nextSameName[current];
+        }
+        if (current != NO_SLOT) {
+            nextSameName[current] = nextSameName[slot];
+        }
+    }
+
+    private void releaseStrings(int slot) {
+        strings.release(lastNames[slot]);
+        strings.release(firstNames[slot]);
+        strings.release(addresses[slot]);
+        strings.release(phoneNumbers[slot]);
+    }
+
+    /**
+     * Rewrites the string pool without the strings of replaced or removed patients.
+     */
+    private void compactStrings() {
+        StringPool compacted = new StringPool(Math.max(strings.liveBytes() * 2, INITIAL_CAPACITY));
+        for (int slot = 0; slot < usedSlots; slot++) {
+            if (ids[slot] != 0) {
+                lastNames[slot] = compacted.add(strings.get(lastNames[slot]));
+                firstNames[slot] = compacted.add(strings.get(firstNames[slot]));
+                addresses[slot] = compacted.add(strings.get(addresses[slot]));
+                phoneNumbers[slot] = compacted.add(strings.get(phoneNumbers[slot]));
+            }
+        }
+        strings = compacted;
+    }
+
+    private Patient toPatient(int slot) {
+        Patient patient = new Patient(
+                ids[slot],
+                strings.get(lastNames[slot]),
+                strings.get(firstNames[slot]),
+                datesOfBirth[slot] == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(datesOfBirth[slot]),
+                genders[slot] == 0 ? null : String.valueOf((char) genders[slot]),
+                strings.get(addresses[slot]),
+                strings.get(phoneNumbers[slot]));
+        patient.setVersion(versions[slot]);
+        patient.setUpdatedAt(fromMicros(updatedAts[slot]));
+        return patient;
+    }
+
+    private static Patient copyOf(Patient patient) {
+        Patient copy = new Patient(patient.getId(), patient.getLastName(), patient.getFirstName(), patient.getDateOfBirth(),
+                patient.getGender(), patient.getAddress(), patient.getPhoneNumber());
+        copy.setVersion(patient.getVersion());
+        copy.setUpdatedAt(patient.getUpdatedAt());
+        return copy;
+    }
+
+    private void clear() {
+        ids = new int[INITIAL_CAPACITY];
+        lastNames = new int[INITIAL_CAPACITY];
+        firstNames = new int[INITIAL_CAPACITY];
+        addresses = new int[INITIAL_CAPACITY];
+        phoneNumbers = new int[INITIAL_CAPACITY];
+        datesOfBirth = new int[INITIAL_CAPACITY];
+        genders = new byte[INITIAL_CAPACITY];
+        versions = new long[INITIAL_CAPACITY];
+        updatedAts = new long[INITIAL_CAPACITY];
+        nameHashes = new int[INITIAL_CAPACITY];
+        nextSameName = new int[INITIAL_CAPACITY];
+        freeSlots = new int[16];
+        strings = new StringPool(INITIAL_CAPACITY * 32);
+        slotsById = new IntIntMap(INITIAL_CAPACITY);
+        firstSlotsByNameHash = new IntIntMap(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Folds a last name the way the database collation compares it : without case nor accents.
+     */
+    static String fold(String value) {
+        if (value == null) {
+            return "";
+        }
+        return DIACRITICS.matcher(Normalizer.normalize(value, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Hashes a folded last name into a key of the name table, 0 being reserved for free entries.
+     */
+    private static int hashOf(String foldedName) {
+        int hash = foldedName.hashCode();
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long toMicros(LocalDateTime dateTime) {
+        if (dateTime == null) {
+            return NO_TIMESTAMP;
+        }
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        if (micros == NO_TIMESTAMP) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+
+    // === STORAGE STRUCTURES =================================================
+
+    /**
+     * Append-only store of UTF-8 strings, each one prefixed by its length on 2 bytes and referenced by its offset.
+     * Released strings are only counted, the space is reclaimed by rewriting the live strings into a new pool.
+     */
+    private static final class StringPool {
+
+        private byte[] data;
+        private int length;
+        private int releasedBytes;
+
+        StringPool(int capacity) {
+            data = new byte[capacity];
+        }
+
+        int add(String value) {
+            if (value == null) {
+                return NO_STRING;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > 0xFFFF) {
+                throw new IllegalArgumentException("String too long for the patient directory");
+            }
+            if (length + bytes.length + 2 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + bytes.length + 2));
+            }
+            int offset = length;
+            data[offset] = (byte) (bytes.length >>> 8);
+            data[offset + 1] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, data, offset + 2, bytes.length);
+            length += bytes.length + 2;
+            return offset;
+        }
+
+        String get(int offset) {
+            if (offset == NO_STRING) {
+                return null;
+            }
+            return new String(data, offset + 2, lengthAt(offset), StandardCharsets.UTF_8);
+        }
+
+        void release(int offset) {
+            if (offset != NO_STRING) {
+                releasedBytes += lengthAt(offset) + 2;
+            }
+        }
+
+        boolean shouldCompact() {
+            return releasedBytes > INITIAL_CAPACITY * 32 && releasedBytes > length / 2;
+        }
+
+        int liveBytes() {
+            return length - releasedBytes;
+        }
+
+        long footprintBytes() {
+            return data.length;
+        }
+
+        private int lengthAt(int offset) {
+            return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+        }
+    }
+
+    /**
+     * Open-addressing hash table from int keys to int values with linear probing, key 0 marking a free entry.
+     * Removals shift the following entries back so that no deleted marker is needed.
+     */
+    private static final class IntIntMap {
+
+        private int[] keys;
+        private int[] values;
+        private int mask;
+        private int size;
+
+        IntIntMap(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize * 2, 16) - 1) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        int get(int key) {
+            for (int index = mix(key) & mask; keys[index] != 0; index = (index + 1) & mask) {
+                if (keys[index] == key) {
+                    return values[index];
+                }
+            }
+            return NO_SLOT;
+        }
+
+        void put(int key, int value) {
+            int index = mix(key) & mask;
+            while (keys[index] != 0) {
+                if (keys[index] == key) {
+                    values[index] = value;
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+            // Keeps the load factor under 0.5 for short probe sequences
+            if (++size * 2 > keys.length) {
+                resize();
+            }
+        }
+
+        void remove(int key) {
+            int index = mix(key) & mask;
+            while (keys[index] != key) {
+                if (keys[index] == 0) {
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+            keys[index] = 0;
+            size--;
+            // Shifts back the entries of the same probe sequence into the freed entry
+            int free = index;
+            for (int next = (index + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = mix(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    keys[free] = keys[next];
+                    values[free] = values[next];
+                    keys[next] = 0;
+                    free = next;
+                }
+            }
+        }
+
+        long footprintBytes() {
+            return (long) keys.length * Integer.BYTES * 2;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            mask = keys.length - 1;
+            size = 0;
+            for (int index = 0; index < oldKeys.length; index++) {
+                if (oldKeys[index] != 0) {
+                    put(oldKeys[index], oldValues[index]);
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int hash = key * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+}
@@ -1,8 +1,15 @@
 package com.mediscreen.patient.service;
 
+import com.mediscreen.patient.exception.InvalidRequestParameterException;
 import com.mediscreen.patient.exception.PatientAlreadyExistsException;
 import com.mediscreen.patient.exception.PatientNotFoundException;
 import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChangeFeed;
+import com.mediscreen.patient.model.PatientSearchCriteria;
+import com.mediscreen.patient.model.PatientSummary;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 
@@ -34,6 +41,32 @@ public interface PatientService {
      */
     List<Patient> readAllPatientsByLastName(String keyword);
 
+    /**
+     * Retrieves the summary of all patients from database.
+     *
+     * @return  a list of the summaries of all patients
+     */
+    List<PatientSummary> readAllPatientSummaries();
+
+    /**
+     * Retrieves the summary of all patients from database which last name contains keyword.
+     *
+     * @param keyword  the string to be searched on
+     * @return         a list of the summaries of all patients containing the same keyword
+     */
+    List<PatientSummary> readAllPatientSummariesByLastName(String keyword);
+
+    /**
+     * Retrieves from database a slice of the patients matching all the given criteria, sorted along the index serving
+     * them, without counting all the matching patients.
+     *
+     * @param criteria  the criteria to be searched on, at least one of them must be set
+     * @param pageable  the number and size of the slice of patients to retrieve, its sort being replaced by the index one
+     * @return          the slice of matching patients
+     * @throws InvalidRequestParameterException  if no criterion is set or the last name prefix is too short
+     */
+    Slice<Patient> searchPatients(PatientSearchCriteria criteria, Pageable pageable) throws InvalidRequestParameterException;
+
     /**
      * Retrieves a patient by his id from database.
      *
@@ -61,4 +94,14 @@ public interface PatientService {
      */
     void deletePatient(Integer id) throws PatientNotFoundException;
 
+    /**
+     * Retrieves the creations, updates and deletions of patients made after the given cursor.
+     *
+     * @param cursor  the cursor returned by the previous call, or null to start from the first change
+     * @param limit   the maximum number of changes to retrieve
+     * @return        the changes ordered from the oldest to the most recent one, with the cursor to get the next ones
+     * @throws InvalidRequestParameterException  if the cursor is invalid
+     */
+    PatientChangeFeed readChangesSince(String cursor, int limit) throws InvalidRequestParameterException;
+
 }
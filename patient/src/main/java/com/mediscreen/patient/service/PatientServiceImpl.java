@@ -1,16 +1,33 @@
 package com.mediscreen.patient.service;
 
+import com.mediscreen.patient.exception.InvalidRequestParameterException;
 import com.mediscreen.patient.exception.PatientAlreadyExistsException;
 import com.mediscreen.patient.exception.PatientNotFoundException;
 import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.model.PatientChangeFeed;
+import com.mediscreen.patient.model.PatientSearchCriteria;
+import com.mediscreen.patient.model.PatientSummary;
+import com.mediscreen.patient.model.PatientTombstone;
 import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.repository.PatientSpecifications;
+import com.mediscreen.patient.repository.PatientTombstoneRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Implements the CRUD operations related to the patient business logic.
@@ -25,19 +42,56 @@ public class PatientServiceImpl implements PatientService {
      */
     private final PatientRepository patientRepository;
 
+    /**
+     * Component that handles database-related operations for deleted patients.
+     */
+    private final PatientTombstoneRepository patientTombstoneRepository;
+
+    /**
+     * In-memory read model of the patients, serving lookups when it is enabled.
+     */
+    private final PatientDirectory patientDirectory;
+
+    /**
+     * Age a change must reach to be served by the change feed.
+     */
+    private final Duration changeFeedSafetyLag;
+
+    /**
+     * Minimum length of a last name prefix, shorter ones would match too many patients to use the index efficiently.
+     */
+    static final int MIN_LAST_NAME_PREFIX_LENGTH = 2;
+
+    /**
+     * Order of the change feed entries.
+     */
+    private static final Comparator<PatientChange> CHANGE_ORDER = Comparator
+            .comparing(PatientChange::getChangedAt)
+            .thenComparing(PatientChange::getPatientId);
+
     /**
      * Instantiates a new patient service.
      *
-     * @param patientRepository  the repository linked to patient data
+     * @param patientRepository           the repository linked to patient data
+     * @param patientTombstoneRepository  the repository linked to deleted patient data
+     * @param patientDirectory            the in-memory read model of the patients
+     * @param changeFeedSafetyLag         the age a change must reach to be served by the change feed, longer than any
+     *                                    transaction changing patients
      */
     @Autowired
-    public PatientServiceImpl(PatientRepository patientRepository) {
+    public PatientServiceImpl(PatientRepository patientRepository, PatientTombstoneRepository patientTombstoneRepository,
+                              PatientDirectory patientDirectory,
+                              @Value("${mediscreen.changes.safety-lag:5s}") Duration changeFeedSafetyLag) {
         this.patientRepository = patientRepository;
+        this.patientTombstoneRepository = patientTombstoneRepository;
+        this.patientDirectory = patientDirectory;
+        this.changeFeedSafetyLag = changeFeedSafetyLag;
     }
 
 
     // === CREATE =============================================================
     @Override
+    @Transactional
     public Patient createPatient(Patient patientToCreate) {
         logger.debug("### Try to save in database new patient --> {}", patientToCreate);
 
@@ -50,7 +104,10 @@ public class PatientServiceImpl implements PatientService {
             throw new PatientAlreadyExistsException("Patient already exists");
         }
 
+        patientToCreate.setVersion(1L);
+        patientToCreate.setUpdatedAt(LocalDateTime.now());
         Patient createdPatient = patientRepository.save(patientToCreate);
+        patientDirectory.put(createdPatient);
 
         logger.info("### New Patient saved --> {}", createdPatient);
         return createdPatient;
@@ -58,6 +115,7 @@ public class PatientServiceImpl implements PatientService {
 
     // === READ ALL ===========================================================
     @Override
+    @Transactional(readOnly = true)
     public List<Patient> readAllPatients() {
         logger.debug("### Try to retrieve all patients from database");
 
@@ -73,11 +131,15 @@ public class PatientServiceImpl implements PatientService {
     }
 
     // === READ ALL FILTERED BY LAST NAME =====================================
+    // Not transactional, so that lookups served by the directory don't borrow a connection. The repository
+    // reads within its own read-only transaction otherwise
     @Override
     public List<Patient> readAllPatientsByLastName(String keyword) {
         logger.debug("### Try to retrieve all patients from database which last name contains '{}'", keyword);
 
-        List<Patient> listOfAllPatients = patientRepository.findAllByLastNameIgnoreCase(keyword);
+        List<Patient> listOfAllPatients = patientDirectory.isReady()
+                ? patientDirectory.findAllByLastName(keyword)
+                : patientRepository.findAllByLastNameIgnoreCase(keyword);
 
         if (listOfAllPatients.isEmpty()) {
             logger.info("### No patient found containing '{}'", keyword);
@@ -88,11 +150,77 @@ public class PatientServiceImpl implements PatientService {
         return listOfAllPatients;
     }
 
+    // === READ ALL SUMMARIES =================================================
+    @Override
+    @Transactional(readOnly = true)
+    public List<PatientSummary> readAllPatientSummaries() {
+        logger.debug("### Try to retrieve summaries of all patients from database");
+
+        List<PatientSummary> listOfAllSummaries = patientRepository.findAllProjectedBy();
+
+        if (listOfAllSummaries.isEmpty()) {
+            logger.info("### No patient summary found from database");
+            return new ArrayList<>();
+        }
+
+        logger.info("### List of {} patient summaries retrieved", listOfAllSummaries.size());
+        return listOfAllSummaries;
+    }
+
+    // === READ ALL SUMMARIES FILTERED BY LAST NAME ===========================
+    @Override
+    @Transactional(readOnly = true)
+    public List<PatientSummary> readAllPatientSummariesByLastName(String keyword) {
+        logger.debug("### Try to retrieve summaries of all patients from database which last name contains '{}'", keyword);
+
+        List<PatientSummary> listOfAllSummaries = patientRepository.findAllProjectedByLastNameIgnoreCase(keyword);
+
+        if (listOfAllSummaries.isEmpty()) {
+            logger.info("### No patient summary found containing '{}'", keyword);
+            return new ArrayList<>();
+        }
+
+        logger.info("### List of {} patient summaries containing '{}' as a last name retrieved", listOfAllSummaries.size(), keyword);
+        return listOfAllSummaries;
+    }
+
+    // === SEARCH =============================================================
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<Patient> searchPatients(PatientSearchCriteria criteria, Pageable pageable) {
+        logger.debug("### Try to search in database patients matching {} with {}", criteria, pageable);
+
+        // Rejects searches which would have to go through the whole table
+        if (criteria.isEmpty()) {
+            logger.error("### Failed to search patients without any criterion");
+            throw new InvalidRequestParameterException("At least one search criterion is required");
+        }
+        if (criteria.getLastNamePrefix() != null && !criteria.getLastNamePrefix().isBlank()
+                && criteria.getLastNamePrefix().length() < MIN_LAST_NAME_PREFIX_LENGTH) {
+            logger.error("### Failed to search patients with last name prefix '{}'", criteria.getLastNamePrefix());
+            throw new InvalidRequestParameterException("Last name prefix must be at least " + MIN_LAST_NAME_PREFIX_LENGTH + " characters long");
+        }
+
+        // Neither sorted nor counted apart from the index, which a page of all the matching patients would need
+        Pageable indexOrderedSlice = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize(), PatientSpecifications.indexOrderOf(criteria));
+        Slice<Patient> matchingPatients = patientRepository.findSlice(PatientSpecifications.matching(criteria), indexOrderedSlice);
+
+        logger.info("### Slice {} of patients matching {} retrieved --> {} patients, more following: {}", pageable.getPageNumber(), criteria, matchingPatients.getNumberOfElements(), matchingPatients.hasNext());
+        return matchingPatients;
+    }
+
     // === READ ===============================================================
+    // Not transactional, so that lookups served by the directory don't borrow a connection. The repository
+    // reads within its own read-only transaction otherwise
     @Override
     public Patient readPatient(Integer patientId) {
         logger.debug("### Try to retrieve from database patient with id={}", patientId);
 
+        Optional<Patient> directoryPatient = patientDirectory.findById(patientId);
+        if (directoryPatient.isPresent()) {
+            logger.info("### Retrieved patient with id={} from directory --> {}", patientId, directoryPatient.get());
+            return directoryPatient.get();
+        }
         Patient retrievedPatient = patientRepository.findById(patientId).orElseThrow(() -> {
             logger.error("### Failed to retrieve patient with id={} from database", patientId);
             throw new PatientNotFoundException("Patient not found or doesn't exist");
@@ -104,17 +232,21 @@ public class PatientServiceImpl implements PatientService {
 
     // === UPDATE =============================================================
     @Override
+    @Transactional
     public Patient updatePatient(Integer patientId, Patient patientToUpdate) {
         logger.debug("### Try to update in database patient with id={}", patientId);
 
         // Checks if patient with given id already exists in database
-        patientRepository.findById(patientId).orElseThrow(() -> {
+        Patient existingPatient = patientRepository.findById(patientId).orElseThrow(() -> {
             logger.error("### Failed to retrieve patient with id={}", patientId);
             throw new PatientNotFoundException("Patient not found or doesn't exist");
         });
         // Saves updated data
         patientToUpdate.setId(patientId);
+        patientToUpdate.setVersion(nextVersion(existingPatient));
+        patientToUpdate.setUpdatedAt(LocalDateTime.now());
         Patient updatedPatient = patientRepository.save(patientToUpdate);
+        patientDirectory.put(updatedPatient);
 
         logger.info("### Updated patient with id={} --> {}", patientId, updatedPatient);
         return updatedPatient;
@@ -122,17 +254,60 @@ public class PatientServiceImpl implements PatientService {
 
     // === DELETE =============================================================
     @Override
+    @Transactional
     public void deletePatient(Integer patientId) {
         logger.debug("### Try to delete from database patient with id={}", patientId);
 
         // Checks if given id exists in database before deleting
-        if(patientRepository.existsById(patientId)) {
-            patientRepository.deleteById(patientId);
-            logger.info("### Deleted patient with id={}", patientId);
-        } else {
+        Patient existingPatient = patientRepository.findById(patientId).orElseThrow(() -> {
             logger.error("### Failed to delete patient with id={}", patientId);
             throw new PatientNotFoundException("Patient not found or doesn't exist");
+        });
+        patientRepository.delete(existingPatient);
+        // Keeps track of the deletion for the change feed
+        patientTombstoneRepository.save(new PatientTombstone(patientId, nextVersion(existingPatient), LocalDateTime.now()));
+        patientDirectory.remove(patientId);
+
+        logger.info("### Deleted patient with id={}", patientId);
+    }
+
+    // === READ CHANGES =======================================================
+    @Override
+    @Transactional(readOnly = true)
+    public PatientChangeFeed readChangesSince(String cursor, int limit) {
+        logger.debug("### Try to retrieve at most {} patient changes after cursor '{}'", limit, cursor);
+
+        ChangeFeedCursor position = ChangeFeedCursor.decode(cursor);
+        // Changes are stamped before their transaction commits, so a recent change may still be followed by the commit
+        // of an older one, which the next cursor would skip. Only the changes old enough to be all committed are served.
+        LocalDateTime until = LocalDateTime.now().minus(changeFeedSafetyLag);
+        // Fetches one more entry from each table to know if more changes are available
+        PageRequest page = PageRequest.of(0, limit + 1);
+
+        List<PatientChange> changes = new ArrayList<>(patientRepository.findChangesAfter(position.getChangedAt(), position.getPatientId(), until, page));
+        changes.addAll(patientTombstoneRepository.findDeletionsAfter(position.getChangedAt(), position.getPatientId(), until, page));
+        changes.sort(CHANGE_ORDER);
+
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            changes = new ArrayList<>(changes.subList(0, limit));
         }
+        String nextCursor = changes.isEmpty() ? position.encode() : ChangeFeedCursor.of(changes.get(changes.size() - 1)).encode();
+
+        logger.info("### Retrieved {} patient changes, more available={}", changes.size(), hasMore);
+        return new PatientChangeFeed(changes, nextCursor, hasMore);
+    }
+
+    // ========================================================================
+
+    /**
+     * Determines the version a patient reaches with its next change.
+     *
+     * @param existingPatient  the patient as currently stored in database
+     * @return                 the version following the current one
+     */
+    private Long nextVersion(Patient existingPatient) {
+        return existingPatient.getVersion() == null ? 1L : existingPatient.getVersion() + 1;
     }
 
 }
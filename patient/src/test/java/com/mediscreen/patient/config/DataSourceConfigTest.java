@@ -0,0 +1,32 @@
+package com.mediscreen.patient.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.mock.env.MockEnvironment;
+
+/**
+ * Tests that the pools of the routing data source are configured as expected.
+ */
+public class DataSourceConfigTest {
+
+    @Test
+    void primaryDataSource_shouldApplyHikariSettingsToPool() {
+        DataSourceProperties primaryProperties = new DataSourceProperties();
+        primaryProperties.setUrl("jdbc:h2:mem:primary");
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("spring.datasource.hikari.maximum-pool-size", "42")
+                .withProperty("spring.datasource.hikari.connection-timeout", "1500");
+
+        HikariDataSource primary = new DataSourceConfig().primaryDataSource(primaryProperties, environment);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(primary.getMaximumPoolSize()).as("Maximum pool size").isEqualTo(42);
+            softly.assertThat(primary.getConnectionTimeout()).as("Connection timeout").isEqualTo(1500);
+            softly.assertThat(primary.getPoolName()).as("Pool name").isEqualTo("primary-pool");
+            softly.assertThat(primary.getJdbcUrl()).as("Url").isEqualTo("jdbc:h2:mem:primary");
+        });
+    }
+
+}
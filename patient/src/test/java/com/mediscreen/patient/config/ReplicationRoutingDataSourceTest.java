@@ -0,0 +1,191 @@
+package com.mediscreen.patient.config;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests that transactions are routed to the expected database, using two embedded databases as primary and replica.
+ * Nothing replicates between them but the heartbeat rows the tests copy, so that a replica behind the primary misses
+ * its writes.
+ */
+public class ReplicationRoutingDataSourceTest {
+
+    private DataSource primary;
+    private DataSource replica;
+
+
+    @BeforeEach
+    void setUp() {
+        primary = embeddedDatabase("primary");
+        replica = embeddedDatabase("replica");
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private DataSource embeddedDatabase(String name) {
+        DataSource dataSource = DataSourceBuilder.create()
+                .type(SimpleDriverDataSource.class)
+                .driverClassName("org.h2.Driver")
+                .url("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1")
+                .username("sa")
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS replication_heartbeat");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS node (name VARCHAR(10))");
+        jdbcTemplate.execute("DELETE FROM node");
+        jdbcTemplate.update("INSERT INTO node (name) VALUES (?)", name);
+        return dataSource;
+    }
+
+    private String nodeName(DataSource dataSource, boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.setReadOnly(readOnly);
+        return transactionTemplate.execute(status -> new JdbcTemplate(dataSource).queryForObject("SELECT name FROM node", String.class));
+    }
+
+    // Writes the name of the node to the primary only, the replica keeping its own
+    private void renamePrimary(DataSource dataSource, String name) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        transactionTemplate.executeWithoutResult(status -> new JdbcTemplate(dataSource).update("UPDATE node SET name = ?", name));
+    }
+
+    // Copies the heartbeat of the primary to the replica, aged by the given delay
+    private void replicateHeartbeat(Duration age) {
+        Long beat = new JdbcTemplate(primary).queryForObject("SELECT beat_millis FROM replication_heartbeat WHERE id = 1", Long.class);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS replication_heartbeat (id INT PRIMARY KEY, beat_millis BIGINT NOT NULL)");
+        jdbcTemplate.update("MERGE INTO replication_heartbeat (id, beat_millis) KEY (id) VALUES (1, ?)", beat - age.toMillis());
+    }
+
+    private DataSource routingDataSource(DataSource replicaDataSource, Duration maxLag, ReplicationLagMonitor lagMonitor) {
+        ReplicationRoutingDataSource routingDataSource = new ReplicationRoutingDataSource(primary, replicaDataSource, maxLag, lagMonitor);
+        routingDataSource.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    // Routes with a replica measured as up to date
+    private DataSource routingDataSource(DataSource replicaDataSource, Duration maxLag) {
+        ReplicationLagMonitor lagMonitor = new ReplicationLagMonitor(primary, replicaDataSource, Duration.ofMinutes(1));
+        lagMonitor.beat();
+        replicateHeartbeat(Duration.ZERO);
+        lagMonitor.measureLag();
+        return routingDataSource(replicaDataSource, maxLag, lagMonitor);
+    }
+
+
+    // ========================================================================
+    @Test
+    void readOnlyTransaction_shouldBeRoutedToReplica_andReadWriteTransactionToPrimary() {
+        DataSource dataSource = routingDataSource(replica, Duration.ZERO);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(nodeName(dataSource, true)).as("Read-only transaction").isEqualTo("replica");
+            softly.assertThat(nodeName(dataSource, false)).as("Read-write transaction").isEqualTo("primary");
+            softly.assertThat(nodeName(dataSource, true)).as("Read-only transaction after write").isEqualTo("replica");
+        });
+    }
+
+    @Test
+    void readOnlyTransaction_shouldBeRoutedToPrimary_whenLastWriteIsWithinTheToleratedLag() {
+        DataSource dataSource = routingDataSource(replica, Duration.ofMinutes(1));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(nodeName(dataSource, true)).as("Read-only transaction before any write").isEqualTo("replica");
+            softly.assertThat(nodeName(dataSource, false)).as("Read-write transaction").isEqualTo("primary");
+            softly.assertThat(nodeName(dataSource, true)).as("Read-only transaction right after write").isEqualTo("primary");
+        });
+    }
+
+    @Test
+    void readOnlyTransaction_shouldBeRoutedToReplica_whenLastWriteWasMadeByAnotherRequest() {
+        DataSource dataSource = routingDataSource(replica, Duration.ofMinutes(1));
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        String writingRequestRead = nodeName(dataSource, false) + "," + nodeName(dataSource, true);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        String otherRequestRead = nodeName(dataSource, true);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(writingRequestRead).as("Transactions of writing request").isEqualTo("primary,primary");
+            softly.assertThat(otherRequestRead).as("Read-only transaction of other request").isEqualTo("replica");
+        });
+    }
+
+    @Test
+    void readOnlyTransaction_shouldBeRoutedToReplica_whenLastWriteWasMadeByAnotherThread() throws InterruptedException {
+        DataSource dataSource = routingDataSource(replica, Duration.ofMinutes(1));
+        Thread writingThread = new Thread(() -> nodeName(dataSource, false));
+        writingThread.start();
+        writingThread.join();
+
+        assertThat(nodeName(dataSource, true)).as("Read-only transaction").isEqualTo("replica");
+    }
+
+    @Test
+    void readOnlyTransaction_shouldBeRoutedToPrimary_untilReplicaLagIsMeasured() {
+        ReplicationLagMonitor lagMonitor = new ReplicationLagMonitor(primary, replica, Duration.ofSeconds(5));
+        DataSource dataSource = routingDataSource(replica, Duration.ofSeconds(5), lagMonitor);
+
+        lagMonitor.heartbeat();
+
+        assertThat(nodeName(dataSource, true)).as("Read-only transaction without heartbeat on replica").isEqualTo("primary");
+    }
+
+    @Test
+    void readOnlyTransaction_shouldSeeWriteOfAnotherRequest_whileReplicaLagsBehindMoreThanTolerated() {
+        ReplicationLagMonitor lagMonitor = new ReplicationLagMonitor(primary, replica, Duration.ofSeconds(5));
+        DataSource dataSource = routingDataSource(replica, Duration.ofSeconds(5), lagMonitor);
+        lagMonitor.beat();
+        replicateHeartbeat(Duration.ofMinutes(1));
+        lagMonitor.measureLag();
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        renamePrimary(dataSource, "written");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        String lateReplicaRead = nodeName(dataSource, true);
+        lagMonitor.beat();
+        replicateHeartbeat(Duration.ZERO);
+        lagMonitor.measureLag();
+        String caughtUpReplicaRead = nodeName(dataSource, true);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(lagMonitor.isReplicaBehind()).as("Replica behind once caught up").isFalse();
+            softly.assertThat(lateReplicaRead).as("Read-only transaction while replica lags behind").isEqualTo("written");
+            softly.assertThat(caughtUpReplicaRead).as("Read-only transaction once replica caught up").isEqualTo("replica");
+        });
+    }
+
+    @Test
+    void readOnlyTransaction_shouldBeRoutedToPrimary_whenReplicaIsUnavailable() {
+        DataSource unavailableReplica = DataSourceBuilder.create()
+                .type(SimpleDriverDataSource.class)
+                .driverClassName("org.h2.Driver")
+                .url("jdbc:h2:mem:unavailable;IFEXISTS=TRUE")
+                .build();
+        // Measured as up to date before it went down
+        DataSource dataSource = routingDataSource(unavailableReplica, Duration.ZERO, mock(ReplicationLagMonitor.class));
+
+        assertThat(nodeName(dataSource, true)).as("Read-only transaction").isEqualTo("primary");
+    }
+
+}
@@ -1,20 +1,33 @@
 package com.mediscreen.patient.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mediscreen.patient.exception.InvalidRequestParameterException;
 import com.mediscreen.patient.exception.PatientAlreadyExistsException;
 import com.mediscreen.patient.exception.PatientNotFoundException;
 import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.model.PatientChangeFeed;
+import com.mediscreen.patient.model.PatientSearchCriteria;
+import com.mediscreen.patient.model.PatientSummary;
 import com.mediscreen.patient.service.PatientService;
+import org.assertj.core.api.SoftAssertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -45,6 +58,7 @@ public class PatientControllerTest {
     private final Patient patient3 = new Patient(3, "TestInDanger", "Test", LocalDate.parse("2004-06-18"), "M", "3 Club Road", "300-444-5555");
     private final Patient patient4 = new Patient(4, "TestEarlyOnset", "Test", LocalDate.parse("2002-06-28"), "F", "4 Valley Dr", "400-555-6666");
     private final List<Patient>expectedPatientsList = Arrays.asList(patient1, patient2, patient3, patient4);
+    private final ProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
 
 
     // === ADD PATIENT ========================================================
@@ -159,6 +173,149 @@ public class PatientControllerTest {
         verify(patientService).readAllPatients();
     }
 
+    // === GET ALL PATIENT SUMMARIES ==========================================
+    @Test
+    void getAllPatientSummaries_shouldReturnHttpStatus200Ok_whenRequestIsSuccessfulWithOnlyListedColumns() throws Exception {
+        List<PatientSummary> expectedSummaries = Arrays.asList(
+                projectionFactory.createProjection(PatientSummary.class, patient1),
+                projectionFactory.createProjection(PatientSummary.class, patient2));
+        when(patientService.readAllPatientSummaries()).thenReturn(expectedSummaries);
+
+        mockMvc.perform(get("/patients/summaries")).andDo(print())
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentType(MediaType.APPLICATION_JSON),
+                        jsonPath("$", hasSize(2)),
+                        jsonPath("$[0].id", is(patient1.getId())),
+                        jsonPath("$[0].lastName", is(patient1.getLastName())),
+                        jsonPath("$[0].firstName", is(patient1.getFirstName())),
+                        jsonPath("$[0].dateOfBirth", is(patient1.getDateOfBirth().toString())),
+                        jsonPath("$[0].gender", is(patient1.getGender())),
+                        jsonPath("$[0].address").doesNotExist(),
+                        jsonPath("$[0].phoneNumber").doesNotExist(),
+                        jsonPath("$[1].lastName", is(patient2.getLastName()))
+                );
+
+        verify(patientService).readAllPatientSummaries();
+        verify(patientService, times(0)).readAllPatients();
+    }
+
+    @Test
+    void getAllPatientSummaries_shouldReturnHttpStatus200Ok_whenRequestIsSuccessfulWithRequestParameterContainingData() throws Exception {
+        Patient patientA = new Patient(5, "Doe", "John", LocalDate.parse("1990-12-31"), "M", "", "");
+        when(patientService.readAllPatientSummariesByLastName(anyString()))
+                .thenReturn(List.of(projectionFactory.createProjection(PatientSummary.class, patientA)));
+
+        mockMvc.perform(get("/patients/summaries?lastName=Doe")).andDo(print())
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentType(MediaType.APPLICATION_JSON),
+                        jsonPath("$", hasSize(1)),
+                        jsonPath("$[0].lastName", is(patientA.getLastName()))
+                );
+
+        verify(patientService).readAllPatientSummariesByLastName("Doe");
+    }
+
+    @Test
+    void getAllPatientSummaries_shouldReturnHttpStatus204NoContent_whenRequestIsSuccessfulWithListOfSummariesEmpty() throws Exception {
+        when(patientService.readAllPatientSummaries()).thenReturn(new ArrayList<>());
+
+        mockMvc.perform(get("/patients/summaries")).andDo(print())
+                .andExpect(status().isNoContent());
+
+        verify(patientService).readAllPatientSummaries();
+    }
+
+    // === SEARCH PATIENTS ====================================================
+    @Test
+    void searchPatients_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        when(patientService.searchPatients(any(PatientSearchCriteria.class), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(patient1), PageRequest.of(0, 100), false));
+        ArgumentCaptor<PatientSearchCriteria> criteriaCaptor = ArgumentCaptor.forClass(PatientSearchCriteria.class);
+
+        mockMvc.perform(get("/patients/search?gender=F&bornAfter=1960-01-01&bornBefore=1980-01-01&size=500")).andDo(print())
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentType(MediaType.APPLICATION_JSON),
+                        jsonPath("$.content", hasSize(1)),
+                        jsonPath("$.content[0].lastName", is("TestNone")),
+                        jsonPath("$.last", is(true)),
+                        jsonPath("$.totalElements").doesNotExist()
+                );
+
+        verify(patientService).searchPatients(criteriaCaptor.capture(), eq(PageRequest.of(0, 100)));
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(criteriaCaptor.getValue().getGender()).as("Gender criterion").isEqualTo("F");
+            softly.assertThat(criteriaCaptor.getValue().getBornAfter()).as("Earliest date of birth criterion").isEqualTo(LocalDate.of(1960, 1, 1));
+            softly.assertThat(criteriaCaptor.getValue().getBornBefore()).as("Latest date of birth criterion").isEqualTo(LocalDate.of(1980, 1, 1));
+        });
+    }
+
+    @Test
+    void searchPatients_shouldReturnHttpStatus400BadRequest_whenNoCriterionIsGiven() throws Exception {
+        when(patientService.searchPatients(any(PatientSearchCriteria.class), any(Pageable.class)))
+                .thenThrow(new InvalidRequestParameterException("At least one search criterion is required"));
+
+        mockMvc.perform(get("/patients/search")).andDo(print())
+                .andExpectAll(
+                        status().isBadRequest(),
+                        jsonPath("$.message", is("At least one search criterion is required"))
+                );
+    }
+
+    @Test
+    void searchPatients_shouldReturnHttpStatus400BadRequest_whenPageIsTooDeep() throws Exception {
+        mockMvc.perform(get("/patients/search?gender=F&page=1000&size=100")).andDo(print())
+                .andExpect(status().isBadRequest());
+
+        verify(patientService, times(0)).searchPatients(any(PatientSearchCriteria.class), any(Pageable.class));
+    }
+
+    // === GET PATIENT CHANGES ================================================
+    @Test
+    void getPatientChanges_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
+        PatientChangeFeed changeFeed = new PatientChangeFeed(
+                List.of(new PatientChange(3, 2L, LocalDateTime.parse("2023-07-01T08:00:00"), true)), "nextCursor", false);
+        when(patientService.readChangesSince(any(), anyInt())).thenReturn(changeFeed);
+
+        mockMvc.perform(get("/patients/changes?since=previousCursor&limit=5000")).andDo(print())
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentType(MediaType.APPLICATION_JSON),
+                        jsonPath("$.changes", hasSize(1)),
+                        jsonPath("$.changes[0].patientId", is(3)),
+                        jsonPath("$.changes[0].version", is(2)),
+                        jsonPath("$.changes[0].deleted", is(true)),
+                        jsonPath("$.nextCursor", is("nextCursor")),
+                        jsonPath("$.hasMore", is(false))
+                );
+
+        verify(patientService).readChangesSince("previousCursor", 1000);
+    }
+
+    @Test
+    void getPatientChanges_shouldReturnHttpStatus400BadRequest_whenCursorIsInvalid() throws Exception {
+        when(patientService.readChangesSince(any(), anyInt())).thenThrow(new InvalidRequestParameterException("Invalid change feed cursor"));
+
+        mockMvc.perform(get("/patients/changes?since=abc")).andDo(print())
+                .andExpectAll(
+                        status().isBadRequest(),
+                        content().contentType(MediaType.APPLICATION_JSON),
+                        jsonPath("$.message", is("Invalid change feed cursor"))
+                );
+
+        verify(patientService).readChangesSince("abc", 100);
+    }
+
+    @Test
+    void getPatientChanges_shouldReturnHttpStatus400BadRequest_whenLimitIsNotPositive() throws Exception {
+        mockMvc.perform(get("/patients/changes?limit=0")).andDo(print())
+                .andExpect(status().isBadRequest());
+
+        verify(patientService, times(0)).readChangesSince(any(), anyInt());
+    }
+
     // === GET PATIENT ========================================================
     @Test
     void getPatientById_shouldReturnHttpStatus200Ok_whenRequestIsSuccessful() throws Exception {
@@ -0,0 +1,184 @@
+package com.mediscreen.patient.repository;
+
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientSearchCriteria;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "com.mediscreen.patient.repository.PatientSpecificationsTest$SqlRecorder")
+class PatientSpecificationsTest {
+
+    @Autowired
+    PatientRepository patientRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    Patient patient1, patient2, patient3, patient4;
+
+    @BeforeEach
+    void setUp() {
+        patient1 = new Patient("TestNone", "Test", LocalDate.of(1966, 12, 31), "F", "1 Brookside St", "100-222-3333");
+        patient2 = new Patient("TestBorderline", "Test", LocalDate.of(1945, 6, 24), "M", "2 High St", "200-333-4444");
+        patient3 = new Patient("TestInDanger", "Test", LocalDate.of(2004, 6, 18), "M", "3 Club Road", "300-444-5555");
+        patient4 = new Patient("Te_st", "Test", LocalDate.of(1990, 1, 1), "F", "4 Valley Dr", "400-555-6666");
+        patientRepository.saveAll(List.of(patient1, patient2, patient3, patient4));
+        SqlRecorder.statements.clear();
+    }
+
+    // === RESULTS ============================================================
+    @Test
+    void matching_shouldReturnPatientsMatchingAllCriteria_whenGenderAndDateOfBirthRangeAreGiven() {
+        PatientSearchCriteria criteria = new PatientSearchCriteria("F", LocalDate.of(1960, 1, 1), LocalDate.of(1980, 1, 1), null, null);
+
+        Slice<Patient> result = search(criteria, 0, 10);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getContent()).as("Matching patients").containsExactly(patient1);
+            softly.assertThat(result.hasNext()).as("More matching patients").isFalse();
+        });
+    }
+
+    @Test
+    void findSlice_shouldReturnSlicesInIndexOrderWithoutCounting_whenMorePatientsMatch() {
+        PatientSearchCriteria criteria = new PatientSearchCriteria("M", null, null, null, null);
+
+        Slice<Patient> firstSlice = search(criteria, 0, 1);
+        Slice<Patient> secondSlice = search(criteria, 1, 1);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(firstSlice.getContent()).as("First slice, born first").containsExactly(patient2);
+            softly.assertThat(firstSlice.hasNext()).as("More patients after first slice").isTrue();
+            softly.assertThat(secondSlice.getContent()).as("Second slice").containsExactly(patient3);
+            softly.assertThat(secondSlice.hasNext()).as("More patients after second slice").isFalse();
+            softly.assertThat(SqlRecorder.statements).as("Statements run").noneMatch(sql -> sql.contains("count("));
+        });
+    }
+
+    @Test
+    void matching_shouldReturnPatientsWhichLastNameStartsWithPrefix_whenLastNamePrefixIsGiven() {
+        PatientSearchCriteria criteria = new PatientSearchCriteria(null, null, null, "TestB", null);
+
+        List<Patient> result = patientRepository.findAll(PatientSpecifications.matching(criteria));
+
+        assertThat(result).as("Matching patients").containsExactly(patient2);
+    }
+
+    @Test
+    void matching_shouldMatchWildcardsLiterally_whenLastNamePrefixContainsWildcards() {
+        PatientSearchCriteria criteria = new PatientSearchCriteria(null, null, null, "Te_", null);
+
+        List<Patient> result = patientRepository.findAll(PatientSpecifications.matching(criteria));
+
+        assertThat(result).as("Matching patients").containsExactly(patient4);
+    }
+
+    @Test
+    void matching_shouldReturnPatientWithPhoneNumber_whenPhoneNumberIsGiven() {
+        PatientSearchCriteria criteria = new PatientSearchCriteria(null, null, null, null, "300-444-5555");
+
+        List<Patient> result = patientRepository.findAll(PatientSpecifications.matching(criteria));
+
+        assertThat(result).as("Matching patients").containsExactly(patient3);
+    }
+
+    // === QUERY PLANS ========================================================
+    @Test
+    void queryPlan_shouldUseGenderAndDateOfBirthIndex_whenGenderAndDateOfBirthRangeAreGiven() {
+        String plan = explainSearch(new PatientSearchCriteria("F", LocalDate.of(1960, 1, 1), LocalDate.of(1980, 1, 1), null, null),
+                "F", LocalDate.of(1960, 1, 1), LocalDate.of(1980, 1, 1));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(plan).as("Query plan").containsIgnoringCase("IDX_PATIENTS_GENDER_DATE_OF_BIRTH");
+            softly.assertThat(lastStatement()).as("Generated statement").endsWith("order by patient0_.date_of_birth asc, patient0_.id asc limit ?");
+        });
+    }
+
+    @Test
+    void queryPlan_shouldUseDateOfBirthIndex_whenOnlyDateOfBirthRangeIsGiven() {
+        String plan = explainSearch(new PatientSearchCriteria(null, LocalDate.of(1960, 1, 1), LocalDate.of(1980, 1, 1), null, null),
+                LocalDate.of(1960, 1, 1), LocalDate.of(1980, 1, 1));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(plan).as("Query plan").containsIgnoringCase("IDX_PATIENTS_DATE_OF_BIRTH");
+            softly.assertThat(lastStatement()).as("Generated statement").endsWith("order by patient0_.date_of_birth asc, patient0_.id asc limit ?");
+        });
+    }
+
+    @Test
+    void queryPlan_shouldUseLastNameIndex_whenLastNamePrefixIsGiven() {
+        String plan = explainSearch(new PatientSearchCriteria(null, LocalDate.of(1940, 1, 1), null, "TestB", null),
+                LocalDate.of(1940, 1, 1), "TestB%", "\\");
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(plan).as("Query plan").containsIgnoringCase("IDX_PATIENTS_LAST_NAME_FIRST_NAME_DATE_OF_BIRTH");
+            softly.assertThat(lastStatement()).as("Generated statement")
+                    .endsWith("order by patient0_.last_name asc, patient0_.first_name asc, patient0_.date_of_birth asc, patient0_.id asc limit ?");
+        });
+    }
+
+    @Test
+    void queryPlan_shouldUsePhoneNumberIndex_whenPhoneNumberIsGiven() {
+        String plan = explainSearch(new PatientSearchCriteria(null, null, null, null, "300-444-5555"), "300-444-5555");
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(plan).as("Query plan").containsIgnoringCase("IDX_PATIENTS_PHONE_NUMBER");
+            softly.assertThat(lastStatement()).as("Generated statement").endsWith("order by patient0_.id asc limit ?");
+        });
+    }
+
+    // ========================================================================
+
+    /**
+     * Records the SQL statements Hibernate sends, once their parameters are replaced by placeholders.
+     */
+    public static class SqlRecorder implements StatementInspector {
+
+        static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+
+    private String lastStatement() {
+        return SqlRecorder.statements.get(SqlRecorder.statements.size() - 1);
+    }
+
+    private Slice<Patient> search(PatientSearchCriteria criteria, int page, int size) {
+        return patientRepository.findSlice(PatientSpecifications.matching(criteria),
+                PageRequest.of(page, size, PatientSpecifications.indexOrderOf(criteria)));
+    }
+
+    /**
+     * Runs the search the service makes for the given criteria, then returns the plan chosen by the database for the
+     * statement Hibernate generated, bound with the values of the criteria in the order of its predicates.
+     * The embedded database leaves the primary key out of its secondary indexes, so unlike MySQL it still sorts on the
+     * trailing id, which is why the tests check the order of the generated statement rather than the plan for it.
+     */
+    private String explainSearch(PatientSearchCriteria criteria, Object... criteriaValues) {
+        search(criteria, 0, 20);
+        String sql = lastStatement();
+        Object[] parameters = new Object[criteriaValues.length + 1];
+        System.arraycopy(criteriaValues, 0, parameters, 0, criteriaValues.length);
+        // Limit of the first slice, one more patient telling whether another slice follows
+        parameters[criteriaValues.length] = 21;
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, parameters);
+    }
+
+}
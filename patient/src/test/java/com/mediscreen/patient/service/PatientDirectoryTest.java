@@ -0,0 +1,189 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.repository.PatientRepository;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PatientDirectoryTest {
+
+    @Mock
+    PatientRepository patientRepository;
+
+    PatientDirectory directoryUnderTest;
+
+    Patient patient1, patient2, patient3;
+
+    @BeforeEach
+    void setUp() {
+        directoryUnderTest = new PatientDirectory(patientRepository, true);
+        patient1 = patient(1, "TestNone", "1966-12-31", "F", "1 Brookside St", "100-222-3333");
+        patient2 = patient(2, "TestéBorderline", "1945-06-24", "M", null, null);
+        patient3 = patient(3, "testeborderline", "2004-06-18", "M", "3 Club Road", "300-444-5555");
+    }
+
+    // === LOAD ===============================================================
+    @Test
+    void load_shouldReadAllPatientsByBatch_whenDirectoryIsEnabled() {
+        when(patientRepository.findByIdGreaterThanOrderByIdAsc(anyInt(), any(Pageable.class))).thenReturn(List.of(patient1, patient2, patient3));
+
+        directoryUnderTest.load();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(directoryUnderTest.isReady()).as("Directory ready").isTrue();
+            softly.assertThat(directoryUnderTest.size()).as("Number of patients").isEqualTo(3);
+            softly.assertThat(directoryUnderTest.footprintBytes()).as("Footprint").isPositive();
+        });
+        verify(patientRepository).findByIdGreaterThanOrderByIdAsc(eq(0), any(Pageable.class));
+    }
+
+    @Test
+    void load_shouldDoNothing_whenDirectoryIsDisabled() {
+        directoryUnderTest = new PatientDirectory(patientRepository, false);
+
+        directoryUnderTest.load();
+        directoryUnderTest.put(patient1);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(directoryUnderTest.isReady()).as("Directory ready").isFalse();
+            softly.assertThat(directoryUnderTest.findById(1)).as("Patient found").isEmpty();
+        });
+        verifyNoInteractions(patientRepository);
+    }
+
+    // === READ ===============================================================
+    @Test
+    void findById_shouldReturnAllFieldsOfPatient_whenPatientIsInDirectory() {
+        loadWith(patient1, patient2);
+
+        Optional<Patient> result = directoryUnderTest.findById(1);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("Patient found").isPresent();
+            softly.assertThat(result.get()).as("Patient").usingRecursiveComparison().isEqualTo(patient1);
+            softly.assertThat(directoryUnderTest.findById(2).get()).as("Patient without address").usingRecursiveComparison().isEqualTo(patient2);
+            softly.assertThat(directoryUnderTest.findById(4)).as("Unknown patient").isEmpty();
+        });
+    }
+
+    @Test
+    void findAllByLastName_shouldIgnoreCaseAndAccents_whenPatientsShareLastName() {
+        loadWith(patient1, patient2, patient3);
+
+        List<Patient> result = directoryUnderTest.findAllByLastName("TESTEBORDERLINE");
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("Patients found").extracting(Patient::getId).containsExactly(2, 3);
+            softly.assertThat(directoryUnderTest.findAllByLastName("Unknown")).as("Unknown last name").isEmpty();
+        });
+    }
+
+    // === WRITE ==============================================================
+    @Test
+    void put_shouldReplacePatientAndMoveItToItsNewLastName_whenPatientIsUpdated() {
+        loadWith(patient1, patient2);
+        Patient updatedPatient = patient(2, "TestNone", "1945-06-24", "M", "2 High St", "200-333-4444");
+        updatedPatient.setVersion(2L);
+
+        directoryUnderTest.put(updatedPatient);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(directoryUnderTest.findById(2).get().getAddress()).as("Updated address").isEqualTo("2 High St");
+            softly.assertThat(directoryUnderTest.findAllByLastName("TestNone")).as("Patients with new last name").extracting(Patient::getId).containsExactly(1, 2);
+            softly.assertThat(directoryUnderTest.findAllByLastName("TestEBorderline")).as("Patients with old last name").isEmpty();
+            softly.assertThat(directoryUnderTest.size()).as("Number of patients").isEqualTo(2);
+        });
+    }
+
+    @Test
+    void put_shouldKeepMostRecentVersion_whenOlderVersionIsGiven() {
+        Patient recentPatient = patient(1, "TestRecent", "1966-12-31", "F", null, null);
+        recentPatient.setVersion(5L);
+        loadWith(recentPatient);
+
+        directoryUnderTest.put(patient1);
+
+        assertThat(directoryUnderTest.findById(1).get().getLastName()).as("Last name").isEqualTo("TestRecent");
+    }
+
+    @Test
+    void remove_shouldRemovePatientFromAllLookups_whenPatientIsInDirectory() {
+        loadWith(patient1, patient2, patient3);
+
+        directoryUnderTest.remove(2);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(directoryUnderTest.findById(2)).as("Removed patient").isEmpty();
+            softly.assertThat(directoryUnderTest.findAllByLastName("testeborderline")).as("Patients with same last name").extracting(Patient::getId).containsExactly(3);
+            softly.assertThat(directoryUnderTest.size()).as("Number of patients").isEqualTo(2);
+        });
+    }
+
+    @Test
+    void putAndRemove_shouldKeepLookupsConsistent_whenManyPatientsAreWritten() {
+        loadWith();
+        int count = 50000;
+        for (int id = 1; id <= count; id++) {
+            directoryUnderTest.put(patient(id, "Name" + (id % 100), "1980-01-01", id % 2 == 0 ? "M" : "F", "Address " + id, null));
+        }
+        // Removes every third patient then rewrites every other one to reuse freed slots and strings
+        for (int id = 3; id <= count; id += 3) {
+            directoryUnderTest.remove(id);
+        }
+        for (int id = 2; id <= count; id += 2) {
+            Patient rewritten = patient(id, "Name" + (id % 100), "1980-01-01", "M", "New address " + id, null);
+            rewritten.setVersion(2L);
+            directoryUnderTest.put(rewritten);
+        }
+
+        List<String> errors = new ArrayList<>();
+        for (int id = 1; id <= count; id++) {
+            Optional<Patient> patient = directoryUnderTest.findById(id);
+            boolean removed = id % 3 == 0 && id % 2 != 0;
+            String expectedAddress = id % 2 == 0 ? "New address " + id : "Address " + id;
+            if (removed ? patient.isPresent() : !patient.map(p -> p.getAddress().equals(expectedAddress)).orElse(false)) {
+                errors.add("Unexpected patient for id " + id + " --> " + patient);
+            }
+        }
+        long expectedName7Count = IntStream.rangeClosed(1, count).filter(id -> id % 100 == 7 && !(id % 3 == 0 && id % 2 != 0)).count();
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(errors).as("Lookup errors").isEmpty();
+            softly.assertThat(directoryUnderTest.size()).as("Number of patients").isEqualTo(count - count / 6);
+            softly.assertThat(directoryUnderTest.findAllByLastName("name7")).as("Patients with same last name").hasSize((int) expectedName7Count);
+        });
+    }
+
+    // ========================================================================
+
+    private void loadWith(Patient... patients) {
+        when(patientRepository.findByIdGreaterThanOrderByIdAsc(anyInt(), any(Pageable.class))).thenReturn(List.of(patients));
+        directoryUnderTest.load();
+    }
+
+    private static Patient patient(int id, String lastName, String dateOfBirth, String gender, String address, String phoneNumber) {
+        Patient patient = new Patient(id, lastName, "Test", LocalDate.parse(dateOfBirth), gender, address, phoneNumber);
+        patient.setVersion(1L);
+        patient.setUpdatedAt(LocalDateTime.of(2023, 7, 1, 8, 0, 0, 123456000));
+        return patient;
+    }
+
+}
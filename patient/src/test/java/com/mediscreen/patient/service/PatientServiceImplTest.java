@@ -1,17 +1,36 @@
 package com.mediscreen.patient.service;
 
+import com.mediscreen.patient.exception.InvalidRequestParameterException;
 import com.mediscreen.patient.exception.PatientAlreadyExistsException;
 import com.mediscreen.patient.exception.PatientNotFoundException;
 import com.mediscreen.patient.model.Patient;
+import com.mediscreen.patient.model.PatientChange;
+import com.mediscreen.patient.model.PatientChangeFeed;
+import com.mediscreen.patient.model.PatientSearchCriteria;
+import com.mediscreen.patient.model.PatientSummary;
+import com.mediscreen.patient.model.PatientTombstone;
 import com.mediscreen.patient.repository.PatientRepository;
+import com.mediscreen.patient.repository.PatientTombstoneRepository;
 import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.projection.ProjectionFactory;
+import org.springframework.data.projection.SpelAwareProxyProjectionFactory;
+
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -27,17 +46,25 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 public class PatientServiceImplTest {
 
-    @InjectMocks
     PatientServiceImpl serviceUnderTest;
     @Mock
     PatientRepository patientRepository;
+    @Mock
+    PatientTombstoneRepository patientTombstoneRepository;
+    @Mock
+    PatientDirectory patientDirectory;
 
     private final Patient patient1 = new Patient(1, "TestNone", "Test", LocalDate.parse("1966-12-31"), "F", "1 Brookside St", "100-222-3333");
     private final Patient patient2 = new Patient(2, "TestBorderline", "Test", LocalDate.parse("1945-06-24"), "M", "2 High St", "200-333-4444");
     private final Patient patient3 = new Patient(3, "TestInDanger", "Test", LocalDate.parse("2004-06-18"), "M", "3 Club Road", "300-444-5555");
     private final Patient patient4 = new Patient(4, "TestEarlyOnset", "Test", LocalDate.parse("2002-06-28"), "F", "4 Valley Dr", "400-555-6666");
     private final List<Patient> expectedPatientsList = Arrays.asList(patient1, patient2, patient3, patient4);
+    private final ProjectionFactory projectionFactory = new SpelAwareProxyProjectionFactory();
 
+    @BeforeEach
+    void setUp() {
+        serviceUnderTest = new PatientServiceImpl(patientRepository, patientTombstoneRepository, patientDirectory, Duration.ofSeconds(5));
+    }
 
     // === CREATE =============================================================
     @Test
@@ -61,6 +88,9 @@ public class PatientServiceImplTest {
         });
         verify(patientRepository).existsByLastNameAndFirstNameAndDateOfBirth(patientToSave.getLastName(), patientToSave.getFirstName(), patientToSave.getDateOfBirth());
         verify(patientRepository).save(patientToSave);
+        verify(patientDirectory).put(patient1);
+        assertThat(patientToSave.getVersion()).as("Version of the created patient").isEqualTo(1L);
+        assertThat(patientToSave.getUpdatedAt()).as("Date of change of the created patient").isNotNull();
     }
 
     @Test
@@ -144,6 +174,126 @@ public class PatientServiceImplTest {
         verify(patientRepository).findAllByLastNameIgnoreCase(keyword);
     }
 
+    @Test
+    void readAllPatientsByLastName_shouldReturnPatientsFromDirectory_whenDirectoryIsReady() {
+        String keyword = "testnone";
+        when(patientDirectory.isReady()).thenReturn(true);
+        when(patientDirectory.findAllByLastName(anyString())).thenReturn(List.of(patient1));
+
+        List<Patient> result = serviceUnderTest.readAllPatientsByLastName(keyword);
+
+        assertThat(result).as("Patients found from directory").isEqualTo(List.of(patient1));
+        verify(patientDirectory).findAllByLastName(keyword);
+        verify(patientRepository, times(0)).findAllByLastNameIgnoreCase(anyString());
+    }
+
+    // === READ ALL SUMMARIES =================================================
+    @Test
+    void readAllPatientSummaries_shouldReturnEmptyList_whenDatabaseContainsNoData() {
+        when(patientRepository.findAllProjectedBy()).thenReturn(new ArrayList<>());
+
+        List<PatientSummary> result = serviceUnderTest.readAllPatientSummaries();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("All patient summaries found from database")
+                    .isNotNull()
+                    .isEmpty();
+        });
+        verify(patientRepository).findAllProjectedBy();
+        verify(patientRepository, times(0)).findAll();
+    }
+
+    @Test
+    void readAllPatientSummaries_shouldReturnListOfAllSummaries_whenDatabaseContainsData() {
+        PatientSummary summary1 = projectionFactory.createProjection(PatientSummary.class, patient1);
+        PatientSummary summary2 = projectionFactory.createProjection(PatientSummary.class, patient2);
+        when(patientRepository.findAllProjectedBy()).thenReturn(Arrays.asList(summary1, summary2));
+
+        List<PatientSummary> result = serviceUnderTest.readAllPatientSummaries();
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("All patient summaries found from database")
+                    .isNotNull()
+                    .hasSize(2)
+                    .contains(summary1, summary2);
+            softly.assertThat(result.get(0).getLastName()).as("First summary last name").isEqualTo("TestNone");
+        });
+        verify(patientRepository).findAllProjectedBy();
+    }
+
+    @Test
+    void readAllPatientSummariesByLastName_shouldReturnListOfSummariesWithSameLastName_whenDatabaseFindDataWithGivenKeyword() {
+        Patient patientA = new Patient(5, "Doe", "John", LocalDate.parse("1990-12-31"), "M", "", "");
+        PatientSummary summaryA = projectionFactory.createProjection(PatientSummary.class, patientA);
+        String keyword = "doe";
+        when(patientRepository.findAllProjectedByLastNameIgnoreCase(anyString())).thenReturn(List.of(summaryA));
+
+        List<PatientSummary> result = serviceUnderTest.readAllPatientSummariesByLastName(keyword);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("Patient summaries found from database")
+                    .isNotNull()
+                    .hasSize(1)
+                    .contains(summaryA);
+        });
+        verify(patientRepository).findAllProjectedByLastNameIgnoreCase(keyword);
+    }
+
+    @Test
+    void readAllPatientSummariesByLastName_shouldReturnEmptyList_whenDatabaseDoesNotFindDataWithGivenKeyword() {
+        String keyword = "test";
+        when(patientRepository.findAllProjectedByLastNameIgnoreCase(anyString())).thenReturn(new ArrayList<>());
+
+        List<PatientSummary> result = serviceUnderTest.readAllPatientSummariesByLastName(keyword);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result).as("Patient summaries found from database")
+                    .isNotNull()
+                    .isEmpty();
+        });
+        verify(patientRepository).findAllProjectedByLastNameIgnoreCase(keyword);
+    }
+
+    // === SEARCH =============================================================
+    @Test
+    void searchPatients_shouldReturnSliceSortedAlongIndex_whenCriteriaAreGiven() {
+        PatientSearchCriteria criteria = new PatientSearchCriteria("F", LocalDate.of(1960, 1, 1), null, null, null);
+        when(patientRepository.findSlice(ArgumentMatchers.<Specification<Patient>>any(), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(patient1), PageRequest.of(1, 20, Sort.by("dateOfBirth", "id")), true));
+
+        Slice<Patient> result = serviceUnderTest.searchPatients(criteria, PageRequest.of(1, 20));
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getContent()).as("Matching patients").containsExactly(patient1);
+            softly.assertThat(result.hasNext()).as("More matching patients").isTrue();
+        });
+        // Ordered like the (gender, date_of_birth) index, so that the database neither sorts nor counts
+        verify(patientRepository).findSlice(ArgumentMatchers.<Specification<Patient>>any(), eq(PageRequest.of(1, 20, Sort.by("dateOfBirth", "id"))));
+        verify(patientRepository, never()).findAll(ArgumentMatchers.<Specification<Patient>>any(), any(Pageable.class));
+    }
+
+    @Test
+    void searchPatients_shouldThrowAnException_whenNoCriterionIsGiven() {
+        Throwable result = catchThrowable(() -> serviceUnderTest.searchPatients(new PatientSearchCriteria(), PageRequest.of(0, 20)));
+
+        assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("At least one search criterion is required");
+        verify(patientRepository, times(0)).findSlice(ArgumentMatchers.<Specification<Patient>>any(), any(Pageable.class));
+    }
+
+    @Test
+    void searchPatients_shouldThrowAnException_whenLastNamePrefixIsTooShort() {
+        PatientSearchCriteria criteria = new PatientSearchCriteria(null, null, null, "T", null);
+
+        Throwable result = catchThrowable(() -> serviceUnderTest.searchPatients(criteria, PageRequest.of(0, 20)));
+
+        assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("Last name prefix must be at least 2 characters long");
+        verify(patientRepository, times(0)).findSlice(ArgumentMatchers.<Specification<Patient>>any(), any(Pageable.class));
+    }
+
     // === READ ===============================================================
     @Test
     void readPatient_shouldReturnThePatientWithTheGivenId_whenGivenIdIsPresentInDatabase() {
@@ -160,6 +310,18 @@ public class PatientServiceImplTest {
         verify(patientRepository).findById(patientId);
     }
 
+    @Test
+    void readPatient_shouldReturnThePatientFromDirectory_whenDirectoryHoldsThePatient() {
+        int patientId = 1;
+        when(patientDirectory.findById(anyInt())).thenReturn(Optional.of(patient1));
+
+        Patient result = serviceUnderTest.readPatient(patientId);
+
+        assertThat(result).as("Patient found").isEqualTo(patient1);
+        verify(patientDirectory).findById(patientId);
+        verify(patientRepository, times(0)).findById(anyInt());
+    }
+
     @Test
     void readPatient_shouldThrowAnException_whenGivenIdIsNotPresentInDatabase() {
         int unknownPatientId = 0;
@@ -197,6 +359,9 @@ public class PatientServiceImplTest {
         });
         verify(patientRepository).findById(patientId);
         verify(patientRepository).save(patientToUpdate);
+        verify(patientDirectory).put(patientToUpdate);
+        assertThat(patientToUpdate.getVersion()).as("Version of the updated patient").isEqualTo(patient1.getVersion() + 1);
+        assertThat(patientToUpdate.getUpdatedAt()).as("Date of change of the updated patient").isNotNull();
     }
 
     @Test
@@ -217,20 +382,29 @@ public class PatientServiceImplTest {
 
     // === DELETE =============================================================
     @Test
-    void deletePatient_shouldDeletePatient_whenGivenIdIsPresentInDatabase() {
+    void deletePatient_shouldDeletePatientAndRecordTombstone_whenGivenIdIsPresentInDatabase() {
         int patientId = patient1.getId();
-        when(patientRepository.existsById(anyInt())).thenReturn(true);
+        patient1.setVersion(3L);
+        when(patientRepository.findById(anyInt())).thenReturn(Optional.of(patient1));
+        ArgumentCaptor<PatientTombstone> tombstoneCaptor = ArgumentCaptor.forClass(PatientTombstone.class);
 
         serviceUnderTest.deletePatient(patientId);
 
-        verify(patientRepository).existsById(patientId);
-        verify(patientRepository).deleteById(patientId);
+        verify(patientRepository).findById(patientId);
+        verify(patientRepository).delete(patient1);
+        verify(patientTombstoneRepository).save(tombstoneCaptor.capture());
+        verify(patientDirectory).remove(patientId);
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(tombstoneCaptor.getValue().getPatientId()).as("Tombstone patient id").isEqualTo(patientId);
+            softly.assertThat(tombstoneCaptor.getValue().getVersion()).as("Tombstone version").isEqualTo(4L);
+            softly.assertThat(tombstoneCaptor.getValue().getDeletedAt()).as("Tombstone date").isNotNull();
+        });
     }
 
     @Test
     void deletePatient_shouldThrowAnException_whenGivenIdIsNotPresentInDatabase() {
         int unknownPatientId = 0;
-        when(patientRepository.existsById(anyInt())).thenReturn(false);
+        when(patientRepository.findById(anyInt())).thenReturn(Optional.empty());
 
         Throwable result = catchThrowable(() -> serviceUnderTest.deletePatient(unknownPatientId));
 
@@ -239,8 +413,76 @@ public class PatientServiceImplTest {
                     .isInstanceOf(PatientNotFoundException.class)
                     .hasMessageContaining("Patient not found");
         });
-        verify(patientRepository).existsById(unknownPatientId);
-        verify(patientRepository, times(0)).deleteById(unknownPatientId);
+        verify(patientRepository).findById(unknownPatientId);
+        verify(patientRepository, times(0)).delete(any(Patient.class));
+        verify(patientTombstoneRepository, times(0)).save(any(PatientTombstone.class));
+    }
+
+    // === READ CHANGES =======================================================
+    @Test
+    void readChangesSince_shouldReturnUpdatesAndDeletionsInOrder_whenNoCursorIsGiven() {
+        LocalDateTime time = LocalDateTime.of(2023, 7, 1, 8, 0);
+        PatientChange update1 = new PatientChange(1, 2L, time, false);
+        PatientChange update3 = new PatientChange(3, 1L, time.plusSeconds(2), false);
+        PatientChange deletion2 = new PatientChange(2, 5L, time.plusSeconds(1), true);
+        when(patientRepository.findChangesAfter(any(LocalDateTime.class), anyInt(), any(LocalDateTime.class), any(Pageable.class))).thenReturn(Arrays.asList(update1, update3));
+        when(patientTombstoneRepository.findDeletionsAfter(any(LocalDateTime.class), anyInt(), any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(deletion2));
+
+        PatientChangeFeed result = serviceUnderTest.readChangesSince(null, 10);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(result.getChanges()).as("Changes").containsExactly(update1, deletion2, update3);
+            softly.assertThat(result.isHasMore()).as("More changes available").isFalse();
+            softly.assertThat(result.getNextCursor()).as("Next cursor").isNotBlank();
+        });
+        verify(patientRepository).findChangesAfter(eq(LocalDateTime.of(1970, 1, 1, 0, 0)), eq(0), any(LocalDateTime.class), eq(Pageable.ofSize(11)));
+    }
+
+    @Test
+    void readChangesSince_shouldResumeFromTheNextCursor_whenMoreChangesThanLimitAreAvailable() {
+        LocalDateTime time = LocalDateTime.of(2023, 7, 1, 8, 0);
+        PatientChange update1 = new PatientChange(1, 2L, time, false);
+        PatientChange update2 = new PatientChange(2, 1L, time, false);
+        when(patientRepository.findChangesAfter(any(LocalDateTime.class), anyInt(), any(LocalDateTime.class), any(Pageable.class))).thenReturn(Arrays.asList(update1, update2));
+        when(patientTombstoneRepository.findDeletionsAfter(any(LocalDateTime.class), anyInt(), any(LocalDateTime.class), any(Pageable.class))).thenReturn(new ArrayList<>());
+
+        PatientChangeFeed firstPage = serviceUnderTest.readChangesSince(null, 1);
+        serviceUnderTest.readChangesSince(firstPage.getNextCursor(), 1);
+
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(firstPage.getChanges()).as("Changes of first page").containsExactly(update1);
+            softly.assertThat(firstPage.isHasMore()).as("More changes available").isTrue();
+        });
+        verify(patientRepository).findChangesAfter(eq(time), eq(1), any(LocalDateTime.class), eq(Pageable.ofSize(2)));
+        verify(patientTombstoneRepository).findDeletionsAfter(eq(time), eq(1), any(LocalDateTime.class), eq(Pageable.ofSize(2)));
+    }
+
+    @Test
+    void readChangesSince_shouldLeaveOutChangesYoungerThanSafetyLag() {
+        ArgumentCaptor<LocalDateTime> changesUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> deletionsUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+        when(patientRepository.findChangesAfter(any(LocalDateTime.class), anyInt(), changesUntil.capture(), any(Pageable.class))).thenReturn(new ArrayList<>());
+        when(patientTombstoneRepository.findDeletionsAfter(any(LocalDateTime.class), anyInt(), deletionsUntil.capture(), any(Pageable.class))).thenReturn(new ArrayList<>());
+        LocalDateTime before = LocalDateTime.now();
+
+        serviceUnderTest.readChangesSince(null, 10);
+
+        LocalDateTime after = LocalDateTime.now();
+        SoftAssertions.assertSoftly(softly -> {
+            softly.assertThat(changesUntil.getValue()).as("Date before which changes are read")
+                    .isBetween(before.minusSeconds(5), after.minusSeconds(5));
+            softly.assertThat(deletionsUntil.getValue()).as("Date before which deletions are read").isEqualTo(changesUntil.getValue());
+        });
+    }
+
+    @Test
+    void readChangesSince_shouldThrowAnException_whenCursorIsInvalid() {
+        Throwable result = catchThrowable(() -> serviceUnderTest.readChangesSince("not-a-cursor", 10));
+
+        assertThat(result).as("Thrown exception")
+                .isInstanceOf(InvalidRequestParameterException.class)
+                .hasMessageContaining("Invalid change feed cursor");
+        verify(patientRepository, times(0)).findChangesAfter(any(LocalDateTime.class), anyInt(), any(LocalDateTime.class), any(Pageable.class));
     }
 
 }
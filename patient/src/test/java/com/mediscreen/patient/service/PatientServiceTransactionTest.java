@@ -0,0 +1,116 @@
+package com.mediscreen.patient.service;
+
+import com.mediscreen.patient.exception.PatientNotFoundException;
+import com.mediscreen.patient.model.Patient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests that the lookups served by the patient directory don't open any transaction, and that the others are read-only.
+ */
+@SpringBootTest
+public class PatientServiceTransactionTest {
+
+    @Autowired
+    private PatientService patientService;
+    @MockBean
+    private PatientDirectory patientDirectory;
+    @Autowired
+    private RecordingTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class RecordingTransactionManagerConfig {
+
+        // Replaces the auto-configured transaction manager
+        @Bean
+        RecordingTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+            return new RecordingTransactionManager(entityManagerFactory);
+        }
+
+    }
+
+    // Records the transactions it begins, its getTransaction being final and not verifiable
+    static class RecordingTransactionManager extends JpaTransactionManager {
+
+        private final List<TransactionDefinition> begunTransactions = new CopyOnWriteArrayList<>();
+
+        RecordingTransactionManager(EntityManagerFactory entityManagerFactory) {
+            super(entityManagerFactory);
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            begunTransactions.add(definition);
+            super.doBegin(transaction, definition);
+        }
+
+    }
+
+    @BeforeEach
+    void setUp() {
+        transactionManager.begunTransactions.clear();
+    }
+
+    // === READ ===============================================================
+    @Test
+    void readPatient_shouldNotOpenTransaction_whenDirectoryHoldsThePatient() {
+        Patient patient = new Patient();
+        when(patientDirectory.findById(anyInt())).thenReturn(Optional.of(patient));
+
+        Patient result = patientService.readPatient(1);
+
+        assertThat(result).as("Patient found").isEqualTo(patient);
+        assertThat(transactionManager.begunTransactions).as("Begun transactions").isEmpty();
+    }
+
+    @Test
+    void readPatient_shouldOpenReadOnlyTransaction_whenDirectoryDoesNotHoldThePatient() {
+        when(patientDirectory.findById(anyInt())).thenReturn(Optional.empty());
+
+        Throwable result = catchThrowable(() -> patientService.readPatient(0));
+
+        assertThat(result).as("Thrown exception").isInstanceOf(PatientNotFoundException.class);
+        assertThat(transactionManager.begunTransactions).as("Begun transactions")
+                .singleElement().extracting(TransactionDefinition::isReadOnly).isEqualTo(true);
+    }
+
+    // === READ ALL FILTERED BY LAST NAME =====================================
+    @Test
+    void readAllPatientsByLastName_shouldNotOpenTransaction_whenDirectoryIsReady() {
+        when(patientDirectory.isReady()).thenReturn(true);
+        when(patientDirectory.findAllByLastName(anyString())).thenReturn(List.of(new Patient()));
+
+        patientService.readAllPatientsByLastName("TestNone");
+
+        assertThat(transactionManager.begunTransactions).as("Begun transactions").isEmpty();
+    }
+
+    @Test
+    void readAllPatientsByLastName_shouldOpenReadOnlyTransaction_whenDirectoryIsNotReady() {
+        when(patientDirectory.isReady()).thenReturn(false);
+
+        patientService.readAllPatientsByLastName("TestNone");
+
+        assertThat(transactionManager.begunTransactions).as("Begun transactions")
+                .singleElement().extracting(TransactionDefinition::isReadOnly).isEqualTo(true);
+    }
+
+}